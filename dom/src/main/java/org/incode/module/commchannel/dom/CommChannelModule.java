@@ -31,13 +31,31 @@ private JdoColumnLength(){}
          */
         public static final int EMAIL_ADDRESS = 254;
         public static final int PHONE_NUMBER = 20;
+        /**
+         * A <tt>+</tt>, a country calling code (at most 3 digits) and the digits of a {@link #PHONE_NUMBER}.
+         */
+        public static final int NORMALISED_PHONE_NUMBER = 1 + 3 + PHONE_NUMBER;
 
         public static final int ADDRESS_LINE = 50;
         public static final int POSTAL_CODE = 12;
         public static final int COUNTRY = 50;
 
+        /**
+         * For the geocoded locality, postal town and administrative areas.
+         */
+        public static final int ADDRESS_COMPONENT = 100;
+        /**
+         * ISO 3166-1 alpha-2.
+         */
+        public static final int COUNTRY_CODE = 2;
+
         public static final int FORMATTED_ADDRESS = 254;
 
+        /**
+         * Long enough for either an {@link #EMAIL_ADDRESS email address} or a {@link #FORMATTED_ADDRESS formatted address}.
+         */
+        public static final int TITLE = 254;
+
         public static final int BOOKMARK = 2000;
 
     }
@@ -50,6 +68,41 @@ private Regex(){}
     }
 
 
+    /**
+     * Parsing of the (optional) configuration properties read by the module's domain services; a missing or
+     * malformed value (once trimmed) results in the default.
+     */
+    public static class Config {
+
+        private Config(){}
+
+        public static int parseInt(final String str, final int defaultValue) {
+            if(str == null) {
+                return defaultValue;
+            }
+            try {
+                return Integer.parseInt(str.trim());
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+
+        public static double parseDouble(final String str, final double defaultValue) {
+            if(str == null) {
+                return defaultValue;
+            }
+            try {
+                return Double.parseDouble(str.trim());
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+
+        public static boolean parseBoolean(final String str, final boolean defaultValue) {
+            return str != null ? Boolean.parseBoolean(str.trim()) : defaultValue;
+        }
+    }
+
     private CommChannelModule(){}
 
 
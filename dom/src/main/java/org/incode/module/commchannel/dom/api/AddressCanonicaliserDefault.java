@@ -0,0 +1,133 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.api;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.incode.module.commchannel.dom.spi.AddressCanonicaliser;
+
+/**
+ * Default implementation of the {@link AddressCanonicaliser} SPI.
+ *
+ * <p>
+ *     Each part of the address is split on commas into segments, and each segment is case folded with any
+ *     whitespace and punctuation collapsed to a single space.  UK postcodes are formatted as upper case with a single
+ *     space (eg <tt>OX1 2JD</tt>), and the final segment, if a country name (or common alias, eg "UK"), is replaced by
+ *     its ISO 3166 code.  The (non-empty) segments are then joined with ", ".
+ * </p>
+ *
+ * <p>
+ *     Two-letter segments are not treated as ISO codes (nor upper-cased), as they are as likely to be US states or
+ *     Canadian provinces (eg "CA" for California rather than Canada); likewise country names that are also the names
+ *     of US states (eg "Georgia") are left as is.
+ * </p>
+ */
+public class AddressCanonicaliserDefault implements AddressCanonicaliser {
+
+    private static final Splitter SEGMENT_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final Pattern UK_POSTCODE = Pattern.compile("\\b([a-z]{1,2}[0-9][a-z0-9]?) ?([0-9][a-z]{2})\\b");
+
+    private static final Map<String, String> ALIASES = ImmutableMap.<String, String>builder()
+            .put("uk", "GB")
+            .put("u k", "GB")
+            .put("britain", "GB")
+            .put("great britain", "GB")
+            .put("england", "GB")
+            .put("scotland", "GB")
+            .put("wales", "GB")
+            .put("northern ireland", "GB")
+            .put("usa", "US")
+            .put("u s", "US")
+            .put("u s a", "US")
+            .put("america", "US")
+            .put("united states of america", "US")
+            .put("holland", "NL")
+            .build();
+
+    /**
+     * Country names that are also the names of US states.
+     */
+    private static final Set<String> AMBIGUOUS = ImmutableSet.of("georgia");
+
+    private static final Map<String, String> ISO_CODE_BY_COUNTRY = isoCodeByCountry();
+
+    private static Map<String, String> isoCodeByCountry() {
+        final Map<String, String> isoCodeByCountry = Maps.newHashMap();
+        for (final String isoCode : Locale.getISOCountries()) {
+            final String name = canonicaliseSegment(new Locale("", isoCode).getDisplayCountry(Locale.ENGLISH));
+            if(!AMBIGUOUS.contains(name)) {
+                isoCodeByCountry.put(name, isoCode);
+            }
+        }
+        isoCodeByCountry.putAll(ALIASES);
+        return ImmutableMap.copyOf(isoCodeByCountry);
+    }
+
+    @Override
+    public String canonicalise(final String... addressParts) {
+        if(addressParts == null) {
+            return null;
+        }
+        final List<String> segments = Lists.newArrayList();
+        for (final String addressPart : addressParts) {
+            if(addressPart == null) {
+                continue;
+            }
+            for (final String segment : SEGMENT_SPLITTER.split(addressPart)) {
+                final String canonicalSegment = canonicaliseSegment(segment);
+                if(!canonicalSegment.isEmpty()) {
+                    segments.add(canonicalSegment);
+                }
+            }
+        }
+        if(segments.isEmpty()) {
+            return null;
+        }
+        final int last = segments.size() - 1;
+        final String isoCode = ISO_CODE_BY_COUNTRY.get(segments.get(last));
+        if(isoCode != null) {
+            segments.set(last, isoCode);
+        }
+        return Joiner.on(", ").join(segments);
+    }
+
+    static String canonicaliseSegment(final String segment) {
+        final String folded = NON_ALPHANUMERIC.matcher(segment.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+        final Matcher matcher = UK_POSTCODE.matcher(folded);
+        final StringBuffer buf = new StringBuffer();
+        while (matcher.find()) {
+            matcher.appendReplacement(buf, (matcher.group(1) + " " + matcher.group(2)).toUpperCase(Locale.ROOT));
+        }
+        matcher.appendTail(buf);
+        return buf.toString();
+    }
+
+}
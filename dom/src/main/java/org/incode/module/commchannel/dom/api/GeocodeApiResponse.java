@@ -26,6 +26,7 @@ public static enum Type {
             premise,
             subpremise,
             postal_code,
+            postal_town,
             natural_feature,
             airport,
             park,
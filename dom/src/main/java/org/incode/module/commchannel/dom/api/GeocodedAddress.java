@@ -86,6 +86,50 @@ public String getCountry() {
 
     //endregion
 
+    //region > getCountryCode
+    /**
+     * The (ISO 3166-1 alpha-2) code of the country, if any, of the first matching result, or <tt>null</tt> if there were no matching results ({@link #getStatus()} did not return {@link GeocodeApiResponse.Status#OK ok}.
+     */
+    public String getCountryCode() {
+        return findAddressComponentShortName(apiResponse, GeocodeApiResponse.Result.Type.country);
+    }
+
+    //endregion
+
+    //region > getLocality, getPostalTown
+    /**
+     * The locality (city or town), if any, of the first matching result, or <tt>null</tt> if there were no matching results ({@link #getStatus()} did not return {@link GeocodeApiResponse.Status#OK ok}.
+     */
+    public String getLocality() {
+        return findAddressComponentLongName(apiResponse, GeocodeApiResponse.Result.Type.locality);
+    }
+
+    /**
+     * The postal town (UK and Sweden only), if any, of the first matching result, or <tt>null</tt> if there were no matching results ({@link #getStatus()} did not return {@link GeocodeApiResponse.Status#OK ok}.
+     */
+    public String getPostalTown() {
+        return findAddressComponentLongName(apiResponse, GeocodeApiResponse.Result.Type.postal_town);
+    }
+
+    //endregion
+
+    //region > getAdministrativeAreaLevel1, getAdministrativeAreaLevel2
+    /**
+     * The first-order administrative area (eg state, or UK constituent country), if any, of the first matching result, or <tt>null</tt> if there were no matching results ({@link #getStatus()} did not return {@link GeocodeApiResponse.Status#OK ok}.
+     */
+    public String getAdministrativeAreaLevel1() {
+        return findAddressComponentLongName(apiResponse, GeocodeApiResponse.Result.Type.administrative_area_level_1);
+    }
+
+    /**
+     * The second-order administrative area (eg county), if any, of the first matching result, or <tt>null</tt> if there were no matching results ({@link #getStatus()} did not return {@link GeocodeApiResponse.Status#OK ok}.
+     */
+    public String getAdministrativeAreaLevel2() {
+        return findAddressComponentLongName(apiResponse, GeocodeApiResponse.Result.Type.administrative_area_level_2);
+    }
+
+    //endregion
+
     //region > getLocation
     /**
      * The <tt>geometry.location</tt> of the first matching result, or <tt>null</tt> if there were no matching results ({@link #getStatus()} did not return {@link GeocodeApiResponse.Status#OK ok}.
@@ -135,6 +179,13 @@ private static String findAddressComponentLongName(
         return addressComponent != null? addressComponent.getLong_name() : null;
     }
 
+    private static String findAddressComponentShortName(
+            final GeocodeApiResponse apiResponse,
+            final GeocodeApiResponse.Result.Type type) {
+        GeocodeApiResponse.Result.AddressComponent addressComponent = findAddressComponent(apiResponse, type);
+        return addressComponent != null? addressComponent.getShort_name() : null;
+    }
+
     private static GeocodeApiResponse.Result.AddressComponent findAddressComponent(
             final GeocodeApiResponse apiResponse,
             final GeocodeApiResponse.Result.Type requestedType) {
@@ -0,0 +1,326 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.api;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import org.incode.module.commchannel.dom.spi.GeocodingProvider;
+
+/**
+ * Implementation of the {@link GeocodingProvider} SPI that geocodes offline, against a local gazetteer file, eg for
+ * development, load testing or bulk back-fills.
+ *
+ * <p>
+ *     The gazetteer is a UTF-8 text file with one entry per line, of tab-separated fields:
+ *     <tt>key</tt>, <tt>lat</tt>, <tt>lng</tt> and then (optionally) <tt>name</tt>, <tt>countryCode</tt> and
+ *     <tt>type</tt> (either <tt>postal_code</tt> or <tt>locality</tt>; if omitted, keys containing a digit are taken
+ *     to be postal codes).  The key is a postal code or a locality; blank lines and lines starting with <tt>#</tt>
+ *     are ignored.  Any other line that is malformed (eg missing its coordinates) causes the gazetteer to be
+ *     rejected when {@link #load(Path) loaded}, identifying the line.
+ * </p>
+ *
+ * <p>
+ *     The file is memory-mapped (so must be smaller than 2GB) rather than read onto the heap; the only index held is a
+ *     sorted array of one <tt>long</tt> per entry, combining the hash of its (normalised) key with its offset in the
+ *     file.  An address is geocoded by trying each of its comma-separated segments as a key, last first (so that a
+ *     postal code is generally found before a locality), and then, for UK postcodes, their outward code
+ *     (eg <tt>OX1</tt> for <tt>OX1 2JD</tt>).  The result is located only approximately, to the centre of the
+ *     postal code or locality.
+ * </p>
+ */
+public class GeocodingProviderGazetteer implements GeocodingProvider {
+
+    private static final Splitter SEGMENT_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+    private static final Splitter FIELD_SPLITTER = Splitter.on('\t').trimResults();
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final Pattern DIGIT = Pattern.compile("\\p{Nd}");
+    private static final Pattern COUNTRY_CODE = Pattern.compile("[A-Z]{2}");
+    private static final Pattern TYPE = Pattern.compile("postal_code|locality");
+    private static final Pattern UK_POSTCODE =
+            Pattern.compile("([A-Za-z]{1,2}[0-9][A-Za-z0-9]?) ?[0-9][A-Za-z]{2}");
+
+    private static final String PLACE_ID_PREFIX = "gazetteer:";
+
+    private final ByteBuffer buffer;
+    /**
+     * Hash of the normalised key in the high 32 bits, offset of the line in the low 32 bits; sorted.
+     */
+    private final long[] index;
+
+    GeocodingProviderGazetteer(final ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.index = buildIndex(buffer);
+    }
+
+    /**
+     * Memory-maps and indexes the specified gazetteer file.
+     *
+     * @throws IOException if the file cannot be read, or if any of its entries is malformed.
+     */
+    public static GeocodingProviderGazetteer load(final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Gazetteer " + file + " is too large (must be less than 2GB)");
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return new GeocodingProviderGazetteer(buffer);
+            } catch (final IllegalArgumentException ex) {
+                throw new IOException("Gazetteer " + file + " is invalid: " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * The number of entries in the gazetteer.
+     */
+    public int size() {
+        return index.length;
+    }
+
+    //region > geocode
+
+    @Override
+    public GeocodedAddress geocode(final String address) {
+        final List<String> segments = Lists.newArrayList(SEGMENT_SPLITTER.split(address));
+        String countryCode = null;
+        if(!segments.isEmpty() && COUNTRY_CODE.matcher(segments.get(segments.size() - 1)).matches()) {
+            countryCode = segments.remove(segments.size() - 1);
+        }
+
+        String entry = null;
+        for (int i = segments.size() - 1; i >= 0 && entry == null; i--) {
+            entry = find(segments.get(i));
+        }
+        for (int i = segments.size() - 1; i >= 0 && entry == null; i--) {
+            final Matcher matcher = UK_POSTCODE.matcher(segments.get(i));
+            if(matcher.matches()) {
+                entry = find(matcher.group(1));
+            }
+        }
+
+        return GeocodingService.asGeocodedAddressFrom(
+                entry != null ? asJson(entry, countryCode) : "{\"status\":\"ZERO_RESULTS\",\"results\":[]}");
+    }
+
+    /**
+     * The line of the entry whose key (once normalised) matches that specified, or <tt>null</tt> if none.
+     */
+    String find(final String key) {
+        final String normalisedKey = normalise(key);
+        if(normalisedKey.isEmpty()) {
+            return null;
+        }
+        final long hash = normalisedKey.hashCode();
+        for (int i = lowerBound(hash << 32); i < index.length && (index[i] >> 32) == hash; i++) {
+            final String line = lineAt((int) index[i]);
+            if(normalisedKey.equals(normalise(keyOf(line)))) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    private int lowerBound(final long value) {
+        int low = 0;
+        int high = index.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if(index[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String asJson(final String line, final String addressCountryCode) {
+        final List<String> fields = FIELD_SPLITTER.splitToList(line);
+        final String key = fields.get(0);
+        final double lat = Double.parseDouble(fields.get(1));
+        final double lng = Double.parseDouble(fields.get(2));
+        final String name = field(fields, 3) != null ? field(fields, 3) : key;
+        final String countryCode = field(fields, 4) != null ? field(fields, 4) : addressCountryCode;
+        final String type = typeOf(fields);
+
+        final JsonArray addressComponents = new JsonArray();
+        addressComponents.add(addressComponent(name, type));
+        if(countryCode != null) {
+            addressComponents.add(addressComponent(countryCode, "country", "political"));
+        }
+
+        final JsonObject location = new JsonObject();
+        location.addProperty("lat", lat);
+        location.addProperty("lng", lng);
+        final JsonObject geometry = new JsonObject();
+        geometry.add("location", location);
+        geometry.addProperty("location_type", "APPROXIMATE");
+
+        final JsonObject result = new JsonObject();
+        result.addProperty("formatted_address", countryCode != null ? name + ", " + countryCode : name);
+        result.addProperty("place_id", PLACE_ID_PREFIX + normalise(key));
+        result.add("types", types(type));
+        result.add("address_components", addressComponents);
+        result.add("geometry", geometry);
+
+        final JsonArray results = new JsonArray();
+        results.add(result);
+        final JsonObject response = new JsonObject();
+        response.addProperty("status", "OK");
+        response.add("results", results);
+        return response.toString();
+    }
+
+    private static JsonObject addressComponent(final String name, final String... types) {
+        final JsonObject addressComponent = new JsonObject();
+        addressComponent.addProperty("long_name", name);
+        addressComponent.addProperty("short_name", name);
+        addressComponent.add("types", types(types));
+        return addressComponent;
+    }
+
+    private static JsonArray types(final String... types) {
+        final JsonArray array = new JsonArray();
+        for (final String type : types) {
+            array.add(new JsonPrimitive(type));
+        }
+        return array;
+    }
+
+    private static String typeOf(final List<String> fields) {
+        return field(fields, 5) != null
+                ? field(fields, 5)
+                : DIGIT.matcher(fields.get(0)).find() ? "postal_code" : "locality";
+    }
+
+    private static String field(final List<String> fields, final int i) {
+        return fields.size() > i && !fields.get(i).isEmpty() ? fields.get(i) : null;
+    }
+    //endregion
+
+    //region > index
+    private static long[] buildIndex(final ByteBuffer buffer) {
+        long[] index = new long[1024];
+        int size = 0;
+        final int limit = buffer.limit();
+        int offset = 0;
+        int lineNumber = 0;
+        while (offset < limit) {
+            final int end = endOfLine(buffer, offset);
+            lineNumber++;
+            final String line = decode(buffer, offset, end);
+            final String key = normalise(keyOf(line));
+            if(!key.isEmpty() && buffer.get(offset) != '#') {
+                validate(line, lineNumber);
+                if(size == index.length) {
+                    index = Arrays.copyOf(index, size * 2);
+                }
+                index[size++] = ((long) key.hashCode() << 32) | offset;
+            }
+            offset = end + 1;
+        }
+        index = Arrays.copyOf(index, size);
+        Arrays.sort(index);
+        return index;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the entry is malformed, identifying its line.
+     */
+    private static void validate(final String line, final int lineNumber) {
+        final List<String> fields = FIELD_SPLITTER.splitToList(line);
+        final String problem;
+        if(fields.size() < 3) {
+            problem = "expected at least key, lat and lng (tab-separated)";
+        } else if(!isCoordinate(fields.get(1), 90) || !isCoordinate(fields.get(2), 180)) {
+            problem = "lat and lng must be numbers, within -90..90 and -180..180";
+        } else if(field(fields, 4) != null && !COUNTRY_CODE.matcher(field(fields, 4)).matches()) {
+            problem = "countryCode must be ISO 3166-1 alpha-2 (eg GB)";
+        } else if(!TYPE.matcher(typeOf(fields)).matches()) {
+            problem = "type must be either postal_code or locality";
+        } else {
+            return;
+        }
+        throw new IllegalArgumentException("line " + lineNumber + ": " + problem);
+    }
+
+    private static boolean isCoordinate(final String str, final double bound) {
+        try {
+            final double value = Double.parseDouble(str);
+            return value >= -bound && value <= bound;
+        } catch (final NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    private String lineAt(final int offset) {
+        return decode(buffer, offset, endOfLine(buffer, offset));
+    }
+
+    private static int endOfLine(final ByteBuffer buffer, final int offset) {
+        final int limit = buffer.limit();
+        int end = offset;
+        while (end < limit && buffer.get(end) != '\n') {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Uses absolute gets only, so is safe to call concurrently.
+     */
+    private static String decode(final ByteBuffer buffer, final int offset, final int end) {
+        final byte[] bytes = new byte[end - offset];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String keyOf(final String line) {
+        final int tab = line.indexOf('\t');
+        return tab >= 0 ? line.substring(0, tab) : line;
+    }
+
+    /**
+     * Case folded, with whitespace and punctuation removed (so that <tt>OX1 2JD</tt> and <tt>ox12jd</tt> match).
+     */
+    static String normalise(final String key) {
+        return NON_ALPHANUMERIC.matcher(key.toLowerCase(Locale.ROOT)).replaceAll("");
+    }
+    //endregion
+
+}
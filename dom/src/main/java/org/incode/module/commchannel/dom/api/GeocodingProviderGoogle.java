@@ -0,0 +1,105 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.api;
+
+import java.io.UnsupportedEncodingException;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+
+import org.incode.module.commchannel.dom.spi.GeocodingProvider;
+
+/**
+ * Implementation of the {@link GeocodingProvider} SPI that calls the Google geocoding API
+ * (<tt>maps.googleapis.com</tt>).
+ */
+public class GeocodingProviderGoogle implements GeocodingProvider {
+
+    private final String protocol;
+    private final String apiKey;
+    private final String regionBias;
+    private final int timeout;
+
+    /**
+     * @param regionBias - already encoded, if any.
+     * @param timeout - in seconds.
+     */
+    public GeocodingProviderGoogle(
+            final String protocol,
+            final String apiKey,
+            final String regionBias,
+            final int timeout) {
+        this.protocol = protocol;
+        this.apiKey = apiKey;
+        this.regionBias = regionBias;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public GeocodedAddress geocode(final String address) {
+
+        final RequestConfig requestConfig = RequestConfig.custom()
+                .setSocketTimeout(timeout * 1000)
+                .setConnectTimeout(timeout * 1000)
+                .build();
+
+        final CloseableHttpClient httpClient = HttpClientBuilder.create()
+                .setDefaultRequestConfig(requestConfig)
+                .useSystemProperties()
+                .build();
+
+        try {
+            final String uri = buildUri(GeocodingService.encoded(address));
+            final HttpGet httpGet = new HttpGet(uri);
+            final CloseableHttpResponse response = httpClient.execute(httpGet);
+
+            try {
+                HttpEntity entity = response.getEntity();
+                final String json = EntityUtils.toString(entity, "UTF-8");
+
+                return GeocodingService.asGeocodedAddressFrom(json);
+            } finally {
+                response.close();
+            }
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    private String buildUri(final String address) throws UnsupportedEncodingException {
+
+        final StringBuilder sb = new StringBuilder();
+        sb.append(protocol)
+          .append("://maps.googleapis.com/maps/api/geocode/json?sensor=false&address=")
+          .append(address);
+
+        if(apiKey != null) {
+            sb.append("&apiKey=").append(apiKey);
+        }
+        if (regionBias != null) {
+            sb.append("&region=").append(regionBias);
+        }
+        return sb.toString();
+    }
+
+}
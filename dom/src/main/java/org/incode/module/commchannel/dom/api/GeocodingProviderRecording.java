@@ -0,0 +1,145 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.api;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.incode.module.commchannel.dom.spi.GeocodingProvider;
+
+/**
+ * Decorates another {@link GeocodingProvider}, recording each response to a file in a directory, from which it can
+ * later be served by {@link GeocodingProviderReplaying} (eg for load tests).
+ *
+ * <p>
+ *     Each response is written to a file named by the {@link #keyFor(String) SHA-256 hash} of the address,
+ *     overwriting any earlier response for the same address.  The file holds a json object with the (not encoded)
+ *     <tt>address</tt> requested and the json of the API <tt>response</tt> (as a string, so that it is replayed
+ *     verbatim); see {@link Recorded}.
+ *     Failures (for which there is no response) are not recorded.  Nor is a response that cannot be written (eg
+ *     because the disk is full): this is logged, and the response is still returned, so that recording never causes
+ *     a lookup to fail.
+ * </p>
+ */
+public class GeocodingProviderRecording implements GeocodingProvider {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GeocodingProviderRecording.class);
+
+    private static final String SUFFIX = ".json";
+
+    private final GeocodingProvider delegate;
+    private final Path directory;
+
+    public GeocodingProviderRecording(final GeocodingProvider delegate, final Path directory) {
+        this.delegate = delegate;
+        this.directory = directory;
+    }
+
+    @Override
+    public GeocodedAddress geocode(final String address) {
+        final GeocodedAddress geocodedAddress = delegate.geocode(address);
+        if(geocodedAddress != null && geocodedAddress.getApiResponseAsJson() != null) {
+            record(address, geocodedAddress.getApiResponseAsJson());
+        }
+        return geocodedAddress;
+    }
+
+    private void record(final String address, final String json) {
+        final Path file = fileFor(directory, address);
+        Path tempFile = null;
+        try {
+            Files.createDirectories(directory);
+            // written to a temporary file first, so that a concurrent replay never sees a partial response
+            tempFile = Files.createTempFile(directory, "recording", ".tmp");
+            Files.write(tempFile, new Recorded(address, json).toJson().getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Could not record geocode response to {}", file, e);
+            deleteQuietly(tempFile);
+        }
+    }
+
+    private static void deleteQuietly(final Path tempFile) {
+        if(tempFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException ignored) {
+            // nothing more to be done; at worst a stray temporary file is left behind
+        }
+    }
+
+    /**
+     * The file in which the response for the (not encoded) address is recorded.
+     */
+    static Path fileFor(final Path directory, final String address) {
+        return directory.resolve(keyFor(address) + SUFFIX);
+    }
+
+    static String keyFor(final String address) {
+        return Hashing.sha256().hashString(address, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * The contents of a recorded file: the address requested, and the json of the response received.
+     */
+    static class Recorded {
+
+        private static final Gson GSON = new Gson();
+
+        final String address;
+        final String response;
+
+        Recorded(final String address, final String response) {
+            this.address = address;
+            this.response = response;
+        }
+
+        String toJson() {
+            return GSON.toJson(this);
+        }
+
+        /**
+         * Also reads files recorded before the address was recorded with the response (ie holding just the json
+         * of the response), for which the address is <tt>null</tt>.
+         *
+         * @throws JsonParseException if not json.
+         */
+        static Recorded fromJson(final String json) {
+            final JsonObject jsonObject = new JsonParser().parse(json).getAsJsonObject();
+            if(!jsonObject.has("response")) {
+                return new Recorded(null, json);
+            }
+            return GSON.fromJson(jsonObject, Recorded.class);
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.api;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.gson.JsonParseException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.incode.module.commchannel.dom.api.GeocodingProviderRecording.Recorded;
+import org.incode.module.commchannel.dom.spi.GeocodingProvider;
+
+/**
+ * Implementation of the {@link GeocodingProvider} SPI that serves the responses previously recorded by
+ * {@link GeocodingProviderRecording}, with no network, eg so that load tests of address imports are realistic and
+ * repeatable.
+ *
+ * <p>
+ *     Each lookup is delayed by <tt>latencyMillis</tt> plus a random jitter of up to <tt>latencyJitterMillis</tt>,
+ *     to simulate the round trip to the geocoding API.  Errors can also be injected: a proportion
+ *     (<tt>errorRate</tt>, between 0 and 1) of addresses fail (as if timed out), and a further proportion
+ *     (<tt>overQueryLimitRate</tt>) are refused with an
+ *     {@link GeocodeApiResponse.Status#OVER_QUERY_LIMIT over query limit} response.  Which addresses are affected is
+ *     derived from the address itself, so is the same from one run to the next.
+ * </p>
+ *
+ * <p>
+ *     Addresses for which no response was recorded result in {@link GeocodeApiResponse.Status#ZERO_RESULTS zero
+ *     results}, as do those whose recorded address differs (a hash collision).  Responses are read from the
+ *     directory on first use and then held in memory.  A response that cannot be read is logged and treated as a
+ *     failure (returning <tt>null</tt>), and is read again on the next lookup.
+ * </p>
+ */
+public class GeocodingProviderReplaying implements GeocodingProvider {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GeocodingProviderReplaying.class);
+
+    private static final String ZERO_RESULTS = "{\"status\":\"ZERO_RESULTS\",\"results\":[]}";
+    private static final String OVER_QUERY_LIMIT = "{\"status\":\"OVER_QUERY_LIMIT\",\"results\":[]}";
+
+    private final Path directory;
+    private final int latencyMillis;
+    private final int latencyJitterMillis;
+    private final double errorRate;
+    private final double overQueryLimitRate;
+
+    /**
+     * Keyed by {@link GeocodingProviderRecording#keyFor(String)}; empty if nothing was recorded.
+     */
+    private final ConcurrentMap<String, Optional<String>> responses = new ConcurrentHashMap<>();
+
+    public GeocodingProviderReplaying(
+            final Path directory,
+            final int latencyMillis,
+            final int latencyJitterMillis,
+            final double errorRate,
+            final double overQueryLimitRate) {
+        this.directory = directory;
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = latencyJitterMillis;
+        this.errorRate = errorRate;
+        this.overQueryLimitRate = overQueryLimitRate;
+    }
+
+    @Override
+    public GeocodedAddress geocode(final String address) {
+        simulateLatency();
+
+        final String key = GeocodingProviderRecording.keyFor(address);
+        final double sample = sampleOf(key);
+        if(sample < errorRate) {
+            return null;
+        }
+        if(sample < errorRate + overQueryLimitRate) {
+            return GeocodingService.asGeocodedAddressFrom(OVER_QUERY_LIMIT);
+        }
+
+        // not cached if it could not be read
+        final Optional<String> response = responses.computeIfAbsent(key, k -> read(address));
+        if(response == null) {
+            return null;
+        }
+        return GeocodingService.asGeocodedAddressFrom(response.orElse(ZERO_RESULTS));
+    }
+
+    /**
+     * @return the recorded response, empty if none was recorded (for this address), or <tt>null</tt> if it could not
+     * be read.
+     */
+    private Optional<String> read(final String address) {
+        final Path file = GeocodingProviderRecording.fileFor(directory, address);
+        final Recorded recorded;
+        try {
+            recorded = Recorded.fromJson(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            LOG.error("Could not replay geocode response from {}", file, e);
+            return null;
+        }
+        if(recorded.address != null && !recorded.address.equals(address)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(recorded.response);
+    }
+
+    private void simulateLatency() {
+        final int delay = latencyMillis
+                + (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextInt(latencyJitterMillis + 1) : 0);
+        if(delay <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A number in [0, 1), derived from the (hex) key, so the same for the same address.
+     */
+    private static double sampleOf(final String key) {
+        return Long.parseLong(key.substring(0, 8), 16) / (double) (1L << 32);
+    }
+
+}
@@ -19,31 +19,55 @@
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.io.Resources;
 import com.google.gson.Gson;
 
-import org.apache.http.HttpEntity;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.util.EntityUtils;
-
 import org.apache.isis.applib.annotation.DomainService;
 import org.apache.isis.applib.annotation.NatureOfService;
 import org.apache.isis.applib.annotation.Programmatic;
 import org.apache.isis.applib.services.config.ConfigurationService;
 
+import org.incode.module.commchannel.dom.CommChannelModule.Config;
+import org.incode.module.commchannel.dom.impl.geocodingusage.GeocodingUsageService;
+import org.incode.module.commchannel.dom.spi.AddressCanonicaliser;
+import org.incode.module.commchannel.dom.spi.GeocodingProvider;
+
 /**
  * Adapted from <a href="http://stackoverflow.com/a/9600268/56880">this stackoverflow answer</a>.
+ *
+ * <p>
+ *     {@link #lookupAddress(String...)} first derives the {@link AddressCanonicaliser canonical form} of the address,
+ *     and caches successful lookups keyed by that canonical form, so that variants of the same address ("Oxford",
+ *     "OXFORD ", "Oxford,") result in a single call to the geocoding API.  The canonical form is only ever used as a
+ *     key; the address sent to the API is the one provided.  The cache can be configured using
+ *     <tt>...GeocodingService.cache.enabled</tt> (default <tt>true</tt>), <tt>.cache.maxSize</tt> (default 10000)
+ *     and <tt>.cache.expiry</tt> (in seconds, default 86400).
+ * </p>
+ *
+ * <p>
+ *     Addresses are geocoded by the registered {@link GeocodingProvider} if there is one, otherwise as per
+ *     <tt>...GeocodingService.provider</tt>: either <tt>google</tt> (the default, {@link GeocodingProviderGoogle})
+ *     or <tt>gazetteer</tt> ({@link GeocodingProviderGazetteer}, offline, against the file specified by
+ *     <tt>.gazetteer.file</tt>), or <tt>replay</tt> ({@link GeocodingProviderReplaying}, serving the responses in
+ *     <tt>.replay.directory</tt>, with <tt>.replay.latencyMillis</tt>, <tt>.replay.latencyJitterMillis</tt>,
+ *     <tt>.replay.errorRate</tt> and <tt>.replay.overQueryLimitRate</tt> as optional settings).  If
+ *     <tt>.record.directory</tt> is set, the provider's responses are also {@link GeocodingProviderRecording recorded}
+ *     there, for later replay.  In <tt>demo</tt> mode a canned response is always returned instead.
+ * </p>
  */
 @DomainService(
         nature = NatureOfService.DOMAIN
@@ -54,9 +78,23 @@ public String getId() {
         return "incodeCommChannel.GeocodingService";
     }
 
+    private static final String PROVIDER_GOOGLE = "google";
+    private static final String PROVIDER_GAZETTEER = "gazetteer";
+    private static final String PROVIDER_REPLAY = "replay";
+
+    private static final String DEFAULT_PROVIDER = PROVIDER_GOOGLE;
     private static final String DEFAULT_PROTOCOL = "http";
     private static final boolean DEFAULT_DEMO = false;
     private static final int DEFAULT_TIMEOUT_SECONDS = 5;
+    private static final boolean DEFAULT_CACHE_ENABLED = true;
+    private static final int DEFAULT_CACHE_MAX_SIZE = 10000;
+    private static final int DEFAULT_CACHE_EXPIRY_SECONDS = 86400;
+    private static final int DEFAULT_REPLAY_LATENCY_MILLIS = 0;
+    private static final int DEFAULT_REPLAY_LATENCY_JITTER_MILLIS = 0;
+    private static final double DEFAULT_REPLAY_ERROR_RATE = 0.0;
+    private static final double DEFAULT_REPLAY_OVER_QUERY_LIMIT_RATE = 0.0;
+
+    private static final AddressCanonicaliser DEFAULT_ADDRESS_CANONICALISER = new AddressCanonicaliserDefault();
 
     private String apiKey;
     private String regionBias;
@@ -64,53 +102,261 @@ public String getId() {
     private int timeout = DEFAULT_TIMEOUT_SECONDS;
     private boolean demo;
 
+    /**
+     * As per the <tt>provider</tt> configuration property; not used if a {@link GeocodingProvider} is registered.
+     */
+    private GeocodingProvider configuredProvider;
+
+    /**
+     * If set, the responses of the provider are {@link GeocodingProviderRecording recorded} to this directory.
+     */
+    private Path recordDirectory;
+
+    /**
+     * The provider actually used (lazily resolved, so that any registered {@link GeocodingProvider} is found).
+     */
+    private GeocodingProvider provider;
+
+    /**
+     * Keyed by the canonical address; <tt>null</tt> if disabled (or if not {@link #init() initialised}).
+     */
+    private Cache<String, CachedLookup> cache;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong keyCollisions = new AtomicLong();
+
     @PostConstruct
     public void init() {
         final String prefix = GeocodingService.class.getCanonicalName();
         protocol = configurationService.getProperty(prefix + ".protocol", DEFAULT_PROTOCOL);
         apiKey = configurationService.getProperty(prefix + ".apiKey");
-        demo = parseBoolean(configurationService.getProperty(prefix + ".demo"), DEFAULT_DEMO);
-        timeout = parseInt(configurationService.getProperty(prefix + ".timeout"), DEFAULT_TIMEOUT_SECONDS);
+        demo = Config.parseBoolean(configurationService.getProperty(prefix + ".demo"), DEFAULT_DEMO);
+        timeout = Config.parseInt(configurationService.getProperty(prefix + ".timeout"), DEFAULT_TIMEOUT_SECONDS);
         regionBias = encoded(configurationService.getProperty(prefix + ".regionBias"));
+
+        final String provider = configurationService.getProperty(prefix + ".provider", DEFAULT_PROVIDER);
+        if(PROVIDER_GAZETTEER.equals(provider)) {
+            final String gazetteerFile = configurationService.getProperty(prefix + ".gazetteer.file");
+            if(gazetteerFile == null) {
+                throw new IllegalStateException(
+                        prefix + ".gazetteer.file must be specified for the gazetteer provider");
+            }
+            try {
+                configuredProvider = GeocodingProviderGazetteer.load(Paths.get(gazetteerFile));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not load gazetteer " + gazetteerFile, e);
+            }
+        } else if(PROVIDER_REPLAY.equals(provider)) {
+            final String replayDirectory = configurationService.getProperty(prefix + ".replay.directory");
+            if(replayDirectory == null) {
+                throw new IllegalStateException(
+                        prefix + ".replay.directory must be specified for the replay provider");
+            }
+            configuredProvider = new GeocodingProviderReplaying(
+                    Paths.get(replayDirectory),
+                    Config.parseInt(configurationService.getProperty(prefix + ".replay.latencyMillis"),
+                            DEFAULT_REPLAY_LATENCY_MILLIS),
+                    Config.parseInt(configurationService.getProperty(prefix + ".replay.latencyJitterMillis"),
+                            DEFAULT_REPLAY_LATENCY_JITTER_MILLIS),
+                    Config.parseDouble(configurationService.getProperty(prefix + ".replay.errorRate"),
+                            DEFAULT_REPLAY_ERROR_RATE),
+                    Config.parseDouble(configurationService.getProperty(prefix + ".replay.overQueryLimitRate"),
+                            DEFAULT_REPLAY_OVER_QUERY_LIMIT_RATE));
+        } else if(Strings.isNullOrEmpty(provider) || PROVIDER_GOOGLE.equals(provider)) {
+            configuredProvider = new GeocodingProviderGoogle(protocol, apiKey, regionBias, timeout);
+        } else {
+            throw new IllegalStateException("Unknown geocoding provider '" + provider + "'");
+        }
+        final String recordDirectory = configurationService.getProperty(prefix + ".record.directory");
+        this.recordDirectory = !Strings.isNullOrEmpty(recordDirectory) ? Paths.get(recordDirectory) : null;
+        this.provider = null;
+
+        final boolean cacheEnabled =
+                Config.parseBoolean(configurationService.getProperty(prefix + ".cache.enabled"), DEFAULT_CACHE_ENABLED);
+        final int cacheMaxSize =
+                Config.parseInt(configurationService.getProperty(prefix + ".cache.maxSize"), DEFAULT_CACHE_MAX_SIZE);
+        final int cacheExpiry =
+                Config.parseInt(configurationService.getProperty(prefix + ".cache.expiry"),
+                        DEFAULT_CACHE_EXPIRY_SECONDS);
+        cache = cacheEnabled
+                ? CacheBuilder.newBuilder()
+                        .maximumSize(cacheMaxSize)
+                        .expireAfterWrite(cacheExpiry, TimeUnit.SECONDS)
+                        .<String, CachedLookup>build()
+                : null;
     }
 
+    //region > lookupAddress
+
+    /**
+     * Looks up the address made up of the specified parts (which need not be encoded), using its
+     * {@link AddressCanonicaliser canonical form} as the key of the lookup cache; on a miss, the address as provided
+     * (not its canonical form) is sent to the geocoding API.
+     */
     @Programmatic
-    public GeocodedAddress lookup(final String address) {
+    public GeocodedAddress lookupAddress(final String... addressParts) {
+        final String canonicalAddress = canonicalise(addressParts);
+        if(canonicalAddress == null) {
+            return null;
+        }
+        lookups.incrementAndGet();
 
-        if(demo) {
-            return demoResponse();
+        final String address = combine(Encoding.NOT_ENCODED, addressParts);
+        if(cache != null) {
+            final CachedLookup cachedLookup = cache.getIfPresent(canonicalAddress);
+            if(cachedLookup != null) {
+                cacheHits.incrementAndGet();
+                if(geocodingUsageService != null) {
+                    geocodingUsageService.recordCacheHit();
+                }
+                if(!cachedLookup.address.equals(address)) {
+                    keyCollisions.incrementAndGet();
+                }
+                return cachedLookup.geocodedAddress;
+            }
         }
 
-        final RequestConfig requestConfig = RequestConfig.custom()
-                .setSocketTimeout(timeout * 1000)
-                .setConnectTimeout(timeout * 1000)
-                .build();
+        final GeocodedAddress geocodedAddress = lookupNotEncoded(address);
+        if(cache != null && GeocodedAddress.isOk(geocodedAddress)) {
+            cache.put(canonicalAddress, new CachedLookup(address, geocodedAddress));
+        }
+        return geocodedAddress;
+    }
 
-        final CloseableHttpClient httpClient = HttpClientBuilder.create()
-                .setDefaultRequestConfig(requestConfig)
-                .useSystemProperties()
-                .build();
+    /**
+     * As {@link #lookupAddress(String...)}, but always calling the geocoding API (rather than using any cached
+     * lookup), eg to refresh a stale geocode; the cache is updated with the result.
+     */
+    @Programmatic
+    public GeocodedAddress refreshAddress(final String... addressParts) {
+        final String canonicalAddress = canonicalise(addressParts);
+        if(canonicalAddress == null) {
+            return null;
+        }
+        final String address = combine(Encoding.NOT_ENCODED, addressParts);
+        final GeocodedAddress geocodedAddress = lookupNotEncoded(address);
+        if(cache != null && GeocodedAddress.isOk(geocodedAddress)) {
+            cache.put(canonicalAddress, new CachedLookup(address, geocodedAddress));
+        }
+        return geocodedAddress;
+    }
 
-        try {
-            final String uri = buildUri(address);
-            final HttpGet httpGet = new HttpGet(uri);
-            final CloseableHttpResponse response = httpClient.execute(httpGet);
+    @Programmatic
+    public String canonicalise(final String... addressParts) {
+        final AddressCanonicaliser canonicaliser =
+                addressCanonicaliser != null ? addressCanonicaliser : DEFAULT_ADDRESS_CANONICALISER;
+        return canonicaliser.canonicalise(addressParts);
+    }
 
-            try {
-                HttpEntity entity = response.getEntity();
-                final String json = EntityUtils.toString(entity, "UTF-8");
+    /**
+     * The number of calls to {@link #lookupAddress(String...)}.
+     */
+    @Programmatic
+    public long getLookups() {
+        return lookups.get();
+    }
 
-                return asGeocodedAddress(json);
-            } finally {
-                response.close();
-            }
-        } catch (Exception ex) {
+    /**
+     * The number of calls to {@link #lookupAddress(String...)} satisfied from the cache.
+     */
+    @Programmatic
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * The number of {@link #getCacheHits() cache hits} for an address that differed (before canonicalisation) from
+     * the one originally cached, ie the API calls avoided only because of canonicalisation.
+     */
+    @Programmatic
+    public long getKeyCollisions() {
+        return keyCollisions.get();
+    }
+
+    @Programmatic
+    public void invalidateCache() {
+        if(cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    private static class CachedLookup {
+        private final String address;
+        private final GeocodedAddress geocodedAddress;
+
+        private CachedLookup(final String address, final GeocodedAddress geocodedAddress) {
+            this.address = address;
+            this.geocodedAddress = geocodedAddress;
+        }
+    }
+    //endregion
+
+    /**
+     * Calls the geocoding API (or, if in demo mode, returns a canned response), recording the
+     * {@link GeocodingUsageService usage}; returns <tt>null</tt> if the call fails, or is refused because the
+     * daily cap on requests has been reached.
+     *
+     * <p>
+     *     The address is {@link Encoding#ENCODED encoded}, so is decoded before being passed to the provider; as
+     *     {@link #encoded(String) encoding} does not distinguish a '+' from a space, prefer
+     *     {@link #lookupAddress(String...)}, which passes the address to the provider as is.
+     * </p>
+     */
+    @Programmatic
+    public GeocodedAddress lookup(final String address) {
+        return lookupNotEncoded(decoded(address));
+    }
+
+    private GeocodedAddress lookupNotEncoded(final String address) {
+        if(geocodingUsageService == null) {
+            return doLookup(address);
+        }
+        if(!geocodingUsageService.tryAcquire()) {
             return null;
         }
+        final GeocodedAddress geocodedAddress = doLookup(address);
+        if(geocodedAddress != null && geocodedAddress.getApiResponse() != null) {
+            geocodingUsageService.recordResponse(
+                    geocodedAddress.getStatus(),
+                    geocodedAddress.getApiResponseAsJson().getBytes(Charsets.UTF_8).length);
+        } else {
+            geocodingUsageService.recordResponse(null, 0);
+        }
+        geocodingUsageService.flushIfDue();
+        return geocodedAddress;
+    }
+
+    private GeocodedAddress doLookup(final String address) {
+
+        if(demo) {
+            return demoResponse();
+        }
+
+        return provider().geocode(address);
+    }
+
+    private GeocodingProvider provider() {
+        if(provider == null) {
+            final GeocodingProvider provider =
+                    geocodingProvider != null
+                            ? geocodingProvider
+                            : configuredProvider != null
+                                    ? configuredProvider
+                                    : new GeocodingProviderGoogle(protocol, apiKey, regionBias, timeout);
+            this.provider = recordDirectory != null
+                    ? new GeocodingProviderRecording(provider, recordDirectory)
+                    : provider;
+        }
+        return provider;
     }
 
     @Programmatic
     public GeocodedAddress asGeocodedAddress(final String jsonResponse) {
+        return asGeocodedAddressFrom(jsonResponse);
+    }
+
+    static GeocodedAddress asGeocodedAddressFrom(final String jsonResponse) {
         final GeocodeApiResponse geocodeApiResponse =
                 new Gson().fromJson(jsonResponse, GeocodeApiResponse.class);
         return new GeocodedAddress(geocodeApiResponse, jsonResponse);
@@ -142,22 +388,6 @@ public String combine(final Encoding encoding, final String... parts) {
 
 
     //region > helpers
-    private String buildUri(final String address) throws UnsupportedEncodingException {
-
-        final StringBuilder sb = new StringBuilder();
-        sb.append(protocol)
-          .append("://maps.googleapis.com/maps/api/geocode/json?sensor=false&address=")
-          .append(address);
-
-        if(apiKey != null) {
-            sb.append("&apiKey=").append(apiKey);
-        }
-        if (regionBias != null) {
-            sb.append("&region=").append(regionBias);
-        }
-        return sb.toString();
-    }
-
     private GeocodedAddress demoResponse() {
         final URL resource = Resources
                 .getResource(getClass(), "postalAddress-45+High+St%2C+Oxford%2C+Oxfordshire+OX1%2C+UK.json");
@@ -171,31 +401,33 @@ private GeocodedAddress demoResponse() {
     }
 
 
-    private static int parseInt(final String str, final int defaultValue) {
-        try {
-            return Integer.parseInt(str);
-        } catch (NumberFormatException e) {
-            return defaultValue;
-        }
-    }
 
-    private static boolean parseBoolean(final String str, final boolean defaultValue) {
+    static String encoded(final String str)  {
         try {
-            return Boolean.parseBoolean(str);
-        } catch (NumberFormatException e) {
-            return defaultValue;
+            return str != null? URLEncoder.encode(str.replace(' ', '+'), "UTF-8"): null;
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("Failed to UTF-8 encode " + str, e);
         }
     }
 
-    private static String encoded(final String str)  {
+    /**
+     * The inverse of {@link #encoded(String)}.
+     */
+    private static String decoded(final String str)  {
         try {
-            return str != null? URLEncoder.encode(str.replace(' ', '+'), "UTF-8"): null;
+            return URLDecoder.decode(str, "UTF-8").replace('+', ' ');
         } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException("Failed to UTF-8 encode " + str, e);
+            throw new RuntimeException("Failed to UTF-8 decode " + str, e);
         }
     }
     //endregion
 
     @Inject
     ConfigurationService configurationService;
+    @Inject
+    AddressCanonicaliser addressCanonicaliser;
+    @Inject
+    GeocodingUsageService geocodingUsageService;
+    @Inject
+    GeocodingProvider geocodingProvider;
 }
@@ -18,6 +18,7 @@
 package org.incode.module.commchannel.dom.impl.channel;
 
 import java.util.Collection;
+import java.util.Comparator;
 
 import javax.inject.Inject;
 import javax.jdo.JDOHelper;
@@ -26,7 +27,14 @@
 import javax.jdo.annotations.IdGeneratorStrategy;
 import javax.jdo.annotations.IdentityType;
 import javax.jdo.annotations.InheritanceStrategy;
+import javax.jdo.annotations.NotPersistent;
 import javax.jdo.annotations.VersionStrategy;
+import javax.jdo.listener.StoreCallback;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.MoreObjects;
+
+import org.apache.commons.lang3.StringUtils;
 
 import org.apache.isis.applib.annotation.BookmarkPolicy;
 import org.apache.isis.applib.annotation.DomainObject;
@@ -38,8 +46,6 @@
 import org.apache.isis.applib.annotation.PropertyLayout;
 import org.apache.isis.applib.annotation.Where;
 import org.apache.isis.applib.services.factory.FactoryService;
-import org.apache.isis.applib.services.title.TitleService;
-import org.apache.isis.applib.util.ObjectContracts;
 
 import org.isisaddons.wicket.gmap3.cpt.applib.Locatable;
 import org.isisaddons.wicket.gmap3.cpt.applib.Location;
@@ -48,6 +54,7 @@
 import org.incode.module.commchannel.dom.impl.emailaddress.EmailAddress;
 import org.incode.module.commchannel.dom.impl.phoneorfax.PhoneOrFaxNumber;
 import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress;
+import org.incode.module.commchannel.dom.impl.purpose.CommunicationChannelPurposeRegistry;
 import org.incode.module.commchannel.dom.impl.purpose.CommunicationChannelPurposeService;
 import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
 
@@ -75,12 +82,69 @@
 @javax.jdo.annotations.Discriminator(
         strategy = DiscriminatorStrategy.CLASS_NAME,
         column = "discriminator")
+@javax.jdo.annotations.Queries({
+        @javax.jdo.annotations.Query(
+                name = "findSummariesByOwnerStr", language = "JDOQL",
+                value = "SELECT JDOHelper.getObjectId(this), type, purposeCode, title "
+                        + "FROM org.incode.module.commchannel.dom.impl.channel.CommunicationChannel "
+                        + "WHERE link.communicationChannel == this "
+                        + "   && link.ownerStr == :ownerStr "
+                        + "VARIABLES org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink link "
+                        + "ORDER BY type, title"),
+        @javax.jdo.annotations.Query(
+                name = "findWithoutTitle", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.channel.CommunicationChannel "
+                        + "WHERE title == null"),
+        @javax.jdo.annotations.Query(
+                name = "findByTypeAndPurposeCode", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.channel.CommunicationChannel "
+                        + "WHERE type == :type "
+                        + "   && purposeCode == :purposeCode"),
+        @javax.jdo.annotations.Query(
+                name = "findWithoutPurposeCode", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.channel.CommunicationChannel "
+                        + "WHERE purposeCode == null"),
+        @javax.jdo.annotations.Query(
+                name = "countByType", language = "JDOQL",
+                value = "SELECT type, count(this) "
+                        + "FROM org.incode.module.commchannel.dom.impl.channel.CommunicationChannel "
+                        + "GROUP BY type"),
+        @javax.jdo.annotations.Query(
+                name = "countByPurposeCode", language = "JDOQL",
+                value = "SELECT purposeCode, count(this) "
+                        + "FROM org.incode.module.commchannel.dom.impl.channel.CommunicationChannel "
+                        + "WHERE purposeCode != null "
+                        + "GROUP BY purposeCode")
+})
+@javax.jdo.annotations.Indices({
+        @javax.jdo.annotations.Index(
+                name = "CommunicationChannel_type_title_IDX",
+                members = { "type", "title" }),
+        @javax.jdo.annotations.Index(
+                name = "CommunicationChannel_type_purposeCode_IDX",
+                members = { "type", "purposeCode" })
+})
+@javax.jdo.annotations.Cacheable("true") // L2 cache, if enabled with datanucleus.cache.level2.mode=ENABLE_SELECTIVE
+@javax.jdo.annotations.FetchGroups({
+        @javax.jdo.annotations.FetchGroup(
+                name = CommunicationChannel.FETCH_GROUP_NOTES,
+                members = { @javax.jdo.annotations.Persistent(name = "notes") })
+})
 @DomainObject(
         objectType = "incodeCommChannel.CommunicationChannel"
 )
 @DomainObjectLayout(bookmarking = BookmarkPolicy.AS_CHILD)
 public abstract class CommunicationChannel<T extends CommunicationChannel<T>> implements Comparable<CommunicationChannel>,
-        Locatable {
+        Locatable, StoreCallback {
+
+    /**
+     * The {@link #getNotes() notes} CLOB is not in the default fetch group, so is only loaded lazily (eg when
+     * rendering the object form); add this fetch group to the fetch plan to load it eagerly.
+     */
+    public static final String FETCH_GROUP_NOTES = "CommunicationChannel_notes";
 
     //region > events
     public static abstract class PropertyDomainEvent<S,T>
@@ -99,16 +163,112 @@ public String iconName() {
     }
     //endregion
 
-    //region > getId (programmatic)
+    //region > getId, getNumericId (programmatic)
     @Programmatic
     public String getId() {
-        Object objectId = JDOHelper.getObjectId(this);
+        final Long numericId = getNumericId();
+        return numericId != null ? numericId.toString() : "";
+    }
+
+    /**
+     * Cached value of the datastore id; the JDO object id is only assigned on persist, and never changes thereafter.
+     */
+    @NotPersistent
+    private transient Long numericId;
+
+    /**
+     * The numeric datastore id, or <tt>null</tt> if not yet persisted.
+     *
+     * <p>
+     *     Derived from the JDO object id on first call once persisted, and cached thereafter.
+     * </p>
+     */
+    @Programmatic
+    public Long getNumericId() {
+        if(numericId == null) {
+            final Object objectId = JDOHelper.getObjectId(this);
+            if(objectId != null) {
+                numericId = numericIdOf(objectId);
+            }
+        }
+        return numericId;
+    }
+
+    /**
+     * The numeric datastore id from the JDO object id (whose string form is
+     * <tt>123[OID]org.incode...EmailAddress</tt>), or <tt>null</tt> if none.
+     */
+    @Programmatic
+    public static Long numericIdOf(final Object objectId) {
         if(objectId == null) {
-            return "";
+            return null;
+        }
+        final String objectIdStr = objectId.toString();
+        final int end = objectIdStr.indexOf('[');
+        final String idStr = end >= 0 ? objectIdStr.substring(0, end) : objectIdStr;
+        try {
+            return Long.valueOf(idStr);
+        } catch (NumberFormatException e) {
+            return null;
         }
-        String objectIdStr = objectId.toString();
-        final String id = objectIdStr.split("\\[OID\\]")[0];
-        return id;
+    }
+    //endregion
+
+
+    //region > title, updateTitle (programmatic)
+    /**
+     * The persisted {@link #getTitle() title}, unless modified but not yet flushed (when it will be
+     * {@link #jdoPreStore() updated}) or not yet populated, in which case it is {@link #deriveTitle() derived}.
+     */
+    public String title() {
+        final String title = getTitle();
+        return title != null && !JDOHelper.isDirty(this) ? title : deriveTitle();
+    }
+
+    /**
+     * The title as computed from the subtype's own properties; {@link #updateTitle() copied} into the
+     * persisted {@link #getTitle() title} whenever those properties change.
+     */
+    @Programmatic
+    protected abstract String deriveTitle();
+
+    /**
+     * Denormalized copy of the {@link #deriveTitle() derived title}, so that titles can be rendered without being
+     * recomputed, and so that channels can be sorted by title in the database.
+     */
+    @Getter @Setter
+    @Column(allowsNull = "true", length = CommChannelModule.JdoColumnLength.TITLE)
+    @Property(hidden = Where.EVERYWHERE)
+    private String title;
+
+    /**
+     * Called automatically {@link #jdoPreStore() when stored}, so need not be called when a property contributing to
+     * the {@link #deriveTitle() derived title} is modified.
+     */
+    @Programmatic
+    public void updateTitle() {
+        setTitle(StringUtils.abbreviate(deriveTitle(), CommChannelModule.JdoColumnLength.TITLE));
+    }
+
+    /**
+     * Ensures that the persisted {@link #getTitle() title} is in sync with the properties it is derived from, however
+     * they were modified.
+     */
+    @Programmatic
+    @Override
+    public void jdoPreStore() {
+        updateTitle();
+    }
+    //endregion
+
+    //region > searchableText (programmatic)
+    /**
+     * The text indexed by {@link CommunicationChannelSearchIndex}; by default the {@link #title() title} and the
+     * {@link #getNotes() notes}.  Subtypes may append further properties.
+     */
+    @Programmatic
+    public String searchableText() {
+        return Joiner.on(' ').skipNulls().join(title(), getNotes());
     }
     //endregion
 
@@ -120,7 +280,7 @@ public static class NameDomainEvent extends PropertyDomainEvent<CommunicationCha
             hidden = Where.OBJECT_FORMS
     )
     public String getName() {
-        return titleService.titleOf(this);
+        return title();
     }
 
 
@@ -136,8 +296,8 @@ public static class TypeDomainEvent extends PropertyDomainEvent<CommunicationCha
 
 
     public static class PurposeDomainEvent extends PropertyDomainEvent<CommunicationChannel,String> { }
-    @Getter @Setter
     @Column(allowsNull = "false", length = CommChannelModule.JdoColumnLength.PURPOSE)
+    @javax.jdo.annotations.Persistent(defaultFetchGroup = "false")
     @Property(
             domainEvent = PurposeDomainEvent.class,
             editing = Editing.ENABLED,
@@ -146,6 +306,42 @@ public static class PurposeDomainEvent extends PropertyDomainEvent<Communication
     )
     private String purpose;
 
+    /**
+     * Returns the canonical (interned) instance of the purpose, as per the {@link #getPurposeCode() purpose code}.
+     *
+     * <p>
+     *     The <tt>purpose</tt> column itself is not in the default fetch group, so is only loaded if the channel has
+     *     no purpose code (ie has not yet been {@link CommunicationChannelRepository#backfillPurposeCodes(int)
+     *     backfilled}).
+     * </p>
+     */
+    public String getPurpose() {
+        final String name = communicationChannelPurposeRegistry != null
+                ? communicationChannelPurposeRegistry.nameFor(getPurposeCode())
+                : null;
+        return name != null ? name : purpose;
+    }
+
+    /**
+     * Also updates the {@link #getPurposeCode() purpose code}, registering the purpose if necessary.
+     */
+    public void setPurpose(final String purpose) {
+        final Integer code = communicationChannelPurposeRegistry != null
+                ? communicationChannelPurposeRegistry.codeFor(purpose)
+                : null;
+        this.purpose = code != null ? communicationChannelPurposeRegistry.nameFor(code) : purpose;
+        this.purposeCode = code;
+    }
+
+    /**
+     * The {@link org.incode.module.commchannel.dom.impl.purpose.CommunicationChannelPurpose#getCode() code} of the
+     * {@link #getPurpose() purpose}; queries by purpose should use this (indexed, with type) column.
+     */
+    @Getter @Setter
+    @Column(allowsNull = "true")
+    @Property(hidden = Where.EVERYWHERE)
+    private Integer purposeCode;
+
     public Collection<String> choicesPurpose() {
         return communicationChannelPurposeService.purposesFor(getType(), mixinOwner().$$());
     }
@@ -158,6 +354,8 @@ private CommunicationChannel_owner mixinOwner() {
     public static class NotesDomainEvent extends PropertyDomainEvent<CommunicationChannel,String> { }
     @Getter @Setter
     @javax.jdo.annotations.Column(allowsNull="true", jdbcType="CLOB")
+    @javax.jdo.annotations.Persistent(defaultFetchGroup = "false")
+    @javax.jdo.annotations.Cacheable("false")
     @Property(
             domainEvent = NotesDomainEvent.class,
             editing = Editing.ENABLED,
@@ -185,23 +383,57 @@ public Location getLocation() {
     //endregion
 
     //region > toString, compareTo
+
+    /**
+     * Orders by {@link #getType() type} and then by {@link #getNumericId() datastore id} (unpersisted first).
+     */
+    public static final Comparator<CommunicationChannel> COMPARATOR = new Comparator<CommunicationChannel>() {
+        @Override
+        public int compare(final CommunicationChannel o1, final CommunicationChannel o2) {
+            if(o1 == o2) {
+                return 0;
+            }
+            final int byType = compareNullsFirst(o1.getType(), o2.getType());
+            if(byType != 0) {
+                return byType;
+            }
+            return compareNullsFirst(o1.getNumericId(), o2.getNumericId());
+        }
+    };
+
+    private static <C extends Comparable<C>> int compareNullsFirst(final C c1, final C c2) {
+        if(c1 == c2) {
+            return 0;
+        }
+        if(c1 == null) {
+            return -1;
+        }
+        if(c2 == null) {
+            return +1;
+        }
+        return c1.compareTo(c2);
+    }
+
     public int compareTo(final CommunicationChannel other) {
-        return ObjectContracts.compare(this, other, "type", "id");
+        return COMPARATOR.compare(this, other);
     }
     public String toString() {
-        return ObjectContracts.toString(this, "type", "id");
+        return MoreObjects.toStringHelper(this)
+                .add("type", getType())
+                .add("id", getId())
+                .toString();
     }
     //endregion
 
     //region > injected services
-    @Inject
-    TitleService titleService;
-
     @Inject
     private FactoryService factoryService;
 
     @Inject
     private CommunicationChannelPurposeService communicationChannelPurposeService;
+
+    @Inject
+    private CommunicationChannelPurposeRegistry communicationChannelPurposeRegistry;
     //endregion
 
 
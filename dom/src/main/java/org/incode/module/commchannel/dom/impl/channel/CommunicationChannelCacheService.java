@@ -0,0 +1,402 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.channel;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.jdo.JDOException;
+import javax.jdo.JDOHelper;
+import javax.jdo.Transaction;
+import javax.transaction.Synchronization;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.Subscribe;
+
+import org.axonframework.eventhandling.annotation.EventHandler;
+
+import org.apache.isis.applib.AbstractSubscriber;
+import org.apache.isis.applib.annotation.DomainService;
+import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.services.bookmark.Bookmark;
+import org.apache.isis.applib.services.bookmark.BookmarkService;
+import org.apache.isis.applib.services.config.ConfigurationService;
+import org.apache.isis.applib.services.eventbus.AbstractDomainEvent;
+import org.apache.isis.applib.services.factory.FactoryService;
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+
+import org.incode.module.commchannel.dom.CommChannelModule.Config;
+import org.incode.module.commchannel.dom.impl.emailaddress.T_addEmailAddress;
+import org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink;
+import org.incode.module.commchannel.dom.impl.phoneorfax.T_addPhoneOrFaxNumber;
+import org.incode.module.commchannel.dom.impl.postaladdress.T_addPostalAddress;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+
+/**
+ * Caches the (datastore) ids of the {@link CommunicationChannel}s of each owner, in front of
+ * {@link CommunicationChannelRepository#findByOwner(Object)} and
+ * {@link CommunicationChannelRepository#findByOwnerAndType(Object, CommunicationChannelType)}.
+ *
+ * <p>
+ *     Entries are invalidated whenever an owner's channels are added or removed, both by the
+ *     {@link InvalidationSubscriber subscriber} to the module's own domain events and also programmatically by
+ *     {@link org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLinkRepository}.
+ *     Entries also expire after a configurable period, which bounds any staleness if the underlying tables are
+ *     modified other than through this module (or by other nodes in a cluster).
+ * </p>
+ *
+ * <p>
+ *     An owner's entry is invalidated both immediately and again once the modifying transaction completes, and is
+ *     not re-cached by that transaction itself; and entries are only cached if no invalidation happened while they
+ *     were being read (see {@link #generation()}).  Together these prevent another transaction from caching the
+ *     owner's channels as they were before the modification committed.
+ * </p>
+ *
+ * <p>
+ *     Configuration properties (all optional):
+ * </p>
+ * <ul>
+ *     <li><tt>...CommunicationChannelCacheService.enabled</tt> (default <tt>true</tt>)</li>
+ *     <li><tt>...CommunicationChannelCacheService.maxSize</tt> - max number of owners cached (default 10000)</li>
+ *     <li><tt>...CommunicationChannelCacheService.expiry</tt> - in seconds (default 300)</li>
+ * </ul>
+ */
+@DomainService(
+        nature = NatureOfService.DOMAIN
+)
+public class CommunicationChannelCacheService {
+
+    public String getId() {
+        return "incodeCommChannel.CommunicationChannelCacheService";
+    }
+
+    private static final boolean DEFAULT_ENABLED = true;
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final int DEFAULT_EXPIRY_SECONDS = 300;
+
+    private boolean enabled = DEFAULT_ENABLED;
+
+    /**
+     * Keyed by the owner's bookmark (as per {@link CommunicationChannelOwnerLink#getOwnerStr()}), values are the
+     * JDO object ids of the owner's channels, indexed by their type.
+     */
+    private Cache<String, ImmutableListMultimap<CommunicationChannelType, Object>> cache;
+
+    /**
+     * Incremented on every invalidation.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        final String prefix = CommunicationChannelCacheService.class.getCanonicalName();
+        enabled = Config.parseBoolean(configurationService.getProperty(prefix + ".enabled"), DEFAULT_ENABLED);
+        final int maxSize = Config.parseInt(configurationService.getProperty(prefix + ".maxSize"), DEFAULT_MAX_SIZE);
+        final int expiry = Config.parseInt(configurationService.getProperty(prefix + ".expiry"),
+                DEFAULT_EXPIRY_SECONDS);
+
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expiry, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    @Programmatic
+    public boolean isEnabled() {
+        return enabled && cache != null;
+    }
+
+    /**
+     * The cached channels of the specified owner (optionally restricted to those of the specified type), or
+     * <tt>null</tt> if not cached.
+     */
+    @Programmatic
+    public SortedSet<CommunicationChannel> lookup(
+            final Object owner,
+            final CommunicationChannelType type) {
+        if(!isEnabled()) {
+            return null;
+        }
+        final String ownerStr = ownerStrFor(owner);
+        if(ownerStr == null) {
+            return null;
+        }
+        final ImmutableListMultimap<CommunicationChannelType, Object> objectIdsByType = cache.getIfPresent(ownerStr);
+        if(objectIdsByType == null) {
+            return null;
+        }
+        final Collection<Object> objectIds = type != null ? objectIdsByType.get(type) : objectIdsByType.values();
+        try {
+            final Collection<?> channels = isisJdoSupport.getJdoPersistenceManager().getObjectsById(objectIds);
+            final SortedSet<CommunicationChannel> communicationChannels = Sets.newTreeSet();
+            for (final Object channel : channels) {
+                if(JDOHelper.isDeleted(channel)) {
+                    // removed within this xactn, without going through the module's API
+                    invalidate(ownerStr);
+                    return null;
+                }
+                communicationChannels.add((CommunicationChannel) channel);
+            }
+            return communicationChannels;
+        } catch(JDOException ex) {
+            // most likely a channel was deleted directly in the database
+            invalidate(ownerStr);
+            return null;
+        }
+    }
+
+    /**
+     * To be obtained before reading an owner's links, and then passed to {@link #put(Object, long, List)}.
+     */
+    @Programmatic
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Caches the channels of the specified owner, as obtained from <i>all</i> the owner's links, unless there has
+     * been any invalidation since the links were read (that is, since the specified {@link #generation()}), or
+     * the owner's channels have been modified within the current transaction.
+     */
+    @Programmatic
+    public void put(
+            final Object owner,
+            final long generation,
+            final List<CommunicationChannelOwnerLink> links) {
+        if(!isEnabled() || links == null || generation != this.generation.get()) {
+            return;
+        }
+        final String ownerStr = ownerStrFor(owner);
+        if(ownerStr == null) {
+            return;
+        }
+        final InvalidateOnCompletion invalidateOnCompletion = currentInvalidateOnCompletion();
+        if(invalidateOnCompletion != null && invalidateOnCompletion.ownerStrs.contains(ownerStr)) {
+            return;
+        }
+        final ImmutableListMultimap.Builder<CommunicationChannelType, Object> builder = ImmutableListMultimap.builder();
+        for (final CommunicationChannelOwnerLink link : links) {
+            final Object objectId = JDOHelper.getObjectId(link.getCommunicationChannel());
+            if(objectId == null) {
+                // not yet persisted, so don't cache anything.
+                return;
+            }
+            builder.put(link.getCommunicationChannelType(), objectId);
+        }
+        cache.put(ownerStr, builder.build());
+        if(generation != this.generation.get()) {
+            // raced with an invalidation
+            cache.invalidate(ownerStr);
+        }
+    }
+
+    /**
+     * Invalidates the owner's entry, both now and (if there is a current transaction) once it completes.
+     */
+    @Programmatic
+    public void invalidate(final Object owner) {
+        if(!isEnabled()) {
+            return;
+        }
+        final String ownerStr = ownerStrFor(owner);
+        if(ownerStr != null) {
+            invalidate(ownerStr);
+            invalidateOnCompletion(ownerStr);
+        }
+    }
+
+    @Programmatic
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        if(cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    private void invalidate(final String ownerStr) {
+        generation.incrementAndGet();
+        cache.invalidate(ownerStr);
+    }
+
+    private void invalidateOnCompletion(final String ownerStr) {
+        final Transaction transaction = isisJdoSupport.getJdoPersistenceManager().currentTransaction();
+        if(!transaction.isActive()) {
+            return;
+        }
+        InvalidateOnCompletion invalidateOnCompletion = currentInvalidateOnCompletion();
+        if(invalidateOnCompletion == null) {
+            invalidateOnCompletion = new InvalidateOnCompletion(transaction.getSynchronization());
+            transaction.setSynchronization(invalidateOnCompletion);
+        }
+        invalidateOnCompletion.ownerStrs.add(ownerStr);
+    }
+
+    private InvalidateOnCompletion currentInvalidateOnCompletion() {
+        final Transaction transaction = isisJdoSupport.getJdoPersistenceManager().currentTransaction();
+        final Synchronization synchronization = transaction.isActive() ? transaction.getSynchronization() : null;
+        return synchronization instanceof InvalidateOnCompletion
+                && ((InvalidateOnCompletion) synchronization).getCacheService() == this
+                ? (InvalidateOnCompletion) synchronization
+                : null;
+    }
+
+    /**
+     * Invalidates the owners modified within a transaction once it completes (whether committed or rolled back),
+     * chaining to any synchronization already registered with the transaction.
+     */
+    private class InvalidateOnCompletion implements Synchronization {
+
+        private final Synchronization previous;
+        private final Set<String> ownerStrs = Sets.newConcurrentHashSet();
+
+        private InvalidateOnCompletion(final Synchronization previous) {
+            this.previous = previous;
+        }
+
+        CommunicationChannelCacheService getCacheService() {
+            return CommunicationChannelCacheService.this;
+        }
+
+        @Override
+        public void beforeCompletion() {
+            if(previous != null) {
+                previous.beforeCompletion();
+            }
+        }
+
+        @Override
+        public void afterCompletion(final int status) {
+            for (final String ownerStr : ownerStrs) {
+                invalidate(ownerStr);
+            }
+            if(previous != null) {
+                previous.afterCompletion(status);
+            }
+        }
+    }
+
+    /**
+     * Hit/miss and eviction statistics, eg for monitoring the {@link CacheStats#hitRate() hit rate}.
+     */
+    @Programmatic
+    public CacheStats getStats() {
+        return cache != null ? cache.stats() : new CacheStats(0, 0, 0, 0, 0, 0);
+    }
+
+    @Programmatic
+    public long getSize() {
+        return cache != null ? cache.size() : 0L;
+    }
+
+    //region > InvalidationSubscriber
+
+    /**
+     * Invalidates the cached channels of an owner as a result of the module's own actions.
+     *
+     * <p>
+     *     Channels being added are invalidated once executed; channels being removed are invalidated while
+     *     still executing (because the owner can no longer be determined once the channel's link has been deleted).
+     * </p>
+     */
+    @DomainService(nature = NatureOfService.DOMAIN)
+    public static class InvalidationSubscriber extends AbstractSubscriber {
+
+        @EventHandler
+        @Subscribe
+        public void on(final T_addEmailAddress.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTED) {
+                cacheService.invalidate(ev.getSource().getCommunicationChannelOwner());
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final T_addPostalAddress.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTED) {
+                cacheService.invalidate(ev.getSource().getCommunicationChannelOwner());
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final T_addPhoneOrFaxNumber.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTED) {
+                cacheService.invalidate(ev.getSource().getCommunicationChannelOwner());
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final CommunicationChannel_remove0.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTING) {
+                invalidateOwnerOf(ev.getSource().getCommunicationChannel());
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final CommunicationChannel_remove1.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTING) {
+                invalidateOwnerOf(ev.getSource().getCommunicationChannel());
+            }
+        }
+
+        private void invalidateOwnerOf(final CommunicationChannel<?> communicationChannel) {
+            cacheService.invalidate(factoryService.mixin(CommunicationChannel_owner.class, communicationChannel).$$());
+        }
+
+        @Inject
+        CommunicationChannelCacheService cacheService;
+        @Inject
+        FactoryService factoryService;
+    }
+    //endregion
+
+    //region > helpers
+    private String ownerStrFor(final Object owner) {
+        if(owner == null) {
+            return null;
+        }
+        final Bookmark bookmark = bookmarkService.bookmarkFor(owner);
+        return bookmark != null ? bookmark.toString() : null;
+    }
+
+    //endregion
+
+    //region > injected services
+    @Inject
+    ConfigurationService configurationService;
+    @Inject
+    BookmarkService bookmarkService;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    //endregion
+
+}
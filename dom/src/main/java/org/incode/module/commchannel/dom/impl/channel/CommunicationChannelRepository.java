@@ -18,21 +18,32 @@
  */
 package org.incode.module.commchannel.dom.impl.channel;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 
 import javax.inject.Inject;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 import org.apache.isis.applib.DomainObjectContainer;
 import org.apache.isis.applib.annotation.DomainService;
 import org.apache.isis.applib.annotation.NatureOfService;
 import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.query.QueryDefault;
+import org.apache.isis.applib.services.bookmark.Bookmark;
+import org.apache.isis.applib.services.bookmark.BookmarkService;
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
 
 import org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink;
 import org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLinkRepository;
+import org.incode.module.commchannel.dom.impl.purpose.CommunicationChannelPurposeRegistry;
 import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
 
 @DomainService(
@@ -50,11 +61,25 @@ public String getId() {
     CommunicationChannelOwnerLinkRepository linkRepository;
     @Inject
     DomainObjectContainer container;
+    @Inject
+    CommunicationChannelCacheService communicationChannelCacheService;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    @Inject
+    CommunicationChannelPurposeRegistry communicationChannelPurposeRegistry;
+    @Inject
+    BookmarkService bookmarkService;
     //endregion
 
     @Programmatic
     public SortedSet<CommunicationChannel> findByOwner(final Object owner) {
+        final SortedSet<CommunicationChannel> cached = communicationChannelCacheService.lookup(owner, null);
+        if(cached != null) {
+            return cached;
+        }
+        final long generation = communicationChannelCacheService.generation();
         final List<CommunicationChannelOwnerLink> links = linkRepository.findByOwner(owner);
+        communicationChannelCacheService.put(owner, generation, links);
         return Sets.newTreeSet(
                 Iterables.transform(links, CommunicationChannelOwnerLink.Functions.communicationChannel()));
     }
@@ -63,6 +88,19 @@ public SortedSet<CommunicationChannel> findByOwner(final Object owner) {
     public SortedSet<CommunicationChannel> findByOwnerAndType(
             final Object owner,
             final CommunicationChannelType type) {
+        final SortedSet<CommunicationChannel> cached = communicationChannelCacheService.lookup(owner, type);
+        if(cached != null) {
+            return cached;
+        }
+        if(communicationChannelCacheService.isEnabled() && type != null) {
+            // load (and cache) all of the owner's links, so that subsequent lookups for any other type also hit
+            final long generation = communicationChannelCacheService.generation();
+            final List<CommunicationChannelOwnerLink> links = linkRepository.findByOwner(owner);
+            communicationChannelCacheService.put(owner, generation, links);
+            return Sets.newTreeSet(Iterables.transform(
+                    Iterables.filter(links, input -> input.getCommunicationChannelType() == type),
+                    CommunicationChannelOwnerLink.Functions.communicationChannel()));
+        }
         final List<CommunicationChannelOwnerLink> links =
                 linkRepository.findByOwnerAndCommunicationChannelType(owner, type);
         return Sets.newTreeSet(Iterables.transform(
@@ -79,5 +117,200 @@ public SortedSet<CommunicationChannel> findOtherByOwnerAndType(
         return communicationChannels;
     }
 
+    /**
+     * Populates the persisted {@link CommunicationChannel#getTitle() title} of (up to <tt>batchSize</tt>)
+     * communication channels created before it was introduced.  Channels from which no title can be derived (eg
+     * with no address) are skipped, and remain without a title.
+     *
+     * @return the number of titles populated; call repeatedly (in separate transactions) until this returns 0.
+     */
+    @Programmatic
+    public int backfillTitles(final int batchSize) {
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        final Query query = pm.newNamedQuery(CommunicationChannel.class, "findWithoutTitle");
+        try {
+            int populated = 0;
+            // iterated rather than ranged, so that channels which cannot be titled do not fill every batch
+            for (final Object result : (List<?>) query.execute()) {
+                final CommunicationChannel<?> communicationChannel = (CommunicationChannel<?>) result;
+                communicationChannel.updateTitle();
+                if(communicationChannel.getTitle() != null && ++populated >= batchSize) {
+                    break;
+                }
+            }
+            return populated;
+        } finally {
+            query.closeAll();
+        }
+    }
+
+    /**
+     * The channels of the specified owner, type and purpose (eg the owner's "Invoicing" email address), queried
+     * on the {@link CommunicationChannel#getPurposeCode() purpose code} in the database.
+     */
+    @Programmatic
+    public SortedSet<CommunicationChannel> findByOwnerAndTypeAndPurpose(
+            final Object owner,
+            final CommunicationChannelType type,
+            final String purpose) {
+        final Integer purposeCode = communicationChannelPurposeRegistry.findCodeFor(purpose);
+        if(purposeCode == null) {
+            return Sets.newTreeSet();
+        }
+        final List<CommunicationChannelOwnerLink> links =
+                linkRepository.findByOwnerAndCommunicationChannelTypeAndPurposeCode(owner, type, purposeCode);
+        if(links == null) {
+            return Sets.newTreeSet();
+        }
+        return Sets.newTreeSet(Iterables.transform(
+                links, CommunicationChannelOwnerLink.Functions.communicationChannel()));
+    }
+
+    /**
+     * Maximum number of owners queried at a time by
+     * {@link #findByOwnersAndTypeAndPurpose(Collection, CommunicationChannelType, String)} and
+     * {@link #findPrimaryByOwners(Collection, CommunicationChannelType)}.
+     */
+    public static final int BULK_QUERY_BATCH_SIZE = 500;
+
+    /**
+     * As {@link #findByOwnerAndTypeAndPurpose(Object, CommunicationChannelType, String)}, but for many owners at once,
+     * performing one query per {@link #BULK_QUERY_BATCH_SIZE batch} of owners (rather than one per owner).
+     *
+     * @return the channels of each of the owners, in the order provided (with an empty set for any owner that has none).
+     */
+    @Programmatic
+    public Map<Object, SortedSet<CommunicationChannel>> findByOwnersAndTypeAndPurpose(
+            final Collection<?> owners,
+            final CommunicationChannelType type,
+            final String purpose) {
+        final Map<String, Object> ownerByOwnerStr = ownerByOwnerStr(owners);
+        final Map<Object, SortedSet<CommunicationChannel>> channelsByOwner = Maps.newLinkedHashMap();
+        for (final Object owner : ownerByOwnerStr.values()) {
+            channelsByOwner.put(owner, Sets.<CommunicationChannel>newTreeSet());
+        }
+
+        final Integer purposeCode = communicationChannelPurposeRegistry.findCodeFor(purpose);
+        if(purposeCode == null || type == null) {
+            return channelsByOwner;
+        }
+
+        final List<String> ownerStrs = Lists.newArrayList(ownerByOwnerStr.keySet());
+        for (final List<String> batch : Lists.partition(ownerStrs, BULK_QUERY_BATCH_SIZE)) {
+            final List<CommunicationChannelOwnerLink> links =
+                    linkRepository.findByOwnerStrsAndCommunicationChannelTypeAndPurposeCode(
+                            Lists.newArrayList(batch), type, purposeCode);
+            for (final CommunicationChannelOwnerLink link : links) {
+                final Object owner = ownerByOwnerStr.get(link.getOwnerStr());
+                channelsByOwner.get(owner).add(link.getCommunicationChannel());
+            }
+        }
+        return channelsByOwner;
+    }
+
+    /**
+     * The {@link CommunicationChannelOwnerLink#getPrimary() primary} channel of the owner for the specified type,
+     * using a single-row query.
+     *
+     * <p>
+     *     Returns <tt>null</tt> if the owner has no channels of that type.
+     * </p>
+     */
+    @Programmatic
+    public CommunicationChannel findPrimary(
+            final Object owner,
+            final CommunicationChannelType type) {
+        final CommunicationChannelOwnerLink link =
+                linkRepository.findPrimaryByOwnerAndCommunicationChannelType(owner, type);
+        return link != null ? link.getCommunicationChannel() : null;
+    }
+
+    /**
+     * As {@link #findPrimary(Object, CommunicationChannelType)}, but for many owners at once, performing one query
+     * per {@link #BULK_QUERY_BATCH_SIZE batch} of owners.
+     *
+     * @return the primary channel of each of the owners (in the order provided) that have one.
+     */
+    @Programmatic
+    public Map<Object, CommunicationChannel> findPrimaryByOwners(
+            final Collection<?> owners,
+            final CommunicationChannelType type) {
+        final Map<String, Object> ownerByOwnerStr = ownerByOwnerStr(owners);
+        final Map<Object, CommunicationChannel> channelByOwner = Maps.newLinkedHashMap();
+        if(type == null) {
+            return channelByOwner;
+        }
+        final Map<Object, CommunicationChannel> found = Maps.newHashMap();
+        final List<String> ownerStrs = Lists.newArrayList(ownerByOwnerStr.keySet());
+        for (final List<String> batch : Lists.partition(ownerStrs, BULK_QUERY_BATCH_SIZE)) {
+            final List<CommunicationChannelOwnerLink> links =
+                    linkRepository.findPrimaryByOwnerStrsAndCommunicationChannelType(Lists.newArrayList(batch), type);
+            for (final CommunicationChannelOwnerLink link : links) {
+                found.put(ownerByOwnerStr.get(link.getOwnerStr()), link.getCommunicationChannel());
+            }
+        }
+        // preserve the order of the owners provided
+        for (final Object owner : ownerByOwnerStr.values()) {
+            final CommunicationChannel channel = found.get(owner);
+            if(channel != null) {
+                channelByOwner.put(owner, channel);
+            }
+        }
+        return channelByOwner;
+    }
+
+    private Map<String, Object> ownerByOwnerStr(final Collection<?> owners) {
+        final Map<String, Object> ownerByOwnerStr = Maps.newLinkedHashMap();
+        for (final Object owner : owners) {
+            final Bookmark bookmark = owner != null ? bookmarkService.bookmarkFor(owner) : null;
+            if(bookmark != null) {
+                ownerByOwnerStr.put(bookmark.toString(), owner);
+            }
+        }
+        return ownerByOwnerStr;
+    }
+
+    /**
+     * All channels (of any owner) of the specified type and purpose, eg all "Billing Address"es; queries on the
+     * (indexed) {@link CommunicationChannel#getPurposeCode() purpose code}.
+     */
+    @Programmatic
+    public List<CommunicationChannel> findByTypeAndPurpose(
+            final CommunicationChannelType type,
+            final String purpose) {
+        final Integer purposeCode = communicationChannelPurposeRegistry.findCodeFor(purpose);
+        if(type == null || purposeCode == null) {
+            return Lists.newArrayList();
+        }
+        return container.allMatches(
+                new QueryDefault<>(CommunicationChannel.class,
+                        "findByTypeAndPurposeCode",
+                        "type", type,
+                        "purposeCode", purposeCode));
+    }
+
+    /**
+     * Populates the {@link CommunicationChannel#getPurposeCode() purpose code} of (up to <tt>batchSize</tt>)
+     * communication channels created before it was introduced.
+     *
+     * @return the number of channels updated; call repeatedly (in separate transactions) until this returns 0.
+     */
+    @Programmatic
+    public int backfillPurposeCodes(final int batchSize) {
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        final Query query = pm.newNamedQuery(CommunicationChannel.class, "findWithoutPurposeCode");
+        query.setRange(0, batchSize);
+        try {
+            final List<CommunicationChannel> communicationChannels =
+                    Lists.newArrayList((List<CommunicationChannel>) query.execute());
+            for (final CommunicationChannel communicationChannel : communicationChannels) {
+                // reads the (lazily loaded) purpose column, since there is no code yet
+                communicationChannel.setPurpose(communicationChannel.getPurpose());
+            }
+            return communicationChannels.size();
+        } finally {
+            query.closeAll();
+        }
+    }
 
 }
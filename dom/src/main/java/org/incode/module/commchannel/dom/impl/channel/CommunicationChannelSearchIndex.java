@@ -0,0 +1,642 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.channel;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.jdo.FetchPlan;
+import javax.jdo.JDOHelper;
+import javax.jdo.JDOObjectNotFoundException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+import javax.jdo.Transaction;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.Subscribe;
+
+import org.axonframework.eventhandling.annotation.EventHandler;
+
+import org.apache.isis.applib.AbstractSubscriber;
+import org.apache.isis.applib.annotation.DomainService;
+import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.services.config.ConfigurationService;
+import org.apache.isis.applib.services.eventbus.AbstractDomainEvent;
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+
+import org.incode.module.commchannel.dom.CommChannelModule.Config;
+import org.incode.module.commchannel.dom.impl.emailaddress.EmailAddress_update;
+import org.incode.module.commchannel.dom.impl.emailaddress.T_addEmailAddress;
+import org.incode.module.commchannel.dom.impl.phoneorfax.PhoneOrFaxNumber_update;
+import org.incode.module.commchannel.dom.impl.phoneorfax.T_addPhoneOrFaxNumber;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress_update;
+import org.incode.module.commchannel.dom.impl.postaladdress.T_addPostalAddress;
+
+/**
+ * Embedded (in-memory) full-text index over the {@link CommunicationChannel#searchableText() searchable text} of
+ * all {@link CommunicationChannel}s, ie their titles and notes and (for {@link
+ * org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress}es) address lines and formatted address,
+ * avoiding <tt>LIKE '%...%'</tt> scans of the database.
+ *
+ * <p>
+ *     The index is an inverted index of (lower-cased, alphanumeric) terms to the ids of the channels containing
+ *     them.  It is empty (so {@link #search(String, int) searches} find nothing) until it is explicitly
+ *     {@link #rebuild() built}, eg by the application's scheduler at startup or from an administrative action; the
+ *     rebuild reads the channels in batches and does not block searches meanwhile.  Thereafter it is maintained
+ *     incrementally by the {@link IndexingSubscriber subscriber} to the module's own domain events, each change
+ *     being applied once (and only if) its transaction commits.  Channels modified other than through this module
+ *     (or by other nodes in a cluster) are not picked up until the index is next rebuilt.
+ * </p>
+ *
+ * <p>
+ *     Configuration properties (optional):
+ * </p>
+ * <ul>
+ *     <li><tt>...CommunicationChannelSearchIndex.enabled</tt> (default <tt>true</tt>)</li>
+ *     <li><tt>...CommunicationChannelSearchIndex.rebuildBatchSize</tt> (default
+ *     {@value #DEFAULT_REBUILD_BATCH_SIZE})</li>
+ * </ul>
+ */
+@DomainService(
+        nature = NatureOfService.DOMAIN
+)
+public class CommunicationChannelSearchIndex {
+
+    public String getId() {
+        return "incodeCommChannel.CommunicationChannelSearchIndex";
+    }
+
+    private static final boolean DEFAULT_ENABLED = true;
+    private static final int DEFAULT_REBUILD_BATCH_SIZE = 1000;
+
+    private static final Splitter TERM_SPLITTER =
+            Splitter.onPattern("[^\\p{L}\\p{Nd}]+").omitEmptyStrings();
+
+    private boolean enabled = DEFAULT_ENABLED;
+    private int rebuildBatchSize = DEFAULT_REBUILD_BATCH_SIZE;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Guarded by {@link #lock}; replaced wholesale once rebuilt.
+     */
+    private Postings postings = new Postings();
+
+    /**
+     * Guarded by {@link #lock}; the changes committed while a {@link #rebuild()} is in progress (to be re-applied to
+     * the rebuilt index), or <tt>null</tt> if none is.
+     */
+    private List<Change> changesDuringRebuild;
+
+    private volatile boolean built;
+
+    @PostConstruct
+    public void init() {
+        final String prefix = CommunicationChannelSearchIndex.class.getCanonicalName();
+        enabled = Config.parseBoolean(configurationService.getProperty(prefix + ".enabled"), DEFAULT_ENABLED);
+        rebuildBatchSize = Math.max(1, Config.parseInt(
+                configurationService.getProperty(prefix + ".rebuildBatchSize"), DEFAULT_REBUILD_BATCH_SIZE));
+    }
+
+    @Programmatic
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //region > search (programmatic)
+
+    /**
+     * The ids of the channels containing all of the terms of the query, most relevant first (as per tf-idf), and
+     * at most <tt>maxResults</tt> of them; none if the index has not yet been {@link #rebuild() built}.
+     */
+    @Programmatic
+    public List<Long> search(final String query, final int maxResults) {
+        if(!enabled || !built || query == null || maxResults <= 0) {
+            return Collections.emptyList();
+        }
+        final Set<String> queryTerms = Sets.newLinkedHashSet(termsOf(query));
+        if(queryTerms.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            final int numChannels = postings.termsByChannelId.size();
+            Map<Long, Double> scoreByChannelId = null;
+            for (final String queryTerm : queryTerms) {
+                final Map<Long, Integer> occurrencesByChannelId = postings.occurrencesByTerm.get(queryTerm);
+                if(occurrencesByChannelId == null) {
+                    return Collections.emptyList();
+                }
+                final double idf = Math.log(1.0 + (double) numChannels / occurrencesByChannelId.size());
+                if(scoreByChannelId == null) {
+                    scoreByChannelId = Maps.newHashMap();
+                    for (final Map.Entry<Long, Integer> entry : occurrencesByChannelId.entrySet()) {
+                        scoreByChannelId.put(entry.getKey(), entry.getValue() * idf);
+                    }
+                } else {
+                    final Iterator<Map.Entry<Long, Double>> iterator = scoreByChannelId.entrySet().iterator();
+                    while (iterator.hasNext()) {
+                        final Map.Entry<Long, Double> entry = iterator.next();
+                        final Integer occurrences = occurrencesByChannelId.get(entry.getKey());
+                        if(occurrences == null) {
+                            iterator.remove();
+                        } else {
+                            entry.setValue(entry.getValue() + occurrences * idf);
+                        }
+                    }
+                }
+            }
+
+            final List<Map.Entry<Long, Double>> ranked = Lists.newArrayList(scoreByChannelId.entrySet());
+            Collections.sort(ranked, BY_SCORE_DESC_THEN_ID);
+            final List<Long> channelIds = Lists.newArrayList();
+            for (final Map.Entry<Long, Double> entry : ranked.subList(0, Math.min(maxResults, ranked.size()))) {
+                channelIds.add(entry.getKey());
+            }
+            return channelIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * As {@link #search(String, int)}, but returning the channels themselves (skipping any no longer in the
+     * database).
+     */
+    @Programmatic
+    public List<CommunicationChannel> searchChannels(final String query, final int maxResults) {
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        final List<CommunicationChannel> communicationChannels = Lists.newArrayList();
+        for (final Long channelId : search(query, maxResults)) {
+            try {
+                communicationChannels.add(pm.getObjectById(CommunicationChannel.class, channelId));
+            } catch (final JDOObjectNotFoundException ex) {
+                // removed other than through this module; ignore
+            }
+        }
+        return communicationChannels;
+    }
+
+    private static final Comparator<Map.Entry<Long, Double>> BY_SCORE_DESC_THEN_ID =
+            (e1, e2) -> {
+                final int byScore = Double.compare(e2.getValue(), e1.getValue());
+                return byScore != 0 ? byScore : Long.compare(e1.getKey(), e2.getKey());
+            };
+
+    //endregion
+
+    //region > indexOnCommit, removeOnCommit, rebuild (programmatic)
+
+    /**
+     * (Re-)indexes the specified channel once the current transaction commits (or immediately, if there is none),
+     * as it is at that point.
+     */
+    @Programmatic
+    public void indexOnCommit(final CommunicationChannel<?> communicationChannel) {
+        if(!enabled || communicationChannel == null) {
+            return;
+        }
+        final IndexOnCommit indexOnCommit = indexOnCommit();
+        if(indexOnCommit != null) {
+            indexOnCommit.toIndex.add(communicationChannel);
+            return;
+        }
+        final Long channelId = communicationChannel.getNumericId();
+        if(channelId != null) {
+            apply(new Change(channelId, communicationChannel.searchableText()));
+        }
+    }
+
+    /**
+     * Removes the specified channel from the index once the current transaction commits (or immediately, if there
+     * is none); must be called while the channel is still persistent, ie before it is deleted.
+     */
+    @Programmatic
+    public void removeOnCommit(final CommunicationChannel<?> communicationChannel) {
+        if(!enabled || communicationChannel == null) {
+            return;
+        }
+        final Long channelId = communicationChannel.getNumericId();
+        if(channelId == null) {
+            return;
+        }
+        final IndexOnCommit indexOnCommit = indexOnCommit();
+        if(indexOnCommit != null) {
+            indexOnCommit.toRemove.add(channelId);
+            return;
+        }
+        apply(new Change(channelId, null));
+    }
+
+    /**
+     * Rebuilds the entire index, reading every channel (with its notes) from the database, in batches of
+     * <tt>...rebuildBatchSize</tt>.
+     *
+     * <p>
+     *     The new index is built alongside the current one, which continues to serve searches (and to be maintained)
+     *     meanwhile, and replaces it once complete; changes committed during the rebuild are re-applied to it.  This
+     *     may take some time for a large number of channels, so should be called from a background job or an
+     *     administrative action rather than while handling an end-user's request.
+     * </p>
+     *
+     * @return the number of channels indexed.
+     */
+    @Programmatic
+    public synchronized int rebuild() {
+        if(!enabled) {
+            return 0;
+        }
+        lock.writeLock().lock();
+        try {
+            changesDuringRebuild = Lists.newArrayList();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+            final Postings rebuilt = new Postings();
+            int count = 0;
+            for (final List<Object> objectIds : Lists.partition(allObjectIds(pm), rebuildBatchSize)) {
+                count += indexBatch(pm, objectIds, rebuilt);
+            }
+            lock.writeLock().lock();
+            try {
+                for (final Change change : changesDuringRebuild) {
+                    rebuilt.apply(change);
+                }
+                postings = rebuilt;
+                built = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return count;
+        } finally {
+            lock.writeLock().lock();
+            try {
+                changesDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Programmatic
+    public boolean isBuilt() {
+        return built;
+    }
+
+    @Programmatic
+    public int getSize() {
+        lock.readLock().lock();
+        try {
+            return postings.termsByChannelId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static List<Object> allObjectIds(final PersistenceManager pm) {
+        final Query query = pm.newQuery(CommunicationChannel.class);
+        query.setResult("JDOHelper.getObjectId(this)");
+        try {
+            return Lists.<Object>newArrayList((Collection<?>) query.execute());
+        } finally {
+            query.closeAll();
+        }
+    }
+
+    /**
+     * Indexes the channels of one batch, then evicts them so that they can be garbage collected.
+     */
+    private static int indexBatch(final PersistenceManager pm, final List<Object> objectIds, final Postings postings) {
+        final FetchPlan fetchPlan = pm.getFetchPlan();
+        final boolean addedNotes = !fetchPlan.getGroups().contains(CommunicationChannel.FETCH_GROUP_NOTES);
+        if(addedNotes) {
+            fetchPlan.addGroup(CommunicationChannel.FETCH_GROUP_NOTES);
+        }
+        final Collection<?> communicationChannels = pm.getObjectsById(objectIds, false);
+        try {
+            int count = 0;
+            for (final Object object : communicationChannels) {
+                final CommunicationChannel<?> communicationChannel = (CommunicationChannel<?>) object;
+                final Long channelId = CommunicationChannel.numericIdOf(JDOHelper.getObjectId(communicationChannel));
+                if(channelId == null) {
+                    continue;
+                }
+                try {
+                    postings.apply(new Change(channelId, communicationChannel.searchableText()));
+                    count++;
+                } catch (final JDOObjectNotFoundException ex) {
+                    // deleted since its id was read; ignore
+                }
+            }
+            return count;
+        } finally {
+            pm.evictAll(communicationChannels);
+            if(addedNotes) {
+                fetchPlan.removeGroup(CommunicationChannel.FETCH_GROUP_NOTES);
+            }
+        }
+    }
+
+    private void apply(final Change change) {
+        lock.writeLock().lock();
+        try {
+            if(changesDuringRebuild != null) {
+                changesDuringRebuild.add(change);
+            }
+            if(built) {
+                postings.apply(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private IndexOnCommit indexOnCommit() {
+        final Transaction transaction = isisJdoSupport.getJdoPersistenceManager().currentTransaction();
+        if(!transaction.isActive()) {
+            return null;
+        }
+        final Synchronization synchronization = transaction.getSynchronization();
+        if(synchronization instanceof IndexOnCommit
+                && ((IndexOnCommit) synchronization).getSearchIndex() == this) {
+            return (IndexOnCommit) synchronization;
+        }
+        final IndexOnCommit indexOnCommit = new IndexOnCommit(synchronization);
+        transaction.setSynchronization(indexOnCommit);
+        return indexOnCommit;
+    }
+
+    static List<String> termsOf(final String text) {
+        if(text == null) {
+            return Collections.emptyList();
+        }
+        return TERM_SPLITTER.splitToList(text.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * The (new) searchable text of a channel, or <tt>null</tt> if it is to be removed from the index.
+     */
+    private static class Change {
+        private final Long channelId;
+        private final String searchableText;
+
+        private Change(final Long channelId, final String searchableText) {
+            this.channelId = channelId;
+            this.searchableText = searchableText;
+        }
+    }
+
+    private static class Postings {
+
+        /**
+         * For each term, the number of occurrences of that term keyed by channel id.
+         */
+        private final Map<String, Map<Long, Integer>> occurrencesByTerm = Maps.newHashMap();
+
+        /**
+         * For each channel id, the terms indexed for that channel (so that they can be removed when it is
+         * re-indexed).
+         */
+        private final Map<Long, Set<String>> termsByChannelId = Maps.newHashMap();
+
+        void apply(final Change change) {
+            remove(change.channelId);
+            if(change.searchableText != null) {
+                index(change.channelId, change.searchableText);
+            }
+        }
+
+        private void index(final Long channelId, final String searchableText) {
+            final List<String> terms = termsOf(searchableText);
+            if(terms.isEmpty()) {
+                return;
+            }
+            for (final String term : terms) {
+                final Map<Long, Integer> occurrencesByChannelId =
+                        occurrencesByTerm.computeIfAbsent(term, t -> Maps.newHashMap());
+                occurrencesByChannelId.merge(channelId, 1, Integer::sum);
+            }
+            termsByChannelId.put(channelId, Sets.newHashSet(terms));
+        }
+
+        private void remove(final Long channelId) {
+            final Set<String> terms = termsByChannelId.remove(channelId);
+            if(terms == null) {
+                return;
+            }
+            for (final String term : terms) {
+                final Map<Long, Integer> occurrencesByChannelId = occurrencesByTerm.get(term);
+                if(occurrencesByChannelId != null) {
+                    occurrencesByChannelId.remove(channelId);
+                    if(occurrencesByChannelId.isEmpty()) {
+                        occurrencesByTerm.remove(term);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Holds the channels modified within a transaction, applying their changes to the index only if it commits;
+     * chains to any synchronization already registered with the transaction.
+     *
+     * <p>
+     *     The searchable text is read just before completion (so reflects every change made within the transaction);
+     *     the channel ids only after it has committed (by when any new channels have certainly been assigned theirs).
+     * </p>
+     */
+    private class IndexOnCommit implements Synchronization {
+
+        private final Synchronization previous;
+        private final Set<CommunicationChannel<?>> toIndex = Sets.newIdentityHashSet();
+        private final Set<Long> toRemove = Sets.newHashSet();
+        private final Map<CommunicationChannel<?>, String> searchableTextByChannel = Maps.newIdentityHashMap();
+
+        private IndexOnCommit(final Synchronization previous) {
+            this.previous = previous;
+        }
+
+        CommunicationChannelSearchIndex getSearchIndex() {
+            return CommunicationChannelSearchIndex.this;
+        }
+
+        @Override
+        public void beforeCompletion() {
+            for (final CommunicationChannel<?> communicationChannel : toIndex) {
+                if(JDOHelper.isDeleted(communicationChannel)
+                        || toRemove.contains(communicationChannel.getNumericId())) {
+                    continue;
+                }
+                searchableTextByChannel.put(communicationChannel, communicationChannel.searchableText());
+            }
+            if(previous != null) {
+                previous.beforeCompletion();
+            }
+        }
+
+        @Override
+        public void afterCompletion(final int status) {
+            if(status == Status.STATUS_COMMITTED) {
+                for (final Map.Entry<CommunicationChannel<?>, String> entry : searchableTextByChannel.entrySet()) {
+                    final Long channelId = entry.getKey().getNumericId();
+                    if(channelId != null) {
+                        apply(new Change(channelId, entry.getValue()));
+                    }
+                }
+                for (final Long channelId : toRemove) {
+                    apply(new Change(channelId, null));
+                }
+            }
+            if(previous != null) {
+                previous.afterCompletion(status);
+            }
+        }
+    }
+    //endregion
+
+    //region > IndexingSubscriber
+
+    /**
+     * Maintains the index as a result of the module's own actions, and of postal addresses'
+     * {@link PostalAddress#getFormattedAddress() formatted address} changing however they are (re)geocoded.
+     *
+     * <p>
+     *     Channels being added or updated are (re-)indexed once executed; channels being removed are removed while
+     *     still executing (as per {@link CommunicationChannelCacheService.InvalidationSubscriber}).  Either way the
+     *     index itself is only updated once the transaction commits.
+     * </p>
+     */
+    @DomainService(nature = NatureOfService.DOMAIN)
+    public static class IndexingSubscriber extends AbstractSubscriber {
+
+        @EventHandler
+        @Subscribe
+        public void on(final T_addEmailAddress.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTED) {
+                searchIndex.indexOnCommit(ev.getSource().getEmailAddress());
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final T_addPostalAddress.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTED) {
+                searchIndex.indexOnCommit(ev.getSource().getPostalAddress());
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final T_addPhoneOrFaxNumber.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTED) {
+                searchIndex.indexOnCommit(ev.getSource().getPhoneOrFaxNumber());
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final EmailAddress_update.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTED) {
+                searchIndex.indexOnCommit(ev.getSource().getEmailAddress());
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final PhoneOrFaxNumber_update.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTED) {
+                searchIndex.indexOnCommit(ev.getSource().getPhoneOrFaxNumber());
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final PostalAddress_update.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTED) {
+                searchIndex.indexOnCommit(ev.getSource().getPostalAddress());
+            }
+        }
+
+        /**
+         * Covers geocode lookups and clearances, {@link
+         * org.incode.module.commchannel.dom.impl.postaladdress.PostalAddressGeocodeRefresher refreshes}, and the
+         * other addresses sharing a geocode whose response has changed.
+         */
+        @EventHandler
+        @Subscribe
+        public void on(final PostalAddress.FormattedAddressChangedEvent ev) {
+            searchIndex.indexOnCommit(ev.getPostalAddress());
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final CommunicationChannel.NotesDomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTED) {
+                searchIndex.indexOnCommit(ev.getSource());
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final CommunicationChannel_remove0.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTING) {
+                searchIndex.removeOnCommit(ev.getSource().getCommunicationChannel());
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final CommunicationChannel_remove1.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTING) {
+                searchIndex.removeOnCommit(ev.getSource().getCommunicationChannel());
+            }
+        }
+
+        @Inject
+        CommunicationChannelSearchIndex searchIndex;
+    }
+    //endregion
+
+    //region > injected services
+    @Inject
+    ConfigurationService configurationService;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    //endregion
+
+}
@@ -0,0 +1,144 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.channel;
+
+import javax.inject.Inject;
+
+import org.apache.isis.applib.annotation.DomainObject;
+import org.apache.isis.applib.annotation.Editing;
+import org.apache.isis.applib.annotation.Nature;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.annotation.Property;
+import org.apache.isis.applib.annotation.Title;
+import org.apache.isis.applib.annotation.Where;
+import org.apache.isis.applib.services.bookmark.Bookmark;
+import org.apache.isis.applib.services.bookmark.BookmarkService;
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Read-only projection of a {@link CommunicationChannel}, for rendering tables and listings without having
+ * to load the underlying entities (in particular their CLOB columns).
+ *
+ * <p>
+ *     Obtained using {@link CommunicationChannelSummaryRepository}.
+ * </p>
+ */
+@DomainObject(
+        nature = Nature.VIEW_MODEL,
+        objectType = "incodeCommChannel.CommunicationChannelSummary",
+        editing = Editing.DISABLED
+)
+public class CommunicationChannelSummary implements Comparable<CommunicationChannelSummary> {
+
+    //region > iconName
+    public String iconName() {
+        return getType() != null ? getType().title().replace(" ", "") : null;
+    }
+    //endregion
+
+    /**
+     * The {@link CommunicationChannel#getId() id} of the underlying {@link CommunicationChannel}.
+     */
+    @Getter @Setter
+    @Property(hidden = Where.EVERYWHERE)
+    private String communicationChannelId;
+
+    @Getter @Setter
+    @Property(hidden = Where.EVERYWHERE)
+    private CommunicationChannelType type;
+
+    @Getter @Setter
+    @Title
+    private String name;
+
+    @Getter @Setter
+    private String purpose;
+
+    /**
+     * The owner's bookmark, as per {@link org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink#getOwnerStr()}.
+     */
+    @Getter @Setter
+    @Property(hidden = Where.EVERYWHERE)
+    private String ownerStr;
+
+    //region > communicationChannel (derived property)
+    @Property(hidden = Where.ALL_TABLES)
+    public CommunicationChannel getCommunicationChannel() {
+        if(getCommunicationChannelId() == null) {
+            return null;
+        }
+        return isisJdoSupport.getJdoPersistenceManager()
+                .getObjectById(CommunicationChannel.class, Long.valueOf(getCommunicationChannelId()));
+    }
+    //endregion
+
+    //region > owner (derived property)
+    /**
+     * The owner, looked up (lazily) from the {@link #getOwnerStr() owner's bookmark}.
+     */
+    @Property(hidden = Where.ALL_TABLES)
+    public Object getOwner() {
+        if(getOwnerStr() == null) {
+            return null;
+        }
+        return bookmarkService.lookup(new Bookmark(getOwnerStr()));
+    }
+    //endregion
+
+    //region > compareTo
+    @Programmatic
+    @Override
+    public int compareTo(final CommunicationChannelSummary other) {
+        int cmp = compare(getType(), other.getType());
+        if(cmp != 0) {
+            return cmp;
+        }
+        cmp = compare(getName(), other.getName());
+        if(cmp != 0) {
+            return cmp;
+        }
+        return compare(getCommunicationChannelId(), other.getCommunicationChannelId());
+    }
+
+    private static <T extends Comparable<T>> int compare(final T a, final T b) {
+        if(a == b) {
+            return 0;
+        }
+        if(a == null) {
+            return -1;
+        }
+        if(b == null) {
+            return +1;
+        }
+        return a.compareTo(b);
+    }
+    //endregion
+
+    //region > injected services
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    @Inject
+    BookmarkService bookmarkService;
+    //endregion
+
+}
@@ -0,0 +1,208 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.channel;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import org.apache.isis.applib.annotation.DomainService;
+import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.services.bookmark.Bookmark;
+import org.apache.isis.applib.services.bookmark.BookmarkService;
+import org.apache.isis.applib.services.factory.FactoryService;
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+
+import org.incode.module.commchannel.dom.impl.emailaddress.EmailAddress;
+import org.incode.module.commchannel.dom.impl.emailaddress.EmailAddressCanonicaliser;
+import org.incode.module.commchannel.dom.impl.phoneorfax.PhoneNumberNormaliser;
+import org.incode.module.commchannel.dom.impl.phoneorfax.PhoneOrFaxNumber;
+import org.incode.module.commchannel.dom.impl.purpose.CommunicationChannelPurposeRegistry;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+
+/**
+ * Returns {@link CommunicationChannelSummary summaries} of an owner's {@link CommunicationChannel}s, or of the
+ * email addresses and phone/fax numbers (of any owner) matching a prefix, using projection queries that select only
+ * the (short) columns required to render them.
+ */
+@DomainService(
+        nature = NatureOfService.DOMAIN
+)
+public class CommunicationChannelSummaryRepository {
+
+    public String getId() {
+        return "incodeCommChannel.CommunicationChannelSummaryRepository";
+    }
+
+    @Programmatic
+    public List<CommunicationChannelSummary> findByOwner(final Object owner) {
+        if(owner == null) {
+            return Collections.emptyList();
+        }
+        final Bookmark bookmark = bookmarkService.bookmarkFor(owner);
+        if(bookmark == null) {
+            return Collections.emptyList();
+        }
+        final String ownerStr = bookmark.toString();
+
+        final List<CommunicationChannelSummary> summaries = Lists.newArrayList();
+        for (final Object[] row : findSummariesByOwnerStr(ownerStr)) {
+            summaries.add(summaryOf(row, ownerStr));
+        }
+        // already ordered by the query
+        return summaries;
+    }
+
+    //region > autoComplete (programmatic)
+
+    /**
+     * Type-ahead search (across all owners) of {@link EmailAddress}es and {@link PhoneOrFaxNumber}s starting with
+     * the specified text, returning at most <tt>maxResults</tt> summaries (each identifying its
+     * {@link CommunicationChannelSummary#getOwner() owner}).
+     *
+     * <p>
+     *     The search text is {@link EmailAddressCanonicaliser canonicalised} (resp.
+     *     {@link PhoneNumberNormaliser normalised}) and matched as a prefix against the indexed canonical/normalised
+     *     columns, so only the top matches are read from the index.  Phone/fax numbers are only searched if the text
+     *     looks like a number.  Email addresses are returned before phone/fax numbers, each in the order of the
+     *     matched column.
+     * </p>
+     */
+    @Programmatic
+    public List<CommunicationChannelSummary> autoComplete(
+            final String search,
+            final int maxResults) {
+        if(search == null || search.trim().isEmpty() || maxResults <= 0) {
+            return Collections.emptyList();
+        }
+
+        final List<CommunicationChannelSummary> summaries = Lists.newArrayList();
+        final String emailAddressPrefix = emailAddressCanonicaliser.canonicalise(search);
+        for (final Object[] row : findSummariesByPrefix(
+                EmailAddress.class, "findSummariesByCanonicalEmailAddressPrefix", emailAddressPrefix, maxResults)) {
+            summaries.add(summaryOf(row, (String) row[4]));
+        }
+        if(PHONE_NUMBER_CHARS.matchesAllOf(search.trim())) {
+            final String phoneNumberPrefix = phoneNumberNormaliser.normalise(search);
+            if(phoneNumberPrefix != null) {
+                for (final Object[] row : findSummariesByPrefix(
+                        PhoneOrFaxNumber.class, "findSummariesByNormalisedPhoneNumberPrefix", phoneNumberPrefix, maxResults)) {
+                    summaries.add(summaryOf(row, (String) row[4]));
+                }
+            }
+        }
+        return summaries.size() > maxResults
+                ? Lists.newArrayList(summaries.subList(0, maxResults))
+                : summaries;
+    }
+
+    private static final CharMatcher PHONE_NUMBER_CHARS = CharMatcher.anyOf("+0123456789 -()");
+
+    //endregion
+
+    //region > helpers
+    private List<Object[]> findSummariesByPrefix(
+            final Class<?> cls,
+            final String queryName,
+            final String prefix,
+            final int maxResults) {
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        final Query query = pm.newNamedQuery(cls, queryName);
+        query.setRange(0, maxResults);
+        try {
+            final Map<String, Object> params = ImmutableMap.<String, Object>of("prefix", prefix);
+            return rowsOf(query.executeWithMap(params));
+        } finally {
+            query.closeAll();
+        }
+    }
+
+    private List<Object[]> findSummariesByOwnerStr(final String ownerStr) {
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        final Query query = pm.newNamedQuery(CommunicationChannel.class, "findSummariesByOwnerStr");
+        try {
+            final Map<String, Object> params = ImmutableMap.<String, Object>of("ownerStr", ownerStr);
+            return rowsOf(query.executeWithMap(params));
+        } finally {
+            query.closeAll();
+        }
+    }
+
+    private static List<Object[]> rowsOf(final Object result) {
+        final List<Object[]> rows = Lists.newArrayList();
+        for (final Object row : (Collection<?>) result) {
+            rows.add((Object[]) row);
+        }
+        return rows;
+    }
+
+    /**
+     * Each row is the object id, type, purpose code and (persisted) title (and, for the prefix queries, the owner's
+     * bookmark).
+     */
+    private CommunicationChannelSummary summaryOf(
+            final Object[] row,
+            final String ownerStr) {
+        final CommunicationChannelSummary summary = factoryService.instantiate(CommunicationChannelSummary.class);
+        final Long numericId = CommunicationChannel.numericIdOf(row[0]);
+        summary.setCommunicationChannelId(numericId != null ? numericId.toString() : null);
+        summary.setType((CommunicationChannelType) row[1]);
+        final String purpose = communicationChannelPurposeRegistry.nameFor((Integer) row[2]);
+        summary.setPurpose(purpose != null ? purpose : channelFor(row[0]).getPurpose());
+        summary.setName(row[3] != null ? (String) row[3] : channelFor(row[0]).title());
+        summary.setOwnerStr(ownerStr);
+        return summary;
+    }
+
+    /**
+     * Fallback for channels whose title or purpose code has not yet been
+     * {@link CommunicationChannelRepository#backfillTitles(int) backfilled} (resp.
+     * {@link CommunicationChannelRepository#backfillPurposeCodes(int) backfilled}).
+     */
+    private CommunicationChannel<?> channelFor(final Object objectId) {
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        return (CommunicationChannel<?>) pm.getObjectById(objectId);
+    }
+    //endregion
+
+    //region > injected services
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    @Inject
+    BookmarkService bookmarkService;
+    @Inject
+    FactoryService factoryService;
+    @Inject
+    CommunicationChannelPurposeRegistry communicationChannelPurposeRegistry;
+    @Inject
+    EmailAddressCanonicaliser emailAddressCanonicaliser;
+    @Inject
+    PhoneNumberNormaliser phoneNumberNormaliser;
+    //endregion
+
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.channel;
+
+import javax.inject.Inject;
+
+import org.apache.isis.applib.annotation.Action;
+import org.apache.isis.applib.annotation.ActionLayout;
+import org.apache.isis.applib.annotation.Mixin;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.annotation.SemanticsOf;
+
+import org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink;
+import org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLinkRepository;
+
+/**
+ * Makes the {@link CommunicationChannel} the primary one of its owner for its type, demoting the current primary.
+ */
+@Mixin
+public class CommunicationChannel_makePrimary {
+
+    //region > constructor
+    private final CommunicationChannel<?> communicationChannel;
+    public CommunicationChannel_makePrimary(final CommunicationChannel<?> communicationChannel) {
+        this.communicationChannel = communicationChannel;
+    }
+    @Programmatic
+    public CommunicationChannel<?> getCommunicationChannel() {
+        return communicationChannel;
+    }
+    //endregion
+
+    //region > $$
+
+    public static class DomainEvent extends CommunicationChannel.ActionDomainEvent<CommunicationChannel_makePrimary> { }
+
+    @Action(
+            domainEvent = DomainEvent.class,
+            semantics = SemanticsOf.IDEMPOTENT
+    )
+    @ActionLayout(
+            cssClassFa = "star",
+            named = "Make Primary"
+    )
+    public CommunicationChannel<?> $$() {
+        ownerLinkRepository.makePrimary(communicationChannel);
+        return communicationChannel;
+    }
+
+    public boolean hide$$() {
+        final CommunicationChannelOwnerLink link = ownerLinkRepository.getOwnerLink(communicationChannel);
+        return link == null || link.isPrimaryLink();
+    }
+    //endregion
+
+    //region > injected services
+    @Inject
+    CommunicationChannelOwnerLinkRepository ownerLinkRepository;
+    //endregion
+
+}
@@ -34,7 +34,8 @@
 import org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLinkRepository;
 
 /**
- * Removes the {@link CommunicationChannel} from its owner, optionally specifying a replacement.
+ * Removes the {@link CommunicationChannel} from its owner, optionally specifying a replacement (which, if the
+ * channel being removed was the owner's primary, becomes the new primary).
  */
 @Mixin
 public class CommunicationChannel_remove1 {
@@ -79,7 +80,7 @@ public CommunicationChannel<?> getReplacement() {
             @Nullable
             final CommunicationChannel replacement) {
         final Object owner = mixinOwner();
-        removeLink();
+        removeLink(replacement);
         return owner;
     }
 
@@ -93,8 +94,8 @@ public CommunicationChannel<?> getReplacement() {
                 this.communicationChannel);
     }
 
-    void removeLink() {
-        ownerLinkRepository.removeOwnerLink(communicationChannel);
+    void removeLink(final CommunicationChannel replacement) {
+        ownerLinkRepository.removeOwnerLink(communicationChannel, replacement);
         repositoryService.remove(communicationChannel);
     }
     //endregion
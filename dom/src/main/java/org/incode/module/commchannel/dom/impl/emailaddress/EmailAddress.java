@@ -23,7 +23,9 @@
 import org.apache.isis.applib.annotation.DomainObject;
 import org.apache.isis.applib.annotation.Editing;
 import org.apache.isis.applib.annotation.Optionality;
+import org.apache.isis.applib.annotation.Programmatic;
 import org.apache.isis.applib.annotation.Property;
+import org.apache.isis.applib.annotation.Where;
 
 import org.incode.module.commchannel.dom.CommChannelModule;
 import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
@@ -39,10 +41,30 @@
         strategy = InheritanceStrategy.SUPERCLASS_TABLE
 )
 // no @DatastoreIdentity nor @Version, since inherited from supertype
+@javax.jdo.annotations.Cacheable("true")
 @javax.jdo.annotations.Indices({
         @javax.jdo.annotations.Index(
                 name = "EmailAddress_emailAddress_IDX",
-                members = { "emailAddress" })
+                members = { "emailAddress" }),
+        @javax.jdo.annotations.Index(
+                name = "EmailAddress_canonicalEmailAddress_IDX",
+                members = { "canonicalEmailAddress" })
+})
+@javax.jdo.annotations.Queries({
+        @javax.jdo.annotations.Query(
+                name = "findWithoutCanonicalEmailAddress", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.emailaddress.EmailAddress "
+                        + "WHERE canonicalEmailAddress == null "
+                        + "   && emailAddress != null"),
+        @javax.jdo.annotations.Query(
+                name = "findSummariesByCanonicalEmailAddressPrefix", language = "JDOQL",
+                value = "SELECT JDOHelper.getObjectId(this), type, purposeCode, title, link.ownerStr "
+                        + "FROM org.incode.module.commchannel.dom.impl.emailaddress.EmailAddress "
+                        + "WHERE link.communicationChannel == this "
+                        + "   && canonicalEmailAddress.startsWith(:prefix) "
+                        + "VARIABLES org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink link "
+                        + "ORDER BY canonicalEmailAddress")
 })
 @DomainObject(
         objectType = "incodeCommChannel.EmailAddress"
@@ -56,7 +78,9 @@ public class EmailAddress extends CommunicationChannel<EmailAddress> {
     //endregion
 
     //region > title
-    public String title() {
+    @Programmatic
+    @Override
+    protected String deriveTitle() {
         return getEmailAddress();
     }
     //endregion
@@ -76,4 +100,17 @@ public static class EmailAddressDomainEvent extends PropertyDomainEvent<EmailAdd
     private String emailAddress;
 
 
+    /**
+     * The {@link EmailAddressCanonicaliser canonical} (trimmed, lower-cased) form of the {@link #getEmailAddress()},
+     * used for matching; set whenever the email address is.
+     */
+    @Getter @Setter
+    @javax.jdo.annotations.Column(
+            allowsNull = "true",
+            length = CommChannelModule.JdoColumnLength.EMAIL_ADDRESS
+    )
+    @Property(hidden = Where.EVERYWHERE)
+    private String canonicalEmailAddress;
+
+
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.emailaddress;
+
+import java.util.Locale;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.apache.isis.applib.annotation.DomainService;
+import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.services.config.ConfigurationService;
+
+/**
+ * Derives the {@link EmailAddress#getCanonicalEmailAddress() canonical form} of an email address, used for
+ * (case-insensitive) matching.
+ *
+ * <p>
+ *     The canonical form is trimmed and lower-cased.  Optionally (configuration property
+ *     <tt>...EmailAddressCanonicaliser.normaliseGmail</tt>, default <tt>false</tt>) Gmail addresses are also
+ *     normalised, ignoring dots and any "+tag" in the local part (and treating <tt>googlemail.com</tt> as
+ *     <tt>gmail.com</tt>), since Gmail delivers all such variants to the same mailbox.
+ * </p>
+ */
+@DomainService(
+        nature = NatureOfService.DOMAIN
+)
+public class EmailAddressCanonicaliser {
+
+    public String getId() {
+        return "incodeCommChannel.EmailAddressCanonicaliser";
+    }
+
+    private static final boolean DEFAULT_NORMALISE_GMAIL = false;
+
+    boolean normaliseGmail = DEFAULT_NORMALISE_GMAIL;
+
+    @PostConstruct
+    public void init() {
+        final String prefix = EmailAddressCanonicaliser.class.getCanonicalName();
+        final String normaliseGmailStr = configurationService.getProperty(prefix + ".normaliseGmail");
+        normaliseGmail = normaliseGmailStr != null ? Boolean.parseBoolean(normaliseGmailStr) : DEFAULT_NORMALISE_GMAIL;
+    }
+
+    @Programmatic
+    public String canonicalise(final String emailAddress) {
+        if(emailAddress == null) {
+            return null;
+        }
+        final String canonical = emailAddress.trim().toLowerCase(Locale.ROOT);
+        return normaliseGmail ? normaliseGmail(canonical) : canonical;
+    }
+
+    private static String normaliseGmail(final String emailAddress) {
+        final int at = emailAddress.lastIndexOf('@');
+        if(at < 0) {
+            return emailAddress;
+        }
+        final String domain = emailAddress.substring(at + 1);
+        if(!domain.equals("gmail.com") && !domain.equals("googlemail.com")) {
+            return emailAddress;
+        }
+        String localPart = emailAddress.substring(0, at);
+        final int plus = localPart.indexOf('+');
+        if(plus >= 0) {
+            localPart = localPart.substring(0, plus);
+        }
+        return localPart.replace(".", "") + "@gmail.com";
+    }
+
+    @Inject
+    ConfigurationService configurationService;
+
+}
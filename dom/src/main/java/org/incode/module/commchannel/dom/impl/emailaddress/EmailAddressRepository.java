@@ -22,14 +22,19 @@
 import java.util.Objects;
 
 import javax.inject.Inject;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 import org.apache.isis.applib.annotation.DomainService;
 import org.apache.isis.applib.annotation.NatureOfService;
 import org.apache.isis.applib.annotation.Programmatic;
 import org.apache.isis.applib.services.factory.FactoryService;
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
 import org.apache.isis.applib.services.repository.RepositoryService;
 
 import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
@@ -58,6 +63,7 @@ public EmailAddress newEmail(
         final EmailAddress ea = repositoryService.instantiate(EmailAddress.class);
         ea.setType(CommunicationChannelType.EMAIL_ADDRESS);
         ea.setEmailAddress(address);
+        ea.setCanonicalEmailAddress(emailAddressCanonicaliser.canonicalise(address));
         owner(ea).setOwner(owner);
 
         ea.setPurpose(purpose);
@@ -80,11 +86,56 @@ public EmailAddress findByEmailAddress(
                 Iterables.transform(
                         links,
                         CommunicationChannelOwnerLink.Functions.communicationChannel(EmailAddress.class));
+        final String canonicalEmailAddress = emailAddressCanonicaliser.canonicalise(emailAddress);
         final Optional<EmailAddress> emailAddressIfFound =
-                Iterables.tryFind(emailAddresses, input -> Objects.equals(emailAddress, input.getEmailAddress()));
+                Iterables.tryFind(emailAddresses, input -> Objects.equals(canonicalEmailAddress, canonicalOf(input)));
         return emailAddressIfFound.orNull();
     }
 
+    /**
+     * The owners (of any type) of the specified email address (matched case-insensitively), eg for routing inbound
+     * email; uses a single query (on the indexed <tt>canonicalEmailAddress</tt> column, joined to the owner links).
+     */
+    @Programmatic
+    public List<Object> findOwnersByEmailAddress(final String emailAddress) {
+        final List<CommunicationChannelOwnerLink> links =
+                linkRepository.findByCanonicalEmailAddress(emailAddressCanonicaliser.canonicalise(emailAddress));
+        return Lists.newArrayList(Sets.newLinkedHashSet(
+                Iterables.transform(links, CommunicationChannelOwnerLink.Functions.owner())));
+    }
+
+    /**
+     * Populates the {@link EmailAddress#getCanonicalEmailAddress() canonical email address} of (up to
+     * <tt>batchSize</tt>) email addresses created before it was introduced.
+     *
+     * @return the number of email addresses updated; call repeatedly (in separate transactions) until this returns 0.
+     */
+    @Programmatic
+    public int backfillCanonicalEmailAddresses(final int batchSize) {
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        final Query query = pm.newNamedQuery(EmailAddress.class, "findWithoutCanonicalEmailAddress");
+        query.setRange(0, batchSize);
+        try {
+            final List<EmailAddress> emailAddresses = Lists.newArrayList((List<EmailAddress>) query.execute());
+            for (final EmailAddress emailAddress : emailAddresses) {
+                emailAddress.setCanonicalEmailAddress(emailAddressCanonicaliser.canonicalise(emailAddress.getEmailAddress()));
+            }
+            return emailAddresses.size();
+        } finally {
+            query.closeAll();
+        }
+    }
+
+    /**
+     * Falls back to canonicalising on the fly, for any email address not yet backfilled.
+     */
+    private String canonicalOf(final EmailAddress emailAddress) {
+        final String canonicalEmailAddress = emailAddress.getCanonicalEmailAddress();
+        return canonicalEmailAddress != null
+                ? canonicalEmailAddress
+                : emailAddressCanonicaliser.canonicalise(emailAddress.getEmailAddress());
+    }
+
     private CommunicationChannel_owner owner(final CommunicationChannel<?> cc) {
         return factoryService.mixin(CommunicationChannel_owner.class, cc);
     }
@@ -96,6 +147,10 @@ private CommunicationChannel_owner owner(final CommunicationChannel<?> cc) {
     RepositoryService repositoryService;
     @Inject
     FactoryService factoryService;
+    @Inject
+    EmailAddressCanonicaliser emailAddressCanonicaliser;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
     //endregion
 
 
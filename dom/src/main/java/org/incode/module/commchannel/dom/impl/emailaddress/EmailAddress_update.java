@@ -18,6 +18,8 @@
  */
 package org.incode.module.commchannel.dom.impl.emailaddress;
 
+import javax.inject.Inject;
+
 import org.apache.isis.applib.annotation.Action;
 import org.apache.isis.applib.annotation.Mixin;
 import org.apache.isis.applib.annotation.Parameter;
@@ -56,6 +58,7 @@ public static class DomainEvent extends EmailAddress.ActionDomainEvent<EmailAddr
             @ParameterLayout(named = "Email Address")
             final String address) {
         this.emailAddress.setEmailAddress(address);
+        this.emailAddress.setCanonicalEmailAddress(emailAddressCanonicaliser.canonicalise(address));
         return this.emailAddress;
     }
 
@@ -63,5 +66,8 @@ public static class DomainEvent extends EmailAddress.ActionDomainEvent<EmailAddr
         return this.emailAddress.getEmailAddress();
     }
 
+    @Inject
+    EmailAddressCanonicaliser emailAddressCanonicaliser;
+
 
 }
\ No newline at end of file
@@ -49,6 +49,18 @@ public T getCommunicationChannelOwner() {
     }
     //endregion
 
+    //region > emailAddress
+    private EmailAddress emailAddress;
+
+    /**
+     * The email address added, once the action has been invoked (eg for subscribers to the {@link DomainEvent}).
+     */
+    @Programmatic
+    public EmailAddress getEmailAddress() {
+        return emailAddress;
+    }
+    //endregion
+
     //region > $$
 
     public static class DomainEvent extends CommChannelModule.ActionDomainEvent
@@ -76,7 +88,7 @@ public static class DomainEvent extends CommChannelModule.ActionDomainEvent
             @Parameter(optionality = Optionality.OPTIONAL)
             @ParameterLayout(named = "Notes", multiLine = 10)
             final String notes) {
-        emailAddressRepository.newEmail(this.communicationChannelOwner, email, purpose, notes);
+        this.emailAddress = emailAddressRepository.newEmail(this.communicationChannelOwner, email, purpose, notes);
         return this.communicationChannelOwner;
     }
 
@@ -0,0 +1,122 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.facet;
+
+import javax.jdo.annotations.Column;
+import javax.jdo.annotations.IdGeneratorStrategy;
+import javax.jdo.annotations.IdentityType;
+
+import org.apache.isis.applib.annotation.DomainObject;
+import org.apache.isis.applib.annotation.Editing;
+import org.apache.isis.applib.annotation.Title;
+import org.apache.isis.applib.util.ObjectContracts;
+
+import org.incode.module.commchannel.dom.CommChannelModule;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The number of {@link org.incode.module.commchannel.dom.impl.channel.CommunicationChannel}s with a particular
+ * {@link #getValue() value} for a {@link #getFacet() facet} (eg the number of postal addresses in "GB").
+ *
+ * <p>
+ *     Maintained incrementally by {@link CommunicationChannelFacetService} (if enabled), so that the counts can be
+ *     read without aggregating over all channels.  Not versioned: counts are only ever adjusted by an atomic bulk
+ *     update, never read and written back.
+ * </p>
+ */
+@javax.jdo.annotations.PersistenceCapable(
+        identityType = IdentityType.DATASTORE,
+        schema = "incodeCommChannel",
+        table = "CommunicationChannelFacetCount"
+)
+@javax.jdo.annotations.DatastoreIdentity(strategy = IdGeneratorStrategy.IDENTITY, column = "id")
+@javax.jdo.annotations.Queries({
+        @javax.jdo.annotations.Query(
+                name = "findAll", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.facet.CommunicationChannelFacetCount "),
+        @javax.jdo.annotations.Query(
+                name = "countsByFacet", language = "JDOQL",
+                value = "SELECT value, channelCount "
+                        + "FROM org.incode.module.commchannel.dom.impl.facet.CommunicationChannelFacetCount "
+                        + "WHERE facet == :facet "
+                        + "   && channelCount > 0"),
+        @javax.jdo.annotations.Query(
+                name = "adjustChannelCount", language = "JDOQL",
+                value = "UPDATE org.incode.module.commchannel.dom.impl.facet.CommunicationChannelFacetCount "
+                        + "SET this.channelCount = this.channelCount + :delta "
+                        + "WHERE this.facet == :facet "
+                        + "   && this.value == :value")
+})
+@javax.jdo.annotations.Uniques({
+        @javax.jdo.annotations.Unique(
+                name = "CommunicationChannelFacetCount_facet_value_UNQ",
+                members = { "facet", "value" })
+})
+@DomainObject(
+        objectType = "incodeCommChannel.CommunicationChannelFacetCount",
+        editing = Editing.DISABLED
+)
+public class CommunicationChannelFacetCount implements Comparable<CommunicationChannelFacetCount> {
+
+    public enum Facet {
+        /**
+         * Keyed by {@link org.incode.module.commchannel.dom.impl.type.CommunicationChannelType#name()}.
+         */
+        TYPE,
+        /**
+         * Keyed by the purpose name.
+         */
+        PURPOSE,
+        /**
+         * Keyed by the geocoded
+         * {@link org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress#getCountryCode() country code}
+         * (postal addresses only).
+         */
+        COUNTRY
+    }
+
+    @Title(sequence = "1")
+    @Getter @Setter
+    @Column(allowsNull = "false", length = CommChannelModule.JdoColumnLength.TYPE_ENUM)
+    private Facet facet;
+
+    @Title(sequence = "2", prepend = ": ")
+    @Getter @Setter
+    @Column(allowsNull = "false", length = CommChannelModule.JdoColumnLength.PURPOSE)
+    private String value;
+
+    @Getter @Setter
+    @Column(allowsNull = "false")
+    private long channelCount;
+
+    //region > toString, compareTo
+    @Override
+    public int compareTo(final CommunicationChannelFacetCount other) {
+        return ObjectContracts.compare(this, other, "facet", "value");
+    }
+
+    @Override
+    public String toString() {
+        return ObjectContracts.toString(this, "facet", "value", "channelCount");
+    }
+    //endregion
+
+}
@@ -0,0 +1,526 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.facet;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.Subscribe;
+
+import org.axonframework.eventhandling.annotation.EventHandler;
+
+import org.apache.isis.applib.AbstractSubscriber;
+import org.apache.isis.applib.annotation.DomainService;
+import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.query.QueryDefault;
+import org.apache.isis.applib.services.bookmark.Bookmark;
+import org.apache.isis.applib.services.bookmark.BookmarkService;
+import org.apache.isis.applib.services.config.ConfigurationService;
+import org.apache.isis.applib.services.eventbus.AbstractDomainEvent;
+import org.apache.isis.applib.services.factory.FactoryService;
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+import org.apache.isis.applib.services.repository.RepositoryService;
+import org.apache.isis.applib.services.xactn.TransactionService;
+
+import org.incode.module.commchannel.dom.CommChannelModule.Config;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel_remove0;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel_remove1;
+import org.incode.module.commchannel.dom.impl.emailaddress.T_addEmailAddress;
+import org.incode.module.commchannel.dom.impl.facet.CommunicationChannelFacetCount.Facet;
+import org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink;
+import org.incode.module.commchannel.dom.impl.phoneorfax.PhoneOrFaxNumber_update;
+import org.incode.module.commchannel.dom.impl.phoneorfax.T_addPhoneOrFaxNumber;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress;
+import org.incode.module.commchannel.dom.impl.postaladdress.T_addPostalAddress;
+import org.incode.module.commchannel.dom.impl.purpose.CommunicationChannelPurposeRegistry;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+
+/**
+ * Counts {@link CommunicationChannel}s by {@link Facet facet} - by type, by purpose and (for postal addresses) by
+ * geocoded country - using <tt>GROUP BY</tt> queries, optionally restricted to a set of owners.
+ *
+ * <p>
+ *     If enabled, the unrestricted counts are instead read from {@link CommunicationChannelFacetCount}s, maintained
+ *     incrementally by {@link CountsSubscriber} as channels are added, updated and removed through the module's
+ *     actions (and as postal addresses are geocoded, however geocoded).  These are (re)built on first read if there
+ *     are none, and can be rebuilt at any time using {@link #rebuildCounts()}, eg after channels have been modified
+ *     other than through those actions.
+ * </p>
+ *
+ * <p>
+ *     Counts are adjusted using an atomic <tt>UPDATE ... SET channelCount = channelCount + :delta</tt> rather than by
+ *     reading and writing the count, so concurrent transactions adjusting the same count wait on its row lock rather
+ *     than failing.  The row for a value is only inserted the first time that value is counted (and is then kept,
+ *     even once its count drops to zero), so only concurrent first counts of the same new value can conflict.
+ * </p>
+ *
+ * <p>
+ *     Configuration properties (all optional):
+ * </p>
+ * <ul>
+ *     <li><tt>...CommunicationChannelFacetService.counts.enabled</tt> - whether to maintain the counts
+ *     (default <tt>false</tt>)</li>
+ * </ul>
+ *
+ * <p>
+ *     Purposes are counted by their {@link CommunicationChannel#getPurposeCode() code}, so channels whose purpose
+ *     code has not yet been backfilled are not counted by purpose.
+ * </p>
+ */
+@DomainService(
+        nature = NatureOfService.DOMAIN
+)
+public class CommunicationChannelFacetService {
+
+    public String getId() {
+        return "incodeCommChannel.CommunicationChannelFacetService";
+    }
+
+    private static final boolean DEFAULT_COUNTS_ENABLED = false;
+
+    private boolean countsEnabled = DEFAULT_COUNTS_ENABLED;
+
+    @PostConstruct
+    public void init() {
+        final String prefix = CommunicationChannelFacetService.class.getCanonicalName();
+        countsEnabled =
+                Config.parseBoolean(configurationService.getProperty(prefix + ".counts.enabled"),
+                        DEFAULT_COUNTS_ENABLED);
+    }
+
+    @Programmatic
+    public boolean isCountsEnabled() {
+        return countsEnabled;
+    }
+
+    /**
+     * Allows the counts to be enabled or disabled at runtime; any counts already built should be
+     * {@link #invalidateCounts() invalidated} when re-enabling, as they will not have been maintained meanwhile.
+     */
+    @Programmatic
+    public void setCountsEnabled(final boolean countsEnabled) {
+        this.countsEnabled = countsEnabled;
+    }
+
+    //region > countByType, countByPurpose, countByCountryCode (programmatic)
+
+    @Programmatic
+    public SortedMap<CommunicationChannelType, Long> countByType() {
+        if(countsEnabled) {
+            return transformKeys(countsFor(Facet.TYPE), CommunicationChannelType::valueOf);
+        }
+        return transformKeys(
+                execute(CommunicationChannel.class, "countByType", ImmutableMap.<String, Object>of()),
+                CommunicationChannelType.class::cast);
+    }
+
+    /**
+     * As {@link #countByType()}, but only counting the channels of the specified owners.
+     */
+    @Programmatic
+    public SortedMap<CommunicationChannelType, Long> countByType(final Collection<?> owners) {
+        return transformKeys(
+                executeForOwners("countByOwnersGroupByType", owners),
+                CommunicationChannelType.class::cast);
+    }
+
+    @Programmatic
+    public SortedMap<String, Long> countByPurpose() {
+        if(countsEnabled) {
+            return countsFor(Facet.PURPOSE);
+        }
+        return transformKeys(
+                execute(CommunicationChannel.class, "countByPurposeCode", ImmutableMap.<String, Object>of()),
+                this::purposeNameFor);
+    }
+
+    /**
+     * As {@link #countByPurpose()}, but only counting the channels of the specified owners.
+     */
+    @Programmatic
+    public SortedMap<String, Long> countByPurpose(final Collection<?> owners) {
+        return transformKeys(
+                executeForOwners("countByOwnersGroupByPurposeCode", owners),
+                this::purposeNameFor);
+    }
+
+    /**
+     * The number of geocoded postal addresses in each country, keyed by
+     * {@link PostalAddress#getCountryCode() country code}.
+     */
+    @Programmatic
+    public SortedMap<String, Long> countByCountryCode() {
+        if(countsEnabled) {
+            return countsFor(Facet.COUNTRY);
+        }
+        return transformKeys(
+                execute(PostalAddress.class, "countByCountryCode", ImmutableMap.<String, Object>of()),
+                String.class::cast);
+    }
+
+    /**
+     * As {@link #countByCountryCode()}, but only counting the postal addresses of the specified owners.
+     */
+    @Programmatic
+    public SortedMap<String, Long> countByCountryCode(final Collection<?> owners) {
+        return transformKeys(
+                executeForOwners("countByOwnersGroupByCountryCode", owners),
+                String.class::cast);
+    }
+
+    private String purposeNameFor(final Object purposeCode) {
+        return communicationChannelPurposeRegistry.nameFor((Integer) purposeCode);
+    }
+    //endregion
+
+    //region > rebuildCounts, invalidateCounts (programmatic)
+
+    /**
+     * Recomputes all of the {@link CommunicationChannelFacetCount}s from the channels themselves.
+     */
+    @Programmatic
+    public void rebuildCounts() {
+        invalidateCounts();
+        transactionService.flushTransaction();
+
+        for (final Map.Entry<CommunicationChannelType, Long> entry : transformKeys(
+                execute(CommunicationChannel.class, "countByType", ImmutableMap.<String, Object>of()),
+                CommunicationChannelType.class::cast).entrySet()) {
+            newCount(Facet.TYPE, entry.getKey().name(), entry.getValue());
+        }
+        for (final Map.Entry<String, Long> entry : transformKeys(
+                execute(CommunicationChannel.class, "countByPurposeCode", ImmutableMap.<String, Object>of()),
+                this::purposeNameFor).entrySet()) {
+            newCount(Facet.PURPOSE, entry.getKey(), entry.getValue());
+        }
+        for (final Map.Entry<String, Long> entry : transformKeys(
+                execute(PostalAddress.class, "countByCountryCode", ImmutableMap.<String, Object>of()),
+                String.class::cast).entrySet()) {
+            newCount(Facet.COUNTRY, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Discards all of the {@link CommunicationChannelFacetCount}s, so that they are rebuilt on next read.
+     */
+    @Programmatic
+    public void invalidateCounts() {
+        for (final CommunicationChannelFacetCount count : allCounts()) {
+            repositoryService.remove(count);
+        }
+    }
+    //endregion
+
+    //region > helpers (counts)
+
+    private SortedMap<String, Long> countsFor(final Facet facet) {
+        if(!isBuilt()) {
+            rebuildCounts();
+        }
+        // read as a projection, so that counts adjusted by bulk update are never read from stale cached instances
+        transactionService.flushTransaction();
+        return transformKeys(
+                execute(CommunicationChannelFacetCount.class, "countsByFacet",
+                        ImmutableMap.<String, Object>of("facet", facet)),
+                String.class::cast);
+    }
+
+    private boolean isBuilt() {
+        return !repositoryService.allMatches(
+                new QueryDefault<>(CommunicationChannelFacetCount.class, "findAll").withCount(1)).isEmpty();
+    }
+
+    private List<CommunicationChannelFacetCount> allCounts() {
+        return repositoryService.allMatches(
+                new QueryDefault<>(CommunicationChannelFacetCount.class, "findAll"));
+    }
+
+    void adjust(final CommunicationChannel<?> communicationChannel, final Facet facet, final long delta) {
+        final String value = valueOf(communicationChannel, facet);
+        if(value != null) {
+            adjust(facet, value, delta);
+        }
+    }
+
+    void adjust(final Facet facet, final String value, final long delta) {
+        // so that any count created earlier in this transaction is seen by the update
+        transactionService.flushTransaction();
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        final Query query = pm.newNamedQuery(CommunicationChannelFacetCount.class, "adjustChannelCount");
+        final long updated;
+        try {
+            updated = ((Number) query.executeWithMap(ImmutableMap.<String, Object>of(
+                    "facet", facet,
+                    "value", value,
+                    "delta", delta))).longValue();
+        } finally {
+            query.closeAll();
+        }
+        if(updated == 0 && delta > 0) {
+            newCount(facet, value, delta);
+        }
+    }
+
+    private void newCount(final Facet facet, final String value, final long channelCount) {
+        final CommunicationChannelFacetCount count = factoryService.instantiate(CommunicationChannelFacetCount.class);
+        count.setFacet(facet);
+        count.setValue(value);
+        count.setChannelCount(channelCount);
+        repositoryService.persist(count);
+    }
+
+    /**
+     * Purposes are keyed by the name of their {@link CommunicationChannel#getPurposeCode() code}, as when
+     * {@link #rebuildCounts() rebuilt}, so channels not yet backfilled are not counted by purpose either way.
+     */
+    private String valueOf(final CommunicationChannel<?> communicationChannel, final Facet facet) {
+        switch (facet) {
+        case TYPE:
+            return communicationChannel.getType().name();
+        case PURPOSE:
+            return purposeNameFor(communicationChannel.getPurposeCode());
+        case COUNTRY:
+            return communicationChannel instanceof PostalAddress
+                    ? ((PostalAddress) communicationChannel).getCountryCode()
+                    : null;
+        default:
+            throw new IllegalArgumentException("Unknown facet " + facet);
+        }
+    }
+    //endregion
+
+    //region > helpers (queries)
+
+    private SortedMap<Object, Long> executeForOwners(final String queryName, final Collection<?> owners) {
+        final List<String> ownerStrs = Lists.newArrayList();
+        for (final Object owner : owners) {
+            final Bookmark bookmark = bookmarkService.bookmarkFor(owner);
+            if(bookmark != null) {
+                ownerStrs.add(bookmark.toString());
+            }
+        }
+        if(ownerStrs.isEmpty()) {
+            return Maps.newTreeMap();
+        }
+        return execute(CommunicationChannelOwnerLink.class, queryName,
+                ImmutableMap.<String, Object>of("ownerStrs", ownerStrs));
+    }
+
+    private SortedMap<Object, Long> execute(
+            final Class<?> cls,
+            final String queryName,
+            final Map<String, Object> parameters) {
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        final Query query = pm.newNamedQuery(cls, queryName);
+        try {
+            final SortedMap<Object, Long> counts = Maps.newTreeMap();
+            for (final Object[] row : (List<Object[]>) query.executeWithMap(parameters)) {
+                if(row[0] != null) {
+                    counts.put(row[0], ((Number) row[1]).longValue());
+                }
+            }
+            return counts;
+        } finally {
+            query.closeAll();
+        }
+    }
+
+    private static <J, K> SortedMap<K, Long> transformKeys(
+            final Map<J, Long> counts,
+            final Function<? super J, K> keyFunction) {
+        final SortedMap<K, Long> transformed = Maps.newTreeMap();
+        for (final Map.Entry<J, Long> entry : counts.entrySet()) {
+            final K key = keyFunction.apply(entry.getKey());
+            if(key != null) {
+                transformed.merge(key, entry.getValue(), Long::sum);
+            }
+        }
+        return transformed;
+    }
+    //endregion
+
+    //region > CountsSubscriber
+
+    /**
+     * Maintains the {@link CommunicationChannelFacetCount}s (if enabled and built) as a result of the module's own
+     * actions.
+     *
+     * <p>
+     *     Channels being added are counted once executed; channels being removed are uncounted while still executing.
+     *     Updates uncount the affected facet of the channel while executing, and count it again (with its new value)
+     *     once executed.
+     * </p>
+     *
+     * <p>
+     *     The country of a postal address is instead counted as it changes, on each
+     *     {@link PostalAddress.CountryCodeChangedEvent}, since it is also changed programmatically (eg by the geocode
+     *     refresher, or for every address sharing a re-geocoded place), not only through actions.
+     * </p>
+     */
+    @DomainService(nature = NatureOfService.DOMAIN)
+    public static class CountsSubscriber extends AbstractSubscriber {
+
+        @EventHandler
+        @Subscribe
+        public void on(final T_addEmailAddress.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTED) {
+                added(ev.getSource().getEmailAddress());
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final T_addPhoneOrFaxNumber.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTED) {
+                added(ev.getSource().getPhoneOrFaxNumber());
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final T_addPostalAddress.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTED) {
+                added(ev.getSource().getPostalAddress());
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final PhoneOrFaxNumber_update.DomainEvent ev) {
+            updated(ev, ev.getSource().getPhoneOrFaxNumber(), Facet.TYPE);
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final PostalAddress.CountryCodeChangedEvent ev) {
+            if(!isMaintained()) {
+                return;
+            }
+            if(ev.getPreviousCountryCode() != null) {
+                facetService.adjust(Facet.COUNTRY, ev.getPreviousCountryCode(), -1);
+            }
+            if(ev.getCountryCode() != null) {
+                facetService.adjust(Facet.COUNTRY, ev.getCountryCode(), +1);
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final CommunicationChannel.PurposeDomainEvent ev) {
+            updated(ev, ev.getSource(), Facet.PURPOSE);
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final CommunicationChannel_remove0.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTING) {
+                removed(ev.getSource().getCommunicationChannel());
+            }
+        }
+
+        @EventHandler
+        @Subscribe
+        public void on(final CommunicationChannel_remove1.DomainEvent ev) {
+            if(ev.getEventPhase() == AbstractDomainEvent.Phase.EXECUTING) {
+                removed(ev.getSource().getCommunicationChannel());
+            }
+        }
+
+        private void added(final CommunicationChannel<?> communicationChannel) {
+            if(!isMaintained()) {
+                return;
+            }
+            if(communicationChannel == null) {
+                // should not happen, but if it does then start afresh rather than drift
+                facetService.invalidateCounts();
+                return;
+            }
+            // the country (if any) was counted as it was set
+            facetService.adjust(communicationChannel, Facet.TYPE, +1);
+            facetService.adjust(communicationChannel, Facet.PURPOSE, +1);
+        }
+
+        private void updated(
+                final AbstractDomainEvent<?> ev,
+                final CommunicationChannel<?> communicationChannel,
+                final Facet facet) {
+            if(!isMaintained()) {
+                return;
+            }
+            switch (ev.getEventPhase()) {
+            case EXECUTING:
+                facetService.adjust(communicationChannel, facet, -1);
+                break;
+            case EXECUTED:
+                facetService.adjust(communicationChannel, facet, +1);
+                break;
+            }
+        }
+
+        private void removed(final CommunicationChannel<?> communicationChannel) {
+            if(!isMaintained()) {
+                return;
+            }
+            for (final Facet facet : Facet.values()) {
+                facetService.adjust(communicationChannel, facet, -1);
+            }
+        }
+
+        /**
+         * Nothing to maintain until the counts have been built (they are built on first read).
+         */
+        private boolean isMaintained() {
+            return facetService.isCountsEnabled() && facetService.isBuilt();
+        }
+
+        @Inject
+        CommunicationChannelFacetService facetService;
+    }
+    //endregion
+
+    //region > injected services
+    @Inject
+    ConfigurationService configurationService;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    @Inject
+    RepositoryService repositoryService;
+    @Inject
+    FactoryService factoryService;
+    @Inject
+    BookmarkService bookmarkService;
+    @Inject
+    TransactionService transactionService;
+    @Inject
+    CommunicationChannelPurposeRegistry communicationChannelPurposeRegistry;
+    //endregion
+
+}
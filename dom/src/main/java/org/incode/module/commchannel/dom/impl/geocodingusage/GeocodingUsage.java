@@ -0,0 +1,142 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.geocodingusage;
+
+import javax.jdo.annotations.Column;
+import javax.jdo.annotations.IdGeneratorStrategy;
+import javax.jdo.annotations.IdentityType;
+
+import org.joda.time.LocalDate;
+
+import org.apache.isis.applib.annotation.DomainObject;
+import org.apache.isis.applib.annotation.Editing;
+import org.apache.isis.applib.annotation.Title;
+import org.apache.isis.applib.util.ObjectContracts;
+
+import org.incode.module.commchannel.dom.CommChannelModule;
+import org.incode.module.commchannel.dom.api.GeocodeApiResponse;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The {@link #getCount() count} of a {@link #getMetric() metric} of the use of the geocoding API on a particular
+ * {@link #getDate() date} (eg the number of requests made).
+ *
+ * <p>
+ *     Maintained by {@link GeocodingUsageService}, which accumulates counts in memory and periodically flushes them
+ *     here, so that usage (and the daily cap on requests) survives restarts.  Unlike most entities in this module
+ *     there is no version column: the counts are incremented atomically in SQL (in a transaction of their own), so
+ *     that nodes flushing concurrently do not conflict.
+ * </p>
+ */
+@javax.jdo.annotations.PersistenceCapable(
+        identityType = IdentityType.DATASTORE,
+        schema = "incodeCommChannel",
+        table = "GeocodingUsage"
+)
+@javax.jdo.annotations.DatastoreIdentity(strategy = IdGeneratorStrategy.IDENTITY, column = "id")
+@javax.jdo.annotations.Queries({
+        @javax.jdo.annotations.Query(
+                name = "findByDate", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.geocodingusage.GeocodingUsage "
+                        + "WHERE date == :date"),
+        @javax.jdo.annotations.Query(
+                name = "findByDateAndMetric", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.geocodingusage.GeocodingUsage "
+                        + "WHERE date == :date "
+                        + "   && metric == :metric"),
+        @javax.jdo.annotations.Query(
+                name = "addToCount", language = "JDOQL",
+                value = "UPDATE org.incode.module.commchannel.dom.impl.geocodingusage.GeocodingUsage "
+                        + "SET this.count = this.count + :delta "
+                        + "WHERE this.date == :date "
+                        + "   && this.metric == :metric")
+})
+@javax.jdo.annotations.Uniques({
+        @javax.jdo.annotations.Unique(
+                name = "GeocodingUsage_date_metric_UNQ",
+                members = { "date", "metric" })
+})
+@DomainObject(
+        objectType = "incodeCommChannel.GeocodingUsage",
+        editing = Editing.DISABLED
+)
+public class GeocodingUsage implements Comparable<GeocodingUsage> {
+
+    public enum Metric {
+        /**
+         * Calls made to the geocoding API (whether or not they then succeeded).
+         */
+        REQUESTS,
+        /**
+         * Lookups satisfied from the cache, so not requiring a call to the API.
+         */
+        CACHE_HITS,
+        /**
+         * Calls to the API refused because the daily cap had been reached.
+         */
+        REFUSED,
+        /**
+         * The (UTF-8) bytes of the responses received.
+         */
+        BYTES_RECEIVED,
+        /**
+         * Calls that failed without a response (eg timed out).
+         */
+        FAILED,
+        STATUS_OK,
+        STATUS_ZERO_RESULTS,
+        STATUS_OVER_QUERY_LIMIT,
+        STATUS_REQUEST_DENIED,
+        STATUS_INVALID_REQUEST;
+
+        public static Metric of(final GeocodeApiResponse.Status status) {
+            return valueOf("STATUS_" + status.name());
+        }
+    }
+
+    @Title(sequence = "1")
+    @Getter @Setter
+    @Column(allowsNull = "false")
+    private LocalDate date;
+
+    @Title(sequence = "2", prepend = ": ")
+    @Getter @Setter
+    @Column(allowsNull = "false", length = CommChannelModule.JdoColumnLength.TYPE_ENUM)
+    private Metric metric;
+
+    @Getter @Setter
+    @Column(allowsNull = "false")
+    private long count;
+
+    //region > toString, compareTo
+    @Override
+    public int compareTo(final GeocodingUsage other) {
+        return ObjectContracts.compare(this, other, "date", "metric");
+    }
+
+    @Override
+    public String toString() {
+        return ObjectContracts.toString(this, "date", "metric", "count");
+    }
+    //endregion
+
+}
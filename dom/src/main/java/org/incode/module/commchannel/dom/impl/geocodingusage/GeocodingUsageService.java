@@ -0,0 +1,422 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.geocodingusage;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.jdo.JDOException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+import javax.jdo.Transaction;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import org.joda.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.isis.applib.annotation.DomainService;
+import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.query.QueryDefault;
+import org.apache.isis.applib.services.clock.ClockService;
+import org.apache.isis.applib.services.config.ConfigurationService;
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+import org.apache.isis.applib.services.repository.RepositoryService;
+
+import org.incode.module.commchannel.dom.CommChannelModule.Config;
+import org.incode.module.commchannel.dom.api.GeocodeApiResponse;
+import org.incode.module.commchannel.dom.api.GeocodingService;
+import org.incode.module.commchannel.dom.impl.geocodingusage.GeocodingUsage.Metric;
+
+/**
+ * Accounts for the use of the geocoding API by {@link GeocodingService}, per day, and enforces an (optional) daily
+ * cap on the number of requests made.
+ *
+ * <p>
+ *     Usage is accumulated in memory (using {@link LongAdder}s, so recording is cheap and uncontended) and then
+ *     flushed to {@link GeocodingUsage}s, either once enough requests have been made since the last flush or
+ *     whenever {@link #flush()} is called (eg by the application's scheduler).  Usage not yet flushed is lost if the
+ *     application stops, so the cap may be exceeded by up to the flush threshold across a restart.  With several
+ *     nodes, each enforces the cap against the usage flushed by the others as at its own last flush.
+ * </p>
+ *
+ * <p>
+ *     Configuration properties (all optional):
+ * </p>
+ * <ul>
+ *     <li><tt>...GeocodingUsageService.dailyCap</tt> - the maximum number of requests per day; 0 for no cap
+ *     (default <tt>0</tt>)</li>
+ *     <li><tt>...GeocodingUsageService.flushThreshold</tt> - the number of requests after which usage is flushed
+ *     (default <tt>50</tt>)</li>
+ * </ul>
+ */
+@DomainService(
+        nature = NatureOfService.DOMAIN
+)
+public class GeocodingUsageService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GeocodingUsageService.class);
+
+    public String getId() {
+        return "incodeCommChannel.GeocodingUsageService";
+    }
+
+    private static final int DEFAULT_DAILY_CAP = 0;
+    private static final int DEFAULT_FLUSH_THRESHOLD = 50;
+
+    private int dailyCap = DEFAULT_DAILY_CAP;
+    private int flushThreshold = DEFAULT_FLUSH_THRESHOLD;
+
+    /**
+     * Usage not yet flushed, by date.
+     */
+    private final ConcurrentMap<LocalDate, Counters> pending = new ConcurrentHashMap<>();
+
+    /**
+     * The requests already flushed for {@link #flushedDate}, as at the last flush (by this node).
+     */
+    private LocalDate flushedDate;
+    private long flushedRequests;
+
+    private final AtomicLong flushFailures = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        final String prefix = GeocodingUsageService.class.getCanonicalName();
+        dailyCap = Config.parseInt(configurationService.getProperty(prefix + ".dailyCap"), DEFAULT_DAILY_CAP);
+        flushThreshold = Config.parseInt(configurationService.getProperty(prefix + ".flushThreshold"),
+                DEFAULT_FLUSH_THRESHOLD);
+    }
+
+    @Programmatic
+    public int getDailyCap() {
+        return dailyCap;
+    }
+
+    /**
+     * Allows the cap to be changed at runtime (eg raised once a higher quota has been bought).
+     */
+    @Programmatic
+    public void setDailyCap(final int dailyCap) {
+        this.dailyCap = dailyCap;
+    }
+
+    //region > tryAcquire, record... (programmatic)
+
+    /**
+     * Records a request about to be made to the geocoding API, unless the {@link #getDailyCap() daily cap} has been
+     * reached, in which case the refusal is recorded instead.
+     *
+     * @return whether the request may be made.
+     */
+    @Programmatic
+    public boolean tryAcquire() {
+        final LocalDate today = clockService.now();
+        if(dailyCap <= 0) {
+            countersFor(today).add(Metric.REQUESTS, 1);
+            return true;
+        }
+        synchronized (this) {
+            if(getRequests(today) >= dailyCap) {
+                countersFor(today).add(Metric.REFUSED, 1);
+                return false;
+            }
+            countersFor(today).add(Metric.REQUESTS, 1);
+            return true;
+        }
+    }
+
+    @Programmatic
+    public void recordCacheHit() {
+        countersFor(clockService.now()).add(Metric.CACHE_HITS, 1);
+    }
+
+    /**
+     * Records the response to a request, or the lack of one (if <tt>status</tt> is <tt>null</tt>).
+     */
+    @Programmatic
+    public void recordResponse(final GeocodeApiResponse.Status status, final long bytesReceived) {
+        final Counters counters = countersFor(clockService.now());
+        counters.add(status != null ? Metric.of(status) : Metric.FAILED, 1);
+        counters.add(Metric.BYTES_RECEIVED, bytesReceived);
+    }
+    //endregion
+
+    //region > getRequests, getUsage (programmatic)
+
+    /**
+     * The number of requests made on the specified date, including those not yet flushed, as used to enforce the
+     * {@link #getDailyCap() daily cap}.
+     */
+    @Programmatic
+    public synchronized long getRequests(final LocalDate date) {
+        if(!date.equals(flushedDate)) {
+            final GeocodingUsage usage = findUsage(date, Metric.REQUESTS);
+            flushedDate = date;
+            flushedRequests = usage != null ? usage.getCount() : 0L;
+        }
+        final Counters counters = pending.get(date);
+        return flushedRequests + (counters != null ? counters.get(Metric.REQUESTS) : 0L);
+    }
+
+    /**
+     * All metrics of usage on the specified date, including those not yet flushed.
+     */
+    @Programmatic
+    public SortedMap<Metric, Long> getUsage(final LocalDate date) {
+        final SortedMap<Metric, Long> usageByMetric = Maps.newTreeMap();
+        for (final GeocodingUsage usage : repositoryService.allMatches(
+                new QueryDefault<>(GeocodingUsage.class, "findByDate", "date", date))) {
+            usageByMetric.put(usage.getMetric(), usage.getCount());
+        }
+        final Counters counters = pending.get(date);
+        if(counters != null) {
+            for (final Metric metric : Metric.values()) {
+                final long count = counters.get(metric);
+                if(count != 0) {
+                    final Long flushed = usageByMetric.get(metric);
+                    usageByMetric.put(metric, (flushed != null ? flushed : 0L) + count);
+                }
+            }
+        }
+        return usageByMetric;
+    }
+    //endregion
+
+    //region > flush, flushIfDue (programmatic)
+
+    /**
+     * Flushes usage if at least the flush threshold of requests have been made since the last flush.
+     */
+    @Programmatic
+    public void flushIfDue() {
+        final Counters counters = pending.get(clockService.now());
+        if(counters != null && counters.get(Metric.REQUESTS) >= flushThreshold) {
+            flush();
+        }
+    }
+
+    /**
+     * Adds the usage accumulated in memory to the persisted {@link GeocodingUsage}s.
+     *
+     * <p>
+     *     The counts of each date are incremented atomically (a JDOQL <tt>UPDATE ... SET count = count +
+     *     :delta</tt>, inserting the row if there is none yet) in a transaction of their own, so that they are
+     *     neither lost if the caller's transaction is rolled back nor overwritten by another node flushing
+     *     concurrently.  If the write fails, the usage is put back to be flushed next time.
+     * </p>
+     *
+     * <p>
+     *     Because of that separate transaction, this should not be called within a transaction that has itself
+     *     modified (and so may hold locks on) the {@link GeocodingUsage} table.  Failures are logged (and
+     *     {@link #getFlushFailures() counted}) rather than thrown.
+     * </p>
+     *
+     * @return the number of {@link GeocodingUsage}s updated.
+     */
+    @Programmatic
+    public synchronized int flush() {
+        final LocalDate today = clockService.now();
+        int updated = 0;
+        for (final Map.Entry<LocalDate, Counters> entry : pending.entrySet()) {
+            final LocalDate date = entry.getKey();
+            final Counters counters = entry.getValue();
+            if(!date.equals(today)) {
+                // no further usage will be recorded against this date (modulo a race with a lookup that started
+                // before midnight, which will just be flushed next time)
+                pending.remove(date, counters);
+            }
+            final Map<Metric, Long> deltas = new EnumMap<>(Metric.class);
+            for (final Metric metric : Metric.values()) {
+                final long delta = counters.drain(metric);
+                if(delta != 0) {
+                    deltas.put(metric, delta);
+                }
+            }
+            if(deltas.isEmpty()) {
+                continue;
+            }
+            final Map<Metric, Long> counts;
+            try {
+                counts = addToUsage(date, deltas);
+            } catch (final RuntimeException ex) {
+                flushFailures.incrementAndGet();
+                LOG.warn("Could not flush geocoding usage for {}; will retry on next flush", date, ex);
+                final Counters restored = countersFor(date);
+                for (final Map.Entry<Metric, Long> delta : deltas.entrySet()) {
+                    restored.add(delta.getKey(), delta.getValue());
+                }
+                continue;
+            }
+            final Long requests = counts.get(Metric.REQUESTS);
+            if(requests != null && date.equals(flushedDate)) {
+                // also picks up the requests flushed by other nodes
+                flushedRequests = requests;
+            }
+            updated += deltas.size();
+        }
+        if(updated > 0) {
+            // any already loaded are now stale
+            isisJdoSupport.getJdoPersistenceManager().evictAll(false, GeocodingUsage.class);
+        }
+        return updated;
+    }
+
+    /**
+     * The number of flushes that failed (their usage being put back to be flushed next time) since startup.
+     */
+    @Programmatic
+    public long getFlushFailures() {
+        return flushFailures.get();
+    }
+
+    /**
+     * @return the updated counts.
+     */
+    private Map<Metric, Long> addToUsage(final LocalDate date, final Map<Metric, Long> deltas) {
+        try {
+            return addToUsageInOwnTransaction(date, deltas);
+        } catch (final JDOException ex) {
+            // most likely another node inserted the first row for the date and metric concurrently, in which case
+            // it will now be updated instead
+            return addToUsageInOwnTransaction(date, deltas);
+        }
+    }
+
+    private Map<Metric, Long> addToUsageInOwnTransaction(final LocalDate date, final Map<Metric, Long> deltas) {
+        final PersistenceManager pm =
+                isisJdoSupport.getJdoPersistenceManager().getPersistenceManagerFactory().getPersistenceManager();
+        final Transaction transaction = pm.currentTransaction();
+        try {
+            transaction.begin();
+            final Map<Metric, Long> counts = new EnumMap<>(Metric.class);
+            for (final Map.Entry<Metric, Long> delta : deltas.entrySet()) {
+                counts.put(delta.getKey(), addToUsage(pm, date, delta.getKey(), delta.getValue()));
+            }
+            transaction.commit();
+            return counts;
+        } finally {
+            if(transaction.isActive()) {
+                transaction.rollback();
+            }
+            pm.close();
+        }
+    }
+
+    private static long addToUsage(
+            final PersistenceManager pm,
+            final LocalDate date,
+            final Metric metric,
+            final long delta) {
+        final Query update = pm.newNamedQuery(GeocodingUsage.class, "addToCount");
+        final long updated;
+        try {
+            updated = ((Number) update.executeWithMap(ImmutableMap.<String, Object>of(
+                    "delta", delta,
+                    "date", date,
+                    "metric", metric))).longValue();
+        } finally {
+            update.closeAll();
+        }
+        if(updated == 0) {
+            final GeocodingUsage usage = new GeocodingUsage();
+            usage.setDate(date);
+            usage.setMetric(metric);
+            usage.setCount(delta);
+            pm.makePersistent(usage);
+            pm.flush();
+            return delta;
+        }
+        // read as a projection, so not from any (stale) cached instance
+        final Query query = pm.newNamedQuery(GeocodingUsage.class, "findByDateAndMetric");
+        query.setResult("count");
+        query.setUnique(true);
+        try {
+            return ((Number) query.executeWithMap(ImmutableMap.<String, Object>of(
+                    "date", date,
+                    "metric", metric))).longValue();
+        } finally {
+            query.closeAll();
+        }
+    }
+
+    private GeocodingUsage findUsage(final LocalDate date, final Metric metric) {
+        return repositoryService.firstMatch(
+                new QueryDefault<>(GeocodingUsage.class,
+                        "findByDateAndMetric",
+                        "date", date,
+                        "metric", metric));
+    }
+    //endregion
+
+    //region > helpers
+    private Counters countersFor(final LocalDate date) {
+        return pending.computeIfAbsent(date, d -> new Counters());
+    }
+
+    private static class Counters {
+        private final Map<Metric, LongAdder> adders = new EnumMap<>(Metric.class);
+
+        private Counters() {
+            for (final Metric metric : Metric.values()) {
+                adders.put(metric, new LongAdder());
+            }
+        }
+
+        void add(final Metric metric, final long delta) {
+            adders.get(metric).add(delta);
+        }
+
+        long get(final Metric metric) {
+            return adders.get(metric).sum();
+        }
+
+        /**
+         * Subtracts (rather than resets) what is returned, so that concurrent additions are never lost.
+         */
+        long drain(final Metric metric) {
+            final LongAdder adder = adders.get(metric);
+            final long sum = adder.sum();
+            adder.add(-sum);
+            return sum;
+        }
+    }
+    //endregion
+
+    //region > injected services
+    @Inject
+    ClockService clockService;
+    @Inject
+    ConfigurationService configurationService;
+    @Inject
+    RepositoryService repositoryService;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    //endregion
+
+}
@@ -54,6 +54,7 @@
 @javax.jdo.annotations.DatastoreIdentity(strategy = IdGeneratorStrategy.IDENTITY, column = "id")
 @javax.jdo.annotations.Inheritance(
         strategy = InheritanceStrategy.NEW_TABLE)
+@javax.jdo.annotations.Cacheable("true") // subtypes should also be annotated
 @javax.jdo.annotations.Queries({
         @javax.jdo.annotations.Query(
                 name = "findByCommunicationChannel", language = "JDOQL",
@@ -70,12 +71,89 @@
                 value = "SELECT "
                         + "FROM org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink "
                         + "WHERE ownerStr == :ownerStr "
-                        + "   && communicationChannelType == :communicationChannelType ")
+                        + "   && communicationChannelType == :communicationChannelType "),
+        @javax.jdo.annotations.Query(
+                name = "findByOwnerAndCommunicationChannelTypeAndPurposeCode", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink "
+                        + "WHERE ownerStr == :ownerStr "
+                        + "   && communicationChannelType == :communicationChannelType "
+                        + "   && communicationChannel.purposeCode == :purposeCode "),
+        @javax.jdo.annotations.Query(
+                name = "findByOwnersAndCommunicationChannelTypeAndPurposeCode", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink "
+                        + "WHERE :ownerStrs.contains(ownerStr) "
+                        + "   && communicationChannelType == :communicationChannelType "
+                        + "   && communicationChannel.purposeCode == :purposeCode "),
+        @javax.jdo.annotations.Query(
+                name = "findPrimaryByOwnerAndCommunicationChannelType", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink "
+                        + "WHERE ownerStr == :ownerStr "
+                        + "   && communicationChannelType == :communicationChannelType "
+                        + "   && primary == true "),
+        @javax.jdo.annotations.Query(
+                name = "findPrimaryByOwnersAndCommunicationChannelType", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink "
+                        + "WHERE :ownerStrs.contains(ownerStr) "
+                        + "   && communicationChannelType == :communicationChannelType "
+                        + "   && primary == true "),
+        @javax.jdo.annotations.Query(
+                name = "findWithoutPrimary", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink "
+                        + "WHERE primary == null "
+                        + "   && (SELECT count(l) "
+                        + "       FROM org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink l "
+                        + "       WHERE l.ownerStr == this.ownerStr "
+                        + "          && l.communicationChannelType == this.communicationChannelType "
+                        + "          && l.primary == true) == 0 "),
+        @javax.jdo.annotations.Query(
+                name = "findByCanonicalEmailAddress", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink "
+                        + "WHERE communicationChannel == ea "
+                        + "   && ea.canonicalEmailAddress == :canonicalEmailAddress "
+                        + "VARIABLES org.incode.module.commchannel.dom.impl.emailaddress.EmailAddress ea"),
+        @javax.jdo.annotations.Query(
+                name = "findByNormalisedPhoneOrFaxNumber", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink "
+                        + "WHERE communicationChannel == pn "
+                        + "   && pn.normalisedPhoneNumber == :normalisedPhoneNumber "
+                        + "VARIABLES org.incode.module.commchannel.dom.impl.phoneorfax.PhoneOrFaxNumber pn"),
+        @javax.jdo.annotations.Query(
+                name = "countByOwnersGroupByType", language = "JDOQL",
+                value = "SELECT communicationChannelType, count(this) "
+                        + "FROM org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink "
+                        + "WHERE :ownerStrs.contains(ownerStr) "
+                        + "GROUP BY communicationChannelType"),
+        @javax.jdo.annotations.Query(
+                name = "countByOwnersGroupByPurposeCode", language = "JDOQL",
+                value = "SELECT communicationChannel.purposeCode, count(this) "
+                        + "FROM org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink "
+                        + "WHERE :ownerStrs.contains(ownerStr) "
+                        + "   && communicationChannel.purposeCode != null "
+                        + "GROUP BY communicationChannel.purposeCode"),
+        @javax.jdo.annotations.Query(
+                name = "countByOwnersGroupByCountryCode", language = "JDOQL",
+                value = "SELECT pa.countryCode, count(this) "
+                        + "FROM org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink "
+                        + "WHERE :ownerStrs.contains(ownerStr) "
+                        + "   && communicationChannel == pa "
+                        + "   && pa.countryCode != null "
+                        + "VARIABLES org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress pa "
+                        + "GROUP BY pa.countryCode")
 })
 @javax.jdo.annotations.Indices({
         @javax.jdo.annotations.Index(
                 name = "CommunicationChannelOwnerLink_main_idx",
-                members = { "ownerStr", "communicationChannelType", "communicationChannel" })
+                members = { "ownerStr", "communicationChannelType", "communicationChannel" }),
+        @javax.jdo.annotations.Index(
+                name = "CommunicationChannelOwnerLink_primary_idx",
+                members = { "ownerStr", "communicationChannelType", "primary" })
 })
 @javax.jdo.annotations.Unique(name="CommunicationChannelOwnerLink_commchannel_UNQ", members = {"communicationChannel"})
 @DomainObject(
@@ -205,6 +283,38 @@ public static class CommunicationChannelDomainEvent extends PropertyDomainEvent<
     private CommunicationChannelType communicationChannelType;
     //endregion
 
+    //region > primary (property)
+    public static class PrimaryDomainEvent extends PropertyDomainEvent<Boolean> { }
+
+    /**
+     * Whether the {@link #getCommunicationChannel() communication channel} is the primary one of its owner for its
+     * {@link #getCommunicationChannelType() type}.
+     *
+     * <p>
+     *     Either <tt>true</tt> or <tt>null</tt>, never <tt>false</tt>.  Maintained by
+     *     {@link CommunicationChannelOwnerLinkRepository}, which ensures that at most one link per owner and type is
+     *     primary (a unique index cannot be used, as not all databases allow duplicate <tt>null</tt>s in one).
+     * </p>
+     */
+    @Getter
+    @Column(allowsNull = "true", name = "isPrimary")
+    @Property(
+            domainEvent = PrimaryDomainEvent.class,
+            editing = Editing.DISABLED
+    )
+    private Boolean primary;
+
+    @Programmatic
+    public void setPrimary(final Boolean primary) {
+        this.primary = Boolean.TRUE.equals(primary) ? Boolean.TRUE : null;
+    }
+
+    @Programmatic
+    public boolean isPrimaryLink() {
+        return Boolean.TRUE.equals(getPrimary());
+    }
+    //endregion
+
     //region > Functions
     public static class Functions {
         public static Function<CommunicationChannelOwnerLink, CommunicationChannel> communicationChannel() {
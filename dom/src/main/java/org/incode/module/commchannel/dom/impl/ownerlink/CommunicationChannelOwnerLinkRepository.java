@@ -17,9 +17,20 @@
  */
 package org.incode.module.commchannel.dom.impl.ownerlink;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import org.apache.isis.applib.annotation.DomainService;
 import org.apache.isis.applib.annotation.NatureOfService;
@@ -27,9 +38,11 @@
 import org.apache.isis.applib.query.QueryDefault;
 import org.apache.isis.applib.services.bookmark.Bookmark;
 import org.apache.isis.applib.services.bookmark.BookmarkService;
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
 import org.apache.isis.applib.services.repository.RepositoryService;
 
 import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelCacheService;
 import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
 
 @DomainService(
@@ -90,6 +103,262 @@ public List<CommunicationChannelOwnerLink> findByOwnerAndCommunicationChannelTyp
     }
     //endregion
 
+    //region > findByOwnerAndCommunicationChannelTypeAndPurposeCode (programmatic)
+    @Programmatic
+    public List<CommunicationChannelOwnerLink> findByOwnerAndCommunicationChannelTypeAndPurposeCode(
+            final Object owner,
+            final CommunicationChannelType communicationChannelType,
+            final Integer purposeCode) {
+        if(owner == null) {
+            return null;
+        }
+        if(communicationChannelType == null || purposeCode == null) {
+            return null;
+        }
+        final Bookmark bookmark = bookmarkService.bookmarkFor(owner);
+        if(bookmark == null) {
+            return null;
+        }
+        final String ownerStr = bookmark.toString();
+        return repositoryService.allMatches(
+                new QueryDefault<>(CommunicationChannelOwnerLink.class,
+                        "findByOwnerAndCommunicationChannelTypeAndPurposeCode",
+                        "ownerStr", ownerStr,
+                        "communicationChannelType", communicationChannelType,
+                        "purposeCode", purposeCode));
+    }
+
+    /**
+     * As {@link #findByOwnerAndCommunicationChannelTypeAndPurposeCode(Object, CommunicationChannelType, Integer)},
+     * but for many owners (identified by their bookmarks, as per {@link CommunicationChannelOwnerLink#getOwnerStr()})
+     * in a single query.
+     *
+     * <p>
+     *     The caller is responsible for keeping the number of owners per call reasonable (many databases limit the
+     *     number of values in an <tt>IN</tt> clause).
+     * </p>
+     */
+    @Programmatic
+    public List<CommunicationChannelOwnerLink> findByOwnerStrsAndCommunicationChannelTypeAndPurposeCode(
+            final Collection<String> ownerStrs,
+            final CommunicationChannelType communicationChannelType,
+            final Integer purposeCode) {
+        if(ownerStrs == null || ownerStrs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if(communicationChannelType == null || purposeCode == null) {
+            return Collections.emptyList();
+        }
+        return repositoryService.allMatches(
+                new QueryDefault<>(CommunicationChannelOwnerLink.class,
+                        "findByOwnersAndCommunicationChannelTypeAndPurposeCode",
+                        "ownerStrs", ownerStrs,
+                        "communicationChannelType", communicationChannelType,
+                        "purposeCode", purposeCode));
+    }
+    //endregion
+
+    //region > findByCanonicalEmailAddress, findByNormalisedPhoneOrFaxNumber (programmatic)
+
+    /**
+     * The links (of any owner) to {@link org.incode.module.commchannel.dom.impl.emailaddress.EmailAddress}es with the
+     * specified {@link org.incode.module.commchannel.dom.impl.emailaddress.EmailAddress#getCanonicalEmailAddress()
+     * canonical address}.
+     */
+    @Programmatic
+    public List<CommunicationChannelOwnerLink> findByCanonicalEmailAddress(final String canonicalEmailAddress) {
+        if(canonicalEmailAddress == null) {
+            return Collections.emptyList();
+        }
+        return repositoryService.allMatches(
+                new QueryDefault<>(CommunicationChannelOwnerLink.class,
+                        "findByCanonicalEmailAddress",
+                        "canonicalEmailAddress", canonicalEmailAddress));
+    }
+
+    /**
+     * The links (of any owner) to {@link org.incode.module.commchannel.dom.impl.phoneorfax.PhoneOrFaxNumber}s with the
+     * specified {@link org.incode.module.commchannel.dom.impl.phoneorfax.PhoneOrFaxNumber#getNormalisedPhoneNumber()
+     * normalised number}.
+     */
+    @Programmatic
+    public List<CommunicationChannelOwnerLink> findByNormalisedPhoneOrFaxNumber(final String normalisedPhoneNumber) {
+        if(normalisedPhoneNumber == null) {
+            return Collections.emptyList();
+        }
+        return repositoryService.allMatches(
+                new QueryDefault<>(CommunicationChannelOwnerLink.class,
+                        "findByNormalisedPhoneOrFaxNumber",
+                        "normalisedPhoneNumber", normalisedPhoneNumber));
+    }
+    //endregion
+
+    //region > findPrimary (programmatic)
+
+    /**
+     * The link to the {@link CommunicationChannelOwnerLink#getPrimary() primary} channel of the specified owner and type,
+     * if any.
+     *
+     * <p>
+     *     Should two transactions have concurrently made different channels primary, returns the first of them (as per
+     *     {@link CommunicationChannel#COMPARATOR}); the next call to {@link #makePrimary(CommunicationChannel)} for the
+     *     owner and type demotes the other.
+     * </p>
+     */
+    @Programmatic
+    public CommunicationChannelOwnerLink findPrimaryByOwnerAndCommunicationChannelType(
+            final Object owner,
+            final CommunicationChannelType communicationChannelType) {
+        if(owner == null || communicationChannelType == null) {
+            return null;
+        }
+        final Bookmark bookmark = bookmarkService.bookmarkFor(owner);
+        if(bookmark == null) {
+            return null;
+        }
+        return findPrimaryByOwnerStrAndCommunicationChannelType(bookmark.toString(), communicationChannelType);
+    }
+
+    private CommunicationChannelOwnerLink findPrimaryByOwnerStrAndCommunicationChannelType(
+            final String ownerStr,
+            final CommunicationChannelType communicationChannelType) {
+        return first(findAllPrimaryByOwnerStrAndCommunicationChannelType(ownerStr, communicationChannelType));
+    }
+
+    private List<CommunicationChannelOwnerLink> findAllPrimaryByOwnerStrAndCommunicationChannelType(
+            final String ownerStr,
+            final CommunicationChannelType communicationChannelType) {
+        return repositoryService.allMatches(
+                new QueryDefault<>(CommunicationChannelOwnerLink.class,
+                        "findPrimaryByOwnerAndCommunicationChannelType",
+                        "ownerStr", ownerStr,
+                        "communicationChannelType", communicationChannelType));
+    }
+
+    /**
+     * The first of the links, as per the {@link CommunicationChannel#COMPARATOR ordering} of their channels.
+     */
+    private static CommunicationChannelOwnerLink first(final Collection<CommunicationChannelOwnerLink> links) {
+        CommunicationChannelOwnerLink first = null;
+        for (final CommunicationChannelOwnerLink link : links) {
+            if(first == null ||
+               CommunicationChannel.COMPARATOR.compare(link.getCommunicationChannel(), first.getCommunicationChannel()) < 0) {
+                first = link;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * As {@link #findPrimaryByOwnerAndCommunicationChannelType(Object, CommunicationChannelType)}, but for many
+     * owners (identified by their bookmarks, as per {@link CommunicationChannelOwnerLink#getOwnerStr()}) in a single
+     * query; returns at most one link per owner.
+     */
+    @Programmatic
+    public List<CommunicationChannelOwnerLink> findPrimaryByOwnerStrsAndCommunicationChannelType(
+            final Collection<String> ownerStrs,
+            final CommunicationChannelType communicationChannelType) {
+        if(ownerStrs == null || ownerStrs.isEmpty() || communicationChannelType == null) {
+            return Collections.emptyList();
+        }
+        final List<CommunicationChannelOwnerLink> links = repositoryService.allMatches(
+                new QueryDefault<>(CommunicationChannelOwnerLink.class,
+                        "findPrimaryByOwnersAndCommunicationChannelType",
+                        "ownerStrs", ownerStrs,
+                        "communicationChannelType", communicationChannelType));
+        final Map<String, CommunicationChannelOwnerLink> linkByOwnerStr = Maps.newLinkedHashMap();
+        for (final CommunicationChannelOwnerLink link : links) {
+            final CommunicationChannelOwnerLink other = linkByOwnerStr.get(link.getOwnerStr());
+            linkByOwnerStr.put(link.getOwnerStr(), other == null ? link : first(Arrays.asList(other, link)));
+        }
+        return Lists.newArrayList(linkByOwnerStr.values());
+    }
+    //endregion
+
+    //region > makePrimary (programmatic)
+
+    /**
+     * Makes the specified channel the primary one of its owner (for its type), demoting any other primary.
+     */
+    @Programmatic
+    public void makePrimary(final CommunicationChannel communicationChannel) {
+        final CommunicationChannelOwnerLink link = getOwnerLink(communicationChannel);
+        if(link != null) {
+            makePrimary(link);
+        }
+    }
+
+    private void makePrimary(final CommunicationChannelOwnerLink link) {
+        final List<CommunicationChannelOwnerLink> primaryLinks =
+                findAllPrimaryByOwnerStrAndCommunicationChannelType(link.getOwnerStr(), link.getCommunicationChannelType());
+        for (final CommunicationChannelOwnerLink primaryLink : primaryLinks) {
+            if(primaryLink != link) {
+                primaryLink.setPrimary(null);
+            }
+        }
+        link.setPrimary(true);
+    }
+
+    /**
+     * Makes one of the remaining channels (the first, as per {@link CommunicationChannel#COMPARATOR}) of the
+     * owner and type primary, unless one already is.
+     *
+     * @return whether a channel was promoted.
+     */
+    private boolean promoteRemaining(final String ownerStr, final CommunicationChannelType communicationChannelType) {
+        final List<CommunicationChannelOwnerLink> links = repositoryService.allMatches(
+                new QueryDefault<>(CommunicationChannelOwnerLink.class,
+                        "findByOwnerAndCommunicationChannelType",
+                        "ownerStr", ownerStr,
+                        "communicationChannelType", communicationChannelType));
+        for (final CommunicationChannelOwnerLink link : links) {
+            if(link.isPrimaryLink()) {
+                return false;
+            }
+        }
+        final CommunicationChannelOwnerLink first = first(links);
+        if(first == null) {
+            return false;
+        }
+        first.setPrimary(true);
+        return true;
+    }
+
+    /**
+     * Chooses a {@link CommunicationChannelOwnerLink#getPrimary() primary} channel (the first, as per
+     * {@link CommunicationChannel#COMPARATOR}) for (up to <tt>batchSize</tt>) owners and types without one, ie whose
+     * channels were all added before primaries were introduced.
+     *
+     * @return the number of primaries chosen; call repeatedly (in separate transactions) until this returns 0.
+     */
+    @Programmatic
+    public int backfillPrimary(final int batchSize) {
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        final Query query = pm.newNamedQuery(CommunicationChannelOwnerLink.class, "findWithoutPrimary");
+        // each owner and type without a primary has at least one link in range, so every batch makes progress
+        query.setRange(0, batchSize);
+        final List<CommunicationChannelOwnerLink> links = Lists.newArrayList();
+        try {
+            for (final Object result : (Collection<?>) query.execute()) {
+                links.add((CommunicationChannelOwnerLink) result);
+            }
+        } finally {
+            query.closeAll();
+        }
+        final Set<String> done = Sets.newHashSet();
+        int promoted = 0;
+        for (final CommunicationChannelOwnerLink link : links) {
+            final String ownerStr = link.getOwnerStr();
+            final CommunicationChannelType type = link.getCommunicationChannelType();
+            if(done.add(ownerStr + "|" + type) && promoteRemaining(ownerStr, type)) {
+                communicationChannelCacheService.invalidate(link.getOwner());
+                promoted++;
+            }
+        }
+        return promoted;
+    }
+    //endregion
+
     //region > create (programmatic)
     @Programmatic
     public CommunicationChannelOwnerLink createLink(
@@ -109,7 +378,13 @@ public CommunicationChannelOwnerLink createLink(
         link.setOwner(owner);
         link.setOwnerStr(bookmark.toString());
 
+        // the owner's first channel of any given type becomes its primary
+        final CommunicationChannelOwnerLink primary =
+                findPrimaryByOwnerStrAndCommunicationChannelType(link.getOwnerStr(), type);
+        link.setPrimary(primary == null);
+
         repositoryService.persist(link);
+        communicationChannelCacheService.invalidate(owner);
 
         return link;
     }
@@ -139,9 +414,33 @@ public CommunicationChannelOwnerLink getOwnerLink(
 
     @Programmatic
     public void removeOwnerLink(final CommunicationChannel communicationChannel) {
+        removeOwnerLink(communicationChannel, null);
+    }
+
+    /**
+     * Removes the link of the specified channel; if it was its owner's primary then the successor (if specified, and
+     * of the same owner and type) becomes primary, otherwise the first of the remaining channels.
+     */
+    @Programmatic
+    public void removeOwnerLink(final CommunicationChannel communicationChannel, final CommunicationChannel successor) {
         final CommunicationChannelOwnerLink ownerLink = getOwnerLink(communicationChannel);
         if(ownerLink != null) {
+            communicationChannelCacheService.invalidate(ownerLink.getOwner());
+            final boolean wasPrimary = ownerLink.isPrimaryLink();
+            final String ownerStr = ownerLink.getOwnerStr();
+            final CommunicationChannelType type = ownerLink.getCommunicationChannelType();
             repositoryService.remove(ownerLink);
+            if(wasPrimary) {
+                final CommunicationChannelOwnerLink successorLink =
+                        successor != null ? getOwnerLink(successor) : null;
+                if(successorLink != null
+                        && ownerStr.equals(successorLink.getOwnerStr())
+                        && type == successorLink.getCommunicationChannelType()) {
+                    makePrimary(successorLink);
+                } else {
+                    promoteRemaining(ownerStr, type);
+                }
+            }
         }
     }
 
@@ -188,6 +487,12 @@ public Class<? extends CommunicationChannelOwnerLink> subtypeFor(final Class<?>
 
     @Inject
     List<SubtypeProvider> subtypeProviders;
+
+    @Inject
+    CommunicationChannelCacheService communicationChannelCacheService;
+
+    @Inject
+    IsisJdoSupport isisJdoSupport;
     //endregion
 
 
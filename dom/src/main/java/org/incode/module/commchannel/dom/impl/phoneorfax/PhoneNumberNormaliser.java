@@ -0,0 +1,114 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.phoneorfax;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import java.util.regex.Pattern;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Strings;
+
+import org.apache.isis.applib.annotation.DomainService;
+import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.services.config.ConfigurationService;
+
+import org.incode.module.commchannel.dom.CommChannelModule;
+
+/**
+ * Derives the {@link PhoneOrFaxNumber#getNormalisedPhoneNumber() normalised form} of a phone or fax number, used for
+ * exact matching irrespective of how the number was formatted (spaces, dashes and so on).
+ *
+ * <p>
+ *     Numbers in international format (a leading <tt>+</tt> or <tt>00</tt>) are normalised to E.164, eg
+ *     <tt>+442081111111</tt>, ignoring any trunk prefix written as <tt>(0)</tt>, as in <tt>+44 (0)20 8111 1111</tt>.
+ *     For other numbers, if a default country calling code is configured (property
+ *     <tt>...PhoneNumberNormaliser.defaultCountryCode</tt>, eg <tt>44</tt>; at most 3 digits) then any single leading
+ *     trunk <tt>0</tt> is dropped and the number is also normalised to E.164; otherwise just the digits are retained.
+ * </p>
+ *
+ * <p>
+ *     A number whose normalised form would not fit the
+ *     {@link CommChannelModule.JdoColumnLength#NORMALISED_PHONE_NUMBER column} is not normalised at all.
+ * </p>
+ */
+@DomainService(
+        nature = NatureOfService.DOMAIN
+)
+public class PhoneNumberNormaliser {
+
+    public String getId() {
+        return "incodeCommChannel.PhoneNumberNormaliser";
+    }
+
+    private static final CharMatcher DIGITS = CharMatcher.inRange('0', '9');
+    private static final Pattern TRUNK_PREFIX = Pattern.compile("\\(\\s*0\\s*\\)");
+    private static final int MAX_COUNTRY_CODE_LENGTH = 3;
+
+    String defaultCountryCode;
+
+    @PostConstruct
+    public void init() {
+        final String prefix = PhoneNumberNormaliser.class.getCanonicalName();
+        final String defaultCountryCodeStr = configurationService.getProperty(prefix + ".defaultCountryCode");
+        final String countryCode = DIGITS.retainFrom(Strings.nullToEmpty(defaultCountryCodeStr));
+        defaultCountryCode = !countryCode.isEmpty() && countryCode.length() <= MAX_COUNTRY_CODE_LENGTH
+                ? countryCode
+                : null;
+    }
+
+    @Programmatic
+    public String normalise(final String phoneNumber) {
+        if(phoneNumber == null) {
+            return null;
+        }
+        final String trimmed = phoneNumber.trim();
+        final String digits = DIGITS.retainFrom(trimmed);
+        if(digits.isEmpty()) {
+            return null;
+        }
+        final String normalised;
+        if(trimmed.startsWith("+") || digits.startsWith("00")) {
+            final String internationalDigits = DIGITS.retainFrom(withoutTrunkPrefix(trimmed));
+            final String e164Digits = !trimmed.startsWith("+") && internationalDigits.startsWith("00")
+                    ? internationalDigits.substring(2)
+                    : internationalDigits;
+            if(e164Digits.isEmpty()) {
+                return null;
+            }
+            normalised = "+" + e164Digits;
+        } else if(defaultCountryCode == null) {
+            normalised = digits;
+        } else {
+            normalised = "+" + defaultCountryCode + (digits.startsWith("0") ? digits.substring(1) : digits);
+        }
+        return normalised.length() <= CommChannelModule.JdoColumnLength.NORMALISED_PHONE_NUMBER
+                ? normalised
+                : null;
+    }
+
+    private static String withoutTrunkPrefix(final String phoneNumber) {
+        return TRUNK_PREFIX.matcher(phoneNumber).replaceAll("");
+    }
+
+    @Inject
+    ConfigurationService configurationService;
+
+}
@@ -27,7 +27,9 @@
 import org.apache.isis.applib.annotation.DomainObject;
 import org.apache.isis.applib.annotation.Editing;
 import org.apache.isis.applib.annotation.Optionality;
+import org.apache.isis.applib.annotation.Programmatic;
 import org.apache.isis.applib.annotation.Property;
+import org.apache.isis.applib.annotation.Where;
 
 import org.incode.module.commchannel.dom.CommChannelModule;
 import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
@@ -42,10 +44,30 @@
 // identityType=IdentityType.DATASTORE inherited from superclass
 @javax.jdo.annotations.Inheritance(strategy = InheritanceStrategy.SUPERCLASS_TABLE)
 // no @DatastoreIdentity nor @Version, since inherited from supertype
+@javax.jdo.annotations.Cacheable("true")
 @javax.jdo.annotations.Indices({
         @javax.jdo.annotations.Index(
                 name = "PhoneNumber_phoneNumber_IDX",
-                members = { "phoneNumber" })
+                members = { "phoneNumber" }),
+        @javax.jdo.annotations.Index(
+                name = "PhoneNumber_normalisedPhoneNumber_IDX",
+                members = { "normalisedPhoneNumber" })
+})
+@javax.jdo.annotations.Queries({
+        @javax.jdo.annotations.Query(
+                name = "findWithoutNormalisedPhoneNumber", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.phoneorfax.PhoneOrFaxNumber "
+                        + "WHERE normalisedPhoneNumber == null "
+                        + "   && phoneNumber != null"),
+        @javax.jdo.annotations.Query(
+                name = "findSummariesByNormalisedPhoneNumberPrefix", language = "JDOQL",
+                value = "SELECT JDOHelper.getObjectId(this), type, purposeCode, title, link.ownerStr "
+                        + "FROM org.incode.module.commchannel.dom.impl.phoneorfax.PhoneOrFaxNumber "
+                        + "WHERE link.communicationChannel == this "
+                        + "   && normalisedPhoneNumber.startsWith(:prefix) "
+                        + "VARIABLES org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink link "
+                        + "ORDER BY normalisedPhoneNumber")
 })
 @DomainObject(
         objectType = "incodeCommChannel.PhoneOrFaxNumber"
@@ -59,9 +81,10 @@ public class PhoneOrFaxNumber extends CommunicationChannel<PhoneOrFaxNumber> {
     //endregion
 
     //region > title
-    public String title() {
+    @Programmatic
+    @Override
+    protected String deriveTitle() {
         return getPhoneNumber();
-    //endregion
     }
     //endregion
 
@@ -79,6 +102,19 @@ public static class PhoneNumberDomainEvent extends PropertyDomainEvent<PhoneOrFa
     private String phoneNumber;
 
 
+    /**
+     * The {@link PhoneNumberNormaliser normalised} (digits-only or E.164) form of the {@link #getPhoneNumber()},
+     * used for matching; set whenever the phone number is.
+     */
+    @Getter @Setter
+    @javax.jdo.annotations.Column(
+            allowsNull = "true",
+            length = CommChannelModule.JdoColumnLength.NORMALISED_PHONE_NUMBER
+    )
+    @Property(hidden = Where.EVERYWHERE)
+    private String normalisedPhoneNumber;
+
+
 
     public static class Predicates {
         private Predicates(){}
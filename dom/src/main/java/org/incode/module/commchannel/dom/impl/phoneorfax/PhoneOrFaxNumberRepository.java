@@ -19,16 +19,22 @@
 package org.incode.module.commchannel.dom.impl.phoneorfax;
 
 import java.util.List;
+import java.util.Objects;
 
 import javax.inject.Inject;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 import org.apache.isis.applib.DomainObjectContainer;
 import org.apache.isis.applib.annotation.DomainService;
 import org.apache.isis.applib.annotation.NatureOfService;
 import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
 
 import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
 import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel_owner;
@@ -58,6 +64,7 @@ public PhoneOrFaxNumber newPhoneOrFax(
         final PhoneOrFaxNumber pn = container.newTransientInstance(PhoneOrFaxNumber.class);
         pn.setType(type);
         pn.setPhoneNumber(number);
+        pn.setNormalisedPhoneNumber(phoneNumberNormaliser.normalise(number));
         owner(pn).setOwner(owner);
 
         pn.setPurpose(description);
@@ -91,7 +98,60 @@ private Optional<PhoneOrFaxNumber> findByPhoneOrFaxNumber(final Object owner, fi
                 Iterables.transform(
                         links,
                         CommunicationChannelOwnerLink.Functions.communicationChannel(PhoneOrFaxNumber.class));
-        return Iterables.tryFind(phoneOrFaxNumbers, PhoneOrFaxNumber.Predicates.equalTo(phoneNumber, communicationChannelType));
+        final String normalisedPhoneNumber = phoneNumberNormaliser.normalise(phoneNumber);
+        return Iterables.tryFind(phoneOrFaxNumbers,
+                input -> Objects.equals(normalisedPhoneNumber, normalisedOf(input)) &&
+                         Objects.equals(communicationChannelType, input.getType()));
+    }
+
+    /**
+     * Falls back to normalising on the fly, for any number not yet backfilled.
+     */
+    private String normalisedOf(final PhoneOrFaxNumber phoneOrFaxNumber) {
+        final String normalisedPhoneNumber = phoneOrFaxNumber.getNormalisedPhoneNumber();
+        return normalisedPhoneNumber != null
+                ? normalisedPhoneNumber
+                : phoneNumberNormaliser.normalise(phoneOrFaxNumber.getPhoneNumber());
+    }
+    //endregion
+
+    //region > findOwnersByNumber (programmatic)
+
+    /**
+     * The owners (of any type) of the specified phone or fax number (however formatted), eg for caller ID; uses a
+     * single query (on the indexed <tt>normalisedPhoneNumber</tt> column, joined to the owner links).
+     */
+    @Programmatic
+    public List<Object> findOwnersByNumber(final String phoneNumber) {
+        final List<CommunicationChannelOwnerLink> links =
+                linkRepository.findByNormalisedPhoneOrFaxNumber(phoneNumberNormaliser.normalise(phoneNumber));
+        return Lists.newArrayList(Sets.newLinkedHashSet(
+                Iterables.transform(links, CommunicationChannelOwnerLink.Functions.owner())));
+    }
+    //endregion
+
+    //region > backfillNormalisedPhoneNumbers (programmatic)
+
+    /**
+     * Populates the {@link PhoneOrFaxNumber#getNormalisedPhoneNumber() normalised phone number} of (up to
+     * <tt>batchSize</tt>) numbers created before it was introduced.
+     *
+     * @return the number of phone/fax numbers updated; call repeatedly (in separate transactions) until this returns 0.
+     */
+    @Programmatic
+    public int backfillNormalisedPhoneNumbers(final int batchSize) {
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        final Query query = pm.newNamedQuery(PhoneOrFaxNumber.class, "findWithoutNormalisedPhoneNumber");
+        query.setRange(0, batchSize);
+        try {
+            final List<PhoneOrFaxNumber> phoneOrFaxNumbers = Lists.newArrayList((List<PhoneOrFaxNumber>) query.execute());
+            for (final PhoneOrFaxNumber phoneOrFaxNumber : phoneOrFaxNumbers) {
+                phoneOrFaxNumber.setNormalisedPhoneNumber(phoneNumberNormaliser.normalise(phoneOrFaxNumber.getPhoneNumber()));
+            }
+            return phoneOrFaxNumbers.size();
+        } finally {
+            query.closeAll();
+        }
     }
     //endregion
 
@@ -104,6 +164,10 @@ private CommunicationChannel_owner owner(final CommunicationChannel<?> cc) {
     CommunicationChannelOwnerLinkRepository linkRepository;
     @Inject
     DomainObjectContainer container;
+    @Inject
+    PhoneNumberNormaliser phoneNumberNormaliser;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
 
 
 }
@@ -20,6 +20,8 @@
 
 import java.util.List;
 
+import javax.inject.Inject;
+
 import org.apache.isis.applib.annotation.Action;
 import org.apache.isis.applib.annotation.Mixin;
 import org.apache.isis.applib.annotation.Parameter;
@@ -63,6 +65,7 @@ public static class DomainEvent extends PhoneOrFaxNumber.ActionDomainEvent<Phone
             final String phoneNumber) {
         this.phoneOrFaxNumber.setType(type);
         this.phoneOrFaxNumber.setPhoneNumber(phoneNumber);
+        this.phoneOrFaxNumber.setNormalisedPhoneNumber(phoneNumberNormaliser.normalise(phoneNumber));
 
         return this.phoneOrFaxNumber;
     }
@@ -79,5 +82,8 @@ public static class DomainEvent extends PhoneOrFaxNumber.ActionDomainEvent<Phone
         return this.phoneOrFaxNumber.getPhoneNumber();
     }
 
+    @Inject
+    PhoneNumberNormaliser phoneNumberNormaliser;
+
 
 }
@@ -52,6 +52,19 @@ public T getCommunicationChannelOwner() {
 
     //endregion
 
+    //region > phoneOrFaxNumber
+    private PhoneOrFaxNumber phoneOrFaxNumber;
+
+    /**
+     * The phone or fax number added, once the action has been invoked (eg for subscribers to the
+     * {@link DomainEvent}).
+     */
+    @Programmatic
+    public PhoneOrFaxNumber getPhoneOrFaxNumber() {
+        return phoneOrFaxNumber;
+    }
+    //endregion
+
     //region > $$
 
     public static class DomainEvent extends CommChannelModule.ActionDomainEvent
@@ -81,7 +94,8 @@ public static class DomainEvent extends CommChannelModule.ActionDomainEvent
             @Parameter(optionality = Optionality.OPTIONAL)
             @ParameterLayout(named = "Notes", multiLine = 10)
             final String notes) {
-        phoneOrFaxNumberRepository.newPhoneOrFax(this.communicationChannelOwner, type, phoneNumber, purpose, notes);
+        this.phoneOrFaxNumber =
+                phoneOrFaxNumberRepository.newPhoneOrFax(this.communicationChannelOwner, type, phoneNumber, purpose, notes);
         return this.communicationChannelOwner;
     }
 
@@ -18,8 +18,14 @@
  */
 package org.incode.module.commchannel.dom.impl.postaladdress;
 
+import java.sql.Timestamp;
+import java.util.Objects;
+
+import javax.inject.Inject;
 import javax.jdo.annotations.InheritanceStrategy;
 
+import com.google.common.base.Joiner;
+
 import org.apache.commons.lang3.StringUtils;
 
 import org.apache.isis.applib.annotation.DomainObject;
@@ -29,11 +35,13 @@
 import org.apache.isis.applib.annotation.Property;
 import org.apache.isis.applib.annotation.PropertyLayout;
 import org.apache.isis.applib.annotation.Where;
+import org.apache.isis.applib.services.eventbus.EventBusService;
 import org.apache.isis.applib.util.TitleBuffer;
 
 import org.isisaddons.wicket.gmap3.cpt.applib.Location;
 
 import org.incode.module.commchannel.dom.CommChannelModule;
+import org.incode.module.commchannel.dom.api.GeocodedAddress;
 import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
 
 import lombok.Getter;
@@ -43,19 +51,117 @@
         schema = "incodeCommChannel"
 )
 @javax.jdo.annotations.Inheritance(strategy = InheritanceStrategy.SUPERCLASS_TABLE)
+@javax.jdo.annotations.Cacheable("true")
+@javax.jdo.annotations.FetchGroups({
+        @javax.jdo.annotations.FetchGroup(
+                name = PostalAddress.FETCH_GROUP_GEOCODE,
+                members = {
+                        @javax.jdo.annotations.Persistent(name = "geocode"),
+                        @javax.jdo.annotations.Persistent(name = "legacyAddressComponents"),
+                        @javax.jdo.annotations.Persistent(name = "legacyGeocodeApiResponseAsJson")
+                })
+})
 @javax.jdo.annotations.Indices({
         @javax.jdo.annotations.Index(
                 name = "PostalAddress_formattedAddress_idx",
                 members = { "formattedAddress" }),
         @javax.jdo.annotations.Index (
                 name = "PostalAddress_unq_idx",
-                members = { "placeId" })
+                members = { "placeId" }),
+        @javax.jdo.annotations.Index(
+                name = "PostalAddress_postalCode_IDX",
+                members = { "postalCode" }),
+        @javax.jdo.annotations.Index(
+                name = "PostalAddress_locality_IDX",
+                members = { "locality" }),
+        @javax.jdo.annotations.Index(
+                name = "PostalAddress_postalTown_IDX",
+                members = { "postalTown" }),
+        @javax.jdo.annotations.Index(
+                name = "PostalAddress_administrativeAreaLevel1_IDX",
+                members = { "administrativeAreaLevel1" }),
+        @javax.jdo.annotations.Index(
+                name = "PostalAddress_administrativeAreaLevel2_IDX",
+                members = { "administrativeAreaLevel2" }),
+        @javax.jdo.annotations.Index(
+                name = "PostalAddress_countryCode_IDX",
+                members = { "countryCode" }),
+        @javax.jdo.annotations.Index(
+                name = "PostalAddress_geocodedPostalCode_IDX",
+                members = { "geocodedPostalCode" }),
+        @javax.jdo.annotations.Index(
+                name = "PostalAddress_geocodedAt_IDX",
+                members = { "geocodedAt" })
+})
+@javax.jdo.annotations.Queries({
+        @javax.jdo.annotations.Query(
+                name = "findGeocodedByPostalCode", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress "
+                        + "WHERE postalCode == :postalCode "
+                        + "   && placeId != null"),
+        @javax.jdo.annotations.Query(
+                name = "findByGeocode", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress "
+                        + "WHERE geocode == :geocode"),
+        @javax.jdo.annotations.Query(
+                name = "findWithLegacyGeocode", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress "
+                        + "WHERE placeId != null "
+                        + "   && geocode == null"),
+        @javax.jdo.annotations.Query(
+                name = "findWithoutCountryCode", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress "
+                        + "WHERE placeId != null "
+                        + "   && countryCode == null"),
+        @javax.jdo.annotations.Query(
+                name = "findGeocodedBefore", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress "
+                        + "WHERE placeId != null "
+                        + "   && (geocodedAt == null || geocodedAt < :geocodedBefore) "
+                        + "ORDER BY geocodedAt ASC NULLS FIRST"),
+        @javax.jdo.annotations.Query(
+                name = "findByLocality", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress "
+                        + "WHERE locality == :locality "
+                        + "   || postalTown == :locality"),
+        @javax.jdo.annotations.Query(
+                name = "findByAdministrativeArea", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress "
+                        + "WHERE administrativeAreaLevel1 == :administrativeArea "
+                        + "   || administrativeAreaLevel2 == :administrativeArea"),
+        @javax.jdo.annotations.Query(
+                name = "findByCountryCode", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress "
+                        + "WHERE countryCode == :countryCode"),
+        @javax.jdo.annotations.Query(
+                name = "countByCountryCode", language = "JDOQL",
+                value = "SELECT countryCode, count(this) "
+                        + "FROM org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress "
+                        + "WHERE countryCode != null "
+                        + "GROUP BY countryCode "
+                        + "ORDER BY countryCode")
 })
 @DomainObject(
         objectType = "incodeCommChannel.PostalAddress"
 )
 public class PostalAddress extends CommunicationChannel<PostalAddress> {
 
+    /**
+     * The {@link #getAddressComponents() address components} and the
+     * {@link #getGeocodeApiResponseAsJson() geocode response} CLOBs (held by the shared {@link #getGeocode() geocode})
+     * are not in the default fetch group, so are only loaded lazily (eg when rendering the object form or
+     * {@link PostalAddress_downloadGeocode downloading}); add this fetch group to the fetch plan to load them eagerly.
+     */
+    public static final String FETCH_GROUP_GEOCODE = "PostalAddress_geocode";
+
     //region > events
     public static abstract class PropertyDomainEvent<S,T> extends CommChannelModule.PropertyDomainEvent<S, T> { }
     public static abstract class CollectionDomainEvent<S,T> extends CommChannelModule.CollectionDomainEvent<S, T> { }
@@ -63,23 +169,53 @@ public class PostalAddress extends CommunicationChannel<PostalAddress> {
     //endregion
 
     //region > title
-    public String title() {
-        if(getPlaceId() != null) {
-            return getFormattedAddress();
+    @Programmatic
+    @Override
+    protected String deriveTitle() {
+        return titleOf(
+                getPlaceId(), getFormattedAddress(),
+                getAddressLine1(), getAddressLine2(), getAddressLine3(), getAddressLine4(),
+                getPostalCode(), getCountry());
+    }
+
+    private static String titleOf(
+            final String placeId,
+            final String formattedAddress,
+            final String addressLine1,
+            final String addressLine2,
+            final String addressLine3,
+            final String addressLine4,
+            final String postalCode,
+            final String country) {
+        if(placeId != null) {
+            return formattedAddress;
         } else {
             final TitleBuffer buf = new TitleBuffer();
-            buf.append(getAddressLine1())
-                .append(",", getAddressLine2())
-                .append(",", getAddressLine3())
-                .append(",", getAddressLine4())
-                .append(",", getPostalCode())
-                .append(",", getCountry())
+            buf.append(addressLine1)
+                .append(",", addressLine2)
+                .append(",", addressLine3)
+                .append(",", addressLine4)
+                .append(",", postalCode)
+                .append(",", country)
             ;
             return StringUtils.abbreviateMiddle(buf.toString(), "...", 30);
         }
     }
     //endregion
 
+    //region > searchableText
+    /**
+     * Also indexes all of the address lines (the title is abbreviated) and the geocoded formatted address.
+     */
+    @Programmatic
+    @Override
+    public String searchableText() {
+        return Joiner.on(' ').skipNulls().join(
+                getAddressLine1(), getAddressLine2(), getAddressLine3(), getAddressLine4(),
+                getPostalCode(), getCountry(), getFormattedAddress(), getNotes());
+    }
+    //endregion
+
 
     public static class AddressLine1DomainEvent extends PropertyDomainEvent<PostalAddress,String> { }
     @Getter @Setter
@@ -163,6 +299,14 @@ public static class CountryDomainEvent extends PropertyDomainEvent<PostalAddress
 
 
     public static class FormattedAddressDomainEvent extends PropertyDomainEvent<PostalAddress, String> {}
+    /**
+     * The address as formatted by the geocoding API.
+     *
+     * <p>
+     *     Any change made through {@link #updateFormattedAddress(String)} is announced by a
+     *     {@link FormattedAddressChangedEvent}.
+     * </p>
+     */
     @Getter @Setter
     @javax.jdo.annotations.Column(allowsNull = "false", length = CommChannelModule.JdoColumnLength.FORMATTED_ADDRESS)
     @Property(
@@ -170,6 +314,34 @@ public static class FormattedAddressDomainEvent extends PropertyDomainEvent<Post
     )
     private String formattedAddress;
 
+    @Programmatic
+    public void updateFormattedAddress(final String formattedAddress) {
+        if(Objects.equals(getFormattedAddress(), formattedAddress)) {
+            return;
+        }
+        setFormattedAddress(formattedAddress);
+        if(eventBusService != null) {
+            eventBusService.post(new FormattedAddressChangedEvent(this));
+        }
+    }
+
+    /**
+     * Posted whenever the {@link #getFormattedAddress() formatted address} of a postal address changes as a result of
+     * being (re)geocoded or cleared, whether through an action or programmatically (eg when refreshed, or when the
+     * geocode it shares with other addresses changes).
+     */
+    public static class FormattedAddressChangedEvent {
+        private final PostalAddress postalAddress;
+
+        public FormattedAddressChangedEvent(final PostalAddress postalAddress) {
+            this.postalAddress = postalAddress;
+        }
+
+        public PostalAddress getPostalAddress() {
+            return postalAddress;
+        }
+    }
+
 
     public static class PlaceIdDomainEvent extends PropertyDomainEvent<PostalAddress,String> {}
     @Getter @Setter
@@ -193,21 +365,244 @@ public static class LatLngDomainEvent extends PropertyDomainEvent<PostalAddress,
     private String latLng;
 
 
-    public static class AddressComponentsDomainEvent extends PropertyDomainEvent<PostalAddress,PostalAddress> { }
+    public static class GeocodedAtDomainEvent extends PropertyDomainEvent<PostalAddress,Timestamp> { }
+    /**
+     * When the geocode was last looked up (or, if {@link PostalAddressGeocodeMatcher reused}, when the address it was
+     * reused from was looked up); <tt>null</tt> if geocoded before this was recorded.
+     */
+    @Getter @Setter
+    @javax.jdo.annotations.Column(allowsNull = "true")
+    @Property(
+            domainEvent = GeocodedAtDomainEvent.class,
+            editing = Editing.DISABLED
+    )
+    private Timestamp geocodedAt;
+
+
+    public static class LocalityDomainEvent extends PropertyDomainEvent<PostalAddress,String> { }
+    /**
+     * The locality (city or town), as geocoded; <tt>null</tt> if not geocoded.
+     */
+    @Getter @Setter
+    @javax.jdo.annotations.Column(allowsNull = "true", length = CommChannelModule.JdoColumnLength.ADDRESS_COMPONENT)
+    @Property(
+            domainEvent = LocalityDomainEvent.class,
+            editing = Editing.DISABLED
+    )
+    private String locality;
+
+
+    public static class PostalTownDomainEvent extends PropertyDomainEvent<PostalAddress,String> { }
+    /**
+     * The postal town (UK and Sweden only), as geocoded.
+     */
     @Getter @Setter
-    @javax.jdo.annotations.Column(allowsNull="true", jdbcType="CLOB")
+    @javax.jdo.annotations.Column(allowsNull = "true", length = CommChannelModule.JdoColumnLength.ADDRESS_COMPONENT)
+    @Property(
+            domainEvent = PostalTownDomainEvent.class,
+            editing = Editing.DISABLED
+    )
+    private String postalTown;
+
+
+    public static class AdministrativeAreaLevel1DomainEvent extends PropertyDomainEvent<PostalAddress,String> { }
+    /**
+     * The first-order administrative area (eg state, or UK constituent country), as geocoded.
+     */
+    @Getter @Setter
+    @javax.jdo.annotations.Column(allowsNull = "true", length = CommChannelModule.JdoColumnLength.ADDRESS_COMPONENT)
+    @Property(
+            domainEvent = AdministrativeAreaLevel1DomainEvent.class,
+            editing = Editing.DISABLED
+    )
+    private String administrativeAreaLevel1;
+
+
+    public static class AdministrativeAreaLevel2DomainEvent extends PropertyDomainEvent<PostalAddress,String> { }
+    /**
+     * The second-order administrative area (eg county), as geocoded.
+     */
+    @Getter @Setter
+    @javax.jdo.annotations.Column(allowsNull = "true", length = CommChannelModule.JdoColumnLength.ADDRESS_COMPONENT)
+    @Property(
+            domainEvent = AdministrativeAreaLevel2DomainEvent.class,
+            editing = Editing.DISABLED
+    )
+    private String administrativeAreaLevel2;
+
+
+    public static class CountryCodeDomainEvent extends PropertyDomainEvent<PostalAddress,String> { }
+    /**
+     * The ISO 3166-1 alpha-2 code of the country, as geocoded; <tt>null</tt> if not geocoded, or if the geocode did not
+     * identify a (valid) country.
+     *
+     * <p>
+     *     Any change made through {@link #updateAddressComponents(GeocodedAddress)} or
+     *     {@link #copyAddressComponentsFrom(PostalAddress)} is announced by a {@link CountryCodeChangedEvent}.
+     * </p>
+     */
+    @Getter @Setter
+    @javax.jdo.annotations.Column(allowsNull = "true", length = CommChannelModule.JdoColumnLength.COUNTRY_CODE)
+    @Property(
+            domainEvent = CountryCodeDomainEvent.class,
+            editing = Editing.DISABLED
+    )
+    private String countryCode;
+
+
+    public static class GeocodedPostalCodeDomainEvent extends PropertyDomainEvent<PostalAddress,String> { }
+    /**
+     * The postal code as geocoded, which may differ from (or complete) the {@link #getPostalCode() postal code}
+     * entered.
+     */
+    @Getter @Setter
+    @javax.jdo.annotations.Column(allowsNull = "true", length = CommChannelModule.JdoColumnLength.POSTAL_CODE)
+    @Property(
+            domainEvent = GeocodedPostalCodeDomainEvent.class,
+            editing = Editing.DISABLED
+    )
+    private String geocodedPostalCode;
+
+
+    /**
+     * Copies the key address components of the geocoded address into their own (indexed) columns, or clears them if
+     * <tt>null</tt>.
+     *
+     * <p>
+     *     Values too long for their column are truncated; a country code that is not ISO 3166-1 alpha-2 is ignored.
+     * </p>
+     */
+    @Programmatic
+    public void updateAddressComponents(final GeocodedAddress geocodedAddress) {
+        if(geocodedAddress == null) {
+            setLocality(null);
+            setPostalTown(null);
+            setAdministrativeAreaLevel1(null);
+            setAdministrativeAreaLevel2(null);
+            updateCountryCode(null);
+            setGeocodedPostalCode(null);
+            return;
+        }
+        final int addressComponentLength = CommChannelModule.JdoColumnLength.ADDRESS_COMPONENT;
+        setLocality(truncate(geocodedAddress.getLocality(), addressComponentLength));
+        setPostalTown(truncate(geocodedAddress.getPostalTown(), addressComponentLength));
+        setAdministrativeAreaLevel1(truncate(geocodedAddress.getAdministrativeAreaLevel1(), addressComponentLength));
+        setAdministrativeAreaLevel2(truncate(geocodedAddress.getAdministrativeAreaLevel2(), addressComponentLength));
+        updateCountryCode(countryCodeOf(geocodedAddress.getCountryCode()));
+        setGeocodedPostalCode(truncate(geocodedAddress.getPostalCode(), CommChannelModule.JdoColumnLength.POSTAL_CODE));
+    }
+
+    private static String truncate(final String value, final int length) {
+        return value != null && value.length() > length ? value.substring(0, length) : value;
+    }
+
+    private static String countryCodeOf(final String countryCode) {
+        return countryCode != null && countryCode.matches("[A-Za-z]{2}") ? countryCode.toUpperCase() : null;
+    }
+
+    @Programmatic
+    public void copyAddressComponentsFrom(final PostalAddress other) {
+        setLocality(other.getLocality());
+        setPostalTown(other.getPostalTown());
+        setAdministrativeAreaLevel1(other.getAdministrativeAreaLevel1());
+        setAdministrativeAreaLevel2(other.getAdministrativeAreaLevel2());
+        updateCountryCode(other.getCountryCode());
+        setGeocodedPostalCode(other.getGeocodedPostalCode());
+    }
+
+    private void updateCountryCode(final String countryCode) {
+        final String previousCountryCode = getCountryCode();
+        if(Objects.equals(previousCountryCode, countryCode)) {
+            return;
+        }
+        setCountryCode(countryCode);
+        if(eventBusService != null) {
+            eventBusService.post(new CountryCodeChangedEvent(this, previousCountryCode, countryCode));
+        }
+    }
+
+    /**
+     * Posted whenever the {@link #getCountryCode() country code} of a postal address changes as a result of being
+     * (re)geocoded or cleared, whether through an action or programmatically (eg when refreshed or backfilled).
+     */
+    public static class CountryCodeChangedEvent {
+        private final PostalAddress postalAddress;
+        private final String previousCountryCode;
+        private final String countryCode;
+
+        public CountryCodeChangedEvent(
+                final PostalAddress postalAddress,
+                final String previousCountryCode,
+                final String countryCode) {
+            this.postalAddress = postalAddress;
+            this.previousCountryCode = previousCountryCode;
+            this.countryCode = countryCode;
+        }
+
+        public PostalAddress getPostalAddress() {
+            return postalAddress;
+        }
+
+        public String getPreviousCountryCode() {
+            return previousCountryCode;
+        }
+
+        public String getCountryCode() {
+            return countryCode;
+        }
+    }
+
+
+    public static class GeocodeDomainEvent extends PropertyDomainEvent<PostalAddress,PostalAddressGeocode> { }
+    /**
+     * The geocode response for the {@link #getPlaceId() place}, shared with every other postal address that resolves
+     * to the same location.
+     */
+    @Getter @Setter
+    @javax.jdo.annotations.Column(allowsNull = "true", name = "geocodeId")
+    @Property(
+            domainEvent = GeocodeDomainEvent.class,
+            hidden = Where.EVERYWHERE
+    )
+    private PostalAddressGeocode geocode;
+
+
+    /**
+     * The address components of postal addresses geocoded before the {@link #getGeocode() geocode} was shared;
+     * moved across by {@link PostalAddressRepository#migrateLegacyGeocodes(int)}.
+     */
+    @Getter @Setter
+    @javax.jdo.annotations.Column(allowsNull="true", jdbcType="CLOB", name = "addressComponents")
+    @javax.jdo.annotations.Persistent(defaultFetchGroup = "false")
+    @javax.jdo.annotations.Cacheable("false")
+    @Property(hidden = Where.EVERYWHERE)
+    private String legacyAddressComponents;
+
+
+    /**
+     * As {@link #getLegacyAddressComponents()}, for the geocode response.
+     */
+    @Getter @Setter
+    @javax.jdo.annotations.Column(allowsNull="true", jdbcType="CLOB", name = "geocodeApiResponseAsJson")
+    @javax.jdo.annotations.Persistent(defaultFetchGroup = "false")
+    @javax.jdo.annotations.Cacheable("false")
+    @Property(hidden = Where.EVERYWHERE)
+    private String legacyGeocodeApiResponseAsJson;
+
+
+    public static class AddressComponentsDomainEvent extends PropertyDomainEvent<PostalAddress,PostalAddress> { }
     @Property(
             domainEvent = AddressComponentsDomainEvent.class,
-            editing = Editing.DISABLED,
             optionality = Optionality.OPTIONAL
     )
     @PropertyLayout(multiLine = 10)
-    private String addressComponents;
+    public String getAddressComponents() {
+        final PostalAddressGeocode geocode = getGeocode();
+        return geocode != null ? geocode.getAddressComponents() : getLegacyAddressComponents();
+    }
 
 
     public static class GeocodeApiResponseAsJsonDomainEvent extends PropertyDomainEvent<PostalAddress,String> { }
-    @Getter @Setter
-    @javax.jdo.annotations.Column(allowsNull="true", jdbcType="CLOB")
     @Property(
             domainEvent = GeocodeApiResponseAsJsonDomainEvent.class,
             hidden = Where.EVERYWHERE
@@ -215,7 +610,22 @@ public static class GeocodeApiResponseAsJsonDomainEvent extends PropertyDomainEv
     @PropertyLayout(
             multiLine = 9
     )
-    private String geocodeApiResponseAsJson;
+    public String getGeocodeApiResponseAsJson() {
+        final PostalAddressGeocode geocode = getGeocode();
+        return geocode != null ? geocode.getApiResponseAsJson() : getLegacyGeocodeApiResponseAsJson();
+    }
+
+
+    /**
+     * Points this address at the shared geocode (or clears it, if <tt>null</tt>), discarding any legacy copy of the
+     * geocode response held directly by this address.
+     */
+    @Programmatic
+    public void updateGeocode(final PostalAddressGeocode geocode) {
+        setGeocode(geocode);
+        setLegacyAddressComponents(null);
+        setLegacyGeocodeApiResponseAsJson(null);
+    }
 
 
     //region > Locatable API
@@ -227,4 +637,9 @@ public Location getLocation() {
     }
     //endregion
 
+    //region > injected services
+    @Inject
+    private EventBusService eventBusService;
+    //endregion
+
 }
@@ -0,0 +1,171 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.postaladdress;
+
+import javax.jdo.annotations.Column;
+import javax.jdo.annotations.IdGeneratorStrategy;
+import javax.jdo.annotations.IdentityType;
+import javax.jdo.annotations.Persistent;
+import javax.jdo.annotations.VersionStrategy;
+
+import org.apache.isis.applib.annotation.DomainObject;
+import org.apache.isis.applib.annotation.Editing;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.annotation.Property;
+import org.apache.isis.applib.annotation.PropertyLayout;
+import org.apache.isis.applib.annotation.Title;
+import org.apache.isis.applib.annotation.Where;
+import org.apache.isis.applib.util.ObjectContracts;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The (bulky) results of geocoding a location, keyed by its {@link #getPlaceId() place id} and shared by every
+ * {@link PostalAddress} that resolves to that location.
+ *
+ * <p>
+ *     Maintained by {@link PostalAddressGeocodeRepository}; looking up the geocode of any one of those addresses
+ *     again updates this single row, and so all of the addresses referencing it.  A geocode no longer referenced by
+ *     any address is deleted.
+ * </p>
+ *
+ * <p>
+ *     The place id is indexed but not unique: two transactions geocoding the same (new) place concurrently will
+ *     each create a geocode for it, which the repository subsequently merges.
+ * </p>
+ */
+@javax.jdo.annotations.PersistenceCapable(
+        identityType = IdentityType.DATASTORE,
+        schema = "incodeCommChannel",
+        table = "PostalAddressGeocode"
+)
+@javax.jdo.annotations.DatastoreIdentity(strategy = IdGeneratorStrategy.IDENTITY, column = "id")
+@javax.jdo.annotations.Version(
+        strategy = VersionStrategy.VERSION_NUMBER,
+        column = "version")
+@javax.jdo.annotations.FetchGroups({
+        @javax.jdo.annotations.FetchGroup(
+                name = PostalAddress.FETCH_GROUP_GEOCODE,
+                members = {
+                        @javax.jdo.annotations.Persistent(name = "addressComponents"),
+                        @javax.jdo.annotations.Persistent(name = "apiResponseAsJson"),
+                        @javax.jdo.annotations.Persistent(name = "apiResponseCompressed")
+                })
+})
+@javax.jdo.annotations.Queries({
+        @javax.jdo.annotations.Query(
+                name = "findByPlaceId", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.postaladdress.PostalAddressGeocode "
+                        + "WHERE placeId == :placeId"),
+        @javax.jdo.annotations.Query(
+                name = "findWithUncompressedApiResponse", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.postaladdress.PostalAddressGeocode "
+                        + "WHERE apiResponseAsJson != null")
+})
+@javax.jdo.annotations.Indices({
+        @javax.jdo.annotations.Index(name = "PostalAddressGeocode_placeId_IDX", members = { "placeId" })
+})
+@DomainObject(
+        objectType = "incodeCommChannel.PostalAddressGeocode",
+        editing = Editing.DISABLED
+)
+public class PostalAddressGeocode implements Comparable<PostalAddressGeocode> {
+
+    @Title
+    @Getter @Setter
+    @Column(allowsNull = "false")
+    private String placeId;
+
+    @Getter @Setter
+    @Column(allowsNull = "true", jdbcType = "CLOB")
+    @Persistent(defaultFetchGroup = "false")
+    @javax.jdo.annotations.Cacheable("false")
+    @PropertyLayout(multiLine = 10)
+    private String addressComponents;
+
+    @Column(allowsNull = "true", jdbcType = "CLOB")
+    @Persistent(defaultFetchGroup = "false")
+    @javax.jdo.annotations.Cacheable("false")
+    private String apiResponseAsJson;
+
+    /**
+     * The response, decompressing it if it was stored {@link PostalAddressGeocodeCompressor compressed}.
+     */
+    @Property(hidden = Where.ALL_TABLES)
+    @PropertyLayout(multiLine = 9)
+    public String getApiResponseAsJson() {
+        return apiResponseCompressed != null
+                ? PostalAddressGeocodeCompressor.decompress(apiResponseCompressed)
+                : apiResponseAsJson;
+    }
+
+    /**
+     * Stores the response uncompressed (discarding any compressed copy).
+     */
+    public void setApiResponseAsJson(final String apiResponseAsJson) {
+        this.apiResponseAsJson = apiResponseAsJson;
+        this.apiResponseCompressed = null;
+    }
+
+    @Column(allowsNull = "true", jdbcType = "BLOB")
+    @Persistent(defaultFetchGroup = "false")
+    @javax.jdo.annotations.Cacheable("false")
+    private byte[] apiResponseCompressed;
+
+    /**
+     * A hash of the (uncompressed) response, so that the repository can tell whether a new response differs without
+     * loading (and decompressing) the stored one; <tt>null</tt> if stored before this was introduced.
+     */
+    @Getter @Setter
+    @Column(allowsNull = "true", length = 64)
+    @Property(hidden = Where.EVERYWHERE)
+    private String apiResponseHash;
+
+    /**
+     * The gzipped response, if stored {@link PostalAddressGeocodeCompressor compressed}.
+     */
+    @Programmatic
+    public byte[] getApiResponseCompressed() {
+        return apiResponseCompressed;
+    }
+
+    /**
+     * Stores the gzipped response (discarding any uncompressed copy).
+     */
+    @Programmatic
+    public void setApiResponseCompressed(final byte[] apiResponseCompressed) {
+        this.apiResponseCompressed = apiResponseCompressed;
+        this.apiResponseAsJson = null;
+    }
+
+    //region > toString, compareTo
+    @Override
+    public int compareTo(final PostalAddressGeocode other) {
+        return ObjectContracts.compare(this, other, "placeId");
+    }
+
+    @Override
+    public String toString() {
+        return ObjectContracts.toString(this, "placeId");
+    }
+    //endregion
+
+}
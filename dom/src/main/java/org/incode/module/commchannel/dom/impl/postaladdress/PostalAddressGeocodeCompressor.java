@@ -0,0 +1,220 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.postaladdress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+
+import org.apache.isis.applib.annotation.DomainService;
+import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.services.config.ConfigurationService;
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+import org.apache.isis.applib.services.xactn.TransactionService;
+
+import org.incode.module.commchannel.dom.CommChannelModule.Config;
+
+/**
+ * Optionally stores the (verbose) {@link PostalAddressGeocode#getApiResponseAsJson() geocode API response} gzipped,
+ * as a BLOB, rather than as a CLOB; the response is decompressed transparently when read.
+ *
+ * <p>
+ *     Configuration properties (all optional):
+ * </p>
+ * <ul>
+ *     <li><tt>...PostalAddressGeocodeCompressor.enabled</tt> - whether to compress responses as they are stored
+ *     (default <tt>false</tt>)</li>
+ * </ul>
+ *
+ * <p>
+ *     Responses stored before compression was enabled are compressed by {@link #compressAllExisting(int)}, exposed
+ *     to administrators in the demo app as the <i>Compress Geocode Responses</i> menu action.  There is no scheduled
+ *     job; applications wanting the migration to run unattended should call that method from their own scheduler.
+ * </p>
+ */
+@DomainService(
+        nature = NatureOfService.DOMAIN
+)
+public class PostalAddressGeocodeCompressor {
+
+    public String getId() {
+        return "incodeCommChannel.PostalAddressGeocodeCompressor";
+    }
+
+    private static final boolean DEFAULT_ENABLED = false;
+
+    private boolean enabled = DEFAULT_ENABLED;
+
+    private final AtomicLong responsesCompressed = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        final String prefix = PostalAddressGeocodeCompressor.class.getCanonicalName();
+        enabled = Config.parseBoolean(configurationService.getProperty(prefix + ".enabled"), DEFAULT_ENABLED);
+    }
+
+    @Programmatic
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //region > store, compressExisting (programmatic)
+
+    /**
+     * Stores the response in the geocode, compressed if {@link #isEnabled() enabled}.
+     */
+    @Programmatic
+    public void store(final PostalAddressGeocode geocode, final String apiResponseAsJson) {
+        if(enabled && apiResponseAsJson != null) {
+            final byte[] compressed = compress(apiResponseAsJson);
+            geocode.setApiResponseCompressed(compressed);
+            recordCompressed(apiResponseAsJson, compressed);
+        } else {
+            geocode.setApiResponseAsJson(apiResponseAsJson);
+        }
+    }
+
+    /**
+     * Compresses the response of (up to <tt>batchSize</tt>) geocodes still held uncompressed, irrespective of
+     * whether compression is {@link #isEnabled() enabled}.
+     *
+     * @return the number of geocodes compressed; call repeatedly (in separate transactions) until this returns 0.
+     *
+     * @see #getBytesSaved()
+     */
+    @Programmatic
+    public int compressExisting(final int batchSize) {
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        final Query query = pm.newNamedQuery(PostalAddressGeocode.class, "findWithUncompressedApiResponse");
+        query.setRange(0, batchSize);
+        final List<PostalAddressGeocode> geocodes = Lists.newArrayList();
+        try {
+            for (final Object result : (Collection<?>) query.execute()) {
+                geocodes.add((PostalAddressGeocode) result);
+            }
+        } finally {
+            query.closeAll();
+        }
+        for (final PostalAddressGeocode geocode : geocodes) {
+            final String apiResponseAsJson = geocode.getApiResponseAsJson();
+            final byte[] compressed = compress(apiResponseAsJson);
+            geocode.setApiResponseCompressed(compressed);
+            recordCompressed(apiResponseAsJson, compressed);
+        }
+        return geocodes.size();
+    }
+
+    /**
+     * Compresses the response of all geocodes still held uncompressed, {@link #compressExisting(int) in batches} of
+     * <tt>batchSize</tt>, committing each batch in its own transaction.
+     *
+     * @return the total number of geocodes compressed.
+     */
+    @Programmatic
+    public int compressAllExisting(final int batchSize) {
+        int total = 0;
+        int compressed;
+        while((compressed = compressExisting(batchSize)) > 0) {
+            total += compressed;
+            transactionService.nextTransaction();
+        }
+        return total;
+    }
+
+    private void recordCompressed(final String apiResponseAsJson, final byte[] compressed) {
+        responsesCompressed.incrementAndGet();
+        bytesSaved.addAndGet(apiResponseAsJson.getBytes(StandardCharsets.UTF_8).length - compressed.length);
+    }
+    //endregion
+
+    //region > compress, decompress (static)
+    static byte[] compress(final String str) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final OutputStream os = new GZIPOutputStream(baos)) {
+            os.write(str.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException(e); // will not happen, writing to memory
+        }
+        return baos.toByteArray();
+    }
+
+    static String decompress(final byte[] bytes) {
+        try (final InputStream is = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Geocode API response is not valid gzip", e);
+        }
+    }
+    //endregion
+
+    //region > statistics (programmatic)
+
+    /**
+     * The number of responses compressed, either as they were {@link #store(PostalAddressGeocode, String) stored} or
+     * by {@link #compressExisting(int)}, since startup or the last {@link #resetStatistics() reset}.
+     */
+    @Programmatic
+    public long getResponsesCompressed() {
+        return responsesCompressed.get();
+    }
+
+    /**
+     * The (UTF-8) bytes saved by compressing responses, either as they were
+     * {@link #store(PostalAddressGeocode, String) stored} or by {@link #compressExisting(int)}, since startup or the
+     * last {@link #resetStatistics() reset}.
+     */
+    @Programmatic
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    @Programmatic
+    public void resetStatistics() {
+        responsesCompressed.set(0);
+        bytesSaved.set(0);
+    }
+    //endregion
+
+    //region > injected services
+    @Inject
+    ConfigurationService configurationService;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    @Inject
+    TransactionService transactionService;
+    //endregion
+
+}
@@ -0,0 +1,341 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.postaladdress;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.apache.isis.applib.annotation.DomainService;
+import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.query.QueryDefault;
+import org.apache.isis.applib.services.config.ConfigurationService;
+import org.apache.isis.applib.services.repository.RepositoryService;
+
+import org.incode.module.commchannel.dom.CommChannelModule.Config;
+
+/**
+ * Avoids geocoding (calling the geocoding API for) a {@link PostalAddress} that is merely a spelling variant of
+ * another, already geocoded, address with the same postal code (eg "45 High St" vs "45 High Street").
+ *
+ * <p>
+ *     Addresses are normalised (lower-cased, split into lines at commas and each line into alphanumeric tokens,
+ *     common abbreviations expanded) and compared using the Dice coefficient of their token unigrams and bigrams.
+ *     Any numeric tokens (house numbers and so on) must match exactly, as must the street name: the tokens of any
+ *     line ending in a street type (eg "... Lane"), if both addresses have one.  If the similarity of the most similar
+ *     candidate is at least the threshold, then its geocode is reused.  Abbreviations that are ambiguous (eg "st" for
+ *     either "street" or "saint", or "n" for "north") are left as is, except that "st" is taken as "street" when it
+ *     ends a line (as in "45 High St").
+ * </p>
+ *
+ * <p>
+ *     Being a heuristic, matching is disabled unless explicitly enabled, and is never used when a user explicitly
+ *     {@link PostalAddress_lookupGeocode looks up} the geocode of an address.
+ * </p>
+ *
+ * <p>
+ *     Configuration properties (all optional):
+ * </p>
+ * <ul>
+ *     <li><tt>...PostalAddressGeocodeMatcher.enabled</tt> (default <tt>false</tt>)</li>
+ *     <li><tt>...PostalAddressGeocodeMatcher.threshold</tt> - between 0 and 1 (default 0.8)</li>
+ *     <li><tt>...PostalAddressGeocodeMatcher.maxCandidates</tt> - max number of geocoded addresses with the same
+ *     postal code to compare against (default 50)</li>
+ * </ul>
+ */
+@DomainService(
+        nature = NatureOfService.DOMAIN
+)
+public class PostalAddressGeocodeMatcher {
+
+    public String getId() {
+        return "incodeCommChannel.PostalAddressGeocodeMatcher";
+    }
+
+    private static final boolean DEFAULT_ENABLED = false;
+    private static final double DEFAULT_THRESHOLD = 0.8;
+    private static final int DEFAULT_MAX_CANDIDATES = 50;
+
+    private static final Splitter LINE_SPLITTER = Splitter.on(',').omitEmptyStrings();
+    private static final Splitter TOKEN_SPLITTER = Splitter.onPattern("[^\\p{L}\\p{Nd}]+").omitEmptyStrings();
+
+    private static final Map<String, String> ABBREVIATIONS = ImmutableMap.<String, String>builder()
+            .put("str", "street")
+            .put("rd", "road")
+            .put("ave", "avenue")
+            .put("av", "avenue")
+            .put("ln", "lane")
+            .put("dr", "drive")
+            .put("ct", "court")
+            .put("pl", "place")
+            .put("sq", "square")
+            .put("cres", "crescent")
+            .put("cl", "close")
+            .put("gdns", "gardens")
+            .put("blvd", "boulevard")
+            .put("hwy", "highway")
+            .put("pk", "park")
+            .put("ter", "terrace")
+            .put("terr", "terrace")
+            .put("apt", "apartment")
+            .put("bldg", "building")
+            .put("fl", "floor")
+            .put("mt", "mount")
+            .build();
+
+    private static final Set<String> STREET_TYPES = ImmutableSet.of(
+            "street", "road", "avenue", "lane", "drive", "court", "place", "square", "crescent", "close", "gardens",
+            "boulevard", "highway", "terrace", "way", "row", "walk", "grove", "mews", "parade", "hill");
+
+    private boolean enabled = DEFAULT_ENABLED;
+    double threshold = DEFAULT_THRESHOLD;
+    private int maxCandidates = DEFAULT_MAX_CANDIDATES;
+
+    private final AtomicLong apiCallsAvoided = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        final String prefix = PostalAddressGeocodeMatcher.class.getCanonicalName();
+        enabled = Config.parseBoolean(configurationService.getProperty(prefix + ".enabled"), DEFAULT_ENABLED);
+        threshold = Config.parseDouble(configurationService.getProperty(prefix + ".threshold"), DEFAULT_THRESHOLD);
+        maxCandidates = Config.parseInt(configurationService.getProperty(prefix + ".maxCandidates"),
+                DEFAULT_MAX_CANDIDATES);
+    }
+
+    @Programmatic
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Allows matching to be enabled or disabled at runtime.
+     */
+    @Programmatic
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    //region > findMatch (programmatic)
+
+    /**
+     * The already geocoded address (other than the specified postal address itself, and with the same postal code)
+     * most similar to the specified address, provided that it is at least as similar as the threshold; otherwise
+     * <tt>null</tt>, in which case the caller is expected to call the geocoding API.
+     */
+    @Programmatic
+    public PostalAddress findMatch(
+            final PostalAddress postalAddress,
+            final String address) {
+        if(!enabled) {
+            return null;
+        }
+        final PostalAddress match = doFindMatch(postalAddress, address);
+        (match != null ? apiCallsAvoided : misses).incrementAndGet();
+        return match;
+    }
+
+    private PostalAddress doFindMatch(
+            final PostalAddress postalAddress,
+            final String address) {
+        final String postalCode = postalAddress.getPostalCode();
+        if(postalCode == null || address == null) {
+            return null;
+        }
+        final List<PostalAddress> candidates = repositoryService.allMatches(
+                new QueryDefault<>(PostalAddress.class,
+                        "findGeocodedByPostalCode",
+                        "postalCode", postalCode).withCount(maxCandidates));
+
+        PostalAddress bestMatch = null;
+        double bestSimilarity = threshold;
+        for (final PostalAddress candidate : candidates) {
+            if(candidate == postalAddress) {
+                continue;
+            }
+            final double similarity = Math.max(
+                    similarity(address, textOf(candidate)),
+                    similarity(address, candidate.getFormattedAddress()));
+            if(similarity >= bestSimilarity) {
+                bestMatch = candidate;
+                bestSimilarity = similarity;
+            }
+        }
+        return bestMatch;
+    }
+
+    private static String textOf(final PostalAddress postalAddress) {
+        return Joiner.on(", ").skipNulls().join(
+                postalAddress.getAddressLine1(), postalAddress.getAddressLine2(),
+                postalAddress.getAddressLine3(), postalAddress.getAddressLine4(),
+                postalAddress.getPostalCode(), postalAddress.getCountry());
+    }
+    //endregion
+
+    //region > similarity
+
+    /**
+     * The Dice coefficient (between 0 and 1) of the token unigrams and bigrams of the two (normalised) addresses,
+     * or 0 if their numeric tokens or their street names differ.
+     */
+    static double similarity(final String address1, final String address2) {
+        final List<List<String>> lines1 = normalisedLinesOf(address1);
+        final List<List<String>> lines2 = normalisedLinesOf(address2);
+        final List<String> tokens1 = tokensOf(lines1);
+        final List<String> tokens2 = tokensOf(lines2);
+        if(tokens1.isEmpty() || tokens2.isEmpty()) {
+            return 0.0;
+        }
+        if(!numericTokensOf(tokens1).equals(numericTokensOf(tokens2))) {
+            return 0.0;
+        }
+        final Set<String> streetTokens1 = streetTokensOf(lines1);
+        final Set<String> streetTokens2 = streetTokensOf(lines2);
+        if(!streetTokens1.isEmpty() && !streetTokens2.isEmpty() && !streetTokens1.equals(streetTokens2)) {
+            return 0.0;
+        }
+        final Set<String> ngrams1 = ngramsOf(tokens1);
+        final Set<String> ngrams2 = ngramsOf(tokens2);
+        final int common = Sets.intersection(ngrams1, ngrams2).size();
+        return 2.0 * common / (ngrams1.size() + ngrams2.size());
+    }
+
+    static List<String> normalise(final String address) {
+        return tokensOf(normalisedLinesOf(address));
+    }
+
+    private static List<List<String>> normalisedLinesOf(final String address) {
+        if(address == null) {
+            return Collections.emptyList();
+        }
+        final List<List<String>> lines = Lists.newArrayList();
+        for (final String line : LINE_SPLITTER.split(address.toLowerCase(Locale.ROOT))) {
+            final List<String> tokens = Lists.newArrayList();
+            for (final String token : TOKEN_SPLITTER.split(line)) {
+                final String expanded = ABBREVIATIONS.get(token);
+                tokens.add(expanded != null ? expanded : token);
+            }
+            final int last = tokens.size() - 1;
+            if(last > 0 && tokens.get(last).equals("st")) {
+                tokens.set(last, "street");
+            }
+            if(!tokens.isEmpty()) {
+                lines.add(tokens);
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> tokensOf(final List<List<String>> lines) {
+        final List<String> tokens = Lists.newArrayList();
+        for (final List<String> line : lines) {
+            tokens.addAll(line);
+        }
+        return tokens;
+    }
+
+    /**
+     * The non-numeric tokens of the lines ending in a street type.
+     */
+    private static Set<String> streetTokensOf(final List<List<String>> lines) {
+        final Set<String> streetTokens = Sets.newHashSet();
+        for (final List<String> line : lines) {
+            if(STREET_TYPES.contains(line.get(line.size() - 1))) {
+                for (final String token : line) {
+                    if(!Character.isDigit(token.charAt(0))) {
+                        streetTokens.add(token);
+                    }
+                }
+            }
+        }
+        return streetTokens;
+    }
+
+    private static Set<String> numericTokensOf(final List<String> tokens) {
+        final Set<String> numericTokens = Sets.newHashSet();
+        for (final String token : tokens) {
+            if(Character.isDigit(token.charAt(0))) {
+                numericTokens.add(token);
+            }
+        }
+        return numericTokens;
+    }
+
+    private static Set<String> ngramsOf(final List<String> tokens) {
+        final Set<String> ngrams = Sets.newHashSet(tokens);
+        for (int i = 0; i + 1 < tokens.size(); i++) {
+            ngrams.add(tokens.get(i) + " " + tokens.get(i + 1));
+        }
+        return ngrams;
+    }
+    //endregion
+
+    //region > statistics (programmatic)
+
+    /**
+     * The number of geocoding API calls avoided (because a match was found) since startup or the last
+     * {@link #resetStatistics() reset}.
+     */
+    @Programmatic
+    public long getApiCallsAvoided() {
+        return apiCallsAvoided.get();
+    }
+
+    /**
+     * The number of lookups for which no match was found since startup or the last {@link #resetStatistics() reset}.
+     *
+     * <p>
+     *     Not all of these will have called the geocoding API, as the geocoding service may answer some from its own
+     *     cache; see {@link org.incode.module.commchannel.dom.impl.geocodingusage.GeocodingUsageService} for the
+     *     number of requests actually made.
+     * </p>
+     */
+    @Programmatic
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Programmatic
+    public void resetStatistics() {
+        apiCallsAvoided.set(0);
+        misses.set(0);
+    }
+    //endregion
+
+    //region > injected services
+    @Inject
+    ConfigurationService configurationService;
+    @Inject
+    RepositoryService repositoryService;
+    //endregion
+
+}
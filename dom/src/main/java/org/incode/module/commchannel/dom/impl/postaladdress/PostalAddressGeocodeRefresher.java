@@ -0,0 +1,282 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.postaladdress;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import com.google.common.collect.Lists;
+
+import org.apache.isis.applib.annotation.DomainService;
+import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.services.clock.ClockService;
+import org.apache.isis.applib.services.config.ConfigurationService;
+import org.apache.isis.applib.services.factory.FactoryService;
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+
+import org.incode.module.commchannel.dom.CommChannelModule.Config;
+import org.incode.module.commchannel.dom.api.GeocodeApiResponse;
+import org.incode.module.commchannel.dom.api.GeocodedAddress;
+import org.incode.module.commchannel.dom.api.GeocodingService;
+
+/**
+ * Re-geocodes postal addresses whose {@link PostalAddress#getGeocodedAt() geocode} is older than a maximum age,
+ * oldest first, in batches and subject to a budget of geocoding API lookups per time window.
+ *
+ * <p>
+ *     Configuration properties (all optional):
+ * </p>
+ * <ul>
+ *     <li><tt>...PostalAddressGeocodeRefresher.maxAgeDays</tt> - age after which a geocode is stale
+ *     (default <tt>90</tt>)</li>
+ *     <li><tt>...PostalAddressGeocodeRefresher.budget</tt> - maximum number of lookups per window
+ *     (default <tt>100</tt>)</li>
+ *     <li><tt>...PostalAddressGeocodeRefresher.windowMinutes</tt> - length of the budget window
+ *     (default <tt>1440</tt>, ie one day)</li>
+ *     <li><tt>...PostalAddressGeocodeRefresher.batchSize</tt> - maximum number of addresses refreshed by each call
+ *     to {@link #refreshBatch()} (default <tt>20</tt>)</li>
+ * </ul>
+ *
+ * <p>
+ *     The module does not schedule this itself; {@link #refreshBatch()} is intended to be called periodically by the
+ *     application's own scheduler (eg a Quartz job), each call in its own transaction, so that refreshes happen off
+ *     the request path.  The budget is tracked in memory, so applies per node.
+ * </p>
+ */
+@DomainService(
+        nature = NatureOfService.DOMAIN
+)
+public class PostalAddressGeocodeRefresher {
+
+    public String getId() {
+        return "incodeCommChannel.PostalAddressGeocodeRefresher";
+    }
+
+    private static final int DEFAULT_MAX_AGE_DAYS = 90;
+    private static final int DEFAULT_BUDGET = 100;
+    private static final int DEFAULT_WINDOW_MINUTES = 1440;
+    private static final int DEFAULT_BATCH_SIZE = 20;
+
+    private int maxAgeDays = DEFAULT_MAX_AGE_DAYS;
+    private int budget = DEFAULT_BUDGET;
+    private int windowMinutes = DEFAULT_WINDOW_MINUTES;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private Long windowStartMillis;
+    private int lookupsInWindow;
+
+    private final AtomicLong refreshed = new AtomicLong();
+    private final AtomicLong placeIdChanges = new AtomicLong();
+    private final AtomicLong locationChanges = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong interruptions = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        final String prefix = PostalAddressGeocodeRefresher.class.getCanonicalName();
+        maxAgeDays = Config.parseInt(configurationService.getProperty(prefix + ".maxAgeDays"), DEFAULT_MAX_AGE_DAYS);
+        budget = Config.parseInt(configurationService.getProperty(prefix + ".budget"), DEFAULT_BUDGET);
+        windowMinutes = Config.parseInt(configurationService.getProperty(prefix + ".windowMinutes"),
+                DEFAULT_WINDOW_MINUTES);
+        batchSize = Config.parseInt(configurationService.getProperty(prefix + ".batchSize"), DEFAULT_BATCH_SIZE);
+    }
+
+    //region > refreshBatch (programmatic)
+
+    /**
+     * Re-geocodes (up to the batch size, and within the remaining budget) the addresses with the oldest stale
+     * geocodes (those never recorded first).
+     *
+     * <p>
+     *     An address that the API could not geocode ({@link GeocodeApiResponse.Status#ZERO_RESULTS zero results} or
+     *     an {@link GeocodeApiResponse.Status#INVALID_REQUEST invalid request}) keeps its existing geocode, but is
+     *     still marked as refreshed so that it is not retried until it next becomes stale.  If instead the lookup
+     *     failed (eg a network error, the daily cap being reached, or the API refusing the request), the address is
+     *     left unchanged and the rest of the batch is abandoned, to be retried by a later call.
+     * </p>
+     *
+     * @return the number of addresses processed; 0 if none are stale or the budget for the window is used up.
+     */
+    @Programmatic
+    public synchronized int refreshBatch() {
+        final int available = Math.min(batchSize, remainingBudget());
+        if(available <= 0) {
+            return 0;
+        }
+
+        final Timestamp now = clockService.nowAsJavaSqlTimestamp();
+        final Timestamp geocodedBefore = new Timestamp(now.getTime() - TimeUnit.DAYS.toMillis(maxAgeDays));
+
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        final Query query = pm.newNamedQuery(PostalAddress.class, "findGeocodedBefore");
+        query.setRange(0, available);
+        try {
+            final List<PostalAddress> postalAddresses =
+                    Lists.newArrayList((List<PostalAddress>) query.execute(geocodedBefore));
+            int processed = 0;
+            for (final PostalAddress postalAddress : postalAddresses) {
+                if(!refresh(postalAddress, now)) {
+                    interruptions.incrementAndGet();
+                    break;
+                }
+                processed++;
+            }
+            return processed;
+        } finally {
+            query.closeAll();
+        }
+    }
+
+    /**
+     * @return whether the address was processed; <tt>false</tt> if the lookup failed, and so should be retried later.
+     */
+    private boolean refresh(final PostalAddress postalAddress, final Timestamp now) {
+        final String previousPlaceId = postalAddress.getPlaceId();
+        final String previousLatLng = postalAddress.getLatLng();
+
+        lookupsInWindow++;
+        final GeocodedAddress geocodedAddress = geocodingService.refreshAddress(
+                postalAddress.getAddressLine1(),
+                postalAddress.getAddressLine2(),
+                postalAddress.getAddressLine3(),
+                postalAddress.getAddressLine4(),
+                postalAddress.getPostalCode(),
+                postalAddress.getCountry());
+
+        if (!GeocodedAddress.isOk(geocodedAddress)) {
+            if(!isUngeocodable(geocodedAddress)) {
+                return false;
+            }
+            failures.incrementAndGet();
+            postalAddress.setGeocodedAt(now);
+            return true;
+        }
+
+        factoryService.mixin(PostalAddress_update.class, postalAddress).applyGeocode(geocodedAddress);
+
+        refreshed.incrementAndGet();
+        if (!Objects.equals(previousPlaceId, postalAddress.getPlaceId())) {
+            placeIdChanges.incrementAndGet();
+        }
+        if (!Objects.equals(previousLatLng, postalAddress.getLatLng())) {
+            locationChanges.incrementAndGet();
+        }
+        return true;
+    }
+
+    private static boolean isUngeocodable(final GeocodedAddress geocodedAddress) {
+        if(geocodedAddress == null) {
+            return false;
+        }
+        final GeocodeApiResponse.Status status = geocodedAddress.getStatus();
+        return status == GeocodeApiResponse.Status.ZERO_RESULTS || status == GeocodeApiResponse.Status.INVALID_REQUEST;
+    }
+
+    /**
+     * The number of lookups still available in the current budget window.
+     */
+    @Programmatic
+    public synchronized int getRemainingBudget() {
+        return remainingBudget();
+    }
+
+    private int remainingBudget() {
+        final long nowMillis = clockService.nowAsMillis();
+        if (windowStartMillis == null || nowMillis - windowStartMillis >= TimeUnit.MINUTES.toMillis(windowMinutes)) {
+            windowStartMillis = nowMillis;
+            lookupsInWindow = 0;
+        }
+        return Math.max(0, budget - lookupsInWindow);
+    }
+    //endregion
+
+    //region > statistics (programmatic)
+
+    /**
+     * The number of addresses successfully re-geocoded since startup or the last {@link #resetStatistics() reset}.
+     */
+    @Programmatic
+    public long getRefreshed() {
+        return refreshed.get();
+    }
+
+    /**
+     * The number of re-geocoded addresses whose place id changed.
+     */
+    @Programmatic
+    public long getPlaceIdChanges() {
+        return placeIdChanges.get();
+    }
+
+    /**
+     * The number of re-geocoded addresses whose location (lat/lng) changed.
+     */
+    @Programmatic
+    public long getLocationChanges() {
+        return locationChanges.get();
+    }
+
+    /**
+     * The number of addresses that could not be re-geocoded (zero results, or an invalid request).
+     */
+    @Programmatic
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * The number of batches abandoned because a lookup failed, or was refused.
+     */
+    @Programmatic
+    public long getInterruptions() {
+        return interruptions.get();
+    }
+
+    @Programmatic
+    public void resetStatistics() {
+        refreshed.set(0);
+        placeIdChanges.set(0);
+        locationChanges.set(0);
+        failures.set(0);
+        interruptions.set(0);
+    }
+    //endregion
+
+    //region > injected services
+    @Inject
+    GeocodingService geocodingService;
+    @Inject
+    ClockService clockService;
+    @Inject
+    ConfigurationService configurationService;
+    @Inject
+    FactoryService factoryService;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    //endregion
+
+}
@@ -0,0 +1,193 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.postaladdress;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.jdo.JDOHelper;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+import org.apache.isis.applib.annotation.DomainService;
+import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.query.QueryDefault;
+import org.apache.isis.applib.services.factory.FactoryService;
+import org.apache.isis.applib.services.repository.RepositoryService;
+
+import org.incode.module.commchannel.dom.api.GeocodedAddress;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
+
+/**
+ * Domain service acting as repository for the {@link PostalAddressGeocode geocode}s shared between
+ * {@link PostalAddress postal address}es.
+ */
+@DomainService(
+        nature = NatureOfService.DOMAIN,
+        repositoryFor = PostalAddressGeocode.class
+)
+public class PostalAddressGeocodeRepository {
+
+    public String getId() {
+        return "incodeCommChannel.PostalAddressGeocodeRepository";
+    }
+
+    /**
+     * The geocode of the place, if any.
+     *
+     * <p>
+     *     Should two transactions have concurrently created a geocode for the same place, then the one with the lowest
+     *     id is returned, and the other (having re-pointed any addresses referencing it) is deleted.
+     * </p>
+     */
+    @Programmatic
+    public PostalAddressGeocode findByPlaceId(final String placeId) {
+        final List<PostalAddressGeocode> geocodes = repositoryService.allMatches(
+                new QueryDefault<>(PostalAddressGeocode.class,
+                        "findByPlaceId",
+                        "placeId", placeId));
+        if(geocodes.size() <= 1) {
+            return geocodes.isEmpty() ? null : geocodes.get(0);
+        }
+        PostalAddressGeocode kept = null;
+        for (final PostalAddressGeocode geocode : geocodes) {
+            if(kept == null || idOf(geocode) < idOf(kept)) {
+                kept = geocode;
+            }
+        }
+        for (final PostalAddressGeocode geocode : geocodes) {
+            if(geocode != kept) {
+                for (final PostalAddress postalAddress : findAddressesReferencing(geocode)) {
+                    postalAddress.setGeocode(kept);
+                }
+                repositoryService.remove(geocode);
+            }
+        }
+        return kept;
+    }
+
+    private static long idOf(final PostalAddressGeocode geocode) {
+        final Long id = CommunicationChannel.numericIdOf(JDOHelper.getObjectId(geocode));
+        return id != null ? id : Long.MAX_VALUE;
+    }
+
+    /**
+     * The postal addresses referencing (sharing) the geocode.
+     */
+    @Programmatic
+    public List<PostalAddress> findAddressesReferencing(final PostalAddressGeocode geocode) {
+        return repositoryService.allMatches(
+                new QueryDefault<>(PostalAddress.class,
+                        "findByGeocode",
+                        "geocode", geocode));
+    }
+
+    /**
+     * Returns the geocode for the {@link GeocodedAddress#getPlaceId() place} of the geocoded address, creating it if
+     * necessary and otherwise updating it with the latest response.
+     */
+    @Programmatic
+    public PostalAddressGeocode findOrCreate(final GeocodedAddress geocodedAddress) {
+        return findOrCreate(
+                geocodedAddress.getPlaceId(),
+                geocodedAddress.getApiResponseAsJson(),
+                geocodedAddress.getAddressComponents());
+    }
+
+    /**
+     * Returns the geocode for the place, creating it if necessary; an existing geocode is only updated (and so only
+     * written) if the response has changed.
+     *
+     * @return <tt>null</tt> if the <tt>placeId</tt> is <tt>null</tt>.
+     */
+    @Programmatic
+    public PostalAddressGeocode findOrCreate(
+            final String placeId,
+            final String apiResponseAsJson,
+            final String addressComponents) {
+        if(placeId == null) {
+            return null;
+        }
+        PostalAddressGeocode geocode = findByPlaceId(placeId);
+        if(geocode == null) {
+            geocode = factoryService.instantiate(PostalAddressGeocode.class);
+            geocode.setPlaceId(placeId);
+            store(geocode, apiResponseAsJson, addressComponents);
+            repositoryService.persist(geocode);
+            return geocode;
+        }
+        update(geocode, apiResponseAsJson, addressComponents);
+        return geocode;
+    }
+
+    /**
+     * Updates the geocode with the response (and the address components derived from it), unless unchanged; compares
+     * {@link PostalAddressGeocode#getApiResponseHash() hashes} rather than loading the stored response.
+     *
+     * @return whether the geocode was updated.
+     */
+    @Programmatic
+    public boolean update(
+            final PostalAddressGeocode geocode,
+            final String apiResponseAsJson,
+            final String addressComponents) {
+        if(apiResponseAsJson == null || hashOf(apiResponseAsJson).equals(geocode.getApiResponseHash())) {
+            return false;
+        }
+        store(geocode, apiResponseAsJson, addressComponents);
+        return true;
+    }
+
+    private void store(
+            final PostalAddressGeocode geocode,
+            final String apiResponseAsJson,
+            final String addressComponents) {
+        postalAddressGeocodeCompressor.store(geocode, apiResponseAsJson);
+        geocode.setApiResponseHash(apiResponseAsJson != null ? hashOf(apiResponseAsJson) : null);
+        geocode.setAddressComponents(addressComponents);
+    }
+
+    static String hashOf(final String apiResponseAsJson) {
+        return Hashing.sha256().hashString(apiResponseAsJson, Charsets.UTF_8).toString();
+    }
+
+    /**
+     * Points the postal address at the geocode (or clears it, if <tt>null</tt>), deleting the geocode previously
+     * referenced if no other address now references it.
+     */
+    @Programmatic
+    public void updateGeocode(final PostalAddress postalAddress, final PostalAddressGeocode geocode) {
+        final PostalAddressGeocode previous = postalAddress.getGeocode();
+        postalAddress.updateGeocode(geocode);
+        if(previous != null && previous != geocode && findAddressesReferencing(previous).isEmpty()) {
+            repositoryService.remove(previous);
+        }
+    }
+
+    //region > injected services
+    @Inject
+    RepositoryService repositoryService;
+    @Inject
+    FactoryService factoryService;
+    @Inject
+    PostalAddressGeocodeCompressor postalAddressGeocodeCompressor;
+    //endregion
+
+}
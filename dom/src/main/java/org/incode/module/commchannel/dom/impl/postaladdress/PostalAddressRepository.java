@@ -20,18 +20,27 @@
 
 import java.util.List;
 import java.util.Objects;
+import java.util.SortedMap;
 
 import javax.inject.Inject;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import org.apache.isis.applib.annotation.DomainService;
 import org.apache.isis.applib.annotation.NatureOfService;
 import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.query.QueryDefault;
 import org.apache.isis.applib.services.factory.FactoryService;
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
 import org.apache.isis.applib.services.repository.RepositoryService;
 
+import org.incode.module.commchannel.dom.api.GeocodedAddress;
+import org.incode.module.commchannel.dom.api.GeocodingService;
 import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
 import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel_owner;
 import org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink;
@@ -100,11 +109,123 @@ public PostalAddress findByAddress(
         return postalAddressIfFound.orNull();
     }
 
+    /**
+     * Moves the geocode response of (up to <tt>batchSize</tt>) postal addresses geocoded before it was
+     * {@link PostalAddress#getGeocode() shared} into the corresponding {@link PostalAddressGeocode}, clearing the
+     * address' own copy.
+     *
+     * @return the number of postal addresses migrated; call repeatedly (in separate transactions) until this returns 0.
+     */
+    @Programmatic
+    public int migrateLegacyGeocodes(final int batchSize) {
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        final Query query = pm.newNamedQuery(PostalAddress.class, "findWithLegacyGeocode");
+        query.setRange(0, batchSize);
+        try {
+            final List<PostalAddress> postalAddresses = Lists.newArrayList((List<PostalAddress>) query.execute());
+            for (final PostalAddress postalAddress : postalAddresses) {
+                postalAddress.updateGeocode(postalAddressGeocodeRepository.findOrCreate(
+                        postalAddress.getPlaceId(),
+                        postalAddress.getLegacyGeocodeApiResponseAsJson(),
+                        postalAddress.getLegacyAddressComponents()));
+            }
+            return postalAddresses.size();
+        } finally {
+            query.closeAll();
+        }
+    }
+
     private CommunicationChannel_owner owner(final CommunicationChannel<?> cc) {
         return factoryService.mixin(CommunicationChannel_owner.class, cc);
     }
     //endregion
 
+    //region > findByLocality, findByAdministrativeArea, findByCountryCode, countByCountryCode (programmatic)
+
+    /**
+     * Geocoded addresses whose locality or postal town is that specified.
+     */
+    @Programmatic
+    public List<PostalAddress> findByLocality(final String locality) {
+        return repositoryService.allMatches(
+                new QueryDefault<>(PostalAddress.class,
+                        "findByLocality",
+                        "locality", locality));
+    }
+
+    /**
+     * Geocoded addresses within the specified (first- or second-order) administrative area, eg "Oxfordshire".
+     */
+    @Programmatic
+    public List<PostalAddress> findByAdministrativeArea(final String administrativeArea) {
+        return repositoryService.allMatches(
+                new QueryDefault<>(PostalAddress.class,
+                        "findByAdministrativeArea",
+                        "administrativeArea", administrativeArea));
+    }
+
+    /**
+     * Geocoded addresses in the country with the specified ISO 3166-1 alpha-2 code, eg "GB".
+     */
+    @Programmatic
+    public List<PostalAddress> findByCountryCode(final String countryCode) {
+        return repositoryService.allMatches(
+                new QueryDefault<>(PostalAddress.class,
+                        "findByCountryCode",
+                        "countryCode", countryCode));
+    }
+
+    /**
+     * The number of geocoded addresses in each country, keyed by country code.
+     */
+    @Programmatic
+    public SortedMap<String, Long> countByCountryCode() {
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        final Query query = pm.newNamedQuery(PostalAddress.class, "countByCountryCode");
+        try {
+            final SortedMap<String, Long> counts = Maps.newTreeMap();
+            for (final Object[] row : (List<Object[]>) query.execute()) {
+                counts.put((String) row[0], ((Number) row[1]).longValue());
+            }
+            return counts;
+        } finally {
+            query.closeAll();
+        }
+    }
+
+    /**
+     * Populates the {@link PostalAddress#getCountryCode() country code} and other address component columns of (up
+     * to <tt>batchSize</tt>) postal addresses geocoded before they were introduced, from the stored geocode response.
+     * Addresses whose geocode does not identify a country are skipped, and remain without a country code.
+     *
+     * @return the number of postal addresses updated; call repeatedly (in separate transactions) until this returns 0.
+     */
+    @Programmatic
+    public int backfillAddressComponents(final int batchSize) {
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        final Query query = pm.newNamedQuery(PostalAddress.class, "findWithoutCountryCode");
+        try {
+            int populated = 0;
+            // iterated rather than ranged, so that addresses without a country do not fill every batch
+            for (final Object result : (List<?>) query.execute()) {
+                final PostalAddress postalAddress = (PostalAddress) result;
+                final String json = postalAddress.getGeocodeApiResponseAsJson();
+                final GeocodedAddress geocodedAddress = json != null ? geocodingService.asGeocodedAddress(json) : null;
+                if (!GeocodedAddress.isOk(geocodedAddress)) {
+                    continue;
+                }
+                postalAddress.updateAddressComponents(geocodedAddress);
+                if(postalAddress.getCountryCode() != null && ++populated >= batchSize) {
+                    break;
+                }
+            }
+            return populated;
+        } finally {
+            query.closeAll();
+        }
+    }
+    //endregion
+
     //region > injected services
 
     @Inject
@@ -113,6 +234,12 @@ private CommunicationChannel_owner owner(final CommunicationChannel<?> cc) {
     RepositoryService repositoryService;
     @Inject
     FactoryService factoryService;
+    @Inject
+    PostalAddressGeocodeRepository postalAddressGeocodeRepository;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    @Inject
+    GeocodingService geocodingService;
 
     //endregion
 
@@ -18,6 +18,8 @@
  */
 package org.incode.module.commchannel.dom.impl.postaladdress;
 
+import javax.inject.Inject;
+
 import org.apache.isis.applib.annotation.Action;
 import org.apache.isis.applib.annotation.Mixin;
 import org.apache.isis.applib.annotation.Programmatic;
@@ -46,12 +48,18 @@ public static class DomainEvent extends PostalAddress.ActionDomainEvent<PostalAd
             domainEvent = DomainEvent.class
     )
     public PostalAddress $$() {
-        this.postalAddress.setFormattedAddress(null);
+        this.postalAddress.updateFormattedAddress(null);
         this.postalAddress.setPlaceId(null);
         this.postalAddress.setLatLng(null);
-        this.postalAddress.setAddressComponents(null);
-        this.postalAddress.setGeocodeApiResponseAsJson(null);
+        postalAddressGeocodeRepository.updateGeocode(this.postalAddress, null);
+        this.postalAddress.updateAddressComponents(null);
+        this.postalAddress.setGeocodedAt(null);
         return this.postalAddress;
     }
 
+    //region > injected services
+    @Inject
+    PostalAddressGeocodeRepository postalAddressGeocodeRepository;
+    //endregion
+
 }
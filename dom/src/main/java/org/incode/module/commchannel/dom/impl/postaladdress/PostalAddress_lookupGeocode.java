@@ -66,7 +66,8 @@ public static class DomainEvent extends PostalAddress.ActionDomainEvent<PostalAd
             @ParameterLayout(named = "Address")
             final String address) {
 
-        mixinUpdatePostalAddress(this.postalAddress).lookupAndUpdateGeocode(true, address);
+        // an explicit lookup, so always asks the geocoding service rather than reusing a similar address' geocode
+        mixinUpdatePostalAddress(this.postalAddress).lookupAndApplyGeocode(address);
 
         return this.postalAddress;
     }
@@ -18,6 +18,8 @@
  */
 package org.incode.module.commchannel.dom.impl.postaladdress;
 
+import java.sql.Timestamp;
+
 import javax.inject.Inject;
 
 import org.apache.isis.applib.DomainObjectContainer;
@@ -28,6 +30,7 @@
 import org.apache.isis.applib.annotation.ParameterLayout;
 import org.apache.isis.applib.annotation.Programmatic;
 import org.apache.isis.applib.annotation.SemanticsOf;
+import org.apache.isis.applib.services.clock.ClockService;
 import org.apache.isis.applib.services.i18n.TranslatableString;
 
 import org.incode.module.commchannel.dom.CommChannelModule;
@@ -41,6 +44,12 @@ public class PostalAddress_update {
     @Inject
     GeocodingService geocodingService;
     @Inject
+    PostalAddressGeocodeMatcher postalAddressGeocodeMatcher;
+    @Inject
+    PostalAddressGeocodeRepository postalAddressGeocodeRepository;
+    @Inject
+    ClockService clockService;
+    @Inject
     DomainObjectContainer container;
     //endregion
 
@@ -114,25 +123,95 @@ void lookupAndUpdateGeocode(
         }
 
         if (lookupGeocode) {
-            final String address = geocodingService.combine(GeocodingService.Encoding.ENCODED, addressParts);
-            final GeocodedAddress geocodedAddress = geocodingService.lookup(address);
-
-            if (GeocodedAddress.isOk(geocodedAddress)) {
-                this.postalAddress.setFormattedAddress(geocodedAddress.getFormattedAddress());
-                this.postalAddress.setGeocodeApiResponseAsJson(geocodedAddress.getApiResponseAsJson());
-                this.postalAddress.setPlaceId(geocodedAddress.getPlaceId());
-                this.postalAddress.setLatLng(geocodedAddress.getLatLng());
-                this.postalAddress.setAddressComponents(geocodedAddress.getAddressComponents());
-            } else {
-                container.warnUser(
-                        TranslatableString.tr("Could not lookup geocode for address"),
-                        T_addPostalAddress.class, "newPostal");
+            final PostalAddress match = postalAddressGeocodeMatcher.findMatch(
+                    this.postalAddress, geocodingService.combine(GeocodingService.Encoding.NOT_ENCODED, addressParts));
+            if (match != null) {
+                copyGeocodeFrom(match);
+                return;
             }
+            lookupAndApplyGeocode(addressParts);
         } else {
             mixinResetGeocode().$$();
         }
     }
 
+    /**
+     * Looks up the geocode of the address using the geocoding service (never reusing that of a
+     * {@link PostalAddressGeocodeMatcher matching} address), and applies it if found.
+     */
+    void lookupAndApplyGeocode(final String... addressParts) {
+        final GeocodedAddress geocodedAddress = geocodingService.lookupAddress(addressParts);
+
+        if (GeocodedAddress.isOk(geocodedAddress)) {
+            applyGeocode(geocodedAddress);
+        } else {
+            container.warnUser(
+                    TranslatableString.tr("Could not lookup geocode for address"),
+                    T_addPostalAddress.class, "newPostal");
+        }
+    }
+
+    /**
+     * Updates the postal address with the (successfully) geocoded address, as looked up now.
+     *
+     * <p>
+     *     If this changes the (shared) geocode of the place, then every other address referencing it is updated too,
+     *     so that their formatted address, location and address components stay consistent with it.
+     * </p>
+     */
+    @Programmatic
+    public void applyGeocode(final GeocodedAddress geocodedAddress) {
+        final Timestamp now = clockService.nowAsJavaSqlTimestamp();
+        PostalAddressGeocode geocode = postalAddressGeocodeRepository.findByPlaceId(geocodedAddress.getPlaceId());
+        final boolean changed;
+        if(geocode == null) {
+            geocode = postalAddressGeocodeRepository.findOrCreate(geocodedAddress);
+            changed = false;
+        } else {
+            changed = postalAddressGeocodeRepository.update(
+                    geocode, geocodedAddress.getApiResponseAsJson(), geocodedAddress.getAddressComponents());
+        }
+        applyGeocode(this.postalAddress, geocodedAddress, geocode, now);
+        if(changed) {
+            for (final PostalAddress other : postalAddressGeocodeRepository.findAddressesReferencing(geocode)) {
+                if(other != this.postalAddress) {
+                    applyGeocode(other, geocodedAddress, geocode, now);
+                }
+            }
+        }
+    }
+
+    private void applyGeocode(
+            final PostalAddress postalAddress,
+            final GeocodedAddress geocodedAddress,
+            final PostalAddressGeocode geocode,
+            final Timestamp geocodedAt) {
+        postalAddress.updateFormattedAddress(geocodedAddress.getFormattedAddress());
+        postalAddress.setPlaceId(geocodedAddress.getPlaceId());
+        postalAddress.setLatLng(geocodedAddress.getLatLng());
+        postalAddressGeocodeRepository.updateGeocode(postalAddress, geocode);
+        postalAddress.updateAddressComponents(geocodedAddress);
+        postalAddress.setGeocodedAt(geocodedAt);
+    }
+
+    /**
+     * Reuses the geocode of a {@link PostalAddressGeocodeMatcher matching} address, rather than calling the
+     * geocoding API; the (shared) geocode response itself is referenced rather than copied.
+     */
+    private void copyGeocodeFrom(final PostalAddress match) {
+        this.postalAddress.updateFormattedAddress(match.getFormattedAddress());
+        this.postalAddress.setPlaceId(match.getPlaceId());
+        this.postalAddress.setLatLng(match.getLatLng());
+        postalAddressGeocodeRepository.updateGeocode(
+                this.postalAddress,
+                match.getGeocode() != null
+                        ? match.getGeocode()
+                        : postalAddressGeocodeRepository.findOrCreate(
+                                match.getPlaceId(), match.getGeocodeApiResponseAsJson(), match.getAddressComponents()));
+        this.postalAddress.copyAddressComponentsFrom(match);
+        this.postalAddress.setGeocodedAt(match.getGeocodedAt());
+    }
+
     public String default0$$() {
         return this.postalAddress.getAddressLine1();
     }
@@ -29,6 +29,7 @@
 import org.apache.isis.applib.annotation.Optionality;
 import org.apache.isis.applib.annotation.Parameter;
 import org.apache.isis.applib.annotation.ParameterLayout;
+import org.apache.isis.applib.annotation.Programmatic;
 import org.apache.isis.applib.annotation.SemanticsOf;
 import org.apache.isis.applib.services.factory.FactoryService;
 import org.apache.isis.applib.services.repository.RepositoryService;
@@ -45,6 +46,22 @@
     public T_addPostalAddress(final T communicationChannelOwner) {
         this.communicationChannelOwner = communicationChannelOwner;
     }
+    @Programmatic
+    public T getCommunicationChannelOwner() {
+        return communicationChannelOwner;
+    }
+    //endregion
+
+    //region > postalAddress
+    private PostalAddress postalAddress;
+
+    /**
+     * The postal address added, once the action has been invoked (eg for subscribers to the {@link DomainEvent}).
+     */
+    @Programmatic
+    public PostalAddress getPostalAddress() {
+        return postalAddress;
+    }
     //endregion
 
     //region > $$
@@ -90,7 +107,7 @@ public static class DomainEvent extends CommChannelModule.ActionDomainEvent<T_ad
             @ParameterLayout(named = "Lookup geocode")
             final Boolean lookupGeocode) {
 
-        final PostalAddress postalAddress =
+        this.postalAddress =
                 postalAddressRepository.newPostal(
                         this.communicationChannelOwner,
                         addressLine1, addressLine2, addressLine3, addressLine4,
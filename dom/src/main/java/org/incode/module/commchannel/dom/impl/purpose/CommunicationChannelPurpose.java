@@ -0,0 +1,96 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.purpose;
+
+import javax.jdo.annotations.Column;
+import javax.jdo.annotations.IdGeneratorStrategy;
+import javax.jdo.annotations.IdentityType;
+import javax.jdo.annotations.SequenceStrategy;
+
+import org.apache.isis.applib.annotation.DomainObject;
+import org.apache.isis.applib.annotation.Editing;
+import org.apache.isis.applib.annotation.Title;
+import org.apache.isis.applib.util.ObjectContracts;
+
+import org.incode.module.commchannel.dom.CommChannelModule;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Reference data, assigning a compact {@link #getCode() code} to each distinct
+ * {@link org.incode.module.commchannel.dom.impl.channel.CommunicationChannel#getPurpose() purpose}.
+ *
+ * <p>
+ *     Maintained (and cached) by {@link CommunicationChannelPurposeRegistry}; rows are only ever added, never modified
+ *     or deleted.  New codes are allocated from the {@link #CODE_SEQUENCE datastore sequence}, so that nodes
+ *     registering purposes concurrently cannot allocate the same code.
+ * </p>
+ */
+@javax.jdo.annotations.PersistenceCapable(
+        identityType = IdentityType.DATASTORE,
+        schema = "incodeCommChannel",
+        table = "CommunicationChannelPurpose"
+)
+@javax.jdo.annotations.DatastoreIdentity(strategy = IdGeneratorStrategy.IDENTITY, column = "id")
+@javax.jdo.annotations.Sequence(
+        name = CommunicationChannelPurpose.CODE_SEQUENCE,
+        datastoreSequence = CommunicationChannelPurpose.CODE_SEQUENCE,
+        strategy = SequenceStrategy.NONCONTIGUOUS
+)
+@javax.jdo.annotations.Cacheable("true")
+@javax.jdo.annotations.Queries({
+        @javax.jdo.annotations.Query(
+                name = "findAll", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.incode.module.commchannel.dom.impl.purpose.CommunicationChannelPurpose ")
+})
+@javax.jdo.annotations.Uniques({
+        @javax.jdo.annotations.Unique(name = "CommunicationChannelPurpose_code_UNQ", members = { "code" }),
+        @javax.jdo.annotations.Unique(name = "CommunicationChannelPurpose_name_UNQ", members = { "name" })
+})
+@DomainObject(
+        objectType = "incodeCommChannel.CommunicationChannelPurpose",
+        editing = Editing.DISABLED
+)
+public class CommunicationChannelPurpose implements Comparable<CommunicationChannelPurpose> {
+
+    public static final String CODE_SEQUENCE = "CommunicationChannelPurpose_code_SEQ";
+
+    @Getter @Setter
+    @Column(allowsNull = "false")
+    private int code;
+
+    @Title
+    @Getter @Setter
+    @Column(allowsNull = "false", length = CommChannelModule.JdoColumnLength.PURPOSE)
+    private String name;
+
+    //region > toString, compareTo
+    @Override
+    public int compareTo(final CommunicationChannelPurpose other) {
+        return Integer.compare(getCode(), other.getCode());
+    }
+
+    @Override
+    public String toString() {
+        return ObjectContracts.toString(this, "code", "name");
+    }
+    //endregion
+
+}
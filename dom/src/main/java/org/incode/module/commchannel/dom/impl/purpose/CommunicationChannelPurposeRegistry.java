@@ -0,0 +1,233 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.purpose;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.jdo.JDOException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Transaction;
+import javax.jdo.datastore.Sequence;
+
+import com.google.common.collect.Sets;
+
+import org.apache.isis.applib.annotation.DomainService;
+import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.query.QueryDefault;
+import org.apache.isis.applib.services.repository.RepositoryService;
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+
+/**
+ * Maps each distinct {@link org.incode.module.commchannel.dom.impl.channel.CommunicationChannel#getPurpose() purpose}
+ * to a compact {@link CommunicationChannelPurpose#getCode() code} (and back again), registering new purposes on demand.
+ *
+ * <p>
+ *     The (small) set of purposes is held in memory, loaded on first use, so that looking up a code or name does not
+ *     hit the database.  The names returned are canonical instances, so can also be used to
+ *     {@link #intern(String) intern} purposes.
+ * </p>
+ *
+ * <p>
+ *     A new purpose is registered (and committed) in a separate transaction, so it is immediately visible to other
+ *     nodes and is kept even if the calling transaction rolls back (it is then simply unused).  If another node
+ *     registers the same purpose concurrently then one of the inserts fails on the unique name; the loser reloads and
+ *     uses the winner's code.  Because of that separate transaction, purposes should not be registered within a
+ *     transaction that has itself modified (and so may hold locks on) the {@link CommunicationChannelPurpose} table.
+ * </p>
+ */
+@DomainService(
+        nature = NatureOfService.DOMAIN
+)
+public class CommunicationChannelPurposeRegistry {
+
+    public String getId() {
+        return "incodeCommChannel.CommunicationChannelPurposeRegistry";
+    }
+
+    private final ConcurrentMap<String, Integer> codeByName = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, String> nameByCode = new ConcurrentHashMap<>();
+    private final Set<Integer> unknownCodes = Sets.newConcurrentHashSet();
+    private volatile boolean loaded;
+
+    /**
+     * The code of the specified purpose, registering it if necessary; returns <tt>null</tt> only if the purpose is
+     * <tt>null</tt>.
+     */
+    @Programmatic
+    public Integer codeFor(final String purpose) {
+        if(purpose == null) {
+            return null;
+        }
+        final Integer code = findCodeFor(purpose);
+        return code != null ? code : register(purpose);
+    }
+
+    /**
+     * The code of the specified purpose, or <tt>null</tt> if not (yet) registered.
+     */
+    @Programmatic
+    public Integer findCodeFor(final String purpose) {
+        if(purpose == null) {
+            return null;
+        }
+        ensureLoaded();
+        return codeByName.get(purpose);
+    }
+
+    /**
+     * The (canonical) purpose corresponding to the code, or <tt>null</tt> if unknown.
+     */
+    @Programmatic
+    public String nameFor(final Integer code) {
+        if(code == null) {
+            return null;
+        }
+        ensureLoaded();
+        final String name = nameByCode.get(code);
+        if(name != null) {
+            return name;
+        }
+        if(unknownCodes.contains(code)) {
+            return null;
+        }
+        // perhaps registered by another node since we loaded; a code that is still unknown is remembered as such
+        // (any channel referencing a code is committed along with its purpose, so it cannot appear later)
+        reload();
+        final String reloadedName = nameByCode.get(code);
+        if(reloadedName == null) {
+            unknownCodes.add(code);
+        }
+        return reloadedName;
+    }
+
+    /**
+     * Returns the canonical instance of the specified purpose, if registered; otherwise the purpose itself.
+     */
+    @Programmatic
+    public String intern(final String purpose) {
+        final Integer code = findCodeFor(purpose);
+        if(code == null) {
+            return purpose;
+        }
+        final String name = nameFor(code);
+        return name != null ? name : purpose;
+    }
+
+    /**
+     * Discards the in-memory copy; it will be reloaded on next use.
+     */
+    @Programmatic
+    public synchronized void invalidate() {
+        codeByName.clear();
+        nameByCode.clear();
+        unknownCodes.clear();
+        loaded = false;
+    }
+
+    //region > helpers
+    private void ensureLoaded() {
+        if(!loaded) {
+            reload();
+        }
+    }
+
+    private synchronized void reload() {
+        final List<CommunicationChannelPurpose> purposes =
+                repositoryService.allMatches(new QueryDefault<>(CommunicationChannelPurpose.class, "findAll"));
+        for (final CommunicationChannelPurpose purpose : purposes) {
+            cache(purpose.getCode(), purpose.getName());
+        }
+        loaded = true;
+    }
+
+    private synchronized Integer register(final String purpose) {
+        // check again, having (re)loaded in case registered by another node meanwhile
+        reload();
+        final Integer existing = codeByName.get(purpose);
+        if(existing != null) {
+            return existing;
+        }
+        final String name = purpose.intern();
+        final int code;
+        try {
+            code = registerInOwnTransaction(name);
+        } catch (final JDOException ex) {
+            // most likely registered concurrently by another node, whose (now committed) code we use instead
+            reload();
+            final Integer registered = codeByName.get(name);
+            if(registered == null) {
+                throw ex;
+            }
+            return registered;
+        }
+        cache(code, name);
+        return code;
+    }
+
+    private int registerInOwnTransaction(final String name) {
+        final PersistenceManager pm =
+                isisJdoSupport.getJdoPersistenceManager().getPersistenceManagerFactory().getPersistenceManager();
+        final Transaction transaction = pm.currentTransaction();
+        try {
+            transaction.begin();
+            final String sequenceName = CommunicationChannelPurpose.class.getPackage().getName()
+                    + "." + CommunicationChannelPurpose.CODE_SEQUENCE;
+            final Sequence sequence = pm.getSequence(sequenceName);
+            int code;
+            do {
+                // skips over any codes allocated before the sequence was introduced
+                code = (int) sequence.nextValueAsLong();
+            } while (nameByCode.containsKey(code));
+
+            final CommunicationChannelPurpose communicationChannelPurpose = new CommunicationChannelPurpose();
+            communicationChannelPurpose.setCode(code);
+            communicationChannelPurpose.setName(name);
+            pm.makePersistent(communicationChannelPurpose);
+            transaction.commit();
+            return code;
+        } finally {
+            if(transaction.isActive()) {
+                transaction.rollback();
+            }
+            pm.close();
+        }
+    }
+
+    private void cache(final int code, final String name) {
+        final String canonical = name.intern();
+        nameByCode.put(code, canonical);
+        codeByName.put(canonical, code);
+        unknownCodes.remove(code);
+    }
+
+    //endregion
+
+    //region > injected services
+    @Inject
+    RepositoryService repositoryService;
+
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    //endregion
+
+}
@@ -20,20 +20,46 @@
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+
 import org.apache.isis.applib.annotation.DomainService;
 import org.apache.isis.applib.annotation.NatureOfService;
 import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.services.config.ConfigurationService;
 
+import org.incode.module.commchannel.dom.CommChannelModule.Config;
 import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
 import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
 import org.incode.module.commchannel.dom.spi.CommunicationChannelPurposeRepository;
 
 /**
  * Simple wrapper around {@link CommunicationChannelPurposeRepository}, that always returns a non-null list (including the {@link #DEFAULT_PURPOSE default} if necessary).
+ *
+ * <p>
+ *     If the SPI implementation declares its results to be {@link CommunicationChannelPurposeRepository#isCacheable()
+ *     cacheable}, then they are cached (the SPI is otherwise called every time the choices or defaults of a purpose
+ *     parameter or property are rendered).
+ * </p>
+ *
+ * <p>
+ *     Configuration properties (all optional):
+ * </p>
+ * <ul>
+ *     <li><tt>...CommunicationChannelPurposeService.cache.enabled</tt> (default <tt>true</tt>)</li>
+ *     <li><tt>...CommunicationChannelPurposeService.cache.keyStrategy</tt> - one of {@link KeyStrategy}
+ *     (default <tt>TYPE_AND_OWNER_CLASS</tt>)</li>
+ *     <li><tt>...CommunicationChannelPurposeService.cache.expiry</tt> - in seconds (default 300)</li>
+ * </ul>
  */
 @DomainService(
         nature = NatureOfService.DOMAIN
@@ -63,12 +89,133 @@ public Collection<String> purposesFor(
         if(communicationChannelPurposeRepository == null) {
             return fallback;
         }
+        if(!isCacheEnabled()) {
+            final Collection<String> purposes =
+                    communicationChannelPurposeRepository
+                            .purposesFor(communicationChannelType, communicationChannelOwner);
+            return purposes != null? purposes: fallback;
+        }
+
+        final Key key = keyStrategy.keyFor(communicationChannelType, communicationChannelOwner);
+        final Collection<String> cached = cache.getIfPresent(key);
+        if(cached != null) {
+            return cached;
+        }
         final Collection<String> purposes =
                 communicationChannelPurposeRepository
                         .purposesFor(communicationChannelType, communicationChannelOwner);
-        return purposes != null? purposes: fallback;
+        final Collection<String> result = purposes != null ? ImmutableList.copyOf(purposes) : fallback;
+        cache.put(key, result);
+        return result;
+    }
+
+    //region > cache
+
+    /**
+     * How cached purposes are keyed.
+     */
+    public enum KeyStrategy {
+        /**
+         * The purposes depend only on the type of communication channel.
+         */
+        TYPE {
+            @Override
+            Key keyFor(final CommunicationChannelType type, final Object owner) {
+                return new Key(type, null);
+            }
+        },
+        /**
+         * The purposes depend on the type of communication channel and the class of its owner (but not on the
+         * owner itself).
+         */
+        TYPE_AND_OWNER_CLASS {
+            @Override
+            Key keyFor(final CommunicationChannelType type, final Object owner) {
+                return new Key(type, owner != null ? owner.getClass() : null);
+            }
+        };
+
+        abstract Key keyFor(final CommunicationChannelType type, final Object owner);
+    }
+
+    static final class Key {
+        private final CommunicationChannelType type;
+        private final Class<?> ownerClass;
+
+        Key(final CommunicationChannelType type, final Class<?> ownerClass) {
+            this.type = type;
+            this.ownerClass = ownerClass;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return type == other.type && ownerClass == other.ownerClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, ownerClass);
+        }
+    }
+
+    private static final boolean DEFAULT_CACHE_ENABLED = true;
+    private static final KeyStrategy DEFAULT_KEY_STRATEGY = KeyStrategy.TYPE_AND_OWNER_CLASS;
+    private static final int DEFAULT_EXPIRY_SECONDS = 300;
+
+    private KeyStrategy keyStrategy = DEFAULT_KEY_STRATEGY;
+    private Cache<Key, Collection<String>> cache;
+
+    @PostConstruct
+    public void init() {
+        final String prefix = CommunicationChannelPurposeService.class.getCanonicalName() + ".cache";
+        final boolean enabled =
+                Config.parseBoolean(configurationService.getProperty(prefix + ".enabled"), DEFAULT_CACHE_ENABLED);
+        keyStrategy = parseKeyStrategy(configurationService.getProperty(prefix + ".keyStrategy"), DEFAULT_KEY_STRATEGY);
+        final int expiry = Config.parseInt(configurationService.getProperty(prefix + ".expiry"),
+                DEFAULT_EXPIRY_SECONDS);
+
+        if(enabled && communicationChannelPurposeRepository != null && communicationChannelPurposeRepository.isCacheable()) {
+            cache = CacheBuilder.newBuilder()
+                    .expireAfterWrite(expiry, TimeUnit.SECONDS)
+                    .recordStats()
+                    .build();
+        }
+    }
+
+    @Programmatic
+    public boolean isCacheEnabled() {
+        return cache != null;
     }
 
+    @Programmatic
+    public KeyStrategy getKeyStrategy() {
+        return keyStrategy;
+    }
+
+    /**
+     * For the {@link CommunicationChannelPurposeRepository SPI} implementation to call if the purposes it returns
+     * have changed.
+     */
+    @Programmatic
+    public void invalidate() {
+        if(cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    @Programmatic
+    public CacheStats getCacheStats() {
+        return cache != null ? cache.stats() : new CacheStats(0, 0, 0, 0, 0, 0);
+    }
+    //endregion
+
     @Programmatic
     public String defaultIfNoSpi() {
         if (communicationChannelPurposeRepository == null) {
@@ -77,7 +224,22 @@ public String defaultIfNoSpi() {
         return null; // ie there is an SPI; we don't have enough info to guess which should be the default
     }
 
+    //region > helpers
+    private static KeyStrategy parseKeyStrategy(final String str, final KeyStrategy defaultValue) {
+        if(str == null) {
+            return defaultValue;
+        }
+        try {
+            return KeyStrategy.valueOf(str.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultValue;
+        }
+    }
+    //endregion
+
     @Inject
     CommunicationChannelPurposeRepository communicationChannelPurposeRepository;
+    @Inject
+    ConfigurationService configurationService;
 
 }
@@ -0,0 +1,43 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.spi;
+
+/**
+ * Optional SPI service, to derive the canonical form of an address, used by
+ * {@link org.incode.module.commchannel.dom.api.GeocodingService} as the key of its lookup cache.  The canonical
+ * form is never sent to the geocoding API; on a cache miss the address as provided is sent instead.
+ *
+ * <p>
+ *     If no implementation is registered then
+ *     {@link org.incode.module.commchannel.dom.api.AddressCanonicaliserDefault} is used.
+ * </p>
+ */
+public interface AddressCanonicaliser {
+
+    /**
+     * The canonical form of the address made up of the specified parts (any of which may be <tt>null</tt>, or may
+     * themselves be comma-separated), such that variants of the same address (differing in case, punctuation,
+     * country name and so on) have the same canonical form.
+     *
+     * <p>
+     *     May return <tt>null</tt> if there is no address to geocode.
+     * </p>
+     */
+    String canonicalise(final String... addressParts);
+
+}
@@ -46,4 +46,20 @@ Collection<String> purposesFor(
             final CommunicationChannelType communicationChannelType,
             final Object communicationChannel);
 
+    /**
+     * Whether the results of {@link #purposesFor(CommunicationChannelType, Object)} may be cached by
+     * {@link org.incode.module.commchannel.dom.impl.purpose.CommunicationChannelPurposeService}.
+     *
+     * <p>
+     *     Defaults to <tt>false</tt>.  Implementations that return <tt>true</tt> should call
+     *     {@link org.incode.module.commchannel.dom.impl.purpose.CommunicationChannelPurposeService#invalidate()}
+     *     whenever the purposes they return change.  Note also that (depending on its configured key strategy) the
+     *     cache may assume that the purposes depend only on the type of the channel and the class of its owner, not
+     *     on the owner itself.
+     * </p>
+     */
+    default boolean isCacheable() {
+        return false;
+    }
+
 }
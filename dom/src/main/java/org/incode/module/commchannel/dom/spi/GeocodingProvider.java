@@ -0,0 +1,47 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.spi;
+
+import org.incode.module.commchannel.dom.api.GeocodedAddress;
+
+/**
+ * Optional SPI service, to geocode an address on behalf of
+ * {@link org.incode.module.commchannel.dom.api.GeocodingService}.
+ *
+ * <p>
+ *     If no implementation is registered then the provider is selected by the
+ *     <tt>...GeocodingService.provider</tt> configuration property: either
+ *     {@link org.incode.module.commchannel.dom.api.GeocodingProviderGoogle} (<tt>google</tt>, the default),
+ *     {@link org.incode.module.commchannel.dom.api.GeocodingProviderGazetteer} (<tt>gazetteer</tt>) or
+ *     {@link org.incode.module.commchannel.dom.api.GeocodingProviderReplaying} (<tt>replay</tt>).
+ * </p>
+ */
+public interface GeocodingProvider {
+
+    /**
+     * Geocodes the (not encoded) address, returning a response in the form of that of the Google geocoding API.
+     *
+     * <p>
+     *     Returns <tt>null</tt> if the address could not be geocoded because of some failure (eg a timeout); an
+     *     address that is simply not recognised should instead result in a
+     *     {@link org.incode.module.commchannel.dom.api.GeocodeApiResponse.Status#ZERO_RESULTS} response.
+     * </p>
+     */
+    GeocodedAddress geocode(final String address);
+
+}
@@ -0,0 +1,27 @@
+package org.incode.module.commchannel.dom;
+
+import org.junit.Test;
+
+import org.incode.module.commchannel.dom.CommChannelModule.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommChannelModuleConfigTest {
+
+    @Test
+    public void defaults_when_missing_or_malformed() throws Exception {
+        assertThat(Config.parseInt(null, 5)).isEqualTo(5);
+        assertThat(Config.parseInt("five", 5)).isEqualTo(5);
+        assertThat(Config.parseDouble(null, 0.5)).isEqualTo(0.5);
+        assertThat(Config.parseDouble("half", 0.5)).isEqualTo(0.5);
+        assertThat(Config.parseBoolean(null, true)).isTrue();
+    }
+
+    @Test
+    public void trims() throws Exception {
+        assertThat(Config.parseInt(" 10 ", 5)).isEqualTo(10);
+        assertThat(Config.parseDouble(" 0.8\t", 0.5)).isEqualTo(0.8);
+        assertThat(Config.parseBoolean(" true ", false)).isTrue();
+    }
+
+}
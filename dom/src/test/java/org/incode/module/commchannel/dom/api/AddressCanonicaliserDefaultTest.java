@@ -0,0 +1,67 @@
+package org.incode.module.commchannel.dom.api;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AddressCanonicaliserDefaultTest {
+
+    AddressCanonicaliserDefault canonicaliser;
+
+    @Before
+    public void setUp() throws Exception {
+        canonicaliser = new AddressCanonicaliserDefault();
+    }
+
+    public static class CanonicaliseTest extends AddressCanonicaliserDefaultTest {
+
+        @Test
+        public void case_whitespace_and_punctuation() throws Exception {
+            assertThat(canonicaliser.canonicalise("Oxford")).isEqualTo("oxford");
+            assertThat(canonicaliser.canonicalise("OXFORD ")).isEqualTo("oxford");
+            assertThat(canonicaliser.canonicalise("Oxford,")).isEqualTo("oxford");
+            assertThat(canonicaliser.canonicalise("45  High St.")).isEqualTo("45 high st");
+        }
+
+        @Test
+        public void postcodes() throws Exception {
+            assertThat(canonicaliser.canonicalise("ox12jd")).isEqualTo("OX1 2JD");
+            assertThat(canonicaliser.canonicalise("Ox1  2Jd")).isEqualTo("OX1 2JD");
+            assertThat(canonicaliser.canonicalise("Liverpool L39 5AA")).isEqualTo("liverpool L39 5AA");
+            assertThat(canonicaliser.canonicalise("SW1A 2AA")).isEqualTo("SW1A 2AA");
+        }
+
+        @Test
+        public void country_names() throws Exception {
+            assertThat(canonicaliser.canonicalise("Oxford", "UK")).isEqualTo("oxford, GB");
+            assertThat(canonicaliser.canonicalise("Oxford", "United Kingdom")).isEqualTo("oxford, GB");
+            assertThat(canonicaliser.canonicalise("Paris", "France")).isEqualTo("paris, FR");
+            assertThat(canonicaliser.canonicalise("Boston", "U.S.A.")).isEqualTo("boston, US");
+            assertThat(canonicaliser.canonicalise("Boston", "USA")).isEqualTo("boston, US");
+        }
+
+        @Test
+        public void ambiguous_country_names_and_codes() throws Exception {
+            assertThat(canonicaliser.canonicalise("Atlanta", "Georgia")).isEqualTo("atlanta, georgia");
+            assertThat(canonicaliser.canonicalise("Springfield", "CA")).isEqualTo("springfield, ca");
+            assertThat(canonicaliser.canonicalise("Springfield", "Canada")).isEqualTo("springfield, CA");
+        }
+
+        @Test
+        public void parts_and_comma_separated_are_equivalent() throws Exception {
+            final String fromParts = canonicaliser.canonicalise("45", "High Street", "Oxford", null, "OX1 2JD", "UK");
+            final String fromLine = canonicaliser.canonicalise("45, High Street, Oxford, ox12jd, United Kingdom");
+
+            assertThat(fromParts).isEqualTo("45, high street, oxford, OX1 2JD, GB");
+            assertThat(fromLine).isEqualTo(fromParts);
+        }
+
+        @Test
+        public void nothing_to_canonicalise() throws Exception {
+            assertThat(canonicaliser.canonicalise()).isNull();
+            assertThat(canonicaliser.canonicalise(null, "", " , ")).isNull();
+        }
+    }
+
+}
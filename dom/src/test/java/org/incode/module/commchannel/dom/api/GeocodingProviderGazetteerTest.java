@@ -0,0 +1,131 @@
+package org.incode.module.commchannel.dom.api;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class GeocodingProviderGazetteerTest {
+
+    static final String GAZETTEER = ""
+            + "# key\tlat\tlng\tname\tcountryCode\ttype\n"
+            + "OX1 2JD\t51.7520\t-1.2577\tOX1 2JD\tGB\n"
+            + "OX1\t51.7500\t-1.2600\n"
+            + "Oxford\t51.7548\t-1.2544\tOxford\tGB\tlocality\n"
+            + "\n"
+            + "M\u00fcnchen\t48.1374\t11.5755\tM\u00fcnchen\tDE\n";
+
+    GeocodingProviderGazetteer gazetteer;
+
+    @Before
+    public void setUp() throws Exception {
+        gazetteer = new GeocodingProviderGazetteer(ByteBuffer.wrap(GAZETTEER.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public static class IndexTest extends GeocodingProviderGazetteerTest {
+
+        @Test
+        public void ignores_comments_and_blank_lines() throws Exception {
+            assertThat(gazetteer.size()).isEqualTo(4);
+        }
+
+        @Test
+        public void finds_by_normalised_key() throws Exception {
+            assertThat(gazetteer.find("ox12jd")).startsWith("OX1 2JD\t");
+            assertThat(gazetteer.find("OXFORD")).startsWith("Oxford\t");
+            assertThat(gazetteer.find("m\u00fcnchen")).startsWith("M\u00fcnchen\t");
+            assertThat(gazetteer.find("Cambridge")).isNull();
+            assertThat(gazetteer.find(", ")).isNull();
+        }
+
+        @Test
+        public void rejects_malformed_lines() throws Exception {
+            assertRejected("OX1\t51.75\n", "line 1");
+            assertRejected("# comment\nOX1\tnorth\t-1.26\n", "line 2");
+            assertRejected("OX1\t51.75\t-1.26\tOX1\tGBR\n", "line 1");
+            assertRejected("OX1\t51.75\t-1.26\tOX1\tGB\tstreet\n", "line 1");
+        }
+
+        private static void assertRejected(final String gazetteer, final String expectedMessage) {
+            try {
+                new GeocodingProviderGazetteer(ByteBuffer.wrap(gazetteer.getBytes(StandardCharsets.UTF_8)));
+                fail("expected " + gazetteer + " to be rejected");
+            } catch (final IllegalArgumentException ex) {
+                assertThat(ex.getMessage()).startsWith(expectedMessage + ":");
+            }
+        }
+    }
+
+    public static class GeocodeTest extends GeocodingProviderGazetteerTest {
+
+        @Test
+        public void by_postcode() throws Exception {
+
+            // when
+            final GeocodedAddress geocodedAddress = gazetteer.geocode("45 high street, oxford, OX1 2JD, GB");
+
+            // then
+            assertThat(geocodedAddress.getStatus()).isEqualTo(GeocodeApiResponse.Status.OK);
+            assertThat(geocodedAddress.getLatLng()).isEqualTo("51.752,-1.2577");
+            assertThat(geocodedAddress.getPostalCode()).isEqualTo("OX1 2JD");
+            assertThat(geocodedAddress.getCountryCode()).isEqualTo("GB");
+            assertThat(geocodedAddress.getPlaceId()).isEqualTo("gazetteer:ox12jd");
+            assertThat(geocodedAddress.getFormattedAddress()).isEqualTo("OX1 2JD, GB");
+        }
+
+        @Test
+        public void by_outward_code() throws Exception {
+
+            // when
+            final GeocodedAddress geocodedAddress = gazetteer.geocode("1 broad street, OX1 3BD, GB");
+
+            // then
+            assertThat(geocodedAddress.getStatus()).isEqualTo(GeocodeApiResponse.Status.OK);
+            assertThat(geocodedAddress.getPostalCode()).isEqualTo("OX1");
+            assertThat(geocodedAddress.getCountryCode()).isEqualTo("GB");
+        }
+
+        @Test
+        public void by_locality() throws Exception {
+
+            // when
+            final GeocodedAddress geocodedAddress = gazetteer.geocode("1 broad street, oxford, GB");
+
+            // then
+            assertThat(geocodedAddress.getStatus()).isEqualTo(GeocodeApiResponse.Status.OK);
+            assertThat(geocodedAddress.getLocality()).isEqualTo("Oxford");
+            assertThat(geocodedAddress.getLatLng()).isEqualTo("51.7548,-1.2544");
+        }
+
+        @Test
+        public void when_not_found() throws Exception {
+
+            // when
+            final GeocodedAddress geocodedAddress = gazetteer.geocode("1 trinity street, cambridge, GB");
+
+            // then
+            assertThat(geocodedAddress.getStatus()).isEqualTo(GeocodeApiResponse.Status.ZERO_RESULTS);
+            assertThat(GeocodedAddress.isOk(geocodedAddress)).isFalse();
+        }
+
+        @Test
+        public void when_name_needs_escaping() throws Exception {
+
+            // given
+            final GeocodingProviderGazetteer gazetteer = new GeocodingProviderGazetteer(ByteBuffer.wrap(
+                    "Quote\t1\t2\tThe \"Quoted\" \\ Place\tGB\tlocality\n".getBytes(StandardCharsets.UTF_8)));
+
+            // when
+            final GeocodedAddress geocodedAddress = gazetteer.geocode("quote");
+
+            // then
+            assertThat(geocodedAddress.getLocality()).isEqualTo("The \"Quoted\" \\ Place");
+            assertThat(geocodedAddress.getFormattedAddress()).isEqualTo("The \"Quoted\" \\ Place, GB");
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+package org.incode.module.commchannel.dom.api;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.incode.module.commchannel.dom.spi.GeocodingProvider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GeocodingProviderReplayingTest {
+
+    static final String OXFORD = "45 high street, oxford, OX1, GB";
+    static final String JSON = "{\"status\":\"OK\",\"results\":[{\"formatted_address\":\"45 High St, Oxford OX1, UK\"}]}";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    Path directory;
+    int delegateCalls;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = temporaryFolder.getRoot().toPath();
+
+        final GeocodingProvider delegate = address -> {
+            delegateCalls++;
+            return address.equals(OXFORD) ? GeocodingService.asGeocodedAddressFrom(JSON) : null;
+        };
+        final GeocodingProviderRecording recording = new GeocodingProviderRecording(delegate, directory);
+        recording.geocode(OXFORD);
+        recording.geocode("timed out");
+    }
+
+    public static class RecordTest extends GeocodingProviderReplayingTest {
+
+        @Test
+        public void records_responses_only() throws Exception {
+            assertThat(delegateCalls).isEqualTo(2);
+            assertThat(Files.list(directory).count()).isEqualTo(1L);
+            final GeocodingProviderRecording.Recorded recorded = GeocodingProviderRecording.Recorded.fromJson(
+                    new String(Files.readAllBytes(GeocodingProviderRecording.fileFor(directory, OXFORD)), "UTF-8"));
+            assertThat(recorded.address).isEqualTo(OXFORD);
+            assertThat(recorded.response).isEqualTo(JSON);
+        }
+
+        @Test
+        public void returns_response_even_if_cannot_record() throws Exception {
+
+            // given
+            final Path notADirectory = temporaryFolder.newFile().toPath();
+            final GeocodingProviderRecording recording = new GeocodingProviderRecording(
+                    address -> GeocodingService.asGeocodedAddressFrom(JSON), notADirectory);
+
+            // when
+            final GeocodedAddress geocodedAddress = recording.geocode(OXFORD);
+
+            // then
+            assertThat(geocodedAddress).isNotNull();
+            assertThat(geocodedAddress.getApiResponseAsJson()).isEqualTo(JSON);
+        }
+    }
+
+    public static class ReplayTest extends GeocodingProviderReplayingTest {
+
+        @Test
+        public void when_recorded() throws Exception {
+
+            // given
+            final GeocodingProviderReplaying replaying = new GeocodingProviderReplaying(directory, 0, 0, 0.0, 0.0);
+
+            // when
+            final GeocodedAddress geocodedAddress = replaying.geocode(OXFORD);
+
+            // then
+            assertThat(geocodedAddress.getStatus()).isEqualTo(GeocodeApiResponse.Status.OK);
+            assertThat(geocodedAddress.getFormattedAddress()).isEqualTo("45 High St, Oxford OX1, UK");
+            assertThat(geocodedAddress.getApiResponseAsJson()).isEqualTo(JSON);
+        }
+
+        @Test
+        public void when_not_recorded() throws Exception {
+
+            // given
+            final GeocodingProviderReplaying replaying = new GeocodingProviderReplaying(directory, 0, 0, 0.0, 0.0);
+
+            // when
+            final GeocodedAddress geocodedAddress = replaying.geocode("1 trinity street, cambridge, GB");
+
+            // then
+            assertThat(geocodedAddress.getStatus()).isEqualTo(GeocodeApiResponse.Status.ZERO_RESULTS);
+        }
+
+        @Test
+        public void when_recorded_without_address() throws Exception {
+
+            // given
+            final String address = "1 trinity street, cambridge, GB";
+            Files.write(GeocodingProviderRecording.fileFor(directory, address), JSON.getBytes("UTF-8"));
+            final GeocodingProviderReplaying replaying = new GeocodingProviderReplaying(directory, 0, 0, 0.0, 0.0);
+
+            // when
+            final GeocodedAddress geocodedAddress = replaying.geocode(address);
+
+            // then
+            assertThat(geocodedAddress.getStatus()).isEqualTo(GeocodeApiResponse.Status.OK);
+            assertThat(geocodedAddress.getApiResponseAsJson()).isEqualTo(JSON);
+        }
+
+        @Test
+        public void when_cannot_be_read() throws Exception {
+
+            // given
+            final String address = "1 trinity street, cambridge, GB";
+            Files.write(GeocodingProviderRecording.fileFor(directory, address), "not json".getBytes("UTF-8"));
+            final GeocodingProviderReplaying replaying = new GeocodingProviderReplaying(directory, 0, 0, 0.0, 0.0);
+
+            // when
+            final GeocodedAddress geocodedAddress = replaying.geocode(address);
+
+            // then
+            assertThat(geocodedAddress).isNull();
+        }
+
+        @Test
+        public void with_latency() throws Exception {
+
+            // given
+            final GeocodingProviderReplaying replaying = new GeocodingProviderReplaying(directory, 50, 0, 0.0, 0.0);
+
+            // when
+            final long start = System.nanoTime();
+            replaying.geocode(OXFORD);
+
+            // then
+            assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(50_000_000L);
+        }
+
+        @Test
+        public void with_errors() throws Exception {
+            assertThat(new GeocodingProviderReplaying(directory, 0, 0, 1.0, 0.0).geocode(OXFORD)).isNull();
+            assertThat(new GeocodingProviderReplaying(directory, 0, 0, 0.0, 1.0).geocode(OXFORD).getStatus())
+                    .isEqualTo(GeocodeApiResponse.Status.OVER_QUERY_LIMIT);
+        }
+    }
+
+}
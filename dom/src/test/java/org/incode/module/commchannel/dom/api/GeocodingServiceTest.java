@@ -4,6 +4,9 @@
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.List;
+
+import com.google.common.collect.Lists;
 
 import org.jmock.Expectations;
 import org.jmock.auto.Mock;
@@ -14,6 +17,8 @@
 import org.apache.isis.applib.services.config.ConfigurationService;
 import org.apache.isis.core.unittestsupport.jmocking.JUnitRuleMockery2;
 
+import org.incode.module.commchannel.dom.spi.GeocodingProvider;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assume.assumeThat;
@@ -77,9 +82,110 @@ public void demo_mode() throws Exception {
             assertThat(geocodedAddress.getPlaceId()).isEqualTo("Eic0NSBIaWdoIFN0LCBPeGZvcmQsIE94Zm9yZHNoaXJlIE9YMSwgVUs");
             assertThat(geocodedAddress.getPostalCode()).isEqualTo("OX1");
             assertThat(geocodedAddress.getCountry()).isEqualTo("United Kingdom");
+            assertThat(geocodedAddress.getCountryCode()).isEqualTo("GB");
+            assertThat(geocodedAddress.getLocality()).isEqualTo("Oxford");
+            assertThat(geocodedAddress.getPostalTown()).isEqualTo("Oxford");
+            assertThat(geocodedAddress.getAdministrativeAreaLevel2()).isEqualTo("Oxfordshire");
+            assertThat(geocodedAddress.getAdministrativeAreaLevel1()).isNull();
         }
     }
 
+    public static class LookupAddressTest extends GeocodingServiceTest {
+
+        @Before
+        public void setUp() throws Exception {
+            geocodingService = new GeocodingService();
+            geocodingService.configurationService = mockConfigurationService;
+
+            context.checking(new Expectations() {{
+                allowing(mockConfigurationService).getProperty(GeocodingService.class.getName() + ".demo");
+                will(returnValue("true"));
+                allowing(mockConfigurationService);
+            }});
+
+            geocodingService.init();
+        }
+
+        @Test
+        public void variants_are_cached_under_the_same_key() throws Exception {
+
+            // when
+            final GeocodedAddress first = geocodingService.lookupAddress("45 High Street", "Oxford", "OX1", "UK");
+            final GeocodedAddress second = geocodingService.lookupAddress("45 HIGH STREET ", "Oxford,", "ox1", "United Kingdom");
+            final GeocodedAddress third = geocodingService.lookupAddress("45 High Street", "Oxford", "OX1", "UK");
+
+            // then
+            assertThat(second).isSameAs(first);
+            assertThat(third).isSameAs(first);
+            assertThat(geocodingService.getLookups()).isEqualTo(3);
+            assertThat(geocodingService.getCacheHits()).isEqualTo(2);
+            assertThat(geocodingService.getKeyCollisions()).isEqualTo(1);
+        }
+
+        @Test
+        public void different_addresses_are_not_cached_under_the_same_key() throws Exception {
+
+            // when
+            geocodingService.lookupAddress("45 High Street", "Oxford", "OX1", "UK");
+            geocodingService.lookupAddress("47 High Street", "Oxford", "OX1", "UK");
+
+            // then
+            assertThat(geocodingService.getCacheHits()).isEqualTo(0);
+        }
+
+        @Test
+        public void when_nothing_to_lookup() throws Exception {
+            assertThat(geocodingService.lookupAddress(null, " ", ",")).isNull();
+            assertThat(geocodingService.getLookups()).isEqualTo(0);
+        }
+    }
+
+    public static class LookupAddressProviderTest extends GeocodingServiceTest {
+
+        final List<String> geocoded = Lists.newArrayList();
+
+        @Before
+        public void setUp() throws Exception {
+            geocodingService = new GeocodingService();
+            geocodingService.configurationService = mockConfigurationService;
+            geocodingService.geocodingProvider = new GeocodingProvider() {
+                @Override
+                public GeocodedAddress geocode(final String address) {
+                    geocoded.add(address);
+                    return null;
+                }
+            };
+
+            context.checking(new Expectations() {{
+                allowing(mockConfigurationService);
+            }});
+
+            geocodingService.init();
+        }
+
+        @Test
+        public void sends_address_as_provided_rather_than_canonical_form() throws Exception {
+
+            // when
+            geocodingService.lookupAddress("45 High Street", "Atlanta", "Georgia");
+
+            // then
+            assertThat(geocoded).containsExactly("45 High Street, Atlanta, Georgia");
+        }
+
+        @Test
+        public void does_not_turn_plus_into_space() throws Exception {
+
+            // when
+            geocodingService.lookupAddress("Unit 1+2, 45 High Street", "Oxford");
+            geocodingService.refreshAddress("Unit 1+2, 45 High Street", "Oxford");
+
+            // then
+            assertThat(geocoded).containsExactly(
+                    "Unit 1+2, 45 High Street, Oxford",
+                    "Unit 1+2, 45 High Street, Oxford");
+        }
+    }
 
     /**
      * Tries to retrieve some content, 1 second timeout.
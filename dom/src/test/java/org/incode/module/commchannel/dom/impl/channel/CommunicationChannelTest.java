@@ -0,0 +1,110 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.channel;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import org.incode.module.commchannel.dom.impl.emailaddress.EmailAddress;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommunicationChannelTest {
+
+    static EmailAddress emailAddressWithId(final Long numericId) {
+        final EmailAddress emailAddress = new EmailAddress() {
+            @Override
+            public Long getNumericId() {
+                return numericId;
+            }
+        };
+        emailAddress.setType(CommunicationChannelType.EMAIL_ADDRESS);
+        return emailAddress;
+    }
+
+    public static class ComparatorTest extends CommunicationChannelTest {
+
+        @Test
+        public void orders_by_numeric_id_not_lexically() throws Exception {
+            // given
+            final EmailAddress id10 = emailAddressWithId(10L);
+            final EmailAddress id9 = emailAddressWithId(9L);
+
+            // when
+            final List<CommunicationChannel> channels = Lists.<CommunicationChannel>newArrayList(id10, id9);
+            channels.sort(CommunicationChannel.COMPARATOR);
+
+            // then
+            assertThat(channels).containsExactly(id9, id10);
+            assertThat(CommunicationChannel.COMPARATOR.compare(id9, id10)).isLessThan(0);
+        }
+
+        @Test
+        public void unpersisted_first() throws Exception {
+            // given
+            final EmailAddress unpersisted = emailAddressWithId(null);
+            final EmailAddress id1 = emailAddressWithId(1L);
+
+            // then
+            assertThat(CommunicationChannel.COMPARATOR.compare(unpersisted, id1)).isLessThan(0);
+            assertThat(CommunicationChannel.COMPARATOR.compare(id1, unpersisted)).isGreaterThan(0);
+        }
+
+        @Test
+        public void by_type_first() throws Exception {
+            // given
+            final EmailAddress emailAddress = emailAddressWithId(10L);
+            final EmailAddress otherType = emailAddressWithId(9L);
+            otherType.setType(CommunicationChannelType.PHONE_NUMBER);
+
+            // then (EMAIL_ADDRESS is declared before PHONE_NUMBER)
+            assertThat(CommunicationChannel.COMPARATOR.compare(emailAddress, otherType)).isLessThan(0);
+        }
+    }
+
+    public static class GetNumericIdTest extends CommunicationChannelTest {
+
+        @Test
+        public void when_not_persisted() throws Exception {
+            assertThat(new EmailAddress().getNumericId()).isNull();
+            assertThat(new EmailAddress().getId()).isEqualTo("");
+        }
+
+        @Test
+        public void from_object_id() throws Exception {
+            assertThat(CommunicationChannel.numericIdOf("9[OID]" + EmailAddress.class.getName())).isEqualTo(9L);
+            assertThat(CommunicationChannel.numericIdOf("10")).isEqualTo(10L);
+        }
+
+        @Test
+        public void when_object_id_is_null() throws Exception {
+            assertThat(CommunicationChannel.numericIdOf(null)).isNull();
+        }
+
+        @Test
+        public void when_object_id_is_not_numeric() throws Exception {
+            assertThat(CommunicationChannel.numericIdOf("abc[OID]" + EmailAddress.class.getName())).isNull();
+            assertThat(CommunicationChannel.numericIdOf("")).isNull();
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.emailaddress;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmailAddressCanonicaliserTest {
+
+    EmailAddressCanonicaliser canonicaliser;
+
+    @Before
+    public void setUp() throws Exception {
+        canonicaliser = new EmailAddressCanonicaliser();
+    }
+
+    public static class CanonicaliseTest extends EmailAddressCanonicaliserTest {
+
+        @Test
+        public void trims_and_lower_cases() throws Exception {
+            assertThat(canonicaliser.canonicalise("  Fred.Smith@GMail.com ")).isEqualTo("fred.smith@gmail.com");
+        }
+
+        @Test
+        public void when_null() throws Exception {
+            assertThat(canonicaliser.canonicalise(null)).isNull();
+        }
+
+        @Test
+        public void gmail_not_normalised_by_default() throws Exception {
+            assertThat(canonicaliser.canonicalise("fred.smith+news@gmail.com")).isEqualTo("fred.smith+news@gmail.com");
+        }
+
+        @Test
+        public void gmail_normalised_when_enabled() throws Exception {
+            // given
+            canonicaliser.normaliseGmail = true;
+
+            // then
+            assertThat(canonicaliser.canonicalise("Fred.Smith+news@googlemail.com")).isEqualTo("fredsmith@gmail.com");
+            assertThat(canonicaliser.canonicalise("fred.smith+news@example.com")).isEqualTo("fred.smith+news@example.com");
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.phoneorfax;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.incode.module.commchannel.dom.CommChannelModule;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PhoneNumberNormaliserTest {
+
+    PhoneNumberNormaliser normaliser;
+
+    @Before
+    public void setUp() throws Exception {
+        normaliser = new PhoneNumberNormaliser();
+    }
+
+    public static class NormaliseTest extends PhoneNumberNormaliserTest {
+
+        @Test
+        public void without_default_country_code() throws Exception {
+            assertThat(normaliser.normalise("555 1234")).isEqualTo("5551234");
+            assertThat(normaliser.normalise("555-1234")).isEqualTo("5551234");
+            assertThat(normaliser.normalise("0208 111 1111")).isEqualTo("02081111111");
+        }
+
+        @Test
+        public void international_format() throws Exception {
+            assertThat(normaliser.normalise("+44 208 111 1111")).isEqualTo("+442081111111");
+            assertThat(normaliser.normalise("0044 208 111 1111")).isEqualTo("+442081111111");
+        }
+
+        @Test
+        public void with_default_country_code() throws Exception {
+            // given
+            normaliser.defaultCountryCode = "44";
+
+            // then
+            assertThat(normaliser.normalise("0208 111 1111")).isEqualTo("+442081111111");
+            assertThat(normaliser.normalise("+44 208-111-1111")).isEqualTo("+442081111111");
+            assertThat(normaliser.normalise("+1 555 1234")).isEqualTo("+15551234");
+        }
+
+        @Test
+        public void trunk_prefix_in_international_format() throws Exception {
+            assertThat(normaliser.normalise("+44 (0)20 8111 1111")).isEqualTo("+442081111111");
+            assertThat(normaliser.normalise("+44 ( 0 ) 20 8111 1111")).isEqualTo("+442081111111");
+            assertThat(normaliser.normalise("0044 (0)20 8111 1111")).isEqualTo("+442081111111");
+        }
+
+        @Test
+        public void trunk_prefix_in_national_format() throws Exception {
+            // given
+            normaliser.defaultCountryCode = "44";
+
+            // then
+            assertThat(normaliser.normalise("(0)20 8111 1111")).isEqualTo("+442081111111");
+        }
+
+        @Test
+        public void twenty_characters_with_default_country_code() throws Exception {
+            // given
+            normaliser.defaultCountryCode = "353";
+            final String phoneNumber = "12345678901234567890";
+            assertThat(phoneNumber).hasSize(CommChannelModule.JdoColumnLength.PHONE_NUMBER);
+
+            // when
+            final String normalised = normaliser.normalise(phoneNumber);
+
+            // then
+            assertThat(normalised).isEqualTo("+35312345678901234567890");
+            assertThat(normalised.length())
+                    .isLessThanOrEqualTo(CommChannelModule.JdoColumnLength.NORMALISED_PHONE_NUMBER);
+        }
+
+        @Test
+        public void too_long_to_normalise() throws Exception {
+            // given
+            normaliser.defaultCountryCode = "353";
+
+            // then
+            assertThat(normaliser.normalise("1234567890123456789012")).isNull();
+        }
+
+        @Test
+        public void when_null_or_no_digits() throws Exception {
+            assertThat(normaliser.normalise(null)).isNull();
+            assertThat(normaliser.normalise(" - ")).isNull();
+        }
+    }
+
+}
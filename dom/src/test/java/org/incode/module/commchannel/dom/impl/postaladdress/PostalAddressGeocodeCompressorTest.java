@@ -0,0 +1,55 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.postaladdress;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.base.Strings;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostalAddressGeocodeCompressorTest {
+
+    public static class CompressTest extends PostalAddressGeocodeCompressorTest {
+
+        @Test
+        public void round_trips() throws Exception {
+            final String json = "{ \"formatted_address\" : \"45 High St, Oxford OX1 4AP, UK\", \"status\" : \"OK\" }";
+            assertThat(PostalAddressGeocodeCompressor.decompress(PostalAddressGeocodeCompressor.compress(json)))
+                    .isEqualTo(json);
+        }
+
+        @Test
+        public void round_trips_non_ascii() throws Exception {
+            final String json = "{ \"formatted_address\" : \"Stra\u00dfe 1, M\u00fcnchen, Deutschland\" }";
+            assertThat(PostalAddressGeocodeCompressor.decompress(PostalAddressGeocodeCompressor.compress(json)))
+                    .isEqualTo(json);
+        }
+
+        @Test
+        public void shrinks_verbose_json() throws Exception {
+            final String json = Strings.repeat(
+                    "{ \"long_name\" : \"Oxford\", \"short_name\" : \"Oxford\", \"types\" : [ \"postal_town\" ] },\n", 50);
+            final byte[] compressed = PostalAddressGeocodeCompressor.compress(json);
+            assertThat(compressed.length).isLessThan(json.getBytes(StandardCharsets.UTF_8).length / 5);
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ *  Copyright 2015 incode.org
+ *
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.dom.impl.postaladdress;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostalAddressGeocodeMatcherTest {
+
+    public static class NormaliseTest extends PostalAddressGeocodeMatcherTest {
+
+        @Test
+        public void expands_abbreviations() throws Exception {
+            assertThat(PostalAddressGeocodeMatcher.normalise("45 Banbury Rd., Oxford OX2"))
+                    .containsExactly("45", "banbury", "road", "oxford", "ox2");
+        }
+
+        @Test
+        public void does_not_expand_ambiguous_abbreviations() throws Exception {
+            assertThat(PostalAddressGeocodeMatcher.normalise("1 St Giles, N Parade"))
+                    .containsExactly("1", "st", "giles", "n", "parade");
+        }
+
+        @Test
+        public void st_ending_a_line_is_street() throws Exception {
+            assertThat(PostalAddressGeocodeMatcher.normalise("45 High St, St Albans"))
+                    .containsExactly("45", "high", "street", "st", "albans");
+        }
+    }
+
+    public static class SimilarityTest extends PostalAddressGeocodeMatcherTest {
+
+        @Test
+        public void spelling_variants() throws Exception {
+            assertThat(PostalAddressGeocodeMatcher.similarity(
+                    "45 Banbury Rd, Oxford OX2, UK", "45, Banbury Road, Oxford, OX2, UK")).isEqualTo(1.0);
+        }
+
+        @Test
+        public void similar() throws Exception {
+            assertThat(PostalAddressGeocodeMatcher.similarity(
+                    "Flat 2a, 45 Penny Ln, Allerton, Liverpool, L39 5AA",
+                    "Flat 2a, 45 Penny Lane, Liverpool, L39 5AA")).isGreaterThan(0.8);
+        }
+
+        @Test
+        public void street_abbreviated_as_st() throws Exception {
+            assertThat(PostalAddressGeocodeMatcher.similarity(
+                    "45 High St, Oxford, OX1, UK", "45 High Street, Oxford, OX1, UK")).isEqualTo(1.0);
+        }
+
+        @Test
+        public void different_street_names() throws Exception {
+            assertThat(PostalAddressGeocodeMatcher.similarity(
+                    "Flat 2a, 45 Penny Lane, Allerton, Liverpool, L39 5AA, UK",
+                    "Flat 2a, 45 Abbey Lane, Allerton, Liverpool, L39 5AA, UK")).isEqualTo(0.0);
+        }
+
+        @Test
+        public void different_house_numbers() throws Exception {
+            assertThat(PostalAddressGeocodeMatcher.similarity(
+                    "45 High Street, Oxford, OX1", "47 High Street, Oxford, OX1")).isEqualTo(0.0);
+        }
+
+        @Test
+        public void dissimilar() throws Exception {
+            assertThat(PostalAddressGeocodeMatcher.similarity(
+                    "45 High Street, Oxford, OX1", "45 Cornmarket Street, Oxford, OX1")).isLessThan(0.8);
+        }
+    }
+
+}
@@ -17,6 +17,7 @@
 package org.incode.module.commchannel.fixture.dom;
 
 import java.util.List;
+
 import org.apache.isis.applib.DomainObjectContainer;
 import org.apache.isis.applib.annotation.Action;
 import org.apache.isis.applib.annotation.ActionLayout;
@@ -28,6 +29,10 @@
 import org.apache.isis.applib.annotation.ParameterLayout;
 import org.apache.isis.applib.annotation.SemanticsOf;
 
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelSearchIndex;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddressGeocodeCompressor;
+
 @DomainService(
         nature = NatureOfService.VIEW,
         repositoryFor = CommChannelDemoObject.class
@@ -67,10 +72,66 @@ public CommChannelDemoObject create(
 
     //endregion
 
+    //region > searchCommunicationChannels (action)
+
+    @Action(
+            semantics = SemanticsOf.SAFE
+    )
+    @MemberOrder(sequence = "3")
+    public List<CommunicationChannel> searchCommunicationChannels(
+            @ParameterLayout(named = "Query")
+            final String query) {
+        return communicationChannelSearchIndex.searchChannels(query, 100);
+    }
+
+    public String disableSearchCommunicationChannels() {
+        return communicationChannelSearchIndex.isBuilt() ? null : "Search index has not yet been built";
+    }
+
+    //endregion
+
+    //region > rebuildSearchIndex (action)
+
+    @Action(
+            semantics = SemanticsOf.IDEMPOTENT
+    )
+    @MemberOrder(sequence = "4")
+    public int rebuildSearchIndex() {
+        return communicationChannelSearchIndex.rebuild();
+    }
+
+    //endregion
+
+    //region > compressGeocodeResponses (action)
+
+    @Action(
+            semantics = SemanticsOf.IDEMPOTENT
+    )
+    @MemberOrder(sequence = "5")
+    public int compressGeocodeResponses(
+            @ParameterLayout(named = "Batch size")
+            final int batchSize) {
+        return postalAddressGeocodeCompressor.compressAllExisting(batchSize);
+    }
+
+    public int default0CompressGeocodeResponses() {
+        return 100;
+    }
+
+    public String validateCompressGeocodeResponses(final int batchSize) {
+        return batchSize > 0 ? null : "Batch size must be positive";
+    }
+
+    //endregion
+
     //region > injected services
 
     @javax.inject.Inject 
     DomainObjectContainer container;
+    @javax.inject.Inject
+    CommunicationChannelSearchIndex communicationChannelSearchIndex;
+    @javax.inject.Inject
+    PostalAddressGeocodeCompressor postalAddressGeocodeCompressor;
 
     //endregion
 
@@ -36,6 +36,7 @@
 
 @javax.jdo.annotations.PersistenceCapable(identityType= IdentityType.DATASTORE, schema ="incodeCommChannelDemo")
 @javax.jdo.annotations.Inheritance(strategy = InheritanceStrategy.NEW_TABLE)
+@javax.jdo.annotations.Cacheable("true")
 @DomainObject(
         objectType = "incodeCommChannelDemo.CommunicationChannelOwnerLinkForDemoObject"
 )
@@ -46,4 +46,12 @@ public Collection<String> purposesFor(
 
         return null;
     }
+
+    /**
+     * The purposes are hard-coded, so can safely be cached.
+     */
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
 }
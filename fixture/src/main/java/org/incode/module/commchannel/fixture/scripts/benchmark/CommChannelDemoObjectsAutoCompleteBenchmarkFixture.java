@@ -0,0 +1,164 @@
+/*
+ *  Copyright 2014~2015 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.fixture.scripts.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.isis.applib.fixturescripts.DiscoverableFixtureScript;
+import org.apache.isis.applib.services.xactn.TransactionService;
+
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelSummary;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelSummaryRepository;
+import org.incode.module.commchannel.dom.impl.emailaddress.EmailAddressRepository;
+import org.incode.module.commchannel.dom.impl.phoneorfax.PhoneOrFaxNumberRepository;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObject;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObjectMenu;
+import org.incode.module.commchannel.fixture.scripts.teardown.CommChannelDemoObjectsTearDownFixture;
+
+/**
+ * Creates {@link #getNumberOfOwners() a large number} of demo owners, each with an email address and a phone number,
+ * then times {@link CommunicationChannelSummaryRepository#autoComplete(String, int) type-ahead searches} against them.
+ *
+ * <p>
+ *     The slowest search (in milliseconds) is available afterwards as {@link #getMaxElapsedMillis()}; the fixture
+ *     fails if it exceeds the {@link #getTargetMillis() target} (by default {@value #DEFAULT_TARGET_MILLIS}ms).  Run
+ *     against the target database (rather than the in-memory database used for integration tests) with, say, 500,000
+ *     owners (so a million channels) to check the response time at production volumes.
+ * </p>
+ */
+public class CommChannelDemoObjectsAutoCompleteBenchmarkFixture extends DiscoverableFixtureScript {
+
+    public static final int DEFAULT_NUMBER_OF_OWNERS = 1000;
+    public static final int DEFAULT_MAX_RESULTS = 10;
+    public static final long DEFAULT_TARGET_MILLIS = 20;
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String[] SEARCHES = { "u", "user1", "user123@", "0", "0207 000", "0207 000 12" };
+
+    public CommChannelDemoObjectsAutoCompleteBenchmarkFixture() {
+        withDiscoverability(Discoverability.DISCOVERABLE);
+    }
+
+    //region > numberOfOwners, maxResults, targetMillis (input)
+    private Integer numberOfOwners;
+
+    public Integer getNumberOfOwners() {
+        return numberOfOwners;
+    }
+
+    public void setNumberOfOwners(final Integer numberOfOwners) {
+        this.numberOfOwners = numberOfOwners;
+    }
+
+    private Integer maxResults;
+
+    public Integer getMaxResults() {
+        return maxResults;
+    }
+
+    public void setMaxResults(final Integer maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    private Long targetMillis;
+
+    public Long getTargetMillis() {
+        return targetMillis;
+    }
+
+    public void setTargetMillis(final Long targetMillis) {
+        this.targetMillis = targetMillis;
+    }
+    //endregion
+
+    //region > maxElapsedMillis (output)
+    private long maxElapsedMillis;
+
+    public long getMaxElapsedMillis() {
+        return maxElapsedMillis;
+    }
+    //endregion
+
+    @Override
+    protected void execute(final ExecutionContext executionContext) {
+
+        // defaults
+        if(getNumberOfOwners() == null) {
+            setNumberOfOwners(DEFAULT_NUMBER_OF_OWNERS);
+        }
+        if(getMaxResults() == null) {
+            setMaxResults(DEFAULT_MAX_RESULTS);
+        }
+        if(getTargetMillis() == null) {
+            setTargetMillis(DEFAULT_TARGET_MILLIS);
+        }
+
+        // prereqs
+        executionContext.executeChild(this, new CommChannelDemoObjectsTearDownFixture());
+
+        for (int i = 0; i < getNumberOfOwners(); i++) {
+            final CommChannelDemoObject owner = commChannelDemoObjectMenu.create("Owner " + i);
+            emailAddressRepository.newEmail(owner, "user" + i + "@example" + (i % 100) + ".com", "Home Email", null);
+            phoneOrFaxNumberRepository.newPhoneOrFax(
+                    owner, CommunicationChannelType.PHONE_NUMBER, String.format("0207 %03d %04d", i / 10000 % 1000, i % 10000),
+                    "Home Number", null);
+            if((i + 1) % BATCH_SIZE == 0) {
+                transactionService.nextTransaction();
+            }
+        }
+        transactionService.nextTransaction();
+
+        maxElapsedMillis = 0;
+        String slowestSearch = null;
+        for (final String search : SEARCHES) {
+            // first call warms up the query compilation and connection; second is the one measured
+            communicationChannelSummaryRepository.autoComplete(search, getMaxResults());
+            final long start = System.nanoTime();
+            final List<CommunicationChannelSummary> summaries =
+                    communicationChannelSummaryRepository.autoComplete(search, getMaxResults());
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if(elapsedMillis >= maxElapsedMillis) {
+                maxElapsedMillis = elapsedMillis;
+                slowestSearch = search;
+            }
+            for (int i = 0; i < summaries.size(); i++) {
+                executionContext.addResult(this, search + " [" + i + "]", summaries.get(i));
+            }
+        }
+
+        if(maxElapsedMillis > getTargetMillis()) {
+            throw new IllegalStateException(String.format(
+                    "Type-ahead search for '%s' took %dms across %d owners, exceeding the target of %dms",
+                    slowestSearch, maxElapsedMillis, getNumberOfOwners(), getTargetMillis()));
+        }
+    }
+
+    @javax.inject.Inject
+    CommChannelDemoObjectMenu commChannelDemoObjectMenu;
+    @javax.inject.Inject
+    EmailAddressRepository emailAddressRepository;
+    @javax.inject.Inject
+    PhoneOrFaxNumberRepository phoneOrFaxNumberRepository;
+    @javax.inject.Inject
+    CommunicationChannelSummaryRepository communicationChannelSummaryRepository;
+    @javax.inject.Inject
+    TransactionService transactionService;
+
+}
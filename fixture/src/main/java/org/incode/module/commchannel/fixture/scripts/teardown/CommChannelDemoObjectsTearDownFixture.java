@@ -28,6 +28,8 @@ protected void execute(final ExecutionContext executionContext) {
 
         isisJdoSupport.executeUpdate("delete from \"incodeCommChannel\".\"CommunicationChannelOwnerLink\"");
         isisJdoSupport.executeUpdate("delete from \"incodeCommChannel\".\"CommunicationChannel\"");
+        isisJdoSupport.executeUpdate("delete from \"incodeCommChannel\".\"PostalAddressGeocode\"");
+        isisJdoSupport.executeUpdate("delete from \"incodeCommChannel\".\"CommunicationChannelFacetCount\"");
     }
 
 
@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2014~2015 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.integtests.commchannel;
+
+import java.util.Collections;
+import java.util.SortedSet;
+
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.isis.applib.services.xactn.TransactionService;
+
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelCacheService;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelRepository;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel_remove1;
+import org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLink;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObject;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObjectMenu;
+import org.incode.module.commchannel.fixture.scripts.teardown.CommChannelDemoObjectsTearDownFixture;
+import org.incode.module.commchannel.integtests.CommChannelModuleIntegTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommunicationChannelCacheServiceIntegTest extends CommChannelModuleIntegTest {
+
+    @Inject
+    CommChannelDemoObjectMenu commChannelDemoObjectMenu;
+    @Inject
+    CommunicationChannelRepository communicationChannelRepository;
+    @Inject
+    CommunicationChannelCacheService communicationChannelCacheService;
+    @Inject
+    TransactionService transactionService;
+
+    CommChannelDemoObject fredDemoOwner;
+
+    @Before
+    public void setUpData() throws Exception {
+        fixtureScripts.runFixtureScript(new CommChannelDemoObjectsTearDownFixture(), null);
+        communicationChannelCacheService.invalidateAll();
+
+        fredDemoOwner = wrap(commChannelDemoObjectMenu).create("Fred");
+
+        wrap(mixinNewEmailAddress(fredDemoOwner)).$$("fred@gmail.com", "Home Email", "Fred Smith's home email");
+        wrap(mixinNewPhoneOrFaxNumber(fredDemoOwner)).$$(
+                CommunicationChannelType.PHONE_NUMBER, "0208 111 1111", "Home Phone", "Fred Smith's home phone number");
+
+        // a transaction that modifies an owner's channels does not itself cache them
+        transactionService.nextTransaction();
+    }
+
+    public static class LookupIntegrationTest extends CommunicationChannelCacheServiceIntegTest {
+
+        @Test
+        public void second_lookup_is_a_hit() throws Exception {
+            // given
+            final long hitsBefore = communicationChannelCacheService.getStats().hitCount();
+            final SortedSet<CommunicationChannel> first = communicationChannelRepository.findByOwner(fredDemoOwner);
+
+            // when
+            final SortedSet<CommunicationChannel> second = communicationChannelRepository.findByOwner(fredDemoOwner);
+
+            // then
+            assertThat(second).containsExactlyElementsOf(first);
+            assertThat(communicationChannelCacheService.getStats().hitCount()).isEqualTo(hitsBefore + 1);
+        }
+
+        @Test
+        public void lookup_by_type_is_served_from_owner_entry() throws Exception {
+            // given
+            communicationChannelRepository.findByOwner(fredDemoOwner);
+            final long hitsBefore = communicationChannelCacheService.getStats().hitCount();
+
+            // when
+            final SortedSet<CommunicationChannel> emails =
+                    communicationChannelRepository.findByOwnerAndType(fredDemoOwner, CommunicationChannelType.EMAIL_ADDRESS);
+
+            // then
+            assertThat(emails).hasSize(1);
+            assertThat(communicationChannelCacheService.getStats().hitCount()).isEqualTo(hitsBefore + 1);
+        }
+    }
+
+    public static class InvalidationIntegrationTest extends CommunicationChannelCacheServiceIntegTest {
+
+        @Test
+        public void when_channel_added() throws Exception {
+            // given
+            assertThat(communicationChannelRepository.findByOwner(fredDemoOwner)).hasSize(2);
+
+            // when
+            wrap(mixinNewEmailAddress(fredDemoOwner)).$$("fred.smith@somecompany.com", "Work Email", null);
+
+            // then
+            assertThat(communicationChannelRepository.findByOwner(fredDemoOwner)).hasSize(3);
+        }
+
+        @Test
+        public void when_channel_removed() throws Exception {
+            // given
+            final SortedSet<CommunicationChannel> channels = communicationChannelRepository.findByOwner(fredDemoOwner);
+            assertThat(channels).hasSize(2);
+
+            // when
+            mixin(CommunicationChannel_remove1.class, channels.first()).$$(null);
+
+            // then
+            assertThat(communicationChannelRepository.findByOwner(fredDemoOwner)).hasSize(1);
+        }
+
+        @Test
+        public void not_cached_by_modifying_transaction() throws Exception {
+            // given
+            wrap(mixinNewEmailAddress(fredDemoOwner)).$$("fred.smith@somecompany.com", "Work Email", null);
+            communicationChannelRepository.findByOwner(fredDemoOwner);
+            final long hitsBefore = communicationChannelCacheService.getStats().hitCount();
+
+            // when
+            communicationChannelRepository.findByOwner(fredDemoOwner);
+
+            // then
+            assertThat(communicationChannelCacheService.getStats().hitCount()).isEqualTo(hitsBefore);
+
+            // and when committed
+            transactionService.nextTransaction();
+            communicationChannelRepository.findByOwner(fredDemoOwner);
+            communicationChannelRepository.findByOwner(fredDemoOwner);
+
+            // then
+            assertThat(communicationChannelCacheService.getStats().hitCount()).isEqualTo(hitsBefore + 1);
+        }
+
+        @Test
+        public void stale_put_is_ignored() throws Exception {
+            // given
+            final long generation = communicationChannelCacheService.generation();
+            communicationChannelCacheService.invalidate(fredDemoOwner);
+            final long sizeBefore = communicationChannelCacheService.getSize();
+
+            // when
+            communicationChannelCacheService.put(fredDemoOwner, generation, Collections.<CommunicationChannelOwnerLink>emptyList());
+
+            // then
+            assertThat(communicationChannelCacheService.getSize()).isEqualTo(sizeBefore);
+        }
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ *  Copyright 2014~2015 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.integtests.commchannel;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+
+import javax.inject.Inject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.isis.applib.services.repository.RepositoryService;
+
+import org.incode.module.commchannel.dom.api.GeocodingService;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelRepository;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel_remove0;
+import org.incode.module.commchannel.dom.impl.facet.CommunicationChannelFacetCount;
+import org.incode.module.commchannel.dom.impl.facet.CommunicationChannelFacetService;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress_clearGeocode;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress_update;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObject;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObjectMenu;
+import org.incode.module.commchannel.fixture.scripts.teardown.CommChannelDemoObjectsTearDownFixture;
+import org.incode.module.commchannel.integtests.CommChannelModuleIntegTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class CommunicationChannelFacetServiceIntegTest extends CommChannelModuleIntegTest {
+
+    @Inject
+    CommChannelDemoObjectMenu commChannelDemoObjectMenu;
+    @Inject
+    CommunicationChannelRepository communicationChannelRepository;
+    @Inject
+    CommunicationChannelFacetService communicationChannelFacetService;
+    @Inject
+    RepositoryService repositoryService;
+    @Inject
+    GeocodingService geocodingService;
+
+    CommChannelDemoObject fredDemoOwner;
+    CommChannelDemoObject billDemoOwner;
+
+    boolean countsEnabled;
+
+    @Before
+    public void setUpData() throws Exception {
+        fixtureScripts.runFixtureScript(new CommChannelDemoObjectsTearDownFixture(), null);
+
+        countsEnabled = communicationChannelFacetService.isCountsEnabled();
+        communicationChannelFacetService.setCountsEnabled(true);
+
+        fredDemoOwner = wrap(commChannelDemoObjectMenu).create("Fred");
+        billDemoOwner = wrap(commChannelDemoObjectMenu).create("Bill");
+
+        wrap(mixinNewEmailAddress(fredDemoOwner)).$$("fred@gmail.com", "Home Email", null);
+        wrap(mixinNewPhoneOrFaxNumber(fredDemoOwner)).$$(
+                CommunicationChannelType.PHONE_NUMBER, "0208 111 1111", "Home Number", null);
+        wrap(mixinNewPostalAddress(fredDemoOwner)).$$(
+                "45", "High Street", "Oxford", null, "OX1", "UK", "Shipping Address", null, true);
+        wrap(mixinNewEmailAddress(billDemoOwner)).$$("bill@yahoo.com", "Work Email", null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        communicationChannelFacetService.setCountsEnabled(countsEnabled);
+    }
+
+    PostalAddress postalAddressOf(final CommChannelDemoObject owner) {
+        return (PostalAddress) communicationChannelRepository
+                .findByOwnerAndType(owner, CommunicationChannelType.POSTAL_ADDRESS).first();
+    }
+
+    public static class CountIntegrationTest extends CommunicationChannelFacetServiceIntegTest {
+
+        @Test
+        public void by_type() throws Exception {
+            assertThat(communicationChannelFacetService.countByType()).containsExactly(
+                    entry(CommunicationChannelType.POSTAL_ADDRESS, 1L),
+                    entry(CommunicationChannelType.EMAIL_ADDRESS, 2L),
+                    entry(CommunicationChannelType.PHONE_NUMBER, 1L));
+        }
+
+        @Test
+        public void by_purpose() throws Exception {
+            assertThat(communicationChannelFacetService.countByPurpose()).containsExactly(
+                    entry("Home Email", 1L),
+                    entry("Home Number", 1L),
+                    entry("Shipping Address", 1L),
+                    entry("Work Email", 1L));
+        }
+
+        @Test
+        public void by_country_code() throws Exception {
+            assertThat(communicationChannelFacetService.countByCountryCode()).containsExactly(
+                    entry("GB", 1L));
+        }
+
+        @Test
+        public void restricted_to_owners() throws Exception {
+            final List<CommChannelDemoObject> bill = Collections.singletonList(billDemoOwner);
+
+            assertThat(communicationChannelFacetService.countByType(bill)).containsExactly(
+                    entry(CommunicationChannelType.EMAIL_ADDRESS, 1L));
+            assertThat(communicationChannelFacetService.countByPurpose(bill)).containsExactly(
+                    entry("Work Email", 1L));
+            assertThat(communicationChannelFacetService.countByCountryCode(bill)).isEmpty();
+        }
+    }
+
+    public static class MaintainedIncrementallyIntegrationTest extends CommunicationChannelFacetServiceIntegTest {
+
+        @Test
+        public void builds_on_first_read() throws Exception {
+
+            // given
+            assertThat(repositoryService.allInstances(CommunicationChannelFacetCount.class)).isEmpty();
+
+            // when
+            communicationChannelFacetService.countByType();
+
+            // then
+            assertThat(repositoryService.allInstances(CommunicationChannelFacetCount.class)).isNotEmpty();
+        }
+
+        @Test
+        public void when_added_updated_and_removed() throws Exception {
+
+            // given
+            communicationChannelFacetService.countByType();
+
+            // when
+            wrap(mixinNewEmailAddress(billDemoOwner)).$$("bill@gmail.com", "Home Email", null);
+            wrap(mixin(PostalAddress_clearGeocode.class, postalAddressOf(fredDemoOwner))).$$();
+            wrap(mixin(CommunicationChannel_remove0.class, postalAddressOf(fredDemoOwner))).$$();
+
+            // then
+            assertThat(communicationChannelFacetService.countByType()).containsExactly(
+                    entry(CommunicationChannelType.EMAIL_ADDRESS, 3L),
+                    entry(CommunicationChannelType.PHONE_NUMBER, 1L));
+            assertThat(communicationChannelFacetService.countByPurpose()).containsExactly(
+                    entry("Home Email", 2L),
+                    entry("Home Number", 1L),
+                    entry("Work Email", 1L));
+            assertThat(communicationChannelFacetService.countByCountryCode()).isEmpty();
+        }
+
+        @Test
+        public void agree_with_group_by() throws Exception {
+
+            // given
+            communicationChannelFacetService.countByType();
+            wrap(mixinNewEmailAddress(billDemoOwner)).$$("bill@gmail.com", "Home Email", null);
+            wrap(mixinNewEmailAddress(fredDemoOwner)).$$("fred@yahoo.com", "Home Email", null);
+
+            // when
+            final SortedMap<String, Long> maintained = communicationChannelFacetService.countByPurpose();
+            communicationChannelFacetService.setCountsEnabled(false);
+
+            // then
+            assertThat(maintained).containsEntry("Home Email", 3L);
+            assertThat(communicationChannelFacetService.countByPurpose()).isEqualTo(maintained);
+        }
+
+        @Test
+        public void when_country_changed_programmatically() throws Exception {
+
+            // given
+            communicationChannelFacetService.countByType();
+            final PostalAddress postalAddress = postalAddressOf(fredDemoOwner);
+            final String json = postalAddress.getGeocodeApiResponseAsJson()
+                    .replace("\"short_name\" : \"GB\"", "\"short_name\" : \"FR\"");
+
+            // when
+            mixin(PostalAddress_update.class, postalAddress).applyGeocode(geocodingService.asGeocodedAddress(json));
+
+            // then
+            assertThat(communicationChannelFacetService.countByCountryCode()).containsExactly(
+                    entry("FR", 1L));
+        }
+    }
+
+}
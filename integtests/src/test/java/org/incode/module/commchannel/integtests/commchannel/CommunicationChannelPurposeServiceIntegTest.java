@@ -0,0 +1,120 @@
+/*
+ *  Copyright 2014~2015 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.integtests.commchannel;
+
+import java.util.Collection;
+
+import javax.inject.Inject;
+
+import com.google.common.cache.CacheStats;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.incode.module.commchannel.dom.impl.purpose.CommunicationChannelPurposeService;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObject;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObjectMenu;
+import org.incode.module.commchannel.fixture.scripts.teardown.CommChannelDemoObjectsTearDownFixture;
+import org.incode.module.commchannel.integtests.CommChannelModuleIntegTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommunicationChannelPurposeServiceIntegTest extends CommChannelModuleIntegTest {
+
+    @Inject
+    CommChannelDemoObjectMenu commChannelDemoObjectMenu;
+    @Inject
+    CommunicationChannelPurposeService communicationChannelPurposeService;
+
+    CommChannelDemoObject fredDemoOwner;
+    CommChannelDemoObject billDemoOwner;
+
+    @Before
+    public void setUpData() throws Exception {
+        fixtureScripts.runFixtureScript(new CommChannelDemoObjectsTearDownFixture(), null);
+
+        fredDemoOwner = wrap(commChannelDemoObjectMenu).create("Fred");
+        billDemoOwner = wrap(commChannelDemoObjectMenu).create("Bill");
+
+        communicationChannelPurposeService.invalidate();
+    }
+
+    public static class PurposesForIntegrationTest extends CommunicationChannelPurposeServiceIntegTest {
+
+        @Test
+        public void cached_for_same_type_and_owner_class() throws Exception {
+
+            // given
+            assertThat(communicationChannelPurposeService.isCacheEnabled()).isTrue();
+            final CacheStats before = communicationChannelPurposeService.getCacheStats();
+
+            // when
+            final Collection<String> purposes1 =
+                    communicationChannelPurposeService.purposesFor(CommunicationChannelType.EMAIL_ADDRESS, fredDemoOwner);
+            final Collection<String> purposes2 =
+                    communicationChannelPurposeService.purposesFor(CommunicationChannelType.EMAIL_ADDRESS, billDemoOwner);
+
+            // then
+            assertThat(purposes1).containsExactly("Home Email", "Work Email", "Other Email");
+            assertThat(purposes2).isSameAs(purposes1);
+
+            final CacheStats delta = communicationChannelPurposeService.getCacheStats().minus(before);
+            assertThat(delta.missCount()).isEqualTo(1);
+            assertThat(delta.hitCount()).isEqualTo(1);
+        }
+
+        @Test
+        public void not_cached_for_different_type() throws Exception {
+
+            // given
+            final CacheStats before = communicationChannelPurposeService.getCacheStats();
+
+            // when
+            final Collection<String> emailPurposes =
+                    communicationChannelPurposeService.purposesFor(CommunicationChannelType.EMAIL_ADDRESS, fredDemoOwner);
+            final Collection<String> faxPurposes =
+                    communicationChannelPurposeService.purposesFor(CommunicationChannelType.FAX_NUMBER, fredDemoOwner);
+
+            // then
+            assertThat(emailPurposes).containsExactly("Home Email", "Work Email", "Other Email");
+            assertThat(faxPurposes).containsExactly("Home Fax", "Work Fax");
+
+            final CacheStats delta = communicationChannelPurposeService.getCacheStats().minus(before);
+            assertThat(delta.missCount()).isEqualTo(2);
+            assertThat(delta.hitCount()).isEqualTo(0);
+        }
+
+        @Test
+        public void invalidate() throws Exception {
+
+            // given
+            communicationChannelPurposeService.purposesFor(CommunicationChannelType.EMAIL_ADDRESS, fredDemoOwner);
+            final CacheStats before = communicationChannelPurposeService.getCacheStats();
+
+            // when
+            communicationChannelPurposeService.invalidate();
+            communicationChannelPurposeService.purposesFor(CommunicationChannelType.EMAIL_ADDRESS, fredDemoOwner);
+
+            // then
+            final CacheStats delta = communicationChannelPurposeService.getCacheStats().minus(before);
+            assertThat(delta.missCount()).isEqualTo(1);
+            assertThat(delta.hitCount()).isEqualTo(0);
+        }
+    }
+
+}
@@ -16,6 +16,9 @@
  */
 package org.incode.module.commchannel.integtests.commchannel;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 
 import javax.inject.Inject;
@@ -23,6 +26,9 @@
 import org.junit.Before;
 import org.junit.Test;
 
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+import org.apache.isis.applib.services.xactn.TransactionService;
+
 import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
 import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelRepository;
 import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
@@ -43,6 +49,10 @@ public class CommunicationChannelRepositoryIntegTest extends CommChannelModuleIn
 
     @Inject
     CommunicationChannelRepository communicationChannelRepository;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    @Inject
+    TransactionService transactionService;
 
     @Before
     public void setUpData() throws Exception {
@@ -168,4 +178,169 @@ public void phone() throws Exception {
 
     }
 
-}
\ No newline at end of file
+    public static class BackfillTitlesIntegrationTest extends CommunicationChannelRepositoryIntegTest {
+
+        @Test
+        public void happy_case() throws Exception {
+            // given
+            transactionService.nextTransaction();
+            isisJdoSupport.executeUpdate("update \"incodeCommChannel\".\"CommunicationChannel\" set \"title\" = null");
+            isisJdoSupport.getJdoPersistenceManager().evictAll();
+            isisJdoSupport.getJdoPersistenceManager().getPersistenceManagerFactory().getDataStoreCache().evictAll();
+
+            // when
+            final int firstBatch = communicationChannelRepository.backfillTitles(8);
+            transactionService.nextTransaction();
+            final int secondBatch = communicationChannelRepository.backfillTitles(8);
+            transactionService.nextTransaction();
+            final int thirdBatch = communicationChannelRepository.backfillTitles(8);
+
+            // then
+            assertThat(firstBatch).isEqualTo(8);
+            assertThat(secondBatch).isEqualTo(3);
+            assertThat(thirdBatch).isEqualTo(0);
+
+            for (final CommunicationChannel channel : communicationChannelRepository.findByOwner(fredDemoOwner)) {
+                assertThat(channel.getTitle()).isNotNull();
+                assertThat(channel.getName()).isEqualTo(channel.getTitle());
+            }
+        }
+    }
+
+    public static class FindByTypeAndPurposeIntegrationTest extends CommunicationChannelRepositoryIntegTest {
+
+        @Test
+        public void happy_case() throws Exception {
+            final List<CommunicationChannel> channels = communicationChannelRepository.findByTypeAndPurpose(
+                    CommunicationChannelType.POSTAL_ADDRESS, "Shipping Address");
+
+            assertThat(channels).hasSize(2);
+            for (final CommunicationChannel channel : channels) {
+                assertThat(channel.getType()).isEqualTo(CommunicationChannelType.POSTAL_ADDRESS);
+                assertThat(channel.getPurpose()).isEqualTo("Shipping Address");
+                assertThat(channel.getPurposeCode()).isNotNull();
+            }
+        }
+
+        @Test
+        public void when_purpose_unknown() throws Exception {
+            final List<CommunicationChannel> channels = communicationChannelRepository.findByTypeAndPurpose(
+                    CommunicationChannelType.POSTAL_ADDRESS, "No Such Purpose");
+
+            assertThat(channels).isEmpty();
+        }
+
+        @Test
+        public void purposes_are_interned() throws Exception {
+            final List<CommunicationChannel> channels = communicationChannelRepository.findByTypeAndPurpose(
+                    CommunicationChannelType.POSTAL_ADDRESS, "Shipping Address");
+
+            assertThat(channels.get(0).getPurpose()).isSameAs(channels.get(1).getPurpose());
+        }
+    }
+
+    public static class BackfillPurposeCodesIntegrationTest extends CommunicationChannelRepositoryIntegTest {
+
+        @Test
+        public void happy_case() throws Exception {
+            // given
+            transactionService.nextTransaction();
+            isisJdoSupport.executeUpdate("update \"incodeCommChannel\".\"CommunicationChannel\" set \"purposeCode\" = null");
+            isisJdoSupport.getJdoPersistenceManager().evictAll();
+            isisJdoSupport.getJdoPersistenceManager().getPersistenceManagerFactory().getDataStoreCache().evictAll();
+            assertThat(communicationChannelRepository.findByTypeAndPurpose(
+                    CommunicationChannelType.POSTAL_ADDRESS, "Shipping Address")).isEmpty();
+
+            // when
+            final int updated = communicationChannelRepository.backfillPurposeCodes(20);
+            transactionService.nextTransaction();
+
+            // then
+            assertThat(updated).isEqualTo(11);
+            assertThat(communicationChannelRepository.findByTypeAndPurpose(
+                    CommunicationChannelType.POSTAL_ADDRESS, "Shipping Address")).hasSize(2);
+        }
+    }
+
+    public static class FindByOwnerAndTypeAndPurposeIntegrationTest extends CommunicationChannelRepositoryIntegTest {
+
+        @Test
+        public void happy_case() throws Exception {
+            final SortedSet<CommunicationChannel> channels = communicationChannelRepository
+                    .findByOwnerAndTypeAndPurpose(fredDemoOwner, CommunicationChannelType.EMAIL_ADDRESS, "Work Email");
+
+            assertThat(channels).hasSize(1);
+            assertThat(channels.first().getName()).isEqualTo("fred.smith@somecompany.com");
+        }
+
+        @Test
+        public void none_for_owner() throws Exception {
+            final SortedSet<CommunicationChannel> channels = communicationChannelRepository
+                    .findByOwnerAndTypeAndPurpose(billDemoOwner, CommunicationChannelType.EMAIL_ADDRESS, "Work Email");
+
+            assertThat(channels).isEmpty();
+        }
+
+        @Test
+        public void bulk() throws Exception {
+            final Map<Object, SortedSet<CommunicationChannel>> channelsByOwner = communicationChannelRepository
+                    .findByOwnersAndTypeAndPurpose(
+                            Arrays.asList(fredDemoOwner, billDemoOwner),
+                            CommunicationChannelType.EMAIL_ADDRESS, "Home Email");
+
+            assertThat(channelsByOwner).hasSize(2);
+            assertThat(channelsByOwner.get(fredDemoOwner)).hasSize(1);
+            assertThat(channelsByOwner.get(fredDemoOwner).first().getName()).isEqualTo("fred@gmail.com");
+            assertThat(channelsByOwner.get(billDemoOwner)).hasSize(1);
+            assertThat(channelsByOwner.get(billDemoOwner).first().getName()).isEqualTo("bill@yahoo.com");
+        }
+
+        @Test
+        public void bulk_when_some_owners_have_none() throws Exception {
+            final Map<Object, SortedSet<CommunicationChannel>> channelsByOwner = communicationChannelRepository
+                    .findByOwnersAndTypeAndPurpose(
+                            Arrays.asList(fredDemoOwner, billDemoOwner),
+                            CommunicationChannelType.EMAIL_ADDRESS, "Work Email");
+
+            assertThat(channelsByOwner.get(fredDemoOwner)).hasSize(1);
+            assertThat(channelsByOwner.get(billDemoOwner)).isEmpty();
+        }
+    }
+
+    public static class FindPrimaryIntegrationTest extends CommunicationChannelRepositoryIntegTest {
+
+        @Test
+        public void happy_case() throws Exception {
+            final CommunicationChannel channel =
+                    communicationChannelRepository.findPrimary(fredDemoOwner, CommunicationChannelType.EMAIL_ADDRESS);
+
+            // the first added
+            assertThat(channel.getName()).isEqualTo("fred@gmail.com");
+        }
+
+        @Test
+        public void bulk() throws Exception {
+            final Map<Object, CommunicationChannel> channelByOwner = communicationChannelRepository
+                    .findPrimaryByOwners(
+                            Arrays.asList(fredDemoOwner, billDemoOwner), CommunicationChannelType.FAX_NUMBER);
+
+            assertThat(channelByOwner).hasSize(2);
+            assertThat(channelByOwner.get(fredDemoOwner).getName()).isEqualTo("0207 222 3333");
+            assertThat(channelByOwner.get(billDemoOwner).getName()).isEqualTo("01865 222 333");
+        }
+
+        @Test
+        public void bulk_when_some_owners_have_none() throws Exception {
+            final CommChannelDemoObject maryDemoOwner = wrap(commChannelDemoObjectMenu).create("Mary");
+
+            final Map<Object, CommunicationChannel> channelByOwner = communicationChannelRepository
+                    .findPrimaryByOwners(
+                            Arrays.asList(fredDemoOwner, maryDemoOwner), CommunicationChannelType.POSTAL_ADDRESS);
+
+            assertThat(channelByOwner).hasSize(1);
+            assertThat(channelByOwner.get(fredDemoOwner).getName()).startsWith("Flat 2a");
+            assertThat(channelByOwner).doesNotContainKey(maryDemoOwner);
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ *  Copyright 2014~2015 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.integtests.commchannel;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.isis.applib.services.xactn.TransactionService;
+
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelRepository;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelSearchIndex;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel_remove0;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress_update;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObject;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObjectMenu;
+import org.incode.module.commchannel.fixture.scripts.teardown.CommChannelDemoObjectsTearDownFixture;
+import org.incode.module.commchannel.integtests.CommChannelModuleIntegTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommunicationChannelSearchIndexIntegTest extends CommChannelModuleIntegTest {
+
+    @Inject
+    CommChannelDemoObjectMenu commChannelDemoObjectMenu;
+    @Inject
+    CommunicationChannelSearchIndex communicationChannelSearchIndex;
+    @Inject
+    CommunicationChannelRepository communicationChannelRepository;
+    @Inject
+    TransactionService transactionService;
+
+    CommChannelDemoObject fredDemoOwner;
+    CommChannelDemoObject billDemoOwner;
+
+    PostalAddress fredPostalAddress;
+    PostalAddress billPostalAddress;
+
+    @Before
+    public void setUpData() throws Exception {
+        fixtureScripts.runFixtureScript(new CommChannelDemoObjectsTearDownFixture(), null);
+
+        fredDemoOwner = wrap(commChannelDemoObjectMenu).create("Fred");
+        billDemoOwner = wrap(commChannelDemoObjectMenu).create("Bill");
+
+        wrap(mixinNewEmailAddress(fredDemoOwner)).$$("fred@gmail.com", "Home Email", "Fred Smith's home email");
+        wrap(mixinNewPostalAddress(fredDemoOwner)).$$(
+                "Flat 2a", "45 Penny Lane", "Allerton", "Liverpool", "L39 5AA", "UK",
+                "Shipping Address", "Round the back, past the penny arcade", false);
+        wrap(mixinNewPostalAddress(billDemoOwner)).$$(
+                "10 Downing Street", null, null, "London", "SW1A 2AA", "UK",
+                "Shipping Address", "Ask for Penny at reception", false);
+
+        fredPostalAddress = (PostalAddress) communicationChannelRepository
+                .findByOwnerAndType(fredDemoOwner, CommunicationChannelType.POSTAL_ADDRESS).first();
+        billPostalAddress = (PostalAddress) communicationChannelRepository
+                .findByOwnerAndType(billDemoOwner, CommunicationChannelType.POSTAL_ADDRESS).first();
+
+        // discard anything indexed by previous tests
+        communicationChannelSearchIndex.rebuild();
+    }
+
+    public static class SearchIntegrationTest extends CommunicationChannelSearchIndexIntegTest {
+
+        @Test
+        public void address_lines_and_notes() throws Exception {
+
+            // when
+            final List<CommunicationChannel> channels = communicationChannelSearchIndex.searchChannels("Penny", 10);
+
+            // then (fred's address mentions penny twice, bill's once)
+            assertThat(channels).containsExactly(fredPostalAddress, billPostalAddress);
+        }
+
+        @Test
+        public void all_terms_must_match() throws Exception {
+
+            // when
+            final List<CommunicationChannel> channels =
+                    communicationChannelSearchIndex.searchChannels("penny reception", 10);
+
+            // then
+            assertThat(channels).containsExactly(billPostalAddress);
+        }
+
+        @Test
+        public void limited_to_max_results() throws Exception {
+            assertThat(communicationChannelSearchIndex.search("penny", 1)).hasSize(1);
+        }
+
+        @Test
+        public void no_match() throws Exception {
+            assertThat(communicationChannelSearchIndex.search("nowhere", 10)).isEmpty();
+            assertThat(communicationChannelSearchIndex.search(" ,. ", 10)).isEmpty();
+        }
+    }
+
+    public static class IncrementalIntegrationTest extends CommunicationChannelSearchIndexIntegTest {
+
+        @Test
+        public void when_added() throws Exception {
+
+            // when
+            wrap(mixinNewPhoneOrFaxNumber(billDemoOwner)).$$(
+                    CommunicationChannelType.PHONE_NUMBER, "0207 222 3333", "Home Number", "Switchboard");
+            transactionService.nextTransaction();
+
+            // then
+            final List<CommunicationChannel> channels = communicationChannelSearchIndex.searchChannels("switchboard", 10);
+            assertThat(channels).hasSize(1);
+            assertThat(channels.get(0).getType()).isEqualTo(CommunicationChannelType.PHONE_NUMBER);
+        }
+
+        @Test
+        public void when_updated() throws Exception {
+
+            // when
+            wrap(mixin(PostalAddress_update.class, fredPostalAddress)).$$(
+                    "1 Abbey Road", null, null, "London", "NW8 9AY", "UK", false);
+            transactionService.nextTransaction();
+
+            // then
+            assertThat(communicationChannelSearchIndex.searchChannels("abbey", 10)).containsExactly(fredPostalAddress);
+            assertThat(communicationChannelSearchIndex.searchChannels("lane", 10)).isEmpty();
+        }
+
+        @Test
+        public void when_notes_edited() throws Exception {
+
+            // when
+            wrap(billPostalAddress).setNotes("Deliveries to the side gate");
+            transactionService.nextTransaction();
+
+            // then
+            assertThat(communicationChannelSearchIndex.searchChannels("gate", 10)).containsExactly(billPostalAddress);
+            assertThat(communicationChannelSearchIndex.searchChannels("reception", 10)).isEmpty();
+        }
+
+        @Test
+        public void when_removed() throws Exception {
+
+            // when
+            wrap(mixin(CommunicationChannel_remove0.class, billPostalAddress)).$$();
+            transactionService.nextTransaction();
+
+            // then
+            assertThat(communicationChannelSearchIndex.searchChannels("penny", 10)).containsExactly(fredPostalAddress);
+        }
+
+        @Test
+        public void when_formatted_address_changed_programmatically() throws Exception {
+
+            // when (as when refreshed, or when a shared geocode changes)
+            fredPostalAddress.updateFormattedAddress("45 Penny Lane, Allerton, Liverpool L18 9AA, UK");
+            transactionService.nextTransaction();
+
+            // then
+            assertThat(communicationChannelSearchIndex.searchChannels("l18", 10)).containsExactly(fredPostalAddress);
+        }
+
+        @Test
+        public void not_until_committed() throws Exception {
+
+            // when
+            wrap(billPostalAddress).setNotes("Deliveries to the side gate");
+
+            // then
+            assertThat(communicationChannelSearchIndex.searchChannels("gate", 10)).isEmpty();
+
+            // and when
+            transactionService.nextTransaction();
+
+            // then
+            assertThat(communicationChannelSearchIndex.searchChannels("gate", 10)).containsExactly(billPostalAddress);
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ *  Copyright 2014~2015 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.integtests.commchannel;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelRepository;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelSummary;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelSummaryRepository;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObject;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObjectMenu;
+import org.incode.module.commchannel.fixture.scripts.teardown.CommChannelDemoObjectsTearDownFixture;
+import org.incode.module.commchannel.integtests.CommChannelModuleIntegTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommunicationChannelSummaryRepositoryIntegTest extends CommChannelModuleIntegTest {
+
+    @Inject
+    CommChannelDemoObjectMenu commChannelDemoObjectMenu;
+    @Inject
+    CommunicationChannelSummaryRepository communicationChannelSummaryRepository;
+    @Inject
+    CommunicationChannelRepository communicationChannelRepository;
+
+    CommChannelDemoObject fredDemoOwner;
+    CommChannelDemoObject billDemoOwner;
+
+    @Before
+    public void setUpData() throws Exception {
+        fixtureScripts.runFixtureScript(new CommChannelDemoObjectsTearDownFixture(), null);
+
+        fredDemoOwner = wrap(commChannelDemoObjectMenu).create("Fred");
+        billDemoOwner = wrap(commChannelDemoObjectMenu).create("Bill");
+
+        wrap(mixinNewEmailAddress(fredDemoOwner)).$$("fred@gmail.com", "Home Email", "Fred Smith's home email");
+        wrap(mixinNewPhoneOrFaxNumber(fredDemoOwner)).$$(
+                CommunicationChannelType.FAX_NUMBER, "0207 222 3333", "Work Fax", "Fred Smith's work fax number");
+        wrap(mixinNewPostalAddress(fredDemoOwner)).$$(
+                "Flat 2a", "45 Penny Lane", "Allerton", "Liverpool", "L39 5AA", "UK",
+                "Shipping Address", "Fred Smith's home", false);
+
+        wrap(mixinNewEmailAddress(billDemoOwner)).$$("bill@yahoo.com", "Home Email", "Bill Jones' home email");
+    }
+
+    public static class FindByOwnerIntegrationTest extends CommunicationChannelSummaryRepositoryIntegTest {
+
+        @Test
+        public void happy_case() throws Exception {
+
+            // when
+            final List<CommunicationChannelSummary> summaries =
+                    communicationChannelSummaryRepository.findByOwner(fredDemoOwner);
+
+            // then
+            assertThat(summaries).hasSize(3);
+            assertThat(summaries).extracting(CommunicationChannelSummary::getType).containsExactly(
+                    CommunicationChannelType.POSTAL_ADDRESS,
+                    CommunicationChannelType.EMAIL_ADDRESS,
+                    CommunicationChannelType.FAX_NUMBER);
+            assertThat(summaries).extracting(CommunicationChannelSummary::getPurpose).containsExactly(
+                    "Shipping Address", "Home Email", "Work Fax");
+        }
+
+        @Test
+        public void titles_match_those_of_the_channels() throws Exception {
+
+            // when
+            final List<CommunicationChannelSummary> summaries =
+                    communicationChannelSummaryRepository.findByOwner(fredDemoOwner);
+
+            // then
+            for (final CommunicationChannelSummary summary : summaries) {
+                final CommunicationChannel<?> channel = summary.getCommunicationChannel();
+                assertThat(channel).isNotNull();
+                assertThat(summary.getName()).isEqualTo(container.titleOf(channel));
+            }
+        }
+    }
+
+    public static class AutoCompleteIntegrationTest extends CommunicationChannelSummaryRepositoryIntegTest {
+
+        @Test
+        public void email_address_prefix() throws Exception {
+
+            // when
+            final List<CommunicationChannelSummary> summaries =
+                    communicationChannelSummaryRepository.autoComplete("FRED@", 10);
+
+            // then
+            assertThat(summaries).hasSize(1);
+            assertThat(summaries.get(0).getType()).isEqualTo(CommunicationChannelType.EMAIL_ADDRESS);
+            assertThat(summaries.get(0).getName()).isEqualTo("fred@gmail.com");
+            assertThat(summaries.get(0).getOwner()).isSameAs(fredDemoOwner);
+        }
+
+        @Test
+        public void phone_number_prefix() throws Exception {
+
+            // when
+            final List<CommunicationChannelSummary> summaries =
+                    communicationChannelSummaryRepository.autoComplete("0207-22", 10);
+
+            // then
+            assertThat(summaries).hasSize(1);
+            assertThat(summaries.get(0).getType()).isEqualTo(CommunicationChannelType.FAX_NUMBER);
+            assertThat(summaries.get(0).getName()).isEqualTo("0207 222 3333");
+            assertThat(summaries.get(0).getOwner()).isSameAs(fredDemoOwner);
+        }
+
+        @Test
+        public void limited_to_max_results() throws Exception {
+
+            // given
+            wrap(mixinNewEmailAddress(billDemoOwner)).$$("bill.jones@example.com", "Work Email", null);
+
+            // when
+            final List<CommunicationChannelSummary> all = communicationChannelSummaryRepository.autoComplete("bill", 10);
+            final List<CommunicationChannelSummary> first = communicationChannelSummaryRepository.autoComplete("bill", 1);
+
+            // then
+            assertThat(all).extracting(CommunicationChannelSummary::getName)
+                    .containsExactly("bill.jones@example.com", "bill@yahoo.com");
+            assertThat(first).hasSize(1);
+        }
+
+        @Test
+        public void no_match() throws Exception {
+            assertThat(communicationChannelSummaryRepository.autoComplete("nobody", 10)).isEmpty();
+            assertThat(communicationChannelSummaryRepository.autoComplete(" ", 10)).isEmpty();
+        }
+    }
+
+}
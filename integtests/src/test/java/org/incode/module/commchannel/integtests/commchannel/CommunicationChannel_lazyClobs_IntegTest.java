@@ -0,0 +1,124 @@
+/*
+ *  Copyright 2014~2015 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.integtests.commchannel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+
+import javax.inject.Inject;
+import javax.jdo.PersistenceManager;
+
+import org.datanucleus.api.jdo.NucleusJDOHelper;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+import org.apache.isis.applib.services.xactn.TransactionService;
+
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelCacheService;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelRepository;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddressGeocode;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObject;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObjectMenu;
+import org.incode.module.commchannel.fixture.scripts.teardown.CommChannelDemoObjectsTearDownFixture;
+import org.incode.module.commchannel.integtests.CommChannelModuleIntegTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommunicationChannel_lazyClobs_IntegTest extends CommChannelModuleIntegTest {
+
+    @Inject
+    CommChannelDemoObjectMenu commChannelDemoObjectMenu;
+    @Inject
+    CommunicationChannelRepository communicationChannelRepository;
+    @Inject
+    CommunicationChannelCacheService communicationChannelCacheService;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    @Inject
+    TransactionService transactionService;
+
+    CommChannelDemoObject fredDemoOwner;
+
+    @Before
+    public void setUpData() throws Exception {
+        fixtureScripts.runFixtureScript(new CommChannelDemoObjectsTearDownFixture(), null);
+
+        fredDemoOwner = wrap(commChannelDemoObjectMenu).create("Fred");
+
+        wrap(mixinNewEmailAddress(fredDemoOwner)).$$("fred@gmail.com", "Home Email", "Fred Smith's home email");
+        wrap(mixinNewPhoneOrFaxNumber(fredDemoOwner)).$$(
+                CommunicationChannelType.PHONE_NUMBER, "0208 111 1111", "Home Phone", "Fred Smith's home phone number");
+        wrap(mixinNewPostalAddress(fredDemoOwner)).$$(
+                "45", "High Street", "Oxford", null, null, "UK", "Shipping Address", "Fred Smith's home", true);
+
+        // start afresh, so that nothing is loaded
+        transactionService.nextTransaction();
+        communicationChannelCacheService.invalidateAll();
+        isisJdoSupport.getJdoPersistenceManager().evictAll();
+    }
+
+    public static class FindByOwnerIntegrationTest extends CommunicationChannel_lazyClobs_IntegTest {
+
+        @Test
+        public void does_not_load_clobs() throws Exception {
+
+            // when
+            final SortedSet<CommunicationChannel> channels = communicationChannelRepository.findByOwner(fredDemoOwner);
+
+            // then
+            assertThat(channels).hasSize(3);
+            for (final CommunicationChannel channel : channels) {
+                final List<String> loadedFields = loadedFieldsOf(channel);
+                assertThat(loadedFields).contains("type", "purpose");
+                assertThat(loadedFields).doesNotContain(
+                        "notes", "legacyAddressComponents", "legacyGeocodeApiResponseAsJson");
+            }
+        }
+
+        @Test
+        public void loads_clobs_lazily() throws Exception {
+
+            // given
+            final PostalAddress postalAddress = (PostalAddress) communicationChannelRepository
+                    .findByOwnerAndType(fredDemoOwner, CommunicationChannelType.POSTAL_ADDRESS).first();
+            assertThat(loadedFieldsOf(postalAddress)).doesNotContain("notes");
+            final PostalAddressGeocode geocode = postalAddress.getGeocode();
+            assertThat(loadedFieldsOf(geocode)).doesNotContain("addressComponents", "apiResponseAsJson");
+
+            // when
+            final String notes = postalAddress.getNotes();
+            final String json = postalAddress.getGeocodeApiResponseAsJson();
+
+            // then
+            assertThat(notes).isEqualTo("Fred Smith's home");
+            assertThat(json).isNotNull();
+            assertThat(loadedFieldsOf(postalAddress)).contains("notes");
+            assertThat(loadedFieldsOf(geocode)).contains("apiResponseAsJson");
+        }
+    }
+
+    private List<String> loadedFieldsOf(final Object pojo) {
+        final PersistenceManager pm = isisJdoSupport.getJdoPersistenceManager();
+        return Arrays.asList(NucleusJDOHelper.getLoadedFields(pojo, pm));
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ *  Copyright 2014~2015 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.integtests.commchannel;
+
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+import org.apache.isis.applib.services.xactn.TransactionService;
+
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelRepository;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel_makePrimary;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel_remove1;
+import org.incode.module.commchannel.dom.impl.emailaddress.EmailAddress;
+import org.incode.module.commchannel.dom.impl.emailaddress.EmailAddressRepository;
+import org.incode.module.commchannel.dom.impl.ownerlink.CommunicationChannelOwnerLinkRepository;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObject;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObjectMenu;
+import org.incode.module.commchannel.fixture.scripts.teardown.CommChannelDemoObjectsTearDownFixture;
+import org.incode.module.commchannel.integtests.CommChannelModuleIntegTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommunicationChannel_makePrimary_IntegTest extends CommChannelModuleIntegTest {
+
+    @Inject
+    CommChannelDemoObjectMenu commChannelDemoObjectMenu;
+    @Inject
+    CommunicationChannelRepository communicationChannelRepository;
+    @Inject
+    CommunicationChannelOwnerLinkRepository communicationChannelOwnerLinkRepository;
+    @Inject
+    EmailAddressRepository emailAddressRepository;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    @Inject
+    TransactionService transactionService;
+
+    CommChannelDemoObject fredDemoOwner;
+
+    EmailAddress fredHomeEmail;
+    EmailAddress fredWorkEmail;
+
+    CommunicationChannel_makePrimary mixinMakePrimary(final CommunicationChannel<?> communicationChannel) {
+        return mixin(CommunicationChannel_makePrimary.class, communicationChannel);
+    }
+
+    @Before
+    public void setUpData() throws Exception {
+        fixtureScripts.runFixtureScript(new CommChannelDemoObjectsTearDownFixture(), null);
+
+        fredDemoOwner = wrap(commChannelDemoObjectMenu).create("Fred");
+
+        wrap(mixinNewEmailAddress(fredDemoOwner)).$$("fred@gmail.com", "Home Email", "Fred Smith's home email");
+        wrap(mixinNewEmailAddress(fredDemoOwner)).$$("fred.smith@somecompany.com", "Work Email",
+                "Fred Smith's work email");
+
+        fredHomeEmail = emailAddressRepository.findByEmailAddress(fredDemoOwner, "fred@gmail.com");
+        fredWorkEmail = emailAddressRepository.findByEmailAddress(fredDemoOwner, "fred.smith@somecompany.com");
+    }
+
+    private boolean isPrimary(final CommunicationChannel<?> communicationChannel) {
+        return communicationChannelOwnerLinkRepository.getOwnerLink(communicationChannel).isPrimaryLink();
+    }
+
+    public static class ActionImplementationIntegrationTest extends CommunicationChannel_makePrimary_IntegTest {
+
+        @Test
+        public void first_channel_of_type_is_primary() throws Exception {
+            assertThat(isPrimary(fredHomeEmail)).isTrue();
+            assertThat(isPrimary(fredWorkEmail)).isFalse();
+            assertThat(communicationChannelRepository.findPrimary(fredDemoOwner, CommunicationChannelType.EMAIL_ADDRESS))
+                    .isSameAs(fredHomeEmail);
+        }
+
+        @Test
+        public void make_primary() throws Exception {
+            // when
+            wrap(mixinMakePrimary(fredWorkEmail)).$$();
+
+            // then
+            assertThat(isPrimary(fredHomeEmail)).isFalse();
+            assertThat(isPrimary(fredWorkEmail)).isTrue();
+            assertThat(communicationChannelRepository.findPrimary(fredDemoOwner, CommunicationChannelType.EMAIL_ADDRESS))
+                    .isSameAs(fredWorkEmail);
+        }
+
+        @Test
+        public void when_primary_removed_then_another_is_promoted() throws Exception {
+            // when
+            mixin(CommunicationChannel_remove1.class, fredHomeEmail).$$(null);
+
+            // then
+            assertThat(isPrimary(fredWorkEmail)).isTrue();
+            assertThat(communicationChannelRepository.findPrimary(fredDemoOwner, CommunicationChannelType.EMAIL_ADDRESS))
+                    .isSameAs(fredWorkEmail);
+        }
+
+        @Test
+        public void when_primary_removed_then_replacement_is_promoted() throws Exception {
+            // given
+            wrap(mixinNewEmailAddress(fredDemoOwner)).$$("fred@yahoo.com", "Other Email", "Fred Smith's other email");
+            final EmailAddress fredOtherEmail = emailAddressRepository.findByEmailAddress(fredDemoOwner, "fred@yahoo.com");
+
+            // when
+            mixin(CommunicationChannel_remove1.class, fredHomeEmail).$$(fredOtherEmail);
+
+            // then
+            assertThat(isPrimary(fredOtherEmail)).isTrue();
+            assertThat(isPrimary(fredWorkEmail)).isFalse();
+        }
+    }
+
+    public static class BackfillPrimaryIntegrationTest extends CommunicationChannel_makePrimary_IntegTest {
+
+        @Test
+        public void happy_case() throws Exception {
+            // given
+            transactionService.nextTransaction();
+            isisJdoSupport.executeUpdate(
+                    "update \"incodeCommChannel\".\"CommunicationChannelOwnerLink\" set \"isPrimary\" = null");
+            isisJdoSupport.getJdoPersistenceManager().evictAll();
+            isisJdoSupport.getJdoPersistenceManager().getPersistenceManagerFactory().getDataStoreCache().evictAll();
+
+            // when
+            final int firstBatch = communicationChannelOwnerLinkRepository.backfillPrimary(10);
+            transactionService.nextTransaction();
+            final int secondBatch = communicationChannelOwnerLinkRepository.backfillPrimary(10);
+
+            // then
+            assertThat(firstBatch).isEqualTo(1);
+            assertThat(secondBatch).isEqualTo(0);
+            assertThat(communicationChannelRepository.findPrimary(fredDemoOwner, CommunicationChannelType.EMAIL_ADDRESS))
+                    .isNotNull();
+        }
+    }
+
+    public static class HideIntegrationTest extends CommunicationChannel_makePrimary_IntegTest {
+
+        @Test
+        public void hidden_if_already_primary() throws Exception {
+            assertThat(mixinMakePrimary(fredHomeEmail).hide$$()).isTrue();
+            assertThat(mixinMakePrimary(fredWorkEmail).hide$$()).isFalse();
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ *  Copyright 2014~2015 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.integtests.emailaddress;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+import org.apache.isis.applib.services.xactn.TransactionService;
+
+import org.incode.module.commchannel.dom.impl.emailaddress.EmailAddress;
+import org.incode.module.commchannel.dom.impl.emailaddress.EmailAddressRepository;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObject;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObjectMenu;
+import org.incode.module.commchannel.fixture.scripts.teardown.CommChannelDemoObjectsTearDownFixture;
+import org.incode.module.commchannel.integtests.CommChannelModuleIntegTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmailAddressRepositoryIntegTest extends CommChannelModuleIntegTest {
+
+    @Inject
+    CommChannelDemoObjectMenu commChannelDemoObjectMenu;
+    @Inject
+    EmailAddressRepository emailAddressRepository;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    @Inject
+    TransactionService transactionService;
+
+    CommChannelDemoObject fredDemoOwner;
+    CommChannelDemoObject billDemoOwner;
+
+    @Before
+    public void setUpData() throws Exception {
+        fixtureScripts.runFixtureScript(new CommChannelDemoObjectsTearDownFixture(), null);
+
+        fredDemoOwner = wrap(commChannelDemoObjectMenu).create("Fred");
+        billDemoOwner = wrap(commChannelDemoObjectMenu).create("Bill");
+
+        wrap(mixinNewEmailAddress(fredDemoOwner)).$$("fred@gmail.com", "Home Email", "Fred Smith's home email");
+        wrap(mixinNewEmailAddress(fredDemoOwner)).$$("office@somecompany.com", "Work Email", "Shared work email");
+        wrap(mixinNewEmailAddress(billDemoOwner)).$$("office@somecompany.com", "Work Email", "Shared work email");
+    }
+
+    public static class FindOwnersByEmailAddressIntegrationTest extends EmailAddressRepositoryIntegTest {
+
+        @Test
+        public void single_owner() throws Exception {
+            final List<Object> owners = emailAddressRepository.findOwnersByEmailAddress("fred@gmail.com");
+
+            assertThat(owners).containsExactly(fredDemoOwner);
+        }
+
+        @Test
+        public void multiple_owners() throws Exception {
+            final List<Object> owners = emailAddressRepository.findOwnersByEmailAddress("office@somecompany.com");
+
+            assertThat(owners).containsOnly(fredDemoOwner, billDemoOwner);
+        }
+
+        @Test
+        public void ignores_case_and_whitespace() throws Exception {
+            final List<Object> owners = emailAddressRepository.findOwnersByEmailAddress(" Fred@GMail.com ");
+
+            assertThat(owners).containsExactly(fredDemoOwner);
+        }
+
+        @Test
+        public void no_owners() throws Exception {
+            final List<Object> owners = emailAddressRepository.findOwnersByEmailAddress("nobody@nowhere.com");
+
+            assertThat(owners).isEmpty();
+        }
+    }
+
+    public static class FindByEmailAddressIntegrationTest extends EmailAddressRepositoryIntegTest {
+
+        @Test
+        public void ignores_case() throws Exception {
+            final EmailAddress emailAddress = emailAddressRepository.findByEmailAddress(fredDemoOwner, "FRED@gmail.com");
+
+            assertThat(emailAddress).isNotNull();
+            assertThat(emailAddress.getEmailAddress()).isEqualTo("fred@gmail.com");
+            assertThat(emailAddress.getCanonicalEmailAddress()).isEqualTo("fred@gmail.com");
+        }
+    }
+
+    public static class BackfillCanonicalEmailAddressesIntegrationTest extends EmailAddressRepositoryIntegTest {
+
+        @Test
+        public void happy_case() throws Exception {
+            // given
+            transactionService.nextTransaction();
+            isisJdoSupport.executeUpdate("update \"incodeCommChannel\".\"CommunicationChannel\" set \"canonicalEmailAddress\" = null");
+            isisJdoSupport.getJdoPersistenceManager().evictAll();
+            isisJdoSupport.getJdoPersistenceManager().getPersistenceManagerFactory().getDataStoreCache().evictAll();
+            assertThat(emailAddressRepository.findOwnersByEmailAddress("fred@gmail.com")).isEmpty();
+
+            // when
+            final int firstBatch = emailAddressRepository.backfillCanonicalEmailAddresses(2);
+            transactionService.nextTransaction();
+            final int secondBatch = emailAddressRepository.backfillCanonicalEmailAddresses(2);
+            transactionService.nextTransaction();
+            final int thirdBatch = emailAddressRepository.backfillCanonicalEmailAddresses(2);
+
+            // then
+            assertThat(firstBatch).isEqualTo(2);
+            assertThat(secondBatch).isEqualTo(1);
+            assertThat(thirdBatch).isEqualTo(0);
+            assertThat(emailAddressRepository.findOwnersByEmailAddress("fred@gmail.com")).containsExactly(fredDemoOwner);
+        }
+    }
+
+}
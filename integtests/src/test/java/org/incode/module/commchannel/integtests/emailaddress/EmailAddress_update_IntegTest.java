@@ -28,6 +28,7 @@
 import org.apache.isis.applib.AbstractSubscriber;
 import org.apache.isis.applib.annotation.DomainService;
 import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.services.xactn.TransactionService;
 
 import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
 import org.incode.module.commchannel.dom.impl.emailaddress.EmailAddress;
@@ -44,6 +45,9 @@ public class EmailAddress_update_IntegTest extends CommChannelModuleIntegTest {
     @Inject
     CommChannelDemoObjectMenu commChannelDemoObjectMenu;
 
+    @Inject
+    TransactionService transactionService;
+
     CommChannelDemoObject fredDemoOwner;
     EmailAddress fredEmail;
 
@@ -74,6 +78,18 @@ public void happy_case() throws Exception {
             assertThat(wrap(fredEmail).getEmailAddress()).isEqualTo("frederick@yahoo.com");
             assertThat(returned).isSameAs(fredEmail);
         }
+
+        @Test
+        public void updates_title() throws Exception {
+            transactionService.flushTransaction();
+            assertThat(fredEmail.getTitle()).isEqualTo("fred@gmail.com");
+
+            wrap(mixinUpdate(fredEmail)).$$("frederick@yahoo.com");
+            transactionService.flushTransaction();
+
+            assertThat(fredEmail.getTitle()).isEqualTo("frederick@yahoo.com");
+            assertThat(fredEmail.getName()).isEqualTo("frederick@yahoo.com");
+        }
     }
 
     public static class DefaultIntegrationTest extends EmailAddress_update_IntegTest {
@@ -0,0 +1,138 @@
+/*
+ *  Copyright 2014~2015 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.integtests.phoneorfaxnumber;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+import org.apache.isis.applib.services.xactn.TransactionService;
+
+import org.incode.module.commchannel.dom.impl.phoneorfax.PhoneOrFaxNumber;
+import org.incode.module.commchannel.dom.impl.phoneorfax.PhoneOrFaxNumberRepository;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObject;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObjectMenu;
+import org.incode.module.commchannel.fixture.scripts.teardown.CommChannelDemoObjectsTearDownFixture;
+import org.incode.module.commchannel.integtests.CommChannelModuleIntegTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PhoneOrFaxNumberRepositoryIntegTest extends CommChannelModuleIntegTest {
+
+    @Inject
+    CommChannelDemoObjectMenu commChannelDemoObjectMenu;
+    @Inject
+    PhoneOrFaxNumberRepository phoneOrFaxNumberRepository;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    @Inject
+    TransactionService transactionService;
+
+    CommChannelDemoObject fredDemoOwner;
+    CommChannelDemoObject billDemoOwner;
+
+    @Before
+    public void setUpData() throws Exception {
+        fixtureScripts.runFixtureScript(new CommChannelDemoObjectsTearDownFixture(), null);
+
+        fredDemoOwner = wrap(commChannelDemoObjectMenu).create("Fred");
+        billDemoOwner = wrap(commChannelDemoObjectMenu).create("Bill");
+
+        wrap(mixinNewPhoneOrFaxNumber(fredDemoOwner)).$$(
+                CommunicationChannelType.PHONE_NUMBER, "0208 111 1111", "Home Number", "Fred Smith's home phone number");
+        wrap(mixinNewPhoneOrFaxNumber(fredDemoOwner)).$$(
+                CommunicationChannelType.FAX_NUMBER, "0207 222 3333", "Work Fax", "Shared work fax number");
+        wrap(mixinNewPhoneOrFaxNumber(billDemoOwner)).$$(
+                CommunicationChannelType.FAX_NUMBER, "0207 222 3333", "Work Fax", "Shared work fax number");
+    }
+
+    public static class FindOwnersByNumberIntegrationTest extends PhoneOrFaxNumberRepositoryIntegTest {
+
+        @Test
+        public void single_owner() throws Exception {
+            final List<Object> owners = phoneOrFaxNumberRepository.findOwnersByNumber("0208 111 1111");
+
+            assertThat(owners).containsExactly(fredDemoOwner);
+        }
+
+        @Test
+        public void multiple_owners() throws Exception {
+            final List<Object> owners = phoneOrFaxNumberRepository.findOwnersByNumber("0207 222 3333");
+
+            assertThat(owners).containsOnly(fredDemoOwner, billDemoOwner);
+        }
+
+        @Test
+        public void ignores_formatting() throws Exception {
+            final List<Object> owners = phoneOrFaxNumberRepository.findOwnersByNumber("0208-111-1111");
+
+            assertThat(owners).containsExactly(fredDemoOwner);
+        }
+
+        @Test
+        public void no_owners() throws Exception {
+            final List<Object> owners = phoneOrFaxNumberRepository.findOwnersByNumber("0999 999 9999");
+
+            assertThat(owners).isEmpty();
+        }
+    }
+
+    public static class FindByPhoneOrFaxNumberIntegrationTest extends PhoneOrFaxNumberRepositoryIntegTest {
+
+        @Test
+        public void ignores_formatting() throws Exception {
+            final PhoneOrFaxNumber phoneOrFaxNumber =
+                    phoneOrFaxNumberRepository.findByPhoneOrFaxNumber(fredDemoOwner, "02081111111");
+
+            assertThat(phoneOrFaxNumber).isNotNull();
+            assertThat(phoneOrFaxNumber.getPhoneNumber()).isEqualTo("0208 111 1111");
+            assertThat(phoneOrFaxNumber.getNormalisedPhoneNumber()).isEqualTo("02081111111");
+        }
+    }
+
+    public static class BackfillNormalisedPhoneNumbersIntegrationTest extends PhoneOrFaxNumberRepositoryIntegTest {
+
+        @Test
+        public void happy_case() throws Exception {
+            // given
+            transactionService.nextTransaction();
+            isisJdoSupport.executeUpdate("update \"incodeCommChannel\".\"CommunicationChannel\" set \"normalisedPhoneNumber\" = null");
+            isisJdoSupport.getJdoPersistenceManager().evictAll();
+            isisJdoSupport.getJdoPersistenceManager().getPersistenceManagerFactory().getDataStoreCache().evictAll();
+            assertThat(phoneOrFaxNumberRepository.findOwnersByNumber("0208 111 1111")).isEmpty();
+
+            // when
+            final int firstBatch = phoneOrFaxNumberRepository.backfillNormalisedPhoneNumbers(2);
+            transactionService.nextTransaction();
+            final int secondBatch = phoneOrFaxNumberRepository.backfillNormalisedPhoneNumbers(2);
+            transactionService.nextTransaction();
+            final int thirdBatch = phoneOrFaxNumberRepository.backfillNormalisedPhoneNumbers(2);
+
+            // then
+            assertThat(firstBatch).isEqualTo(2);
+            assertThat(secondBatch).isEqualTo(1);
+            assertThat(thirdBatch).isEqualTo(0);
+            assertThat(phoneOrFaxNumberRepository.findOwnersByNumber("0208 111 1111")).containsExactly(fredDemoOwner);
+        }
+    }
+
+}
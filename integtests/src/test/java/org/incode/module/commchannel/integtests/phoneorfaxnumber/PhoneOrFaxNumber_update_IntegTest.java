@@ -28,6 +28,7 @@
 import org.apache.isis.applib.AbstractSubscriber;
 import org.apache.isis.applib.annotation.DomainService;
 import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.services.xactn.TransactionService;
 
 import org.incode.module.commchannel.dom.impl.phoneorfax.PhoneOrFaxNumber;
 import org.incode.module.commchannel.dom.impl.phoneorfax.PhoneOrFaxNumber_update;
@@ -44,6 +45,9 @@ public class PhoneOrFaxNumber_update_IntegTest extends CommChannelModuleIntegTes
     @Inject
     CommChannelDemoObjectMenu commChannelDemoObjectMenu;
 
+    @Inject
+    TransactionService transactionService;
+
     CommChannelDemoObject fredDemoOwner;
     PhoneOrFaxNumber fredPhone;
 
@@ -71,10 +75,12 @@ public void happy_case() throws Exception {
 
             final PhoneOrFaxNumber returned =
                     wrap(mixinUpdate(fredPhone)).$$(CommunicationChannelType.FAX_NUMBER, "0207 111 2222");
+            transactionService.flushTransaction();
 
             assertThat(fredPhone.getPhoneNumber()).isEqualTo("0207 111 2222");
             assertThat(fredPhone.getType()).isEqualTo(CommunicationChannelType.FAX_NUMBER);
-            
+            assertThat(fredPhone.getTitle()).isEqualTo("0207 111 2222");
+
             assertThat(returned).isSameAs(fredPhone);
         }
     }
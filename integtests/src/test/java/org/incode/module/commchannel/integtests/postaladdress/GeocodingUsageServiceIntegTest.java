@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2014~2015 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.integtests.postaladdress;
+
+import java.util.SortedMap;
+
+import javax.inject.Inject;
+
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.isis.applib.services.clock.ClockService;
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+import org.apache.isis.applib.services.xactn.TransactionService;
+
+import org.incode.module.commchannel.dom.api.GeocodingService;
+import org.incode.module.commchannel.dom.impl.geocodingusage.GeocodingUsage.Metric;
+import org.incode.module.commchannel.dom.impl.geocodingusage.GeocodingUsageService;
+import org.incode.module.commchannel.fixture.scripts.teardown.CommChannelDemoObjectsTearDownFixture;
+import org.incode.module.commchannel.integtests.CommChannelModuleIntegTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GeocodingUsageServiceIntegTest extends CommChannelModuleIntegTest {
+
+    @Inject
+    GeocodingService geocodingService;
+    @Inject
+    GeocodingUsageService geocodingUsageService;
+    @Inject
+    ClockService clockService;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    @Inject
+    TransactionService transactionService;
+
+    LocalDate today;
+    int dailyCap;
+
+    @Before
+    public void setUpData() throws Exception {
+        geocodingUsageService.flush(); // so that usage by earlier tests is torn down
+        isisJdoSupport.executeUpdate("delete from \"incodeCommChannel\".\"GeocodingUsage\"");
+        fixtureScripts.runFixtureScript(new CommChannelDemoObjectsTearDownFixture(), null);
+        // flushes write in their own transaction, so must not wait on the locks taken by the deletes above
+        transactionService.nextTransaction();
+        geocodingService.invalidateCache();
+
+        today = clockService.now();
+        dailyCap = geocodingUsageService.getDailyCap();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        geocodingUsageService.setDailyCap(dailyCap);
+    }
+
+    static long countOf(final SortedMap<Metric, Long> usage, final Metric metric) {
+        final Long count = usage.get(metric);
+        return count != null ? count : 0L;
+    }
+
+    public static class RecordIntegrationTest extends GeocodingUsageServiceIntegTest {
+
+        @Test
+        public void requests_and_cache_hits() throws Exception {
+
+            // given
+            final SortedMap<Metric, Long> before = geocodingUsageService.getUsage(today);
+
+            // when
+            geocodingService.lookupAddress("45", "High Street", "Oxford", "OX1", "UK");
+            geocodingService.lookupAddress("45 High Street", "OXFORD", "OX1", "UK");
+
+            // then
+            final SortedMap<Metric, Long> after = geocodingUsageService.getUsage(today);
+            assertThat(countOf(after, Metric.REQUESTS) - countOf(before, Metric.REQUESTS)).isEqualTo(1L);
+            assertThat(countOf(after, Metric.STATUS_OK) - countOf(before, Metric.STATUS_OK)).isEqualTo(1L);
+            assertThat(countOf(after, Metric.CACHE_HITS) - countOf(before, Metric.CACHE_HITS)).isEqualTo(1L);
+            assertThat(countOf(after, Metric.BYTES_RECEIVED)).isGreaterThan(countOf(before, Metric.BYTES_RECEIVED));
+        }
+
+        @Test
+        public void persisted_when_flushed() throws Exception {
+
+            // given
+            geocodingService.lookup("Oxford");
+
+            // when
+            final int updated = geocodingUsageService.flush();
+
+            // then
+            assertThat(updated).isEqualTo(3); // REQUESTS, STATUS_OK, BYTES_RECEIVED
+            assertThat(countOf(geocodingUsageService.getUsage(today), Metric.REQUESTS)).isEqualTo(1L);
+            assertThat(geocodingUsageService.getRequests(today)).isEqualTo(1L);
+        }
+
+        @Test
+        public void added_to_usage_flushed_by_other_nodes() throws Exception {
+
+            // given
+            isisJdoSupport.executeUpdate(
+                    "insert into \"incodeCommChannel\".\"GeocodingUsage\" (\"date\", \"metric\", \"count\") "
+                            + "values (CURRENT_DATE, 'REQUESTS', 5)");
+            transactionService.nextTransaction();
+            geocodingService.lookup("Oxford");
+
+            // when
+            geocodingUsageService.flush();
+
+            // then
+            assertThat(countOf(geocodingUsageService.getUsage(today), Metric.REQUESTS)).isEqualTo(6L);
+            assertThat(geocodingUsageService.getRequests(today)).isEqualTo(6L);
+            assertThat(geocodingUsageService.getFlushFailures()).isEqualTo(0L);
+        }
+    }
+
+    public static class DailyCapIntegrationTest extends GeocodingUsageServiceIntegTest {
+
+        @Test
+        public void refuses_once_reached() throws Exception {
+
+            // given
+            geocodingUsageService.setDailyCap((int) geocodingUsageService.getRequests(today) + 1);
+            assertThat(geocodingService.lookup("Oxford")).isNotNull();
+
+            // when
+            final SortedMap<Metric, Long> before = geocodingUsageService.getUsage(today);
+            final boolean result = geocodingService.lookup("Oxford") != null;
+
+            // then
+            assertThat(result).isFalse();
+            final SortedMap<Metric, Long> after = geocodingUsageService.getUsage(today);
+            assertThat(countOf(after, Metric.REFUSED) - countOf(before, Metric.REFUSED)).isEqualTo(1L);
+            assertThat(countOf(after, Metric.REQUESTS)).isEqualTo(countOf(before, Metric.REQUESTS));
+        }
+
+        @Test
+        public void not_if_no_cap() throws Exception {
+
+            // given
+            geocodingUsageService.setDailyCap(0);
+
+            // then
+            assertThat(geocodingService.lookup("Oxford")).isNotNull();
+            assertThat(geocodingService.lookup("Oxford")).isNotNull();
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ *  Copyright 2014~2015 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.integtests.postaladdress;
+
+import javax.inject.Inject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelRepository;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddressGeocodeMatcher;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress_lookupGeocode;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObject;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObjectMenu;
+import org.incode.module.commchannel.fixture.scripts.teardown.CommChannelDemoObjectsTearDownFixture;
+import org.incode.module.commchannel.integtests.CommChannelModuleIntegTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostalAddressGeocodeMatcherIntegTest extends CommChannelModuleIntegTest {
+
+    @Inject
+    CommChannelDemoObjectMenu commChannelDemoObjectMenu;
+    @Inject
+    CommunicationChannelRepository communicationChannelRepository;
+    @Inject
+    PostalAddressGeocodeMatcher postalAddressGeocodeMatcher;
+
+    CommChannelDemoObject fredDemoOwner;
+    CommChannelDemoObject billDemoOwner;
+
+    PostalAddress fredPostalAddress;
+
+    boolean enabled;
+
+    @Before
+    public void setUpData() throws Exception {
+        fixtureScripts.runFixtureScript(new CommChannelDemoObjectsTearDownFixture(), null);
+
+        fredDemoOwner = wrap(commChannelDemoObjectMenu).create("Fred");
+        billDemoOwner = wrap(commChannelDemoObjectMenu).create("Bill");
+
+        enabled = postalAddressGeocodeMatcher.isEnabled();
+        postalAddressGeocodeMatcher.setEnabled(true);
+        postalAddressGeocodeMatcher.resetStatistics();
+
+        wrap(mixinNewPostalAddress(fredDemoOwner)).$$(
+                "45", "High Street", "Oxford", null, "OX1", "UK", "Work", null, true);
+        fredPostalAddress = postalAddressOf(fredDemoOwner);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        postalAddressGeocodeMatcher.setEnabled(enabled);
+    }
+
+    PostalAddress postalAddressOf(final CommChannelDemoObject owner) {
+        return (PostalAddress) communicationChannelRepository
+                .findByOwnerAndType(owner, CommunicationChannelType.POSTAL_ADDRESS).first();
+    }
+
+    public static class FindMatchIntegrationTest extends PostalAddressGeocodeMatcherIntegTest {
+
+        @Test
+        public void reuses_geocode_of_variant() throws Exception {
+
+            // given
+            assertThat(fredPostalAddress.getPlaceId()).isNotNull();
+            assertThat(postalAddressGeocodeMatcher.getMisses()).isEqualTo(1);
+
+            // when
+            wrap(mixinNewPostalAddress(billDemoOwner)).$$(
+                    "45 High Street", "Oxford", null, null, "OX1", "UK", "Work", null, true);
+
+            // then
+            final PostalAddress billPostalAddress = postalAddressOf(billDemoOwner);
+            assertThat(billPostalAddress.getPlaceId()).isEqualTo(fredPostalAddress.getPlaceId());
+            assertThat(billPostalAddress.getLatLng()).isEqualTo(fredPostalAddress.getLatLng());
+            assertThat(billPostalAddress.getFormattedAddress()).isEqualTo(fredPostalAddress.getFormattedAddress());
+            assertThat(postalAddressGeocodeMatcher.getApiCallsAvoided()).isEqualTo(1);
+            assertThat(postalAddressGeocodeMatcher.getMisses()).isEqualTo(1);
+        }
+
+        @Test
+        public void does_not_reuse_for_different_house_number() throws Exception {
+
+            // when
+            wrap(mixinNewPostalAddress(billDemoOwner)).$$(
+                    "47", "High Street", "Oxford", null, "OX1", "UK", "Work", null, true);
+
+            // then
+            assertThat(postalAddressGeocodeMatcher.getApiCallsAvoided()).isEqualTo(0);
+            assertThat(postalAddressGeocodeMatcher.getMisses()).isEqualTo(2);
+        }
+
+        @Test
+        public void not_used_for_explicit_lookup() throws Exception {
+
+            // given
+            wrap(mixinNewPostalAddress(billDemoOwner)).$$(
+                    "45 High Street", "Oxford", null, null, "OX1", "UK", "Work", null, null);
+            final PostalAddress billPostalAddress = postalAddressOf(billDemoOwner);
+
+            // when
+            wrap(mixin(PostalAddress_lookupGeocode.class, billPostalAddress)).$$("45 High Street, Oxford, OX1, UK");
+
+            // then
+            assertThat(postalAddressGeocodeMatcher.getApiCallsAvoided()).isEqualTo(0);
+            assertThat(postalAddressGeocodeMatcher.getMisses()).isEqualTo(1);
+        }
+    }
+
+}
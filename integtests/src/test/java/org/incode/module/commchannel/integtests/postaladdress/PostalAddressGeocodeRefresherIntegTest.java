@@ -0,0 +1,177 @@
+/*
+ *  Copyright 2014~2015 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.integtests.postaladdress;
+
+import java.sql.Timestamp;
+
+import javax.inject.Inject;
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+import org.apache.isis.applib.services.xactn.TransactionService;
+
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelRepository;
+import org.incode.module.commchannel.dom.impl.geocodingusage.GeocodingUsageService;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddressGeocodeRefresher;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObject;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObjectMenu;
+import org.incode.module.commchannel.fixture.scripts.teardown.CommChannelDemoObjectsTearDownFixture;
+import org.incode.module.commchannel.integtests.CommChannelModuleIntegTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostalAddressGeocodeRefresherIntegTest extends CommChannelModuleIntegTest {
+
+    @Inject
+    CommChannelDemoObjectMenu commChannelDemoObjectMenu;
+    @Inject
+    CommunicationChannelRepository communicationChannelRepository;
+    @Inject
+    PostalAddressGeocodeRefresher postalAddressGeocodeRefresher;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    @Inject
+    TransactionService transactionService;
+    @Inject
+    GeocodingUsageService geocodingUsageService;
+
+    CommChannelDemoObject fredDemoOwner;
+    CommChannelDemoObject billDemoOwner;
+
+    @Before
+    public void setUpData() throws Exception {
+        fixtureScripts.runFixtureScript(new CommChannelDemoObjectsTearDownFixture(), null);
+
+        fredDemoOwner = wrap(commChannelDemoObjectMenu).create("Fred");
+        billDemoOwner = wrap(commChannelDemoObjectMenu).create("Bill");
+
+        wrap(mixinNewPostalAddress(fredDemoOwner)).$$(
+                "45", "High Street", "Oxford", null, "OX1", "UK", "Home", null, true);
+        wrap(mixinNewPostalAddress(billDemoOwner)).$$(
+                "1", "Main Street", "Springfield", null, null, "USA", "Home", null, false);
+
+        postalAddressGeocodeRefresher.resetStatistics();
+    }
+
+    PostalAddress postalAddressOf(final CommChannelDemoObject owner) {
+        return (PostalAddress) communicationChannelRepository
+                .findByOwnerAndType(owner, CommunicationChannelType.POSTAL_ADDRESS).first();
+    }
+
+    void setGeocodedAt(final String sqlValue) {
+        isisJdoSupport.executeUpdate(
+                "update \"incodeCommChannel\".\"CommunicationChannel\" set \"geocodedAt\" = " + sqlValue);
+        transactionService.nextTransaction();
+        isisJdoSupport.getJdoPersistenceManager().evictAll();
+    }
+
+    public static class GeocodedAtIntegrationTest extends PostalAddressGeocodeRefresherIntegTest {
+
+        @Test
+        public void when_geocoded() throws Exception {
+            assertThat(postalAddressOf(fredDemoOwner).getGeocodedAt()).isNotNull();
+        }
+
+        @Test
+        public void not_when_not_geocoded() throws Exception {
+            assertThat(postalAddressOf(billDemoOwner).getGeocodedAt()).isNull();
+        }
+    }
+
+    public static class RefreshBatchIntegrationTest extends PostalAddressGeocodeRefresherIntegTest {
+
+        @Test
+        public void when_fresh() throws Exception {
+
+            // when
+            final int refreshed = postalAddressGeocodeRefresher.refreshBatch();
+
+            // then
+            assertThat(refreshed).isEqualTo(0);
+        }
+
+        @Test
+        public void when_stale() throws Exception {
+
+            // given
+            setGeocodedAt("'2000-01-01 00:00:00'");
+            final int remainingBudget = postalAddressGeocodeRefresher.getRemainingBudget();
+
+            // when
+            final int refreshed = postalAddressGeocodeRefresher.refreshBatch();
+
+            // then
+            assertThat(refreshed).isEqualTo(1);
+            assertThat(postalAddressGeocodeRefresher.getRefreshed()).isEqualTo(1L);
+            assertThat(postalAddressGeocodeRefresher.getFailures()).isEqualTo(0L);
+            assertThat(postalAddressGeocodeRefresher.getRemainingBudget()).isEqualTo(remainingBudget - 1);
+
+            final PostalAddress postalAddress = postalAddressOf(fredDemoOwner);
+            assertThat(postalAddress.getGeocodedAt().getTime())
+                    .isGreaterThan(java.sql.Timestamp.valueOf("2000-01-01 00:00:00").getTime());
+            assertThat(postalAddress.getCountryCode()).isEqualTo("GB");
+
+            // and then
+            assertThat(postalAddressGeocodeRefresher.refreshBatch()).isEqualTo(0);
+        }
+
+        @Test
+        public void when_never_recorded() throws Exception {
+
+            // given
+            setGeocodedAt("null");
+
+            // when
+            final int refreshed = postalAddressGeocodeRefresher.refreshBatch();
+
+            // then
+            assertThat(refreshed).isEqualTo(1);
+            assertThat(postalAddressOf(fredDemoOwner).getGeocodedAt()).isNotNull();
+            assertThat(postalAddressOf(billDemoOwner).getGeocodedAt()).isNull();
+        }
+
+        @Test
+        public void when_refused() throws Exception {
+
+            // given
+            setGeocodedAt("'2000-01-01 00:00:00'");
+            final int dailyCap = geocodingUsageService.getDailyCap();
+            geocodingUsageService.setDailyCap(
+                    (int) Math.max(1, geocodingUsageService.getRequests(LocalDate.now())));
+            try {
+
+                // when
+                final int refreshed = postalAddressGeocodeRefresher.refreshBatch();
+
+                // then
+                assertThat(refreshed).isEqualTo(0);
+                assertThat(postalAddressGeocodeRefresher.getFailures()).isEqualTo(0L);
+                assertThat(postalAddressGeocodeRefresher.getInterruptions()).isEqualTo(1L);
+                assertThat(postalAddressOf(fredDemoOwner).getGeocodedAt())
+                        .isEqualTo(Timestamp.valueOf("2000-01-01 00:00:00"));
+            } finally {
+                geocodingUsageService.setDailyCap(dailyCap);
+            }
+        }
+    }
+
+}
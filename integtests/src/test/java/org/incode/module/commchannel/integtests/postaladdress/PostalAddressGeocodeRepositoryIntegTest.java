@@ -0,0 +1,265 @@
+/*
+ *  Copyright 2014~2015 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.integtests.postaladdress;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+import org.apache.isis.applib.services.repository.RepositoryService;
+import org.apache.isis.applib.services.xactn.TransactionService;
+
+import org.incode.module.commchannel.dom.api.GeocodedAddress;
+import org.incode.module.commchannel.dom.api.GeocodingService;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelRepository;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddressGeocode;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddressGeocodeCompressor;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddressGeocodeRepository;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddressRepository;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress_clearGeocode;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress_downloadGeocode;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress_update;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObject;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObjectMenu;
+import org.incode.module.commchannel.fixture.scripts.teardown.CommChannelDemoObjectsTearDownFixture;
+import org.incode.module.commchannel.integtests.CommChannelModuleIntegTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostalAddressGeocodeRepositoryIntegTest extends CommChannelModuleIntegTest {
+
+    @Inject
+    CommChannelDemoObjectMenu commChannelDemoObjectMenu;
+    @Inject
+    CommunicationChannelRepository communicationChannelRepository;
+    @Inject
+    PostalAddressGeocodeRepository postalAddressGeocodeRepository;
+    @Inject
+    PostalAddressGeocodeCompressor postalAddressGeocodeCompressor;
+    @Inject
+    PostalAddressRepository postalAddressRepository;
+    @Inject
+    RepositoryService repositoryService;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    @Inject
+    TransactionService transactionService;
+    @Inject
+    GeocodingService geocodingService;
+
+    CommChannelDemoObject fredDemoOwner;
+    CommChannelDemoObject billDemoOwner;
+
+    @Before
+    public void setUpData() throws Exception {
+        fixtureScripts.runFixtureScript(new CommChannelDemoObjectsTearDownFixture(), null);
+
+        fredDemoOwner = wrap(commChannelDemoObjectMenu).create("Fred");
+        billDemoOwner = wrap(commChannelDemoObjectMenu).create("Bill");
+
+        wrap(mixinNewPostalAddress(fredDemoOwner)).$$(
+                "45", "High Street", "Oxford", null, "OX1", "UK", "Home", null, true);
+        wrap(mixinNewPostalAddress(billDemoOwner)).$$(
+                "45", "High Street", "Oxford", null, "OX1", "UK", "Work", null, true);
+    }
+
+    PostalAddress postalAddressOf(final CommChannelDemoObject owner) {
+        return (PostalAddress) communicationChannelRepository
+                .findByOwnerAndType(owner, CommunicationChannelType.POSTAL_ADDRESS).first();
+    }
+
+    public static class FindOrCreateIntegrationTest extends PostalAddressGeocodeRepositoryIntegTest {
+
+        @Test
+        public void identical_addresses_share_one_geocode() throws Exception {
+
+            // when
+            final PostalAddress fredPostalAddress = postalAddressOf(fredDemoOwner);
+            final PostalAddress billPostalAddress = postalAddressOf(billDemoOwner);
+
+            // then
+            assertThat(fredPostalAddress.getGeocode()).isNotNull();
+            assertThat(billPostalAddress.getGeocode()).isSameAs(fredPostalAddress.getGeocode());
+            assertThat(billPostalAddress.getGeocodeApiResponseAsJson())
+                    .isEqualTo(fredPostalAddress.getGeocodeApiResponseAsJson());
+
+            final List<PostalAddressGeocode> geocodes = repositoryService.allInstances(PostalAddressGeocode.class);
+            assertThat(geocodes).hasSize(1);
+        }
+
+        @Test
+        public void updating_geocode_is_seen_by_all_referencing_addresses() throws Exception {
+
+            // given
+            final PostalAddress fredPostalAddress = postalAddressOf(fredDemoOwner);
+            final PostalAddress billPostalAddress = postalAddressOf(billDemoOwner);
+
+            // when
+            postalAddressGeocodeRepository.findOrCreate(fredPostalAddress.getPlaceId(), "{}", "route: High Street\n");
+
+            // then
+            assertThat(fredPostalAddress.getGeocodeApiResponseAsJson()).isEqualTo("{}");
+            assertThat(billPostalAddress.getGeocodeApiResponseAsJson()).isEqualTo("{}");
+            assertThat(billPostalAddress.getAddressComponents()).isEqualTo("route: High Street\n");
+        }
+
+        @Test
+        public void regeocoding_updates_all_referencing_addresses() throws Exception {
+
+            // given
+            final PostalAddress fredPostalAddress = postalAddressOf(fredDemoOwner);
+            final PostalAddress billPostalAddress = postalAddressOf(billDemoOwner);
+            final GeocodedAddress regeocoded = geocodingService.asGeocodedAddress(
+                    fredPostalAddress.getGeocodeApiResponseAsJson().replace(
+                            fredPostalAddress.getFormattedAddress(), "45 High Street, Oxford OX1 4AA, UK"));
+
+            // when
+            mixin(PostalAddress_update.class, fredPostalAddress).applyGeocode(regeocoded);
+
+            // then
+            assertThat(billPostalAddress.getFormattedAddress()).isEqualTo("45 High Street, Oxford OX1 4AA, UK");
+            assertThat(billPostalAddress.getGeocode()).isSameAs(fredPostalAddress.getGeocode());
+        }
+
+        @Test
+        public void concurrently_created_duplicates_are_merged() throws Exception {
+
+            // given
+            final PostalAddress fredPostalAddress = postalAddressOf(fredDemoOwner);
+            final PostalAddress billPostalAddress = postalAddressOf(billDemoOwner);
+            final PostalAddressGeocode original = fredPostalAddress.getGeocode();
+
+            final PostalAddressGeocode duplicate = repositoryService.instantiate(PostalAddressGeocode.class);
+            duplicate.setPlaceId(original.getPlaceId());
+            repositoryService.persistAndFlush(duplicate);
+            billPostalAddress.setGeocode(duplicate);
+            transactionService.flushTransaction();
+
+            // when
+            final PostalAddressGeocode found = postalAddressGeocodeRepository.findByPlaceId(original.getPlaceId());
+
+            // then
+            assertThat(found).isSameAs(original);
+            assertThat(billPostalAddress.getGeocode()).isSameAs(original);
+            assertThat(repositoryService.allInstances(PostalAddressGeocode.class)).hasSize(1);
+        }
+    }
+
+    public static class OrphanIntegrationTest extends PostalAddressGeocodeRepositoryIntegTest {
+
+        @Test
+        public void geocode_deleted_once_no_longer_referenced() throws Exception {
+
+            // when
+            wrap(mixin(PostalAddress_clearGeocode.class, postalAddressOf(fredDemoOwner))).$$();
+
+            // then
+            assertThat(repositoryService.allInstances(PostalAddressGeocode.class)).hasSize(1);
+
+            // when
+            wrap(mixin(PostalAddress_clearGeocode.class, postalAddressOf(billDemoOwner))).$$();
+
+            // then
+            assertThat(repositoryService.allInstances(PostalAddressGeocode.class)).isEmpty();
+        }
+    }
+
+    public static class MigrateLegacyGeocodesIntegrationTest extends PostalAddressGeocodeRepositoryIntegTest {
+
+        @Test
+        public void moves_legacy_geocode_into_shared_table() throws Exception {
+
+            // given
+            final PostalAddress fredPostalAddress = postalAddressOf(fredDemoOwner);
+            final String placeId = fredPostalAddress.getPlaceId();
+
+            isisJdoSupport.executeUpdate(
+                    "update \"incodeCommChannel\".\"CommunicationChannel\" "
+                            + "set \"geocodeApiResponseAsJson\" = '{}', \"geocodeId\" = null "
+                            + "where \"placeId\" is not null");
+            transactionService.nextTransaction();
+            isisJdoSupport.getJdoPersistenceManager().evictAll();
+
+            // when
+            final int migrated = postalAddressRepository.migrateLegacyGeocodes(10);
+
+            // then
+            assertThat(migrated).isEqualTo(2);
+            assertThat(postalAddressRepository.migrateLegacyGeocodes(10)).isEqualTo(0);
+
+            final PostalAddress migratedPostalAddress = postalAddressOf(fredDemoOwner);
+            assertThat(migratedPostalAddress.getGeocode()).isNotNull();
+            assertThat(migratedPostalAddress.getGeocode().getPlaceId()).isEqualTo(placeId);
+            assertThat(migratedPostalAddress.getGeocodeApiResponseAsJson()).isEqualTo("{}");
+            assertThat(migratedPostalAddress.getLegacyGeocodeApiResponseAsJson()).isNull();
+            assertThat(repositoryService.allInstances(PostalAddressGeocode.class)).hasSize(1);
+        }
+    }
+
+    public static class CompressExistingIntegrationTest extends PostalAddressGeocodeRepositoryIntegTest {
+
+        @Test
+        public void compresses_and_decompresses_transparently() throws Exception {
+
+            // given
+            final PostalAddress fredPostalAddress = postalAddressOf(fredDemoOwner);
+            final String json = fredPostalAddress.getGeocodeApiResponseAsJson();
+            assertThat(fredPostalAddress.getGeocode().getApiResponseCompressed()).isNull();
+            postalAddressGeocodeCompressor.resetStatistics();
+
+            // when
+            final int compressed = postalAddressGeocodeCompressor.compressExisting(10);
+
+            // then
+            assertThat(compressed).isEqualTo(1);
+            assertThat(postalAddressGeocodeCompressor.compressExisting(10)).isEqualTo(0);
+            assertThat(postalAddressGeocodeCompressor.getBytesSaved()).isGreaterThan(0);
+
+            transactionService.nextTransaction();
+            isisJdoSupport.getJdoPersistenceManager().evictAll();
+
+            final PostalAddress compressedPostalAddress = postalAddressOf(fredDemoOwner);
+            assertThat(compressedPostalAddress.getGeocode().getApiResponseCompressed()).isNotNull();
+            assertThat(compressedPostalAddress.getGeocodeApiResponseAsJson()).isEqualTo(json);
+            assertThat(mixin(PostalAddress_downloadGeocode.class, compressedPostalAddress).$$("geocode.json").getChars().toString())
+                    .isEqualTo(json);
+        }
+
+        @Test
+        public void compresses_all_in_batches() throws Exception {
+
+            // given
+            assertThat(postalAddressOf(fredDemoOwner).getGeocode().getApiResponseCompressed()).isNull();
+            postalAddressGeocodeCompressor.resetStatistics();
+
+            // when
+            final int compressed = postalAddressGeocodeCompressor.compressAllExisting(1);
+
+            // then
+            assertThat(compressed).isEqualTo(1);
+            assertThat(postalAddressGeocodeCompressor.getResponsesCompressed()).isEqualTo(1);
+            assertThat(postalAddressGeocodeCompressor.compressExisting(10)).isEqualTo(0);
+        }
+    }
+
+}
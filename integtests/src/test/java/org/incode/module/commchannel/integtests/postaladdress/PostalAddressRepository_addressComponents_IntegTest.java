@@ -0,0 +1,214 @@
+/*
+ *  Copyright 2014~2015 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.incode.module.commchannel.integtests.postaladdress;
+
+import javax.inject.Inject;
+
+import com.google.common.base.Strings;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.isis.applib.services.jdosupport.IsisJdoSupport;
+import org.apache.isis.applib.services.xactn.TransactionService;
+
+import org.incode.module.commchannel.dom.api.GeocodingService;
+import org.incode.module.commchannel.dom.impl.channel.CommunicationChannelRepository;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddressGeocodeRepository;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddressRepository;
+import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress_update;
+import org.incode.module.commchannel.dom.impl.type.CommunicationChannelType;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObject;
+import org.incode.module.commchannel.fixture.dom.CommChannelDemoObjectMenu;
+import org.incode.module.commchannel.fixture.scripts.teardown.CommChannelDemoObjectsTearDownFixture;
+import org.incode.module.commchannel.integtests.CommChannelModuleIntegTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostalAddressRepository_addressComponents_IntegTest extends CommChannelModuleIntegTest {
+
+    @Inject
+    CommChannelDemoObjectMenu commChannelDemoObjectMenu;
+    @Inject
+    CommunicationChannelRepository communicationChannelRepository;
+    @Inject
+    PostalAddressRepository postalAddressRepository;
+    @Inject
+    IsisJdoSupport isisJdoSupport;
+    @Inject
+    TransactionService transactionService;
+    @Inject
+    GeocodingService geocodingService;
+    @Inject
+    PostalAddressGeocodeRepository postalAddressGeocodeRepository;
+
+    CommChannelDemoObject fredDemoOwner;
+    CommChannelDemoObject billDemoOwner;
+
+    @Before
+    public void setUpData() throws Exception {
+        fixtureScripts.runFixtureScript(new CommChannelDemoObjectsTearDownFixture(), null);
+
+        fredDemoOwner = wrap(commChannelDemoObjectMenu).create("Fred");
+        billDemoOwner = wrap(commChannelDemoObjectMenu).create("Bill");
+
+        wrap(mixinNewPostalAddress(fredDemoOwner)).$$(
+                "45", "High Street", "Oxford", null, "OX1", "UK", "Home", null, true);
+        wrap(mixinNewPostalAddress(billDemoOwner)).$$(
+                "1", "Main Street", "Springfield", null, null, "USA", "Home", null, false);
+    }
+
+    PostalAddress postalAddressOf(final CommChannelDemoObject owner) {
+        return (PostalAddress) communicationChannelRepository
+                .findByOwnerAndType(owner, CommunicationChannelType.POSTAL_ADDRESS).first();
+    }
+
+    public static class PopulatedIntegrationTest extends PostalAddressRepository_addressComponents_IntegTest {
+
+        @Test
+        public void when_geocoded() throws Exception {
+
+            // when
+            final PostalAddress postalAddress = postalAddressOf(fredDemoOwner);
+
+            // then
+            assertThat(postalAddress.getLocality()).isEqualTo("Oxford");
+            assertThat(postalAddress.getPostalTown()).isEqualTo("Oxford");
+            assertThat(postalAddress.getAdministrativeAreaLevel2()).isEqualTo("Oxfordshire");
+            assertThat(postalAddress.getCountryCode()).isEqualTo("GB");
+            assertThat(postalAddress.getGeocodedPostalCode()).isEqualTo("OX1");
+        }
+
+        @Test
+        public void not_when_not_geocoded() throws Exception {
+
+            // when
+            final PostalAddress postalAddress = postalAddressOf(billDemoOwner);
+
+            // then
+            assertThat(postalAddress.getLocality()).isNull();
+            assertThat(postalAddress.getCountryCode()).isNull();
+        }
+
+        @Test
+        public void truncated_to_column_length() throws Exception {
+
+            // given
+            final PostalAddress postalAddress = postalAddressOf(fredDemoOwner);
+            final String json = postalAddress.getGeocodeApiResponseAsJson()
+                    .replace("\"long_name\" : \"Oxford\"", "\"long_name\" : \"" + Strings.repeat("x", 150) + "\"");
+
+            // when
+            mixin(PostalAddress_update.class, postalAddress).applyGeocode(geocodingService.asGeocodedAddress(json));
+
+            // then
+            assertThat(postalAddress.getLocality()).isEqualTo(Strings.repeat("x", 100));
+        }
+
+        @Test
+        public void country_code_null_when_not_alpha_2() throws Exception {
+
+            // given
+            final PostalAddress postalAddress = postalAddressOf(fredDemoOwner);
+            final String json = postalAddress.getGeocodeApiResponseAsJson()
+                    .replace("\"short_name\" : \"GB\"", "\"short_name\" : \"GBR\"");
+
+            // when
+            mixin(PostalAddress_update.class, postalAddress).applyGeocode(geocodingService.asGeocodedAddress(json));
+
+            // then
+            assertThat(postalAddress.getCountryCode()).isNull();
+            assertThat(postalAddress.getLocality()).isEqualTo("Oxford");
+        }
+    }
+
+    public static class FindIntegrationTest extends PostalAddressRepository_addressComponents_IntegTest {
+
+        @Test
+        public void by_administrative_area() throws Exception {
+            assertThat(postalAddressRepository.findByAdministrativeArea("Oxfordshire"))
+                    .containsExactly(postalAddressOf(fredDemoOwner));
+            assertThat(postalAddressRepository.findByAdministrativeArea("Berkshire")).isEmpty();
+        }
+
+        @Test
+        public void by_locality() throws Exception {
+            assertThat(postalAddressRepository.findByLocality("Oxford"))
+                    .containsExactly(postalAddressOf(fredDemoOwner));
+        }
+
+        @Test
+        public void by_country_code() throws Exception {
+            assertThat(postalAddressRepository.findByCountryCode("GB"))
+                    .containsExactly(postalAddressOf(fredDemoOwner));
+        }
+
+        @Test
+        public void count_by_country_code() throws Exception {
+            assertThat(postalAddressRepository.countByCountryCode()).containsOnlyKeys("GB");
+            assertThat(postalAddressRepository.countByCountryCode().get("GB")).isEqualTo(1L);
+        }
+    }
+
+    public static class BackfillIntegrationTest extends PostalAddressRepository_addressComponents_IntegTest {
+
+        @Test
+        public void populates_from_stored_geocode() throws Exception {
+
+            // given
+            isisJdoSupport.executeUpdate(
+                    "update \"incodeCommChannel\".\"CommunicationChannel\" "
+                            + "set \"locality\" = null, \"administrativeAreaLevel2\" = null, \"countryCode\" = null");
+            transactionService.nextTransaction();
+            isisJdoSupport.getJdoPersistenceManager().evictAll();
+            assertThat(postalAddressRepository.findByCountryCode("GB")).isEmpty();
+
+            // when
+            final int backfilled = postalAddressRepository.backfillAddressComponents(10);
+
+            // then
+            assertThat(backfilled).isEqualTo(1);
+            assertThat(postalAddressRepository.backfillAddressComponents(10)).isEqualTo(0);
+            final PostalAddress postalAddress = postalAddressOf(fredDemoOwner);
+            assertThat(postalAddress.getAdministrativeAreaLevel2()).isEqualTo("Oxfordshire");
+            assertThat(postalAddress.getCountryCode()).isEqualTo("GB");
+        }
+
+        @Test
+        public void skips_those_without_country() throws Exception {
+
+            // given
+            final PostalAddress postalAddress = postalAddressOf(fredDemoOwner);
+            postalAddressGeocodeRepository.update(
+                    postalAddress.getGeocode(),
+                    postalAddress.getGeocodeApiResponseAsJson()
+                            .replace("\"short_name\" : \"GB\"", "\"short_name\" : \"GBR\""),
+                    postalAddress.getAddressComponents());
+            postalAddress.setCountryCode(null);
+            transactionService.nextTransaction();
+
+            // when
+            final int backfilled = postalAddressRepository.backfillAddressComponents(10);
+
+            // then
+            assertThat(backfilled).isEqualTo(0);
+            assertThat(postalAddressOf(fredDemoOwner).getCountryCode()).isNull();
+        }
+    }
+
+}
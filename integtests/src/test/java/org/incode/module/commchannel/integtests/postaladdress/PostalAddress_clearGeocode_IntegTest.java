@@ -28,6 +28,7 @@
 import org.apache.isis.applib.AbstractSubscriber;
 import org.apache.isis.applib.annotation.DomainService;
 import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.services.xactn.TransactionService;
 
 import org.incode.module.commchannel.dom.impl.channel.CommunicationChannel;
 import org.incode.module.commchannel.dom.impl.postaladdress.PostalAddress;
@@ -46,6 +47,9 @@ public class PostalAddress_clearGeocode_IntegTest extends CommChannelModuleInteg
     @Inject
     CommChannelDemoObjectMenu commChannelDemoObjectMenu;
 
+    @Inject
+    TransactionService transactionService;
+
     CommChannelDemoObject fredDemoOwner;
     PostalAddress postalAddress;
 
@@ -80,9 +84,11 @@ public void clear() throws Exception {
 
             // when
             wrap(mixinResetGeocode(postalAddress)).$$();
+            transactionService.flushTransaction();
 
             // then
             assertThat(postalAddress.getName()).isEqualTo("45, High Stree...ford, OX1, UK");
+            assertThat(postalAddress.getTitle()).isEqualTo("45, High Stree...ford, OX1, UK");
             assertThat(postalAddress.getFormattedAddress()).isNull();
             assertThat(postalAddress.getGeocodeApiResponseAsJson()).isNull();
             assertThat(postalAddress.getLatLng()).isNull();